@@ -13,6 +13,10 @@
 
 package org.eclipse.hono.gateway.azure;
 
+import org.eclipse.hono.gateway.sdk.mqtt2amqp.MqttProtocolGatewayConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
@@ -20,7 +24,9 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.context.annotation.ComponentScan;
 
+import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
 
 /**
  * The "Azure IoT Hub" Protocol Gateway main application class.
@@ -29,10 +35,13 @@ import io.vertx.core.Vertx;
 @EnableAutoConfiguration
 public class AzureIotHubGatewayApplication implements ApplicationRunner {
 
-    private final Vertx vertx = Vertx.vertx();
+    private static final Logger LOG = LoggerFactory.getLogger(AzureIotHubGatewayApplication.class);
 
     @Autowired
-    private AzureIotHubMqttGateway azureIotHubMqttGateway;
+    private ObjectProvider<AzureIotHubMqttGateway> azureIotHubMqttGatewayProvider;
+
+    @Autowired
+    private MqttProtocolGatewayConfig mqttGatewayConfig;
 
     /**
      * Starts the "Azure IoT Hub" Protocol Gateway application.
@@ -43,8 +52,23 @@ public class AzureIotHubGatewayApplication implements ApplicationRunner {
         SpringApplication.run(AzureIotHubGatewayApplication.class, args);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Deploys the number of gateway instances configured in {@link MqttProtocolGatewayConfig#getVerticleInstances()}
+     * on a Vert.x instance that uses the native transport if {@link MqttProtocolGatewayConfig#isNativeTransport()}
+     * is set and the transport is available.
+     */
     @Override
     public void run(final ApplicationArguments args) {
-        vertx.deployVerticle(azureIotHubMqttGateway);
+        final Vertx vertx = Vertx.vertx(new VertxOptions()
+                .setPreferNativeTransport(mqttGatewayConfig.isNativeTransport()));
+        if (mqttGatewayConfig.isNativeTransport() && !vertx.isNativeTransportEnabled()) {
+            LOG.warn("native transport is not available, using Java NIO");
+        }
+
+        final DeploymentOptions options = new DeploymentOptions()
+                .setInstances(mqttGatewayConfig.getVerticleInstances());
+        vertx.deployVerticle(azureIotHubMqttGatewayProvider::getObject, options);
     }
 }
@@ -15,6 +15,7 @@ package org.eclipse.hono.gateway.azure;
 
 import java.net.HttpURLConnection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
@@ -28,6 +29,8 @@ import org.eclipse.hono.gateway.sdk.mqtt2amqp.Command;
 import org.eclipse.hono.gateway.sdk.mqtt2amqp.MqttCommandContext;
 import org.eclipse.hono.gateway.sdk.mqtt2amqp.MqttDownstreamContext;
 import org.eclipse.hono.gateway.sdk.mqtt2amqp.MqttProtocolGatewayConfig;
+import org.eclipse.hono.gateway.sdk.mqtt2amqp.TopicRouter;
+import org.eclipse.hono.gateway.sdk.mqtt2amqp.TopicTemplate;
 import org.eclipse.hono.gateway.sdk.mqtt2amqp.downstream.CommandResponseMessage;
 import org.eclipse.hono.gateway.sdk.mqtt2amqp.downstream.DownstreamMessage;
 import org.eclipse.hono.gateway.sdk.mqtt2amqp.downstream.EventMessage;
@@ -74,6 +77,11 @@ public class AzureIotHubMqttGateway extends AbstractMqttProtocolGateway {
      */
     public static final String EVENT_TOPIC_FORMAT_STRING = "devices/%s/messages/events/";
 
+    /**
+     * The template of {@link #EVENT_TOPIC_FORMAT_STRING}.
+     */
+    public static final TopicTemplate EVENT_TOPIC = TopicTemplate.compile("devices/{deviceId}/messages/events/");
+
     /**
      * The topic filter to which devices have to subscribe for receiving cloud-to-device messages.
      * <p>
@@ -85,6 +93,12 @@ public class AzureIotHubMqttGateway extends AbstractMqttProtocolGateway {
      */
     public static final String CLOUD_TO_DEVICE_TOPIC_FILTER_FORMAT_STRING = "devices/%s/messages/devicebound/#";
 
+    /**
+     * The template of {@link #CLOUD_TO_DEVICE_TOPIC_FILTER_FORMAT_STRING}.
+     */
+    public static final TopicTemplate CLOUD_TO_DEVICE_TOPIC_FILTER = TopicTemplate
+            .compile("devices/{deviceId}/messages/devicebound/#");
+
     /**
      * The topic to which cloud-to-device messages are being sent.
      * <p>
@@ -97,6 +111,12 @@ public class AzureIotHubMqttGateway extends AbstractMqttProtocolGateway {
      */
     public static final String CLOUD_TO_DEVICE_TOPIC_FORMAT_STRING = "devices/%s/messages/devicebound/";
 
+    /**
+     * The template of {@link #CLOUD_TO_DEVICE_TOPIC_FORMAT_STRING}.
+     */
+    public static final TopicTemplate CLOUD_TO_DEVICE_TOPIC = TopicTemplate
+            .compile("devices/{deviceId}/messages/devicebound/");
+
     /**
      * The topic filter to which devices have to subscribe for receiving direct method messages.
      *
@@ -117,6 +137,12 @@ public class AzureIotHubMqttGateway extends AbstractMqttProtocolGateway {
      */
     public static final String DIRECT_METHOD_TOPIC_FORMAT_STRING = "$iothub/methods/POST/%s/?$rid=%s";
 
+    /**
+     * The template of {@link #DIRECT_METHOD_TOPIC_FORMAT_STRING}.
+     */
+    public static final TopicTemplate DIRECT_METHOD_TOPIC = TopicTemplate
+            .compile("$iothub/methods/POST/{methodName}/?$rid={requestId}");
+
     /**
      * The prefix of the topic to which a response to a direct method is being sent.
      * <p>
@@ -131,6 +157,14 @@ public class AzureIotHubMqttGateway extends AbstractMqttProtocolGateway {
     private static final int DIRECT_METHOD_SIZE_LIMIT = 128 * 1024; // 128 KB
     private static final int CLOUD_TO_DEVICE_SIZE_LIMIT = 64 * 1024; // 64 KB
 
+    private static final List<TopicTemplate> DEVICE_TOPICS = List.of(EVENT_TOPIC, CLOUD_TO_DEVICE_TOPIC,
+            CLOUD_TO_DEVICE_TOPIC_FILTER);
+
+    private static final TopicRouter<Boolean> TOPIC_FILTERS = TopicRouter.<Boolean> builder()
+            .route(CLOUD_TO_DEVICE_TOPIC_FILTER.getPattern(), Boolean.TRUE)
+            .route(DIRECT_METHOD_TOPIC_FILTER, Boolean.TRUE)
+            .build();
+
     private final DemoDeviceConfiguration demoDeviceConfig;
 
     /**
@@ -160,10 +194,21 @@ public class AzureIotHubMqttGateway extends AbstractMqttProtocolGateway {
         if (demoDeviceConfig.getUsername().equals(username) && demoDeviceConfig.getPassword().equals(password)) {
             return Future.succeededFuture(new Device(demoDeviceConfig.getTenantId(), demoDeviceConfig.getDeviceId()));
         } else {
-            return Future.failedFuture(String.format("Authentication of device failed [username: %s]", username));
+            return Future.failedFuture(new ClientErrorException(HttpURLConnection.HTTP_UNAUTHORIZED,
+                    String.format("Authentication of device failed [username: %s]", username)));
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation returns the device-specific topics of the Azure IoT Hub API.
+     */
+    @Override
+    protected List<TopicTemplate> getTopicTemplates() {
+        return DEVICE_TOPICS;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -174,10 +219,12 @@ public class AzureIotHubMqttGateway extends AbstractMqttProtocolGateway {
         final String topic = ctx.topic();
         try {
 
-            if (isDeviceToCloudTopic(topic, ctx.authenticatedDevice().getDeviceId())) {
+            // device-to-cloud messages are the most frequent ones, a prefix check with the bound topic is cheapest
+            if (topic.startsWith(ctx.deviceTopics().get(EVENT_TOPIC))) {
                 result = createDeviceToCloudMessage(ctx);
-            } else if (isDirectMethodResponseTopic(topic)) {
-                result = createDirectMethodResponseMessage(ctx);
+            } else if (topic.startsWith(DIRECT_METHOD_RESPONSE_TOPIC_PREFIX)) {
+                // the request ID in the property bag may contain slashes, so the topic cannot be matched level by level
+                result = createDirectMethodResponseMessage(ctx, getDirectMethodResponseStatus(topic));
             } else {
                 throw new RuntimeException("unknown message type for topic " + topic);
             }
@@ -196,14 +243,6 @@ public class AzureIotHubMqttGateway extends AbstractMqttProtocolGateway {
         return Future.succeededFuture(result);
     }
 
-    private boolean isDeviceToCloudTopic(final String topic, final String deviceId) {
-        return topic.startsWith(getEventTopic(deviceId));
-    }
-
-    private boolean isDirectMethodResponseTopic(final String topic) {
-        return topic.startsWith(DIRECT_METHOD_RESPONSE_TOPIC_PREFIX);
-    }
-
     private DownstreamMessage createDeviceToCloudMessage(final MqttDownstreamContext ctx) {
         final Buffer payload = ctx.message().payload();
         if (payload.length() > DEVICE_TO_CLOUD_SIZE_LIMIT) {
@@ -224,15 +263,20 @@ public class AzureIotHubMqttGateway extends AbstractMqttProtocolGateway {
         return result;
     }
 
-    private DownstreamMessage createDirectMethodResponseMessage(final MqttDownstreamContext ctx) {
+    private static String getDirectMethodResponseStatus(final String topic) {
+        final int start = DIRECT_METHOD_RESPONSE_TOPIC_PREFIX.length();
+        final int end = topic.indexOf('/', start);
+        return topic.substring(start, end < 0 ? topic.length() : end);
+    }
+
+    private DownstreamMessage createDirectMethodResponseMessage(final MqttDownstreamContext ctx,
+            final String status) {
 
         validateDirectMethodPayload(ctx.message().payload());
 
         final PropertyBag propertyBag = PropertyBag.decode(ctx.topic());
         final RequestId requestId = RequestId.decode(propertyBag.getProperty("$rid"));
 
-        final String status = ctx.topic().split("/", -1)[3];
-
         final DownstreamMessage result = new CommandResponseMessage(requestId.getReplyId(),
                 requestId.getCorrelationId(), status, ctx.message().payload());
 
@@ -247,10 +291,7 @@ public class AzureIotHubMqttGateway extends AbstractMqttProtocolGateway {
     protected boolean isTopicFilterValid(final String topicFilter, final String tenantId, final String deviceId,
             final String clientId) {
 
-        final boolean isCloudToDevice = getCloudToDeviceTopicFilter(deviceId).equals(topicFilter);
-        final boolean isDirectMethod = DIRECT_METHOD_TOPIC_FILTER.equals(topicFilter);
-
-        return isCloudToDevice || isDirectMethod;
+        return TOPIC_FILTERS.match(topicFilter, tenantId, deviceId) != null;
     }
 
     /**
@@ -268,7 +309,7 @@ public class AzureIotHubMqttGateway extends AbstractMqttProtocolGateway {
         } else {
             validateCloudToDeviceMessage(ctx);
             topic = getCloudToDeviceTopic(ctx);
-            topicFilter = getCloudToDeviceTopicFilter(ctx.getDevice().getDeviceId());
+            topicFilter = ctx.getDeviceTopics().get(CLOUD_TO_DEVICE_TOPIC_FILTER);
         }
 
         return new Command(topic, topicFilter, ctx.getPayload());
@@ -300,7 +341,7 @@ public class AzureIotHubMqttGateway extends AbstractMqttProtocolGateway {
 
     private String getCloudToDeviceTopic(final MqttCommandContext ctx) {
 
-        final String baseTopic = getCloudToDeviceTopic(ctx.getDevice().getDeviceId());
+        final String baseTopic = ctx.getDeviceTopics().get(CLOUD_TO_DEVICE_TOPIC);
 
         final Map<String, Object> properties = Optional.ofNullable(ctx.getApplicationProperties())
                 .map(ApplicationProperties::getValue)
@@ -321,7 +362,7 @@ public class AzureIotHubMqttGateway extends AbstractMqttProtocolGateway {
      * @return The topic without a property bag.
      */
     public static String getEventTopic(final String deviceId) {
-        return String.format(EVENT_TOPIC_FORMAT_STRING, deviceId);
+        return EVENT_TOPIC.expand(deviceId);
     }
 
     /**
@@ -336,7 +377,7 @@ public class AzureIotHubMqttGateway extends AbstractMqttProtocolGateway {
             final Object correlationId) {
         final String requestId = RequestId.encode(replyToAddress, correlationId);
 
-        return String.format(DIRECT_METHOD_TOPIC_FORMAT_STRING, methodName, requestId);
+        return DIRECT_METHOD_TOPIC.expand(methodName, requestId);
     }
 
     /**
@@ -346,7 +387,7 @@ public class AzureIotHubMqttGateway extends AbstractMqttProtocolGateway {
      * @return The topic without a property bag.
      */
     public static String getCloudToDeviceTopic(final String deviceId) {
-        return String.format(CLOUD_TO_DEVICE_TOPIC_FORMAT_STRING, deviceId);
+        return CLOUD_TO_DEVICE_TOPIC.expand(deviceId);
     }
 
     /**
@@ -356,7 +397,7 @@ public class AzureIotHubMqttGateway extends AbstractMqttProtocolGateway {
      * @return The topic filter.
      */
     public static String getCloudToDeviceTopicFilter(final String deviceId) {
-        return String.format(CLOUD_TO_DEVICE_TOPIC_FILTER_FORMAT_STRING, deviceId);
+        return CLOUD_TO_DEVICE_TOPIC_FILTER.expand(deviceId);
     }
 
     private void addPropertyToMap(final Map<String, Object> map, final String key, final Object value) {
@@ -364,5 +405,4 @@ public class AzureIotHubMqttGateway extends AbstractMqttProtocolGateway {
             map.put(key, value);
         }
     }
-
 }
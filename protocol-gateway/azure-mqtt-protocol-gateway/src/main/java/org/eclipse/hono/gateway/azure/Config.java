@@ -20,6 +20,7 @@ import org.eclipse.hono.gateway.sdk.mqtt2amqp.MqttProtocolGatewayConfig;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Scope;
 
 /**
  * Spring Boot configuration for the the "Azure IoT Hub" Protocol Gateway.
@@ -63,11 +64,14 @@ public class Config {
 
     /**
      * Creates a new Azure IoT Hub protocol gateway instance.
+     * <p>
+     * The bean has prototype scope because a new instance is required for each deployed verticle.
      *
      * @return The new instance.
      * @throws IllegalArgumentException If the configuration is invalid.
      */
     @Bean
+    @Scope("prototype")
     public AzureIotHubMqttGateway azureIotHubMqttGateway() {
         final DemoDeviceConfiguration demoDeviceConfig = demoDevice();
         final ClientConfigProperties amqpClientConfig = amqpClientConfig();
@@ -269,6 +269,34 @@ public class AzureIotHubMqttGatewayTest {
         assertThat(responseMessage.getContentType()).isEqualTo("application/json");
     }
 
+    /**
+     * Verifies that a direct method response is accepted if the correlation ID contained in its request ID contains
+     * slashes, i.e. if further topic levels follow the status.
+     */
+    @Test
+    public void testOnPublishedMessageForCommandResponseWithSlashesInCorrelationId() {
+        final String correlationId = "the/correlation/id";
+
+        // GIVEN an MQTT message with the direct method response topic and a request ID that contains slashes
+        final MqttPublishMessage mqttPublishMessage = mock(MqttPublishMessage.class);
+        when(mqttPublishMessage.payload()).thenReturn(payload);
+        when(mqttPublishMessage.qosLevel()).thenReturn(MqttQoS.AT_LEAST_ONCE);
+        when(mqttPublishMessage.topicName()).thenReturn(AzureIotHubMqttGateway.DIRECT_METHOD_RESPONSE_TOPIC_PREFIX
+                + "200/?$rid=" + RequestId.encode(REPLY_TO_ADDRESS, correlationId));
+
+        final MqttDownstreamContext downstreamContext = MqttDownstreamContext.fromPublishPacket(mqttPublishMessage,
+                mock(MqttEndpoint.class), device);
+
+        // WHEN the message is received
+        final Future<DownstreamMessage> messageFuture = underTest.onPublishedMessage(downstreamContext);
+
+        // THEN a command response message with the status and the correlation ID is returned
+        assertThat(messageFuture.succeeded()).isTrue();
+        final CommandResponseMessage responseMessage = (CommandResponseMessage) messageFuture.result();
+        assertThat(responseMessage.getCorrelationId()).isEqualTo(correlationId);
+        assertThat(responseMessage.getStatus()).isEqualTo(200);
+    }
+
     /**
      * Verifies that the topic filters for cloud-to-device messages and for direct method responses are validated
      * successfully and other topic filters fail.
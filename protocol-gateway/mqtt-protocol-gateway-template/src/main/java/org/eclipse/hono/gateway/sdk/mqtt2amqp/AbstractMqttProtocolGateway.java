@@ -13,17 +13,23 @@
 
 package org.eclipse.hono.gateway.sdk.mqtt2amqp;
 
+import java.io.UncheckedIOException;
 import java.net.HttpURLConnection;
 import java.security.cert.Certificate;
 import java.security.cert.TrustAnchor;
 import java.security.cert.X509Certificate;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import javax.net.ssl.SSLPeerUnverifiedException;
@@ -31,19 +37,34 @@ import javax.net.ssl.SSLPeerUnverifiedException;
 import org.apache.qpid.proton.message.Message;
 import org.eclipse.hono.auth.Device;
 import org.eclipse.hono.client.ClientErrorException;
+import org.eclipse.hono.client.ServerErrorException;
 import org.eclipse.hono.client.ServiceInvocationException;
 import org.eclipse.hono.client.amqp.config.ClientConfigProperties;
+import org.eclipse.hono.client.amqp.connection.AmqpUtils;
 import org.eclipse.hono.client.command.CommandConsumer;
+import org.eclipse.hono.gateway.sdk.mqtt2amqp.MessageSpool.SpooledMessage;
+import org.eclipse.hono.gateway.sdk.mqtt2amqp.ProtocolGatewayMetrics.CommandOutcome;
+import org.eclipse.hono.gateway.sdk.mqtt2amqp.ProtocolGatewayMetrics.ConnectionOutcome;
+import org.eclipse.hono.gateway.sdk.mqtt2amqp.ProtocolGatewayMetrics.MessageType;
+import org.eclipse.hono.gateway.sdk.mqtt2amqp.ProtocolGatewayMetrics.UploadOutcome;
 import org.eclipse.hono.gateway.sdk.mqtt2amqp.downstream.CommandResponseMessage;
 import org.eclipse.hono.gateway.sdk.mqtt2amqp.downstream.DownstreamMessage;
 import org.eclipse.hono.gateway.sdk.mqtt2amqp.downstream.EventMessage;
 import org.eclipse.hono.gateway.sdk.mqtt2amqp.downstream.TelemetryMessage;
+import org.eclipse.hono.tracing.TracingHelper;
 import org.eclipse.hono.util.QoS;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
 import io.netty.handler.codec.mqtt.MqttConnectReturnCode;
 import io.netty.handler.codec.mqtt.MqttQoS;
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.noop.NoopTracerFactory;
+import io.opentracing.tag.Tags;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
@@ -54,11 +75,13 @@ import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.ClientAuth;
 import io.vertx.core.net.KeyCertOptions;
 import io.vertx.core.net.NetServerOptions;
+import io.vertx.core.net.OpenSSLEngineOptions;
 import io.vertx.core.net.TrustOptions;
 import io.vertx.mqtt.MqttAuth;
 import io.vertx.mqtt.MqttEndpoint;
 import io.vertx.mqtt.MqttServer;
 import io.vertx.mqtt.MqttServerOptions;
+import io.vertx.mqtt.messages.MqttPublishMessage;
 import io.vertx.mqtt.messages.MqttSubscribeMessage;
 import io.vertx.mqtt.messages.MqttUnsubscribeMessage;
 import io.vertx.proton.ProtonDelivery;
@@ -73,9 +96,24 @@ import io.vertx.proton.ProtonDelivery;
  * When receiving commands, the AMQP message is settled with the outcome <em>accepted</em> as soon as the message has
  * been successfully published to the device. The implementation does not wait for an acknowledgement from the device,
  * regardless of the QoS with which the device has subscribed.
+ * <p>
+ * In order to make use of multiple CPU cores, multiple instances of the gateway can be deployed, e.g. by passing a
+ * supplier of new instances and the number of instances from {@link MqttProtocolGatewayConfig#getVerticleInstances()}
+ * to {@link Vertx#deployVerticle(java.util.function.Supplier, io.vertx.core.DeploymentOptions)}. Each instance runs
+ * on its own event loop and manages the connections of its own devices, so no state is shared between the instances.
  */
 public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
 
+    /**
+     * The number of ticks of the timing wheel per command acknowledgement timeout.
+     */
+    private static final int ACK_TIMEOUT_TICKS = 10;
+    private static final int ACK_TIMEOUT_WHEEL_SIZE = 512;
+    private static final long SPOOL_DRAIN_INTERVAL_MILLIS = 100;
+    private static final long SPOOL_RETRY_DELAY_MILLIS = 1000;
+    private static final long PRE_CONNECT_RETRY_DELAY_MILLIS = 10_000;
+    private static final String TRACING_COMPONENT = "hono-mqtt-protocol-gateway";
+
     /**
      * A logger to be shared with subclasses.
      */
@@ -84,8 +122,27 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
     private final ClientConfigProperties amqpClientConfig;
     private final MqttProtocolGatewayConfig mqttGatewayConfig;
     private final MultiTenantConnectionManager tenantConnectionManager;
+    private final UploadFlowControl uploadFlowControl;
+    private final UploadScheduler uploadScheduler;
+    private final DeviceAuthenticationCache authenticationCache;
+    private TenantConfigCache tenantConfigCache;
+    private final X509CertificateValidator certificateValidator;
+    private final ConnectionAdmissionControl admissionControl;
+    private final CommandRouter commandRouter = new CommandRouter();
+    private final Map<String, Future<CommandConsumer>> tenantCommandConsumers = new HashMap<>();
+    private final Map<String, Long> spoolRetryAfter = new HashMap<>();
+    private final Set<String> reportedSpools = new HashSet<>();
 
     private MqttServer server;
+    private HashedTimingWheel ackTimeouts;
+    private ConnectionIndex connectionIndex;
+    private MessageSpools spools;
+    private long spoolTimer = -1;
+    private TlsCredentials tlsCredentials;
+    private long tlsCredentialsTimer = -1;
+    private HookExecutor hookExecutor;
+    private ProtocolGatewayMetrics metrics = NoopProtocolGatewayMetrics.INSTANCE;
+    private Tracer tracer = NoopTracerFactory.create();
 
     /**
      * Creates an instance.
@@ -104,7 +161,9 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
     public AbstractMqttProtocolGateway(final ClientConfigProperties amqpClientConfig,
             final MqttProtocolGatewayConfig mqttGatewayConfig) {
 
-        this(amqpClientConfig, mqttGatewayConfig, new MultiTenantConnectionManagerImpl());
+        this(amqpClientConfig, mqttGatewayConfig, new MultiTenantConnectionManagerImpl(
+                mqttGatewayConfig.getAmqpConnectionsPerTenant(),
+                TimeUnit.SECONDS.toMillis(mqttGatewayConfig.getAmqpConnectionLinger())));
     }
 
     /**
@@ -127,6 +186,26 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
         this.amqpClientConfig = amqpClientConfig;
         this.mqttGatewayConfig = mqttGatewayConfig;
         this.tenantConnectionManager = tenantConnectionManager;
+        this.uploadFlowControl = new UploadFlowControl(mqttGatewayConfig.getMaxInFlightUploadsPerEndpoint(),
+                mqttGatewayConfig.getMaxInFlightUploadsPerTenant());
+        this.uploadScheduler = mqttGatewayConfig.getMaxConcurrentUploads() > 0
+                ? new UploadScheduler(mqttGatewayConfig.getMaxConcurrentUploads(),
+                        mqttGatewayConfig.getMaxQueuedUploadsPerTenant(), mqttGatewayConfig.getDefaultUploadWeight(),
+                        mqttGatewayConfig.getUploadWeights())
+                : null;
+        this.authenticationCache = mqttGatewayConfig.getAuthenticationCacheMaxSize() > 0
+                ? new DeviceAuthenticationCache(mqttGatewayConfig.getAuthenticationCacheMaxSize(),
+                        Duration.ofSeconds(mqttGatewayConfig.getAuthenticationCacheTimeToLive()),
+                        Duration.ofSeconds(mqttGatewayConfig.getAuthenticationCacheNegativeTimeToLive()))
+                : null;
+        this.certificateValidator = new X509CertificateValidator(
+                mqttGatewayConfig.getCertificateValidationCacheMaxSize());
+        this.admissionControl = new ConnectionAdmissionControl(mqttGatewayConfig);
+        tenantConnectionManager.setIdleTenantClosedHandler(tenantId -> {
+            // the tenant-wide command consumer has been closed together with the connection
+            tenantCommandConsumers.remove(tenantId);
+            log.info("closed idle AMQP connection for tenant [{}]", tenantId);
+        });
     }
 
     /**
@@ -134,7 +213,12 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
      * invoked if the client certificate-based authentication was already successful.
      * <p>
      * Implementations must return a (succeeded) future with the <em>authenticated</em> device if authentication was
-     * successful or a failed future otherwise. {@code Null} must never be returned.
+     * successful or a failed future otherwise. {@code Null} must never be returned. If the credentials are invalid, the
+     * future should fail with a {@link ClientErrorException}, e.g. with status 401, because only such failures are
+     * cached, see {@link MqttProtocolGatewayConfig#setAuthenticationCacheNegativeTimeToLive(int)}.
+     * <p>
+     * This method is invoked on the event loop unless another execution mode has been configured, see
+     * {@link MqttProtocolGatewayConfig#setHookExecutionModes(Map)}.
      *
      * @param username The username.
      * @param password The password.
@@ -161,6 +245,9 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
      * to Hono.
      * <p>
      * Subclasses determine the message type by returning one of the subclasses of {@link DownstreamMessage}.
+     * <p>
+     * This method is invoked on the event loop unless another execution mode has been configured, see
+     * {@link MqttProtocolGatewayConfig#setHookExecutionModes(Map)}.
      *
      * @param ctx The context in which the MQTT message has been published.
      * @return A future indicating the outcome of the operation. If an error occurs, a failed future is returned, but
@@ -174,6 +261,9 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
      * published to the device via MQTT.
      * <p>
      * If the implementation throws an exception, the AMQP command message will be released.
+     * <p>
+     * This method is always invoked on the event loop, so it must not block, see
+     * {@link MqttProtocolGatewayConfig#setHookExecutionModes(Map)}.
      *
      * @param ctx The context in which the command has been received.
      * @return The command to be published to the device - must not be {@code null}.
@@ -191,6 +281,9 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
      * and password is provided <em>and</em> it is not overwritten by an alternative implementation.
      * <p>
      * The method must never return {@code null}.
+     * <p>
+     * The resolved credentials are cached until the connection to Hono's AMQP adapter fails, see
+     * {@link MqttProtocolGatewayConfig#setGatewayCredentialsCacheTimeToLive(int)}.
      *
      * @param tenantId The tenant for which a connection is required (from the device authentication).
      * @return A future indicating the outcome of the operation.
@@ -253,6 +346,25 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
     protected void onDeviceConnectionClose(final MqttEndpoint endpoint) {
     }
 
+    /**
+     * Gets the templates of the topics that are used by the devices.
+     * <p>
+     * The templates are bound to the identity of a device when it connects. The topics are provided in the
+     * {@link DeviceTopics} of the {@link MqttDownstreamContext} and of the {@link MqttCommandContext} for the lifetime
+     * of the connection, so that they do not need to be created for every message.
+     * <p>
+     * This default implementation returns an empty list.
+     * <p>
+     * Subclasses should override this method to return the templates that they compiled into constants. The
+     * templates may only contain the placeholders {@value TopicTemplate#TENANT_ID} and
+     * {@value TopicTemplate#DEVICE_ID}.
+     *
+     * @return The templates - must not be {@code null}.
+     */
+    protected List<TopicTemplate> getTopicTemplates() {
+        return List.of();
+    }
+
     /**
      * Authenticates a device using its TLS client certificate. This method is only invoked if the device establishes a
      * connection with TLS and presents a client certificate.
@@ -289,10 +401,24 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
                 .map(cert -> ((X509Certificate) cert))
                 .collect(Collectors.toList());
 
-        final X509CertificateValidator validator = new X509CertificateValidator();
         return getTrustAnchors(certificates)
-                .compose(trustAnchors -> validator.validate(certificates, trustAnchors))
-                .compose(ok -> authenticateClientCertificate(certificates.get(0)));
+                .compose(trustAnchors -> {
+                    final long start = System.nanoTime();
+                    return certificateValidator.validate(certificates, trustAnchors)
+                            .onComplete(validation -> onDeviceCertificateValidated(
+                                    Duration.ofNanos(System.nanoTime() - start), validation.succeeded()));
+                })
+                .compose(ok -> authenticateClientCertificateCached(certificates.get(0)));
+    }
+
+    private Future<Device> authenticateClientCertificateCached(final X509Certificate deviceCertificate) {
+        final Supplier<Future<Device>> authentication = () -> getHookExecutor().execute(
+                GatewayHook.AUTHENTICATE_CLIENT_CERTIFICATE, deviceCertificate, null,
+                () -> authenticateClientCertificate(deviceCertificate));
+        if (authenticationCache == null) {
+            return authentication.get();
+        }
+        return authenticationCache.get(deviceCertificate, authentication);
     }
 
     /**
@@ -331,11 +457,15 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
      * {@link #authenticateDeviceCertificate(Certificate[])} if other certificate types are to be used.
      * <p>
      * This default implementation always returns a failed future.
+     * <p>
+     * This method is invoked on the event loop unless another execution mode has been configured, see
+     * {@link MqttProtocolGatewayConfig#setHookExecutionModes(Map)}.
      *
      * @param deviceCertificate The already validated client certificate.
      * @return A future indicating the outcome of the operation. The future will succeed with the authenticated device
-     *         or it will fail with a failure message indicating the cause of the failure. {@code Null} must never be
-     *         returned.
+     *         or it will fail with a failure message indicating the cause of the failure. If the device is unknown or
+     *         not authorized, the future should contain a {@link ClientErrorException}, because only such failures are
+     *         cached. {@code Null} must never be returned.
      *
      * @see #authenticateDeviceCertificate(Certificate[])
      * @see #getTrustAnchors(List)
@@ -344,14 +474,131 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
         return Future.failedFuture("Cannot establish device identity");
     }
 
+    /**
+     * Gets the statistics of the cache for device authentication results.
+     * <p>
+     * Subclasses may use this method to e.g. report the hit and miss counts as metrics in order to size the cache.
+     *
+     * @return The statistics, which are empty if caching of authentication results is disabled.
+     * @see MqttProtocolGatewayConfig#setAuthenticationCacheMaxSize(int)
+     */
+    protected final CacheStats getAuthenticationCacheStats() {
+        return authenticationCache == null ? CacheStats.empty() : authenticationCache.stats();
+    }
+
+    /**
+     * Invoked when the X.509 certificate chain of a device has been validated against the trust anchors.
+     * <p>
+     * This default implementation does nothing.
+     * <p>
+     * Subclasses should override this method in order to e.g. record the validation latency.
+     *
+     * @param duration The time the validation took, which is short if the outcome has been cached.
+     * @param valid {@code true} if the certificate chain is valid.
+     * @see MqttProtocolGatewayConfig#setCertificateValidationCacheMaxSize(int)
+     */
+    protected void onDeviceCertificateValidated(final Duration duration, final boolean valid) {
+    }
+
+    /**
+     * Gets the statistics of the cache for successful client certificate validations.
+     *
+     * @return The statistics, which are empty if caching of validations is disabled.
+     * @see MqttProtocolGatewayConfig#setCertificateValidationCacheMaxSize(int)
+     */
+    protected final CacheStats getCertificateValidationCacheStats() {
+        return certificateValidator.getCacheStats();
+    }
+
+    /**
+     * Removes the cached gateway credentials of a tenant, so that
+     * {@link #provideGatewayCredentials(String)} is invoked again when the next device of the tenant connects.
+     * <p>
+     * Subclasses should invoke this method when they learn that the credentials of the gateway for the tenant have
+     * changed. Connections to Hono's AMQP adapter that are already established are not affected.
+     *
+     * @param tenantId The tenant.
+     * @throws NullPointerException if the tenant is {@code null}.
+     * @see MqttProtocolGatewayConfig#setGatewayCredentialsCacheTimeToLive(int)
+     */
+    protected final void invalidateGatewayCredentials(final String tenantId) {
+        Objects.requireNonNull(tenantId);
+        if (getTenantConfigCache() != null) {
+            getTenantConfigCache().invalidate(tenantId);
+        }
+    }
+
+    /**
+     * Removes the cached gateway credentials of all tenants.
+     *
+     * @see #invalidateGatewayCredentials(String)
+     */
+    protected final void invalidateAllGatewayCredentials() {
+        if (getTenantConfigCache() != null) {
+            getTenantConfigCache().invalidateAll();
+        }
+    }
+
+    /**
+     * Gets the statistics of the cache for the gateway credentials of the tenants.
+     *
+     * @return The statistics, which are empty if caching of the credentials is disabled.
+     * @see MqttProtocolGatewayConfig#setGatewayCredentialsCacheTimeToLive(int)
+     */
+    protected final CacheStats getGatewayCredentialsCacheStats() {
+        return getTenantConfigCache() == null ? CacheStats.empty() : getTenantConfigCache().stats();
+    }
+
+    /**
+     * Sets the metrics to report connections, uploads and commands to.
+     * <p>
+     * The metrics need to be set before the gateway is started. If multiple instances of the gateway are deployed,
+     * they may share the same metrics instance. By default, no metrics are reported.
+     *
+     * @param metrics The metrics.
+     * @throws NullPointerException if the metrics are {@code null}.
+     */
+    public final void setMetrics(final ProtocolGatewayMetrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
+    /**
+     * Sets the tracer to create spans for connection requests, published messages and commands with.
+     * <p>
+     * The tracer is also used by the AMQP connections to Hono, which propagate the context of the spans of the
+     * uploaded messages to the AMQP adapter in the messages. The context of a command received from the AMQP adapter
+     * is used as the parent of the span for the delivery of the command to the device.
+     * <p>
+     * Spans are sampled by the tracer when a trace is started, e.g. by a sampler with a fixed sampling ratio. An
+     * OpenTelemetry SDK can be used by means of the OpenTracing shim. The tracer needs to be set before the gateway is
+     * started. By default, no spans are created.
+     *
+     * @param tracer The tracer.
+     * @throws NullPointerException if the tracer is {@code null}.
+     */
+    public final void setTracer(final Tracer tracer) {
+        this.tracer = Objects.requireNonNull(tracer);
+        tenantConnectionManager.setTracer(tracer);
+    }
+
     /**
      * Invoked when a device sends its <em>CONNECT</em> packet.
      * <p>
      * Authenticates the device, connects the gateway to Hono's AMQP adapter and registers handlers for processing
      * messages published by the client.
+     * <p>
+     * When the connection is accepted, an existing connection with the same client identifier within the tenant is
+     * closed. Depending on the configuration, an existing connection of the same device is closed as well.
+     * <p>
+     * The connection is rejected with return code <em>server unavailable</em> if one of the configured connection
+     * limits is exceeded.
      *
      * @param endpoint The MQTT endpoint representing the client.
      * @throws NullPointerException if the endpoint is {@code null}.
+     * @see MqttProtocolGatewayConfig#setConnectRateLimit(int)
+     * @see MqttProtocolGatewayConfig#setConnectRateLimitPerTenant(int)
+     * @see MqttProtocolGatewayConfig#setMaxConcurrentConnectionRequests(int)
+     * @see MqttProtocolGatewayConfig#setSingleConnectionPerDevice(boolean)
      */
     final void handleEndpointConnection(final MqttEndpoint endpoint) {
 
@@ -366,6 +613,25 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
             log.debug("ignoring client's last will");
         }
 
+        if (endpoint.isSsl() && tlsCredentials != null && !mqttGatewayConfig.isSni()) {
+            metrics.reportTlsHandshake(!TlsCredentials.isFullHandshake(endpoint.sslSession()));
+        }
+
+        final long start = System.nanoTime();
+        final Span span = TracingHelper.buildServerChildSpan(tracer, null, "CONNECT", TRACING_COMPONENT)
+                .withTag(TracingHelper.TAG_CLIENT_ID.getKey(), endpoint.clientIdentifier())
+                .withTag(TracingHelper.TAG_TLS.getKey(), endpoint.isSsl())
+                .start();
+        if (!admissionControl.tryBeginConnectionRequest()) {
+            log.debug("connection request from client [clientId: {}] rejected, too many connection requests",
+                    endpoint.clientIdentifier());
+            metrics.reportConnectionAttempt(ConnectionOutcome.ADMISSION_REJECTED, null, System.nanoTime() - start);
+            TracingHelper.logError(span, "too many connection requests");
+            span.finish();
+            endpoint.reject(MqttConnectReturnCode.CONNECTION_REFUSED_SERVER_UNAVAILABLE);
+            return;
+        }
+
         final Future<Device> authAttempt = tryAuthenticationWithClientCertificate(endpoint)
                 .recover(ex -> authenticateWithUsernameAndPassword(endpoint))
                 .compose(authenticateDevice -> (authenticateDevice == null)
@@ -375,29 +641,48 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
         authAttempt
                 .compose(authenticatedDevice -> {
                     final String tenantId = authenticatedDevice.getTenantId();
+                    TracingHelper.TAG_AUTHENTICATED.set(span, true);
+                    TracingHelper.setDeviceTags(span, tenantId, authenticatedDevice.getDeviceId());
+                    if (!admissionControl.tryAdmitTenant(tenantId)) {
+                        return Future.failedFuture(new TenantAdmissionRejectedException(tenantId));
+                    }
                     return getTenantConfig(tenantId)
                             .compose(config -> connectGatewayToAmqpAdapter(tenantId, config, endpoint));
                 })
                 .onComplete(result -> {
+                    admissionControl.endConnectionRequest();
                     if (result.succeeded()) {
+                        final String tenantId = authAttempt.result().getTenantId();
                         registerHandlers(endpoint, authAttempt.result());
-                        log.debug("connection accepted from {}", authAttempt.result().toString());
+                        log.debug("connection accepted from {}", authAttempt.result());
+                        metrics.reportConnectionAttempt(ConnectionOutcome.ACCEPTED, tenantId,
+                                System.nanoTime() - start);
+                        metrics.incrementConnections(tenantId);
                         endpoint.accept(false); // we do not maintain session state
                     } else {
+                        TracingHelper.logError(span, result.cause());
                         final MqttConnectReturnCode returnCode;
                         if (authAttempt.failed()) {
                             log.debug("connection request from client [clientId: {}] rejected, authentication failed",
                                     endpoint.clientIdentifier(), authAttempt.cause());
+                            metrics.reportConnectionAttempt(ConnectionOutcome.UNAUTHORIZED, null,
+                                    System.nanoTime() - start);
                             returnCode = MqttConnectReturnCode.CONNECTION_REFUSED_NOT_AUTHORIZED;
                         } else {
                             log.debug(
                                     "connection request from client [clientId: {}] rejected, connection to backend failed",
                                     endpoint.clientIdentifier(), result.cause());
+                            metrics.reportConnectionAttempt(
+                                    result.cause() instanceof TenantAdmissionRejectedException
+                                            ? ConnectionOutcome.ADMISSION_REJECTED
+                                            : ConnectionOutcome.BACKEND_UNAVAILABLE,
+                                    authAttempt.result().getTenantId(), System.nanoTime() - start);
                             returnCode = MqttConnectReturnCode.CONNECTION_REFUSED_SERVER_UNAVAILABLE;
                         }
 
                         endpoint.reject(returnCode);
                     }
+                    span.finish();
                 });
     }
 
@@ -424,8 +709,16 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
             return Future.failedFuture(new ClientErrorException(HttpURLConnection.HTTP_UNAUTHORIZED,
                     "device did not provide credentials in CONNECT packet"));
         } else {
-            final Future<Device> authenticatedDevice = authenticateDevice(auth.getUsername(), auth.getPassword(),
-                    endpoint.clientIdentifier());
+            final Supplier<Future<Device>> authentication = () -> getHookExecutor().execute(
+                    GatewayHook.AUTHENTICATE_DEVICE, endpoint, null,
+                    () -> authenticateDevice(auth.getUsername(), auth.getPassword(), endpoint.clientIdentifier()));
+            final Future<Device> authenticatedDevice;
+            if (authenticationCache == null) {
+                authenticatedDevice = authentication.get();
+            } else {
+                authenticatedDevice = authenticationCache.get(auth.getUsername(), auth.getPassword(),
+                        endpoint.clientIdentifier(), authentication);
+            }
             if (authenticatedDevice == null) {
                 return Future.failedFuture(new ClientErrorException(HttpURLConnection.HTTP_INTERNAL_ERROR));
             } else {
@@ -440,62 +733,78 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
 
         if (amqpClientConfig.getUsername() != null && amqpClientConfig.getPassword() != null) {
             return Future.succeededFuture(amqpClientConfig);
+        } else if (getTenantConfigCache() == null) {
+            return loadTenantConfig(tenantId);
         } else {
-            return provideGatewayCredentials(tenantId)
-                    .compose(credentials -> {
-                        final ClientConfigProperties tenantConfig = new ClientConfigProperties(amqpClientConfig);
-                        tenantConfig.setUsername(credentials.getUsername());
-                        tenantConfig.setPassword(credentials.getPassword());
-
-                        return Future.succeededFuture(tenantConfig);
-                    });
+            return getTenantConfigCache().get(tenantId, this::loadTenantConfig);
         }
     }
 
+    private Future<ClientConfigProperties> loadTenantConfig(final String tenantId) {
+        return provideGatewayCredentials(tenantId)
+                .compose(credentials -> {
+                    final ClientConfigProperties tenantConfig = new ClientConfigProperties(amqpClientConfig);
+                    tenantConfig.setUsername(credentials.getUsername());
+                    tenantConfig.setPassword(credentials.getPassword());
+
+                    return Future.succeededFuture(tenantConfig);
+                });
+    }
+
     private Future<Void> connectGatewayToAmqpAdapter(final String tenantId,
             final ClientConfigProperties clientConfig,
             final MqttEndpoint endpoint) {
         return tenantConnectionManager.connect(tenantId, vertx, clientConfig)
-                .onFailure(e -> log.info("Failed to connect to Hono [tenant-id: {}, username: {}]", tenantId,
-                        clientConfig.getUsername()))
+                .onFailure(e -> {
+                    log.info("Failed to connect to Hono [tenant-id: {}, username: {}]", tenantId,
+                            clientConfig.getUsername());
+                    // the credentials may have been changed, resolve them again for the next device
+                    invalidateGatewayCredentials(tenantId);
+                })
                 .compose(v -> tenantConnectionManager.addEndpoint(tenantId, endpoint));
 
     }
 
     private void registerHandlers(final MqttEndpoint endpoint, final Device authenticatedDevice) {
 
-        endpoint.publishHandler(
-                message -> handlePublishedMessage(
-                        MqttDownstreamContext.fromPublishPacket(message, endpoint, authenticatedDevice)));
-
-        final CommandSubscriptionsManager cmdSubscriptionsManager = createCommandHandler(vertx);
-        endpoint.closeHandler(v -> cleanupConnections(endpoint, cmdSubscriptionsManager, authenticatedDevice));
-        endpoint.publishAcknowledgeHandler(cmdSubscriptionsManager::handlePubAck);
-        endpoint.subscribeHandler(msg -> onSubscribe(endpoint, authenticatedDevice, msg, cmdSubscriptionsManager));
-        endpoint.unsubscribeHandler(msg -> onUnsubscribe(endpoint, authenticatedDevice, msg, cmdSubscriptionsManager));
-
+        final DeviceConnection connection = new DeviceConnection(endpoint,
+                DeviceTopics.bind(authenticatedDevice, getTopicTemplates()),
+                getConnectionIndex().add(authenticatedDevice.getTenantId(), authenticatedDevice.getDeviceId(),
+                        endpoint, Vertx.currentContext(), mqttGatewayConfig.isSingleConnectionPerDevice()));
+        endpoint.publishHandler(connection);
+        endpoint.closeHandler(connection::onClose);
+        endpoint.publishAcknowledgeHandler(connection::onPubAck);
+        endpoint.subscribeHandler(connection::onSubscribe);
+        endpoint.unsubscribeHandler(connection::onUnsubscribe);
     }
 
     private void cleanupConnections(final MqttEndpoint endpoint,
             final CommandSubscriptionsManager cmdSubscriptionsManager,
-            final Device authenticatedDevice) {
+            final Device authenticatedDevice, final ConnectionIndex.Connection indexedConnection) {
 
-        log.info("closing connection to device {}", authenticatedDevice.toString());
+        log.info("closing connection to device {}", authenticatedDevice);
 
+        getConnectionIndex().remove(indexedConnection);
         onDeviceConnectionClose(endpoint);
-        cmdSubscriptionsManager.removeAllSubscriptions();
+        if (cmdSubscriptionsManager != null) {
+            cmdSubscriptionsManager.removeAllSubscriptions();
+        }
 
         final String tenantId = authenticatedDevice.getTenantId();
+        metrics.decrementConnections(tenantId);
+        uploadFlowControl.remove(tenantId, endpoint);
         tenantConnectionManager.closeEndpoint(tenantId, endpoint)
                 .onSuccess(amqpLinkClosed -> {
                     if (amqpLinkClosed) {
+                        // the tenant-wide command consumer has been closed together with the connection
+                        tenantCommandConsumers.remove(tenantId);
                         log.info("closed AMQP connection for tenant [{}]", tenantId);
                     }
                 });
     }
 
     /**
-     * Invoked when a device connects, after authentication.
+     * Invoked when an authenticated device subscribes or unsubscribes for the first time.
      * <p>
      * This method is only visible for testing purposes.
      *
@@ -503,7 +812,11 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
      * @return The command handler for the given device.
      */
     CommandSubscriptionsManager createCommandHandler(final Vertx vertx) {
-        return new CommandSubscriptionsManager(vertx, mqttGatewayConfig);
+        if (ackTimeouts == null) {
+            ackTimeouts = new HashedTimingWheel(vertx,
+                    Math.max(1, mqttGatewayConfig.getCommandAckTimeout() / ACK_TIMEOUT_TICKS), ACK_TIMEOUT_WHEEL_SIZE);
+        }
+        return new CommandSubscriptionsManager(ackTimeouts, mqttGatewayConfig);
     }
 
     /**
@@ -512,6 +825,17 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
      * Invokes {@link #onPublishedMessage(MqttDownstreamContext)}, uploads the message to Hono's AMQP adapter.
      * Afterwards it invokes {@link #onMessageSent(MqttDownstreamContext)} if the message has been forwarded
      * successfully or if a the message could not be delivered, {@link #onMessageUndeliverable(MqttDownstreamContext)}.
+     * <p>
+     * The number of messages that are processed concurrently is limited per device connection and per tenant. When
+     * the limit is reached, reading from the device connection is paused until messages have been processed. If the
+     * connection cannot be paused, messages exceeding the limit are dropped without acknowledgement.
+     * <p>
+     * If the number of concurrent uploads per gateway instance is limited, the messages exceeding this limit are
+     * queued per tenant and uploaded in a weighted-fair order, see
+     * {@link MqttProtocolGatewayConfig#setMaxConcurrentUploads(int)}.
+     * <p>
+     * If a spool directory is configured, events and telemetry messages with QoS 1 that cannot be forwarded because
+     * of an error of Hono are spooled and acknowledged, see {@link MqttProtocolGatewayConfig#setSpoolDirectory(String)}.
      *
      * @param ctx The context in which the MQTT message has been published.
      * @throws NullPointerException if the context is {@code null}.
@@ -520,20 +844,127 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
 
         Objects.requireNonNull(ctx);
 
-        onPublishedMessage(ctx)
-                .compose(downstreamMessage -> uploadMessage(downstreamMessage, ctx))
+        final String tenantId = ctx.authenticatedDevice().getTenantId();
+        final Span span = TracingHelper.buildServerChildSpan(tracer, null, "PUBLISH", TRACING_COMPONENT)
+                .withTag(Tags.MESSAGE_BUS_DESTINATION.getKey(), ctx.topic())
+                .withTag(TracingHelper.TAG_QOS.getKey(), String.valueOf(ctx.qosLevel()))
+                .start();
+        TracingHelper.setDeviceTags(span, tenantId, ctx.authenticatedDevice().getDeviceId());
+
+        if (!uploadFlowControl.tryAcquire(tenantId, ctx.deviceEndpoint())) {
+            log.debug("too many messages in progress, dropping message [topic: {}, QoS: {}] from device {}",
+                    ctx.topic(), ctx.qosLevel(), ctx.authenticatedDevice());
+            metrics.reportUpload(tenantId, null, UploadOutcome.DROPPED, 0);
+            TracingHelper.logError(span, "too many messages in progress");
+            span.finish();
+            onMessageUndeliverable(ctx);
+            // the message is not acknowledged, the device only re-sends it after reconnecting
+            if (MqttQoS.AT_LEAST_ONCE.equals(ctx.qosLevel()) && ctx.deviceEndpoint().isConnected()) {
+                ctx.deviceEndpoint().close(); // cleanupConnections() will be called by close handler
+            }
+            return;
+        }
+
+        getHookExecutor().execute(GatewayHook.ON_PUBLISHED_MESSAGE, ctx.deviceEndpoint(), tenantId,
+                () -> mapPublishedMessage(ctx))
+                .compose(downstreamMessage -> {
+                    span.log("message mapped");
+                    return scheduleUpload(downstreamMessage, ctx, span.context());
+                })
                 .onComplete(processing -> {
-                    if (processing.succeeded()) {
+                    uploadFlowControl.release(tenantId, ctx.deviceEndpoint());
+                    if (processing.succeeded() && processing.result() == UploadOutcome.DROPPED) {
+                        TracingHelper.logError(span, "too many messages of tenant queued");
+                        onMessageUndeliverable(ctx);
+                    } else if (processing.succeeded()) {
+                        span.setTag("outcome", processing.result().toString());
                         onUploadSuccess(ctx);
-                        onMessageSent(ctx);
+                        if (processing.result() == UploadOutcome.FORWARDED) {
+                            onMessageSent(ctx);
+                        }
                     } else {
+                        TracingHelper.logError(span, processing.cause());
                         onUploadFailure(ctx, processing.cause());
                     }
+                    span.finish();
+                });
+    }
+
+    /**
+     * Invokes {@link #onPublishedMessage(MqttDownstreamContext)}, turning an exception thrown by the subclass or a
+     * {@code null} result into a failed future, so that the message is always completed.
+     */
+    private Future<DownstreamMessage> mapPublishedMessage(final MqttDownstreamContext ctx) {
+        try {
+            final Future<DownstreamMessage> result = onPublishedMessage(ctx);
+            if (result == null) {
+                return Future.failedFuture(new IllegalStateException("onPublishedMessage returned null"));
+            }
+            return result;
+        } catch (RuntimeException e) {
+            return Future.failedFuture(e);
+        }
+    }
+
+    private Future<UploadOutcome> scheduleUpload(final DownstreamMessage downstreamMessage,
+            final MqttDownstreamContext ctx, final SpanContext spanContext) {
+
+        final String tenantId = ctx.authenticatedDevice().getTenantId();
+        final Supplier<Future<UploadOutcome>> upload = () -> {
+            final long start = System.nanoTime();
+            return uploadOrSpoolMessage(downstreamMessage, ctx, spanContext)
+                    .onComplete(ar -> metrics.reportUpload(tenantId, getMessageType(downstreamMessage),
+                            ar.succeeded() ? ar.result() : getUploadOutcome(ar.cause()),
+                            System.nanoTime() - start));
+        };
+        if (uploadScheduler == null) {
+            return upload.get();
+        }
+        final Future<UploadOutcome> scheduled = uploadScheduler.schedule(tenantId, upload);
+        if (scheduled == null) {
+            log.debug("too many messages of tenant queued, dropping message [topic: {}, QoS: {}] from device {}",
+                    ctx.topic(), ctx.qosLevel(), ctx.authenticatedDevice());
+            metrics.reportUpload(tenantId, getMessageType(downstreamMessage), UploadOutcome.DROPPED, 0);
+            return Future.succeededFuture(UploadOutcome.DROPPED);
+        }
+        return scheduled;
+    }
+
+    private Future<UploadOutcome> uploadOrSpoolMessage(final DownstreamMessage downstreamMessage,
+            final MqttDownstreamContext ctx, final SpanContext spanContext) {
+
+        final MessageSpools tenantSpools = getSpools();
+        if (tenantSpools == null || !MessageSpool.isSpoolable(downstreamMessage)) {
+            return uploadMessage(downstreamMessage, ctx, spanContext).map(UploadOutcome.FORWARDED);
+        }
+
+        final String tenantId = ctx.authenticatedDevice().getTenantId();
+        final String deviceId = ctx.authenticatedDevice().getDeviceId();
+        final MessageSpool spool = tenantSpools.get(tenantId);
+        // the message must not overtake the messages that are already spooled
+        if (spool != null && !spool.isEmpty() && spool.append(deviceId, downstreamMessage,
+                System.currentTimeMillis())) {
+            return Future.succeededFuture(UploadOutcome.SPOOLED);
+        }
+
+        return uploadMessage(downstreamMessage, ctx, spanContext)
+                .map(UploadOutcome.FORWARDED)
+                .recover(failure -> {
+                    if (ServiceInvocationException.extractStatusCode(failure) >= 500) {
+                        final MessageSpool tenantSpool = tenantSpools.getOrOpen(tenantId);
+                        if (tenantSpool != null && tenantSpool.append(deviceId, downstreamMessage,
+                                System.currentTimeMillis())) {
+                            log.debug("spooled message [topic: {}] from {} that could not be forwarded: {}",
+                                    ctx.topic(), ctx.authenticatedDevice(), failure.getMessage());
+                            return Future.succeededFuture(UploadOutcome.SPOOLED);
+                        }
+                    }
+                    return Future.failedFuture(failure);
                 });
     }
 
     private Future<ProtonDelivery> uploadMessage(final DownstreamMessage downstreamMessage,
-            final MqttDownstreamContext ctx) {
+            final MqttDownstreamContext ctx, final SpanContext spanContext) {
 
         final String tenantId = ctx.authenticatedDevice().getTenantId();
         final String deviceId = ctx.authenticatedDevice().getDeviceId();
@@ -542,14 +973,16 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
         final String contentType = downstreamMessage.getContentType();
 
         if (downstreamMessage instanceof TelemetryMessage telemetryMessage) {
-            return sendTelemetry(tenantId, deviceId, properties, payload, contentType, telemetryMessage.getQos());
+            return sendTelemetry(tenantId, deviceId, properties, payload, contentType, telemetryMessage.getQos(),
+                    spanContext);
 
         } else if (downstreamMessage instanceof EventMessage) {
-            return sendEvent(tenantId, deviceId, properties, payload, contentType);
+            return sendEvent(tenantId, deviceId, properties, payload, contentType, spanContext);
 
         } else if (downstreamMessage instanceof CommandResponseMessage response) {
             return sendCommandResponse(tenantId, deviceId, response.getTargetAddress(tenantId, deviceId),
-                    response.getCorrelationId(), response.getStatus(), payload, contentType, properties);
+                    response.getCorrelationId(), response.getStatus(), payload, contentType, properties,
+                    spanContext);
 
         } else {
             return Future.failedFuture(new ClientErrorException(HttpURLConnection.HTTP_BAD_REQUEST,
@@ -558,6 +991,27 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
         }
     }
 
+    private static MessageType getMessageType(final DownstreamMessage downstreamMessage) {
+        if (downstreamMessage instanceof TelemetryMessage) {
+            return MessageType.TELEMETRY;
+        } else if (downstreamMessage instanceof EventMessage) {
+            return MessageType.EVENT;
+        } else if (downstreamMessage instanceof CommandResponseMessage) {
+            return MessageType.COMMAND_RESPONSE;
+        } else {
+            return null;
+        }
+    }
+
+    private static UploadOutcome getUploadOutcome(final Throwable failure) {
+        if (failure == null) {
+            return UploadOutcome.FORWARDED;
+        }
+        return ServiceInvocationException.extractStatusCode(failure) < 500
+                ? UploadOutcome.REJECTED
+                : UploadOutcome.UNDELIVERABLE;
+    }
+
     private void onUploadSuccess(final MqttDownstreamContext ctx) {
         log.debug("successfully processed message [topic: {}, QoS: {}] from device [tenantId: {}, deviceId: {}]",
                 ctx.topic(), ctx.qosLevel(), ctx.authenticatedDevice().getTenantId(),
@@ -588,9 +1042,9 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
 
     private Future<ProtonDelivery> sendTelemetry(final String tenantId, final String deviceId,
             final Map<String, Object> properties, final Buffer payload, final String contentType,
-            final QoS qos) {
+            final QoS qos, final SpanContext spanContext) {
 
-        return tenantConnectionManager.getOrCreateTelemetrySender(tenantId)
+        return tenantConnectionManager.getOrCreateTelemetrySender(tenantId, deviceId)
                 .compose(sender -> {
                     if (qos == QoS.AT_LEAST_ONCE) {
                         log.trace("sending telemetry message and waiting for outcome [tenantId: {}, deviceId: {}, contentType: {}, properties: {}]",
@@ -600,32 +1054,122 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
                                 tenantId, deviceId, contentType, properties);
                     }
                     // TODO properties not used here - not supported in Hono 2.x
-                    return sender.sendTelemetry(qos, payload, contentType, tenantId, deviceId, null);
+                    return sender.sendTelemetry(qos, payload, contentType, tenantId, deviceId, spanContext);
                 });
     }
 
     private Future<ProtonDelivery> sendEvent(final String tenantId, final String deviceId,
-            final Map<String, Object> properties, final Buffer payload, final String contentType) {
+            final Map<String, Object> properties, final Buffer payload, final String contentType,
+            final SpanContext spanContext) {
 
         log.trace("sending event message [tenantId: {}, deviceId: {}, contentType: {}, properties: {}]",
                 tenantId, deviceId, contentType, properties);
 
         // TODO properties not used here - not supported in Hono 2.x
-        return tenantConnectionManager.getOrCreateEventSender(tenantId)
-                .compose(sender -> sender.sendEvent(payload, contentType, tenantId, deviceId, null));
+        return tenantConnectionManager.getOrCreateEventSender(tenantId, deviceId)
+                .compose(sender -> sender.sendEvent(payload, contentType, tenantId, deviceId, spanContext));
     }
 
     private Future<ProtonDelivery> sendCommandResponse(final String tenantId, final String deviceId,
             final String targetAddress, final String correlationId, final int status, final Buffer payload,
-            final String contentType, final Map<String, Object> properties) {
+            final String contentType, final Map<String, Object> properties, final SpanContext spanContext) {
 
         log.trace("sending command response [tenantId: {}, deviceId: {}, targetAddress: {}, correlationId: {}, status: {}, contentType: {}, properties: {}]",
                 tenantId, deviceId, targetAddress, correlationId, status, contentType, properties);
 
         // TODO properties not used here - not supported in Hono 2.x
-        return tenantConnectionManager.getOrCreateCommandResponseSender(tenantId)
+        return tenantConnectionManager.getOrCreateCommandResponseSender(tenantId, deviceId)
                 .compose(sender -> sender.sendCommandResponse(targetAddress, correlationId, status,
-                        payload, contentType, null));
+                        payload, contentType, spanContext));
+    }
+
+    /**
+     * Gets the spools of the tenants, starting to forward the spooled messages periodically on first use.
+     * <p>
+     * This method is only visible for testing purposes.
+     *
+     * @return The spools that are shared by all gateway instances or {@code null} if no spool directory is configured.
+     * @throws UncheckedIOException if the spool directory cannot be read.
+     */
+    MessageSpools getSpools() {
+        if (spools == null && mqttGatewayConfig.getSpoolDirectory() != null) {
+            spools = MessageSpools.getInstance(vertx, mqttGatewayConfig);
+            spoolTimer = vertx.setPeriodic(SPOOL_DRAIN_INTERVAL_MILLIS, id -> forwardSpooledMessages());
+        }
+        return spools;
+    }
+
+    /**
+     * Forwards the messages of the spools that are not being forwarded by another gateway instance, limited by the
+     * configured drain rate. One of the gateway instances reports the state of the spools to the metrics.
+     * <p>
+     * If a spooled message cannot be forwarded because of an error of Hono, forwarding the messages of the tenant is
+     * retried later. This includes the case that the tenant is not connected on this gateway instance, the spool of
+     * the tenant is not forwarded until a device of the tenant connects. If Hono rejects a message, it is removed from
+     * the spool.
+     * <p>
+     * This method is only visible for testing purposes.
+     */
+    void forwardSpooledMessages() {
+        final MessageSpools tenantSpools = getSpools();
+        if (tenantSpools == null) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        final boolean metricsReporter = tenantSpools.isMetricsReporter(this);
+        for (final MessageSpool spool : tenantSpools.getAll()) {
+            if (metricsReporter) {
+                reportSpool(spool, now);
+            }
+            if (spool.isEmpty() || spoolRetryAfter.getOrDefault(spool.getTenantId(), 0L) > now) {
+                continue;
+            }
+            final int permits = spool.tryClaim(now, mqttGatewayConfig.getSpoolDrainRate());
+            if (permits > 0) {
+                forwardSpooledMessages(spool, permits).onComplete(v -> spool.release());
+            }
+        }
+    }
+
+    private Future<Void> forwardSpooledMessages(final MessageSpool spool, final int permits) {
+
+        final SpooledMessage message = spool.peek();
+        if (message == null || permits == 0) {
+            return Future.succeededFuture();
+        }
+        final String tenantId = spool.getTenantId();
+        final String deviceId = message.getDeviceId();
+        final Future<ProtonDelivery> upload = message.isEvent()
+                ? sendEvent(tenantId, deviceId, null, message.getPayload(), message.getContentType(), null)
+                : sendTelemetry(tenantId, deviceId, null, message.getPayload(), message.getContentType(),
+                        QoS.AT_LEAST_ONCE, null);
+
+        return upload.transform(forwarding -> {
+            if (forwarding.failed()) {
+                if (ServiceInvocationException.extractStatusCode(forwarding.cause()) >= 500) {
+                    log.debug("cannot forward spooled messages of tenant [{}]: {}", tenantId,
+                            forwarding.cause().getMessage());
+                    spoolRetryAfter.put(tenantId, System.currentTimeMillis() + SPOOL_RETRY_DELAY_MILLIS);
+                    return Future.succeededFuture();
+                }
+                log.info("dropping spooled message of device [tenant-id: {}, device-id: {}] rejected by Hono: {}",
+                        tenantId, deviceId, forwarding.cause().getMessage());
+            }
+            spoolRetryAfter.remove(tenantId);
+            spool.remove();
+            return forwardSpooledMessages(spool, permits - 1);
+        });
+    }
+
+    private void reportSpool(final MessageSpool spool, final long now) {
+        final String tenantId = spool.getTenantId();
+        final long oldestTimestamp = spool.getOldestTimestamp();
+        if (oldestTimestamp > 0) {
+            reportedSpools.add(tenantId);
+            metrics.reportSpool(tenantId, spool.size(), spool.getSizeInBytes(), Math.max(0, now - oldestTimestamp));
+        } else if (reportedSpools.remove(tenantId)) {
+            metrics.reportSpool(tenantId, 0, spool.getSizeInBytes(), 0);
+        }
     }
 
     /**
@@ -633,23 +1177,27 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
      * <p>
      * It invokes {@link #isTopicFilterValid(String, String, String, String)} for each topic filter in the subscribe
      * packet. If there is a valid topic filter and no command consumer already exists for this device, this method
-     * opens a device-specific command consumer for receiving commands from applications for the device.
+     * opens a device-specific command consumer for receiving commands from applications for the device. If
+     * {@link MqttProtocolGatewayConfig#isTenantWideCommandConsumer()} is set, the device is instead registered with the
+     * command consumer of its tenant, which is opened when the first device of the tenant subscribes.
      *
      * @param endpoint The endpoint representing the connection to the device.
-     * @param authenticatedDevice The authenticated identity of the device.
+     * @param deviceTopics The topics bound to the authenticated identity of the device.
      * @param subscribeMsg The subscribe request received from the device.
      * @param cmdSubscriptionsManager The CommandSubscriptionsManager to track command subscriptions, unsubscriptions
      *            and handle PUBACKs.
      * @throws NullPointerException if any of the parameters is {@code null}.
      */
-    private void onSubscribe(final MqttEndpoint endpoint, final Device authenticatedDevice,
+    private void onSubscribe(final MqttEndpoint endpoint, final DeviceTopics deviceTopics,
             final MqttSubscribeMessage subscribeMsg, final CommandSubscriptionsManager cmdSubscriptionsManager) {
 
         Objects.requireNonNull(endpoint);
-        Objects.requireNonNull(authenticatedDevice);
+        Objects.requireNonNull(deviceTopics);
         Objects.requireNonNull(subscribeMsg);
         Objects.requireNonNull(cmdSubscriptionsManager);
 
+        final Device authenticatedDevice = deviceTopics.getDevice();
+
         @SuppressWarnings("rawtypes")
         final List<Future> subscriptionOutcome = new ArrayList<>(subscribeMsg.topicSubscriptions().size());
 
@@ -669,7 +1217,7 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
                         endpoint.clientIdentifier());
 
                 result = cmdSubscriptionsManager.addSubscription(cmdSub,
-                        () -> createCommandConsumer(endpoint, cmdSubscriptionsManager, authenticatedDevice));
+                        () -> createCommandConsumer(endpoint, cmdSubscriptionsManager, deviceTopics));
             } else {
                 log.debug("cannot create subscription [filter: {}, requested QoS: {}]: unsupported topic filter",
                         subscription.topicName(), subscription.qualityOfService());
@@ -727,17 +1275,96 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
     }
 
     private Future<CommandConsumer> createCommandConsumer(final MqttEndpoint endpoint,
-            final CommandSubscriptionsManager cmdSubscriptionsManager, final Device authenticatedDevice) {
-
+            final CommandSubscriptionsManager cmdSubscriptionsManager, final DeviceTopics deviceTopics) {
+
+        final Device authenticatedDevice = deviceTopics.getDevice();
+        if (mqttGatewayConfig.isTenantWideCommandConsumer()) {
+            final String tenantId = authenticatedDevice.getTenantId();
+            final CommandRouter router = getCommandRouter();
+            return getOrCreateTenantCommandConsumer(tenantId, router)
+                    .map(tenantConsumer -> router.register(tenantId, authenticatedDevice.getDeviceId(),
+                            cmd -> handleCommand(endpoint, cmd, cmdSubscriptionsManager, deviceTopics)));
+        }
         return tenantConnectionManager.createDeviceSpecificCommandConsumer(
                 authenticatedDevice.getTenantId(),
                 authenticatedDevice.getDeviceId(),
-                cmd -> handleCommand(endpoint, cmd, cmdSubscriptionsManager, authenticatedDevice));
+                cmd -> handleCommand(endpoint, cmd, cmdSubscriptionsManager, deviceTopics));
+    }
+
+    private Future<CommandConsumer> getOrCreateTenantCommandConsumer(final String tenantId,
+            final CommandRouter router) {
+
+        Future<CommandConsumer> consumer = tenantCommandConsumers.get(tenantId);
+        if (consumer == null || consumer.failed()) {
+            log.debug("opening command consumer for tenant [{}]", tenantId);
+            consumer = tenantConnectionManager.createCommandConsumer(tenantId, cmd -> {
+                // the device's handler runs on this thread, so that its exceptions cause the command to be released
+                if (!router.route(tenantId, cmd)) {
+                    log.info("cannot deliver command to device that is not connected to this gateway instance "
+                            + "[tenant-id: {}, address: {}]", tenantId, cmd.getAddress());
+                    metrics.reportCommand(tenantId, CommandOutcome.FAILED, 0);
+                    throw new IllegalStateException("device is not connected to this gateway instance");
+                }
+            });
+            tenantCommandConsumers.put(tenantId, consumer);
+        }
+        return consumer;
+    }
+
+    private HookExecutor getHookExecutor() {
+        if (hookExecutor == null) {
+            hookExecutor = new HookExecutor(vertx, mqttGatewayConfig.getHookExecutionModes(),
+                    mqttGatewayConfig.getHookWorkerPoolSize(),
+                    (hook, tenantId, durationNanos) -> metrics.reportHookInvocation(hook, tenantId, durationNanos));
+        }
+        return hookExecutor;
+    }
+
+    /**
+     * Gets the router that dispatches the commands received by tenant-wide command consumers to the devices.
+     * <p>
+     * This method is only visible for testing purposes.
+     *
+     * @return The router of this gateway instance.
+     */
+    CommandRouter getCommandRouter() {
+        return commandRouter;
+    }
+
+    /**
+     * Gets the cache for the gateway credentials of the tenants that is shared by the gateway instances.
+     * <p>
+     * This method is only visible for testing purposes.
+     *
+     * @return The cache or {@code null} if caching of the credentials is disabled.
+     */
+    TenantConfigCache getTenantConfigCache() {
+        if (tenantConfigCache == null && mqttGatewayConfig.getGatewayCredentialsCacheTimeToLive() > 0) {
+            tenantConfigCache = TenantConfigCache.getInstance(vertx,
+                    Duration.ofSeconds(mqttGatewayConfig.getGatewayCredentialsCacheTimeToLive()));
+        }
+        return tenantConfigCache;
+    }
+
+    /**
+     * Gets the index of the connected devices that is shared by the gateway instances.
+     * <p>
+     * This method is only visible for testing purposes.
+     *
+     * @return The index.
+     */
+    ConnectionIndex getConnectionIndex() {
+        if (connectionIndex == null) {
+            connectionIndex = ConnectionIndex.getInstance(vertx);
+        }
+        return connectionIndex;
     }
 
     private void handleCommand(final MqttEndpoint endpoint, final Message message,
-            final CommandSubscriptionsManager cmdSubscriptionsManager, final Device authenticatedDevice) {
+            final CommandSubscriptionsManager cmdSubscriptionsManager, final DeviceTopics deviceTopics) {
 
+        final long receivedAt = System.nanoTime();
+        final Device authenticatedDevice = deviceTopics.getDevice();
         if (message.getReplyTo() != null) {
             log.debug("Received request/response command [subject: {}, correlationID: {}, messageID: {}, reply-to: {}]",
                     message.getSubject(), message.getCorrelationId(), message.getMessageId(), message.getReplyTo());
@@ -745,16 +1372,51 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
             log.debug("Received one-way command [subject: {}]", message.getSubject());
         }
 
-        final MqttCommandContext ctx = MqttCommandContext.fromAmqpMessage(message, authenticatedDevice);
-        final Command command = onCommandReceived(ctx);
+        final Span span = TracingHelper.buildChildSpan(tracer, AmqpUtils.extractSpanContext(tracer, message),
+                "deliver command", TRACING_COMPONENT)
+                .withTag(Tags.SPAN_KIND.getKey(), Tags.SPAN_KIND_PRODUCER)
+                .withTag(TracingHelper.TAG_CLIENT_ID.getKey(), endpoint.clientIdentifier())
+                .start();
+        TracingHelper.setDeviceTags(span, authenticatedDevice.getTenantId(), authenticatedDevice.getDeviceId());
+        if (message.getCorrelationId() != null) {
+            TracingHelper.TAG_CORRELATION_ID.set(span, message.getCorrelationId().toString());
+        }
 
+        final MqttCommandContext ctx = MqttCommandContext.fromAmqpMessage(message, deviceTopics);
+        final Command command;
+        try {
+            // the hook is always invoked on the event loop, so the future is already completed
+            command = getHookExecutor().execute(GatewayHook.ON_COMMAND_RECEIVED, endpoint,
+                    authenticatedDevice.getTenantId(), () -> Future.succeededFuture(onCommandReceived(ctx))).result();
+        } catch (RuntimeException e) {
+            TracingHelper.logError(span, e);
+            span.finish();
+            throw e;
+        }
+        // exceptions cause the command message to be released
+        publishCommand(endpoint, message, command, cmdSubscriptionsManager, deviceTopics, receivedAt, span);
+    }
+
+    private void publishCommand(final MqttEndpoint endpoint, final Message message, final Command command,
+            final CommandSubscriptionsManager cmdSubscriptionsManager, final DeviceTopics deviceTopics,
+            final long receivedAt, final Span span) {
+
+        final Device authenticatedDevice = deviceTopics.getDevice();
         if (command == null) {
+            metrics.reportCommand(authenticatedDevice.getTenantId(), CommandOutcome.FAILED,
+                    System.nanoTime() - receivedAt);
+            TracingHelper.logError(span, "onCommandReceived returned null");
+            span.finish();
             throw new IllegalStateException("onCommandReceived returned null");
         }
 
         final CommandSubscription subscription = cmdSubscriptionsManager.getSubscriptions()
                 .get(command.getTopicFilter());
         if (subscription == null) {
+            metrics.reportCommand(authenticatedDevice.getTenantId(), CommandOutcome.FAILED,
+                    System.nanoTime() - receivedAt);
+            TracingHelper.logError(span, "no subscription found for topic filter");
+            span.finish();
             throw new IllegalStateException(
                     String.format("No subscription found for topic filter %s. Discarding message from %s",
                             command.getTopicFilter(), authenticatedDevice.toString()));
@@ -762,23 +1424,37 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
 
         log.debug("Publishing command on topic [{}] to device {} [MQTT client-id: {}, QoS: {}]", command.getTopic(),
                 authenticatedDevice.toString(), endpoint.clientIdentifier(), subscription.getQos());
-
-        endpoint.publish(command.getTopic(), command.getPayload(), subscription.getQos(), false, false,
-                ar -> afterCommandPublished(ar.result(), message, authenticatedDevice, subscription,
-                        cmdSubscriptionsManager));
-
+        span.setTag(Tags.MESSAGE_BUS_DESTINATION.getKey(), command.getTopic());
+        span.setTag(TracingHelper.TAG_QOS.getKey(), subscription.getQos().toString());
+
+        try {
+            endpoint.publish(command.getTopic(), command.getPayload(), subscription.getQos(), false, false,
+                    ar -> afterCommandPublished(ar.result(), message, authenticatedDevice, subscription,
+                            cmdSubscriptionsManager, receivedAt, span));
+        } catch (RuntimeException e) {
+            metrics.reportCommand(authenticatedDevice.getTenantId(), CommandOutcome.FAILED,
+                    System.nanoTime() - receivedAt);
+            TracingHelper.logError(span, e);
+            span.finish();
+            throw e;
+        }
     }
 
     // Vert.x only calls this handler after it successfully published the message, otherwise it throws an exception
     // which causes the AMQP Command Consumer not to be settled (and the backend application to receive an error)
     private void afterCommandPublished(final Integer publishedMsgId, final Message message,
             final Device authenticatedDevice, final CommandSubscription subscription,
-            final CommandSubscriptionsManager cmdSubscriptionsManager) {
+            final CommandSubscriptionsManager cmdSubscriptionsManager, final long receivedAt, final Span span) {
 
+        span.log("published command to device");
         if (MqttQoS.AT_LEAST_ONCE.equals(subscription.getQos())) {
 
             final Handler<Integer> onAckHandler = msgId -> {
 
+                metrics.reportCommand(authenticatedDevice.getTenantId(), CommandOutcome.ACKNOWLEDGED,
+                        System.nanoTime() - receivedAt);
+                span.log("device acknowledged command");
+                span.finish();
                 onCommandPublished(message, subscription);
 
                 log.debug(
@@ -787,13 +1463,22 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
                         subscription.getClientId(), subscription.getQos());
             };
 
-            final Handler<Void> onAckTimeoutHandler = v -> log.debug(
-                    "Timed out waiting for acknowledgment for command sent to device [tenant-id: {}, device-id: {}, MQTT client-id: {}, QoS: {}]",
-                    authenticatedDevice.getTenantId(), authenticatedDevice.getDeviceId(),
-                    subscription.getClientId(), subscription.getQos());
+            final Handler<Void> onAckTimeoutHandler = v -> {
+                metrics.reportCommand(authenticatedDevice.getTenantId(), CommandOutcome.TIMED_OUT,
+                        System.nanoTime() - receivedAt);
+                TracingHelper.logError(span, "device did not acknowledge command in time");
+                span.finish();
+                log.debug(
+                        "Timed out waiting for acknowledgment for command sent to device [tenant-id: {}, device-id: {}, MQTT client-id: {}, QoS: {}]",
+                        authenticatedDevice.getTenantId(), authenticatedDevice.getDeviceId(),
+                        subscription.getClientId(), subscription.getQos());
+            };
 
             cmdSubscriptionsManager.addToWaitingForAcknowledgement(publishedMsgId, onAckHandler, onAckTimeoutHandler);
         } else {
+            metrics.reportCommand(authenticatedDevice.getTenantId(), CommandOutcome.PUBLISHED,
+                    System.nanoTime() - receivedAt);
+            span.finish();
             onCommandPublished(message, subscription);
         }
     }
@@ -812,6 +1497,32 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
             startPromise.fail("TLS configuration invalid");
         }
 
+        try {
+            // recovers the messages that have been spooled before the gateway has been restarted
+            getSpools();
+        } catch (UncheckedIOException e) {
+            log.error("cannot open spool directory", e);
+            startPromise.fail(e.getCause());
+            return;
+        }
+
+        if (mqttGatewayConfig.getKeyCertOptions() != null) {
+            tlsCredentials = new TlsCredentials(mqttGatewayConfig.getKeyCertOptions(),
+                    mqttGatewayConfig.getTrustOptions(), mqttGatewayConfig.getTlsSessionCacheSize(),
+                    mqttGatewayConfig.getTlsSessionTimeout());
+            try {
+                tlsCredentials.load(vertx);
+            } catch (Exception e) {
+                log.error("cannot load TLS credentials", e);
+                startPromise.fail(e);
+                return;
+            }
+        }
+
+        if (mqttGatewayConfig.isReusePort() && !vertx.isNativeTransportEnabled()) {
+            log.warn("the native transport is not enabled, the port of the MQTT server cannot be shared");
+        }
+
         MqttServer.create(vertx, getMqttServerOptions())
                 .endpointHandler(this::handleEndpointConnection)
                 .listen(asyncResult -> {
@@ -820,6 +1531,12 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
                         log.info("MQTT server running on {}:{}", mqttGatewayConfig.getBindAddress(),
                                 startedServer.actualPort());
                         server = startedServer;
+                        mqttGatewayConfig.getPreConnectedTenants().forEach(this::preConnectTenant);
+                        if (tlsCredentials != null && mqttGatewayConfig.getTlsCredentialsReloadInterval() > 0) {
+                            tlsCredentialsTimer = vertx.setPeriodic(
+                                    mqttGatewayConfig.getTlsCredentialsReloadInterval() * 1000L,
+                                    id -> reloadTlsCredentials());
+                        }
                         afterStartup(startPromise);
                     } else {
                         log.error("error while starting up MQTT server", asyncResult.cause());
@@ -828,6 +1545,34 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
                 });
     }
 
+    private void preConnectTenant(final String tenantId) {
+        getTenantConfig(tenantId)
+                .compose(config -> tenantConnectionManager.preConnect(tenantId, vertx, config))
+                .onSuccess(v -> log.info("connected to AMQP adapter in advance [tenant-id: {}]", tenantId))
+                .onFailure(e -> {
+                    log.warn("failed to connect to AMQP adapter in advance [tenant-id: {}], retrying in {}s",
+                            tenantId, PRE_CONNECT_RETRY_DELAY_MILLIS / 1000, e);
+                    invalidateGatewayCredentials(tenantId);
+                    vertx.setTimer(PRE_CONNECT_RETRY_DELAY_MILLIS, id -> preConnectTenant(tenantId));
+                });
+    }
+
+    private void reloadTlsCredentials() {
+        vertx.<Boolean> executeBlocking(promise -> {
+            try {
+                promise.complete(tlsCredentials.reloadIfModified(vertx));
+            } catch (Exception e) {
+                promise.fail(e);
+            }
+        }, false, result -> {
+            if (result.failed()) {
+                log.warn("cannot reload TLS credentials, keeping previous ones", result.cause());
+            } else if (result.result()) {
+                log.info("reloaded TLS credentials, new connections use them");
+            }
+        });
+    }
+
     /**
      * Returns the options for the MQTT server.
      * <p>
@@ -839,6 +1584,7 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
         final MqttServerOptions options = new MqttServerOptions()
                 .setHost(mqttGatewayConfig.getBindAddress())
                 .setPort(mqttGatewayConfig.getPort());
+        options.setReusePort(mqttGatewayConfig.isReusePort());
 
         addTlsKeyCertOptions(options);
         addTlsTrustOptions(options);
@@ -850,7 +1596,8 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
         final KeyCertOptions keyCertOptions = mqttGatewayConfig.getKeyCertOptions();
 
         if (keyCertOptions != null) {
-            serverOptions.setSsl(true).setKeyCertOptions(keyCertOptions);
+            serverOptions.setSsl(true).setKeyCertOptions(
+                    tlsCredentials == null ? keyCertOptions : tlsCredentials.getKeyCertOptions());
             log.info("Enabling TLS");
 
             final LinkedHashSet<String> enabledProtocols = new LinkedHashSet<>(mqttGatewayConfig.getSecureProtocols());
@@ -859,6 +1606,15 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
 
             serverOptions.setSni(mqttGatewayConfig.isSni());
             log.info("Supporting TLS ServerNameIndication: {}", mqttGatewayConfig.isSni());
+
+            if (mqttGatewayConfig.isNativeTls()) {
+                if (OpenSSLEngineOptions.isAvailable()) {
+                    serverOptions.setSslEngineOptions(new OpenSSLEngineOptions().setSessionCacheEnabled(true));
+                    log.info("Using OpenSSL for TLS");
+                } else {
+                    log.warn("OpenSSL is not available, using the TLS implementation of the JDK");
+                }
+            }
         }
     }
 
@@ -868,7 +1624,8 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
 
             final TrustOptions trustOptions = mqttGatewayConfig.getTrustOptions();
             if (trustOptions != null) {
-                serverOptions.setTrustOptions(trustOptions).setClientAuth(ClientAuth.REQUEST);
+                serverOptions.setTrustOptions(tlsCredentials == null ? trustOptions : tlsCredentials.getTrustOptions())
+                        .setClientAuth(ClientAuth.REQUEST);
                 log.info("Enabling client authentication using certificates [{}]", trustOptions.getClass().getName());
             }
         }
@@ -885,6 +1642,16 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
         final Promise<Void> stopTracker = Promise.promise();
         beforeShutdown(stopTracker);
 
+        if (spoolTimer != -1) {
+            vertx.cancelTimer(spoolTimer);
+            spools.releaseMetricsReporter(this);
+        }
+        if (tlsCredentialsTimer != -1) {
+            vertx.cancelTimer(tlsCredentialsTimer);
+        }
+        if (hookExecutor != null) {
+            hookExecutor.close();
+        }
         tenantConnectionManager.closeAllTenants();
 
         stopTracker.future().onComplete(v -> {
@@ -923,4 +1690,76 @@ public abstract class AbstractMqttProtocolGateway extends AbstractVerticle {
         startPromise.complete();
     }
 
+    /**
+     * The state of the connection to an authenticated device, which also serves as the handler of the packets
+     * received on it.
+     * <p>
+     * Most devices never subscribe to commands. The command subscriptions manager, which tracks the subscriptions and
+     * the commands waiting for an acknowledgement, is therefore only created when the device subscribes for the first
+     * time. Published messages are handled by this object itself, so that an idle connection only holds this object
+     * and the method references for the other packet types.
+     * <p>
+     * This class is not thread-safe, it is meant to be used on the event loop of the connection.
+     */
+    private final class DeviceConnection implements Handler<MqttPublishMessage> {
+
+        private final MqttEndpoint endpoint;
+        private final DeviceTopics deviceTopics;
+        private final ConnectionIndex.Connection indexedConnection;
+        private CommandSubscriptionsManager cmdSubscriptionsManager;
+
+        DeviceConnection(final MqttEndpoint endpoint, final DeviceTopics deviceTopics,
+                final ConnectionIndex.Connection indexedConnection) {
+            this.endpoint = endpoint;
+            this.deviceTopics = deviceTopics;
+            this.indexedConnection = indexedConnection;
+        }
+
+        @Override
+        public void handle(final MqttPublishMessage message) {
+            handlePublishedMessage(MqttDownstreamContext.fromPublishPacket(message, endpoint, deviceTopics));
+        }
+
+        void onClose(final Void v) {
+            cleanupConnections(endpoint, cmdSubscriptionsManager, deviceTopics.getDevice(), indexedConnection);
+        }
+
+        void onPubAck(final Integer msgId) {
+            if (cmdSubscriptionsManager != null) {
+                cmdSubscriptionsManager.handlePubAck(msgId);
+            } else {
+                log.trace("ignoring acknowledgement [Msg-id: {}] from device without command subscriptions", msgId);
+            }
+        }
+
+        void onSubscribe(final MqttSubscribeMessage subscribeMsg) {
+            AbstractMqttProtocolGateway.this.onSubscribe(endpoint, deviceTopics, subscribeMsg,
+                    getCommandSubscriptionsManager());
+        }
+
+        void onUnsubscribe(final MqttUnsubscribeMessage unsubscribeMsg) {
+            AbstractMqttProtocolGateway.this.onUnsubscribe(endpoint, deviceTopics.getDevice(), unsubscribeMsg,
+                    getCommandSubscriptionsManager());
+        }
+
+        private CommandSubscriptionsManager getCommandSubscriptionsManager() {
+            if (cmdSubscriptionsManager == null) {
+                cmdSubscriptionsManager = createCommandHandler(vertx);
+            }
+            return cmdSubscriptionsManager;
+        }
+    }
+
+    /**
+     * Indicates that a connection request has been rejected because the connection rate limit of the tenant has been
+     * exceeded.
+     */
+    private static final class TenantAdmissionRejectedException extends ServerErrorException {
+
+        private static final long serialVersionUID = 1L;
+
+        TenantAdmissionRejectedException(final String tenantId) {
+            super(HttpURLConnection.HTTP_UNAVAILABLE, "too many connection requests for tenant " + tenantId);
+        }
+    }
 }
@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
+import org.apache.qpid.proton.message.Message;
+import org.eclipse.hono.client.command.CommandConsumer;
+import org.eclipse.hono.util.MessageHelper;
+import org.eclipse.hono.util.ResourceIdentifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.Future;
+
+/**
+ * Dispatches the commands received by the tenant-wide command consumers of a gateway instance to the connections of
+ * its devices.
+ * <p>
+ * The devices that have subscribed to commands are kept in an index per tenant. Each gateway instance has its own
+ * router, so that the command consumers and the MQTT connections of the devices share the event loop of the instance.
+ * A command is therefore handed over to the handler of its device on the thread that has received it, and the outcome
+ * of the delivery is known when {@link #route(String, Message)} returns: if the handler throws an exception, the
+ * command consumer releases the AMQP message.
+ * <p>
+ * This class is thread-safe.
+ */
+final class CommandRouter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CommandRouter.class);
+
+    private final Map<String, Map<String, Route>> routesPerTenant = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a device for receiving commands.
+     * <p>
+     * A previous registration of the same device is replaced, e.g. if the device has re-connected.
+     *
+     * @param tenantId The tenant of the device.
+     * @param deviceId The device.
+     * @param commandHandler The handler to invoke with the commands for the device.
+     * @return A consumer that removes the registration when it is closed.
+     * @throws NullPointerException if any of the parameters is {@code null}.
+     */
+    CommandConsumer register(final String tenantId, final String deviceId, final Consumer<Message> commandHandler) {
+
+        Objects.requireNonNull(tenantId);
+        Objects.requireNonNull(deviceId);
+        Objects.requireNonNull(commandHandler);
+
+        final Route route = new Route(commandHandler);
+        routesPerTenant.computeIfAbsent(tenantId, k -> new ConcurrentHashMap<>()).put(deviceId, route);
+        return spanContext -> {
+            unregister(tenantId, deviceId, route);
+            return Future.succeededFuture();
+        };
+    }
+
+    private void unregister(final String tenantId, final String deviceId, final Route route) {
+        routesPerTenant.computeIfPresent(tenantId, (k, routes) -> {
+            // the device might have registered again in the meantime
+            routes.remove(deviceId, route);
+            return routes.isEmpty() ? null : routes;
+        });
+    }
+
+    /**
+     * Hands a command over to the device that it is addressed to.
+     * <p>
+     * The handler of the device is invoked on the calling thread. Exceptions thrown by the handler are propagated to
+     * the caller.
+     *
+     * @param tenantId The tenant of the command consumer that has received the command.
+     * @param message The command message.
+     * @return {@code true} if the device is registered and its handler has accepted the command.
+     * @throws NullPointerException if any of the parameters is {@code null}.
+     */
+    boolean route(final String tenantId, final Message message) {
+        Objects.requireNonNull(tenantId);
+        Objects.requireNonNull(message);
+
+        final String deviceId = getDeviceId(message);
+        final Map<String, Route> routes = routesPerTenant.get(tenantId);
+        final Route route = deviceId == null || routes == null ? null : routes.get(deviceId);
+        if (route == null) {
+            LOG.debug("no route for command to device [tenant-id: {}, device-id: {}, address: {}]", tenantId,
+                    deviceId, message.getAddress());
+            return false;
+        }
+        route.commandHandler.accept(message);
+        return true;
+    }
+
+    /**
+     * Gets the device that a command received by a tenant-wide consumer is addressed to.
+     * <p>
+     * The AMQP adapter sets the address of such a command to <em>command/${tenant_id}/${device_id}</em>. If the
+     * address does not contain a device, the <em>device_id</em> application property is used.
+     */
+    private static String getDeviceId(final Message message) {
+        final String address = message.getAddress();
+        if (address != null && ResourceIdentifier.isValid(address)) {
+            final ResourceIdentifier resource = ResourceIdentifier.fromString(address);
+            if (resource.getResourceId() != null) {
+                return resource.getResourceId();
+            }
+        }
+        final ApplicationProperties properties = message.getApplicationProperties();
+        if (properties != null && properties.getValue() != null) {
+            final Object deviceId = properties.getValue().get(MessageHelper.APP_PROPERTY_DEVICE_ID);
+            if (deviceId instanceof String) {
+                return (String) deviceId;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The handler of a device.
+     */
+    private static final class Route {
+
+        private final Consumer<Message> commandHandler;
+
+        private Route(final Consumer<Message> commandHandler) {
+            this.commandHandler = commandHandler;
+        }
+    }
+}
@@ -27,7 +27,6 @@ import org.slf4j.LoggerFactory;
 import io.netty.handler.codec.mqtt.MqttQoS;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
-import io.vertx.core.Vertx;
 
 /**
  * A class that tracks command subscriptions, unsubscriptions and handles PUBACKs.
@@ -42,20 +41,21 @@ final class CommandSubscriptionsManager {
     /**
      * Map of the requests waiting for an acknowledgement. Key is the command message id.
      */
-    private final Map<Integer, PendingCommandRequest> waitingForAcknowledgement = new ConcurrentHashMap<>();
-    private final Vertx vertx;
+    private final MessageIdMap<PendingCommandRequest> waitingForAcknowledgement = new MessageIdMap<>();
+    private final HashedTimingWheel ackTimeouts;
     private final MqttProtocolGatewayConfig config;
     private Future<CommandConsumer> commandConsumer;
 
     /**
      * Creates a new CommandSubscriptionsManager instance.
      *
-     * @param vertx The Vert.x instance to execute the client on.
+     * @param ackTimeouts The timing wheel to schedule the timeouts for acknowledgements with. It is usually shared by
+     *            all devices of a gateway instance.
      * @param config The configuration properties to use.
      * @throws NullPointerException if any of the parameters are {@code null}.
      */
-    CommandSubscriptionsManager(final Vertx vertx, final MqttProtocolGatewayConfig config) {
-        this.vertx = Objects.requireNonNull(vertx);
+    CommandSubscriptionsManager(final HashedTimingWheel ackTimeouts, final MqttProtocolGatewayConfig config) {
+        this.ackTimeouts = Objects.requireNonNull(ackTimeouts);
         this.config = Objects.requireNonNull(config);
     }
 
@@ -69,7 +69,7 @@ final class CommandSubscriptionsManager {
         Objects.requireNonNull(msgId);
         LOG.trace("Acknowledgement received for command [Msg-id: {}] that has been sent to device.", msgId);
         Optional.ofNullable(removeFromWaitingForAcknowledgement(msgId)).ifPresent(value -> {
-            cancelTimer(value.timerId);
+            value.ackTimeout.cancel();
             value.onAckHandler.handle(msgId);
         });
     }
@@ -91,17 +91,21 @@ final class CommandSubscriptionsManager {
         Objects.requireNonNull(onAckHandler);
         Objects.requireNonNull(onAckTimeoutHandler);
 
-        waitingForAcknowledgement.put(msgId,
+        final PendingCommandRequest replaced = waitingForAcknowledgement.put(msgId,
                 new PendingCommandRequest(startTimer(msgId), onAckHandler, onAckTimeoutHandler));
+        if (replaced != null) {
+            // the message id has been re-used, the timeout must not remove the new request
+            replaced.ackTimeout.cancel();
+        }
     }
 
     /**
      * Removes the entry from the waitingForAcknowledgement map for the given msgId.
      *
      * @param msgId The id of the command (message) that has been published.
-     * @return The PendingCommandRequest object containing timer-id and event handlers.
+     * @return The PendingCommandRequest object containing the timeout and event handlers.
      */
-    private PendingCommandRequest removeFromWaitingForAcknowledgement(final Integer msgId) {
+    private PendingCommandRequest removeFromWaitingForAcknowledgement(final int msgId) {
         return waitingForAcknowledgement.remove(msgId);
     }
 
@@ -175,19 +179,14 @@ final class CommandSubscriptionsManager {
                 });
     }
 
-    private long startTimer(final Integer msgId) {
+    private HashedTimingWheel.Timeout startTimer(final int msgId) {
 
-        return vertx.setTimer(config.getCommandAckTimeout(), timerId -> {
+        return ackTimeouts.schedule(config.getCommandAckTimeout(), v -> {
             Optional.ofNullable(removeFromWaitingForAcknowledgement(msgId))
                     .ifPresent(value -> value.onAckTimeoutHandler.handle(null));
         });
     }
 
-    private void cancelTimer(final Long timerId) {
-        vertx.cancelTimer(timerId);
-        LOG.trace("Canceled Timer [timer-id: {}}", timerId);
-    }
-
     /**
      * Returns all subscriptions of this device.
      *
@@ -204,22 +203,22 @@ final class CommandSubscriptionsManager {
      */
     private static class PendingCommandRequest {
 
-        private final Long timerId;
+        private final HashedTimingWheel.Timeout ackTimeout;
         private final Handler<Integer> onAckHandler;
         private final Handler<Void> onAckTimeoutHandler;
 
         /**
          * Creates a new PendingCommandRequest instance.
          *
-         * @param timerId The unique ID of the timer.
+         * @param ackTimeout The timeout for the acknowledgement.
          * @param onAckHandler Handler to invoke when the device has acknowledged the command.
          * @param onAckTimeoutHandler Handler to invoke when there is a timeout waiting for the acknowledgement from the
          *            device.
          * @throws NullPointerException if any of the parameters is {@code null}.
          */
-        private PendingCommandRequest(final Long timerId, final Handler<Integer> onAckHandler,
+        private PendingCommandRequest(final HashedTimingWheel.Timeout ackTimeout, final Handler<Integer> onAckHandler,
                 final Handler<Void> onAckTimeoutHandler) {
-            this.timerId = Objects.requireNonNull(timerId);
+            this.ackTimeout = Objects.requireNonNull(ackTimeout);
             this.onAckHandler = Objects.requireNonNull(onAckHandler);
             this.onAckTimeoutHandler = Objects.requireNonNull(onAckTimeoutHandler);
         }
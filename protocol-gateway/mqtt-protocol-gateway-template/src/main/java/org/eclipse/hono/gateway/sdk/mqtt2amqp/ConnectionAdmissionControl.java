@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Decides whether connection requests of devices are processed or rejected.
+ * <p>
+ * The following limits are applied, each of them can be disabled by setting it to 0:
+ * <ul>
+ * <li>the number of connection requests per second, enforced by a token bucket that holds the tokens of one
+ * second,</li>
+ * <li>the number of connection requests per second and tenant, enforced by a token bucket per tenant,</li>
+ * <li>the number of connection requests that are processed concurrently, i.e. that are being authenticated and
+ * connected to Hono's AMQP adapter.</li>
+ * </ul>
+ * The tenant of a device is only known after authentication, so the limit per tenant is checked after the global
+ * limits. A full token bucket does not differ from a new one, so the buckets of the tenants are removed once they
+ * have been refilled completely. Otherwise, the buckets of all tenants that ever connected would be kept.
+ * <p>
+ * This class is not thread-safe, it is meant to be used on the event loop of a gateway instance.
+ */
+final class ConnectionAdmissionControl {
+
+    private static final long PRUNE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final LongSupplier nanoTime;
+    private final TokenBucket globalBucket;
+    private final Map<String, TokenBucket> tenantBuckets = new HashMap<>();
+    private final int connectRateLimitPerTenant;
+    private final int maxConcurrentConnectionRequests;
+
+    private int concurrentConnectionRequests;
+    private long lastPrune;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param config The configuration to read the limits from.
+     * @throws NullPointerException if the configuration is {@code null}.
+     */
+    ConnectionAdmissionControl(final MqttProtocolGatewayConfig config) {
+        this(config, System::nanoTime);
+    }
+
+    /**
+     * Creates a new instance.
+     * <p>
+     * <b>This constructor is for testing purposes only.</b>
+     *
+     * @param config The configuration to read the limits from.
+     * @param nanoTime The time source to use.
+     * @throws NullPointerException if any of the parameters is {@code null}.
+     */
+    ConnectionAdmissionControl(final MqttProtocolGatewayConfig config, final LongSupplier nanoTime) {
+        Objects.requireNonNull(config);
+        Objects.requireNonNull(nanoTime);
+
+        this.nanoTime = nanoTime;
+        this.globalBucket = config.getConnectRateLimit() > 0
+                ? new TokenBucket(config.getConnectRateLimit(), nanoTime.getAsLong())
+                : null;
+        this.connectRateLimitPerTenant = config.getConnectRateLimitPerTenant();
+        this.maxConcurrentConnectionRequests = config.getMaxConcurrentConnectionRequests();
+        this.lastPrune = nanoTime.getAsLong();
+    }
+
+    /**
+     * Checks whether a new connection request may be processed.
+     * <p>
+     * If the request is admitted, {@link #endConnectionRequest()} must be invoked when its processing has finished.
+     *
+     * @return {@code true} if the request may be processed, {@code false} if it needs to be rejected.
+     */
+    boolean tryBeginConnectionRequest() {
+        if (maxConcurrentConnectionRequests > 0 && concurrentConnectionRequests >= maxConcurrentConnectionRequests) {
+            return false;
+        }
+        if (globalBucket != null && !globalBucket.tryConsume(nanoTime.getAsLong())) {
+            return false;
+        }
+        concurrentConnectionRequests++;
+        return true;
+    }
+
+    /**
+     * Checks whether a connection request of a device of the given tenant may be processed.
+     *
+     * @param tenantId The tenant of the authenticated device.
+     * @return {@code true} if the request may be processed, {@code false} if it needs to be rejected.
+     * @throws NullPointerException if the tenant is {@code null}.
+     */
+    boolean tryAdmitTenant(final String tenantId) {
+        Objects.requireNonNull(tenantId);
+
+        if (connectRateLimitPerTenant <= 0) {
+            return true;
+        }
+        final long now = nanoTime.getAsLong();
+        if (now - lastPrune >= PRUNE_INTERVAL_NANOS) {
+            tenantBuckets.values().removeIf(bucket -> bucket.isFull(now));
+            lastPrune = now;
+        }
+        return tenantBuckets.computeIfAbsent(tenantId, k -> new TokenBucket(connectRateLimitPerTenant, now))
+                .tryConsume(now);
+    }
+
+    /**
+     * Gets the number of tenants for which a token bucket is kept.
+     * <p>
+     * This method is only visible for testing purposes.
+     *
+     * @return The number of token buckets.
+     */
+    int getTenantBucketCount() {
+        return tenantBuckets.size();
+    }
+
+    /**
+     * Marks the processing of an admitted connection request as finished.
+     */
+    void endConnectionRequest() {
+        if (concurrentConnectionRequests > 0) {
+            concurrentConnectionRequests--;
+        }
+    }
+
+    /**
+     * A token bucket that is refilled continuously with the given rate and holds at most the tokens of one second.
+     */
+    private static final class TokenBucket {
+
+        private final double tokensPerNano;
+        private final double capacity;
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(final int tokensPerSecond, final long now) {
+            this.tokensPerNano = tokensPerSecond / (double) TimeUnit.SECONDS.toNanos(1);
+            this.capacity = tokensPerSecond;
+            this.tokens = tokensPerSecond;
+            this.lastRefill = now;
+        }
+
+        boolean tryConsume(final long now) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+            if (tokens >= 1) {
+                tokens--;
+                return true;
+            }
+            return false;
+        }
+
+        boolean isFull(final long now) {
+            return tokens + (now - lastRefill) * tokensPerNano >= capacity;
+        }
+    }
+}
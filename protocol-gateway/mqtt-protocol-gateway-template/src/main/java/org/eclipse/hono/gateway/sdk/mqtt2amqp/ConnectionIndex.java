@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.mqtt.MqttEndpoint;
+
+/**
+ * Keeps track of the connected devices in order to close stale connections when a device connects again.
+ * <p>
+ * The MQTT specification requires the server to disconnect an existing client if a client with the same client
+ * identifier connects. A device that re-connects after its address has changed, e.g. because a NAT gateway has
+ * re-bound it, otherwise leaves behind a half-open connection that holds its subscriptions and command consumer until
+ * the keep-alive timeout expires. The connections are indexed by their client identifier and, optionally, by the
+ * identity of their device, both within the scope of the device's tenant, so that devices of different tenants cannot
+ * disconnect each other. This allows a connection to take over the one of any gateway instance of the same Vert.x
+ * instance.
+ * <p>
+ * This class is thread-safe.
+ */
+final class ConnectionIndex implements Shareable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConnectionIndex.class);
+    private static final String SHARED_DATA_KEY = ConnectionIndex.class.getName();
+
+    private final Map<String, Connection> connectionsPerClientId = new ConcurrentHashMap<>();
+    private final Map<String, Connection> connectionsPerDevice = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the index that is shared by all gateway instances of a Vert.x instance.
+     *
+     * @param vertx The Vert.x instance.
+     * @return The index.
+     * @throws NullPointerException if Vert.x is {@code null}.
+     */
+    static ConnectionIndex getInstance(final Vertx vertx) {
+        Objects.requireNonNull(vertx);
+        return vertx.sharedData().<String, ConnectionIndex> getLocalMap(SHARED_DATA_KEY)
+                .computeIfAbsent(SHARED_DATA_KEY, k -> new ConnectionIndex());
+    }
+
+    /**
+     * Adds the connection of a device that has been accepted and closes the connections that it replaces.
+     * <p>
+     * A connection is replaced if it has the same client identifier or, if requested, belongs to the same device.
+     * Replaced connections are closed on the context they have been added on.
+     *
+     * @param tenantId The tenant of the device.
+     * @param deviceId The device.
+     * @param endpoint The endpoint of the connection.
+     * @param context The context of the connection or {@code null} to close it on the thread that adds the new one.
+     * @param replaceByDevice {@code true} if an existing connection of the same device is to be replaced, even if it
+     *            has a different client identifier.
+     * @return The connection, which has to be removed when it is closed.
+     * @throws NullPointerException if any of the parameters except the context is {@code null}.
+     */
+    Connection add(final String tenantId, final String deviceId, final MqttEndpoint endpoint, final Context context,
+            final boolean replaceByDevice) {
+
+        Objects.requireNonNull(tenantId);
+        Objects.requireNonNull(deviceId);
+        Objects.requireNonNull(endpoint);
+
+        final String clientId = endpoint.clientIdentifier();
+        final Connection connection = new Connection(
+                clientId == null || clientId.isEmpty() ? null : key(tenantId, clientId),
+                replaceByDevice ? key(tenantId, deviceId) : null, endpoint, context);
+
+        final Connection sameClientId = connection.clientKey == null ? null
+                : connectionsPerClientId.put(connection.clientKey, connection);
+        closeReplaced(sameClientId, connection);
+        if (connection.deviceKey != null) {
+            final Connection sameDevice = connectionsPerDevice.put(connection.deviceKey, connection);
+            if (sameDevice != sameClientId) {
+                closeReplaced(sameDevice, connection);
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * Removes a connection that has been closed.
+     * <p>
+     * The connections that have replaced the given one are not affected.
+     *
+     * @param connection The connection.
+     * @throws NullPointerException if the connection is {@code null}.
+     */
+    void remove(final Connection connection) {
+        Objects.requireNonNull(connection);
+        if (connection.clientKey != null) {
+            connectionsPerClientId.remove(connection.clientKey, connection);
+        }
+        if (connection.deviceKey != null) {
+            connectionsPerDevice.remove(connection.deviceKey, connection);
+        }
+    }
+
+    /**
+     * Gets the number of connections in this index.
+     * <p>
+     * This method is only visible for testing purposes.
+     *
+     * @return The number of connections by client identifier and by device.
+     */
+    int size() {
+        return connectionsPerClientId.size() + connectionsPerDevice.size();
+    }
+
+    private void closeReplaced(final Connection replaced, final Connection connection) {
+        if (replaced == null || replaced.endpoint == connection.endpoint) {
+            return;
+        }
+        // the replaced connection must not be found by its other key either
+        if (replaced.deviceKey != null) {
+            connectionsPerDevice.remove(replaced.deviceKey, replaced);
+        }
+        if (replaced.clientKey != null) {
+            connectionsPerClientId.remove(replaced.clientKey, replaced);
+        }
+
+        LOG.debug("closing connection of client [{}] that has been replaced by client [{}]",
+                replaced.endpoint.clientIdentifier(), connection.endpoint.clientIdentifier());
+        if (replaced.context == null || replaced.context == Vertx.currentContext()) {
+            replaced.close();
+        } else {
+            replaced.context.runOnContext(v -> replaced.close());
+        }
+    }
+
+    private static String key(final String tenantId, final String id) {
+        return tenantId + '/' + id;
+    }
+
+    /**
+     * The connection of a device in the index.
+     */
+    static final class Connection {
+
+        private final String clientKey;
+        private final String deviceKey;
+        private final MqttEndpoint endpoint;
+        private final Context context;
+
+        private Connection(final String clientKey, final String deviceKey, final MqttEndpoint endpoint,
+                final Context context) {
+            this.clientKey = clientKey;
+            this.deviceKey = deviceKey;
+            this.endpoint = endpoint;
+            this.context = context;
+        }
+
+        private void close() {
+            if (endpoint.isConnected()) {
+                endpoint.close();
+            }
+        }
+    }
+}
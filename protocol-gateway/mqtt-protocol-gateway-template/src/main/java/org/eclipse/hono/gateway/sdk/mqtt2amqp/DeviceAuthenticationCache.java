@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import org.eclipse.hono.auth.Device;
+import org.eclipse.hono.client.ClientErrorException;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import io.vertx.core.Future;
+
+/**
+ * A bounded cache for the outcome of device authentications.
+ * <p>
+ * The entries are keyed on a salted SHA-256 digest of the credentials, so that no credentials are kept in memory.
+ * Successful authentications are cached for the configured time to live. Authentications that have failed with a
+ * {@link ClientErrorException}, e.g. because of invalid credentials, are cached for the (usually shorter) negative
+ * time to live. All other failures, e.g. an unavailable device registry or an exception thrown by the authentication,
+ * are considered temporary and are not cached.
+ * <p>
+ * An authentication that is still in progress is cached as well, so that concurrent connection attempts with the same
+ * credentials result in a single authentication only.
+ * <p>
+ * This class is thread-safe.
+ */
+final class DeviceAuthenticationCache {
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private final Cache<String, Future<Device>> cache;
+    private final byte[] salt = new byte[16];
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxSize The maximum number of entries.
+     * @param timeToLive The duration after which a successful authentication expires.
+     * @param negativeTimeToLive The duration after which a failed authentication expires.
+     * @throws NullPointerException if any of the durations is {@code null}.
+     */
+    DeviceAuthenticationCache(final long maxSize, final Duration timeToLive, final Duration negativeTimeToLive) {
+        this(maxSize, timeToLive, negativeTimeToLive, Ticker.systemTicker());
+    }
+
+    /**
+     * Creates a new cache.
+     * <p>
+     * <b>This constructor is for testing purposes only.</b>
+     *
+     * @param maxSize The maximum number of entries.
+     * @param timeToLive The duration after which a successful authentication expires.
+     * @param negativeTimeToLive The duration after which a failed authentication expires.
+     * @param ticker The time source to use.
+     * @throws NullPointerException if any of the parameters is {@code null}.
+     */
+    DeviceAuthenticationCache(final long maxSize, final Duration timeToLive, final Duration negativeTimeToLive,
+            final Ticker ticker) {
+
+        Objects.requireNonNull(timeToLive);
+        Objects.requireNonNull(negativeTimeToLive);
+        Objects.requireNonNull(ticker);
+
+        new SecureRandom().nextBytes(salt);
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new OutcomeBasedExpiry(timeToLive.toNanos(), negativeTimeToLive.toNanos()))
+                .ticker(ticker)
+                .executor(Runnable::run)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Gets the outcome of an authentication with username and password.
+     *
+     * @param username The username provided by the device.
+     * @param password The password provided by the device.
+     * @param clientId The client identifier provided by the device.
+     * @param authentication The authentication to invoke if the outcome is not cached.
+     * @return The (cached) outcome of the authentication or {@code null} if the authentication returns {@code null}.
+     * @throws NullPointerException if the authentication is {@code null}.
+     */
+    Future<Device> get(final String username, final String password, final String clientId,
+            final Supplier<Future<Device>> authentication) {
+
+        return get(digest(username, password, clientId), authentication);
+    }
+
+    /**
+     * Gets the outcome of an authentication with a client certificate.
+     *
+     * @param deviceCertificate The (validated) client certificate of the device.
+     * @param authentication The authentication to invoke if the outcome is not cached.
+     * @return The (cached) outcome of the authentication or {@code null} if the authentication returns {@code null}.
+     * @throws NullPointerException if any of the parameters is {@code null}.
+     */
+    Future<Device> get(final X509Certificate deviceCertificate, final Supplier<Future<Device>> authentication) {
+        Objects.requireNonNull(deviceCertificate);
+
+        try {
+            return get(digest(deviceCertificate.getEncoded()), authentication);
+        } catch (CertificateEncodingException e) {
+            return authentication.get();
+        }
+    }
+
+    /**
+     * Gets the statistics of this cache.
+     *
+     * @return The hit and miss counts and further statistics.
+     */
+    CacheStats stats() {
+        return cache.stats();
+    }
+
+    private Future<Device> get(final String key, final Supplier<Future<Device>> authentication) {
+        Objects.requireNonNull(authentication);
+
+        final boolean[] invoked = new boolean[1];
+        final Future<Device> result = cache.get(key, k -> {
+            invoked[0] = true;
+            return authentication.get();
+        });
+        if (invoked[0] && result != null) {
+            result.onComplete(ar -> {
+                if (ar.failed() && !(ar.cause() instanceof ClientErrorException)) {
+                    cache.asMap().remove(key, result);
+                } else {
+                    // re-calculates the expiration based on the outcome
+                    cache.asMap().replace(key, result, result);
+                }
+            });
+        }
+        return result;
+    }
+
+    private String digest(final String... values) {
+        final MessageDigest digest = newDigest();
+        for (final String value : values) {
+            final byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+            // prefix the length to keep the boundaries between the values unambiguous
+            digest.update(new byte[] { (byte) (bytes.length >>> 24), (byte) (bytes.length >>> 16),
+                    (byte) (bytes.length >>> 8), (byte) bytes.length });
+            digest.update(bytes);
+        }
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    private String digest(final byte[] value) {
+        final MessageDigest digest = newDigest();
+        digest.update(value);
+        return "x509:" + Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    private MessageDigest newDigest() {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            digest.update(salt);
+            return digest;
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Expires successful authentications after the time to live and failed ones after the negative time to live.
+     */
+    private static final class OutcomeBasedExpiry implements Expiry<String, Future<Device>> {
+
+        private final long timeToLive;
+        private final long negativeTimeToLive;
+
+        OutcomeBasedExpiry(final long timeToLive, final long negativeTimeToLive) {
+            this.timeToLive = timeToLive;
+            this.negativeTimeToLive = negativeTimeToLive;
+        }
+
+        @Override
+        public long expireAfterCreate(final String key, final Future<Device> value, final long currentTime) {
+            return value.failed() ? negativeTimeToLive : timeToLive;
+        }
+
+        @Override
+        public long expireAfterUpdate(final String key, final Future<Device> value, final long currentTime,
+                final long currentDuration) {
+            return value.failed() ? negativeTimeToLive : timeToLive;
+        }
+
+        @Override
+        public long expireAfterRead(final String key, final Future<Device> value, final long currentTime,
+                final long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import java.util.Collection;
+import java.util.Objects;
+
+import org.eclipse.hono.auth.Device;
+
+/**
+ * The topics of a connected device, created from the {@link TopicTemplate}s of the gateway.
+ * <p>
+ * The gateway binds the templates returned by {@link AbstractMqttProtocolGateway#getTopicTemplates()} when the device
+ * connects and keeps the topics for the lifetime of the connection. Templates that have not been bound at that time
+ * are bound each time they are requested, without being cached.
+ * <p>
+ * This class is immutable and thread-safe, so that it can be used by hooks that are not invoked on the event loop.
+ */
+public final class DeviceTopics {
+
+    private final Device device;
+    private final TopicTemplate[] templates;
+    private final String[] topics;
+
+    private DeviceTopics(final Device device, final TopicTemplate[] templates) {
+        this.device = device;
+        this.templates = templates;
+        this.topics = new String[templates.length];
+        for (int i = 0; i < templates.length; i++) {
+            topics[i] = templates[i].bind(device);
+        }
+    }
+
+    /**
+     * Binds topic templates to a device.
+     *
+     * @param device The device.
+     * @param templates The templates to bind.
+     * @return The topics of the device.
+     * @throws NullPointerException if any of the parameters is {@code null}.
+     * @throws IllegalStateException if one of the templates contains other placeholders than the identity of the
+     *             device.
+     */
+    public static DeviceTopics bind(final Device device, final Collection<TopicTemplate> templates) {
+        Objects.requireNonNull(device);
+        Objects.requireNonNull(templates);
+
+        return new DeviceTopics(device, templates.toArray(new TopicTemplate[0]));
+    }
+
+    /**
+     * Gets the device that the topics belong to.
+     *
+     * @return The device.
+     */
+    public Device getDevice() {
+        return device;
+    }
+
+    /**
+     * Gets the topic of the device for a template.
+     *
+     * @param template The template.
+     * @return The topic.
+     * @throws NullPointerException if template is {@code null}.
+     * @throws IllegalStateException if the template contains other placeholders than the identity of the device.
+     */
+    public String get(final TopicTemplate template) {
+        Objects.requireNonNull(template);
+
+        // gateways use only a handful of templates, a linear search is faster than hashing
+        for (int i = 0; i < templates.length; i++) {
+            if (templates[i] == template) {
+                return topics[i];
+            }
+        }
+        return template.bind(device);
+    }
+}
@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+/**
+ * The methods of {@link AbstractMqttProtocolGateway} that are implemented by subclasses and may block, e.g. because
+ * they invoke a device registry.
+ *
+ * @see MqttProtocolGatewayConfig#setHookExecutionModes(java.util.Map)
+ */
+public enum GatewayHook {
+    /**
+     * {@link AbstractMqttProtocolGateway#authenticateDevice(String, String, String)}.
+     */
+    AUTHENTICATE_DEVICE,
+    /**
+     * {@link AbstractMqttProtocolGateway#authenticateClientCertificate(java.security.cert.X509Certificate)}.
+     */
+    AUTHENTICATE_CLIENT_CERTIFICATE,
+    /**
+     * {@link AbstractMqttProtocolGateway#onPublishedMessage(MqttDownstreamContext)}.
+     */
+    ON_PUBLISHED_MESSAGE,
+    /**
+     * {@link AbstractMqttProtocolGateway#onCommandReceived(MqttCommandContext)}, which is always invoked on the event
+     * loop.
+     */
+    ON_COMMAND_RECEIVED
+}
@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+
+/**
+ * A hashed timing wheel for a large number of short timeouts, e.g. for the acknowledgements of commands.
+ * <p>
+ * Scheduling and cancelling a timeout take constant time. Instead of one Vert.x timer per timeout, a single periodic
+ * Vert.x timer advances the wheel by one tick. The periodic timer only runs while timeouts are scheduled. Timeouts
+ * expire with the granularity of a tick, never before their delay has passed.
+ * <p>
+ * This class is not thread-safe, it is meant to be used on the event loop of a gateway instance, which also executes
+ * the expired timeouts.
+ */
+final class HashedTimingWheel {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HashedTimingWheel.class);
+
+    private final Vertx vertx;
+    private final LongSupplier nanoTime;
+    private final long tickMillis;
+    private final long tickNanos;
+    private final Timeout[] wheel;
+    private final int mask;
+    private final long startTime;
+
+    private long processedTicks;
+    private int pendingTimeouts;
+    private long timerId = -1;
+    private boolean ticking;
+
+    /**
+     * Creates a new timing wheel.
+     *
+     * @param vertx The Vert.x instance to use for the periodic timer.
+     * @param tickMillis The duration of a tick in milliseconds.
+     * @param wheelSize The number of slots of the wheel, which is rounded up to the next power of two.
+     * @throws NullPointerException if Vert.x is {@code null}.
+     * @throws IllegalArgumentException if the tick duration or the wheel size is smaller than 1.
+     */
+    HashedTimingWheel(final Vertx vertx, final long tickMillis, final int wheelSize) {
+        this(vertx, tickMillis, wheelSize, System::nanoTime);
+    }
+
+    /**
+     * Creates a new timing wheel.
+     * <p>
+     * <b>This constructor is for testing purposes only.</b>
+     *
+     * @param vertx The Vert.x instance to use for the periodic timer.
+     * @param tickMillis The duration of a tick in milliseconds.
+     * @param wheelSize The number of slots of the wheel, which is rounded up to the next power of two.
+     * @param nanoTime The time source to use.
+     * @throws NullPointerException if any of the parameters is {@code null}.
+     * @throws IllegalArgumentException if the tick duration or the wheel size is smaller than 1.
+     */
+    HashedTimingWheel(final Vertx vertx, final long tickMillis, final int wheelSize, final LongSupplier nanoTime) {
+        this.vertx = Objects.requireNonNull(vertx);
+        this.nanoTime = Objects.requireNonNull(nanoTime);
+        if (tickMillis < 1) {
+            throw new IllegalArgumentException("tick duration must be at least 1ms");
+        }
+        if (wheelSize < 1 || wheelSize > 1 << 30) {
+            throw new IllegalArgumentException("wheel size must be between 1 and 2^30");
+        }
+        this.tickMillis = tickMillis;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        final int size = Integer.highestOneBit(wheelSize - 1) << 1;
+        this.wheel = new Timeout[Math.max(1, size)];
+        this.mask = wheel.length - 1;
+        this.startTime = nanoTime.getAsLong();
+    }
+
+    /**
+     * Schedules a task to be executed after the given delay.
+     *
+     * @param delayMillis The delay in milliseconds.
+     * @param task The task to execute.
+     * @return The handle to cancel the timeout with.
+     * @throws NullPointerException if the task is {@code null}.
+     */
+    Timeout schedule(final long delayMillis, final Handler<Void> task) {
+        Objects.requireNonNull(task);
+
+        final long currentTick = (nanoTime.getAsLong() - startTime) / tickNanos;
+        if (pendingTimeouts == 0) {
+            // the wheel has not been advanced while it was idle
+            processedTicks = currentTick;
+        }
+        // one additional tick because the current tick has already partly passed
+        final long deadline = currentTick + Math.max(0, (delayMillis + tickMillis - 1) / tickMillis) + 1;
+        final long remainingTicks = Math.max(1, deadline - processedTicks);
+
+        final Timeout timeout = new Timeout(this, task, (remainingTicks - 1) / wheel.length);
+        timeout.bucket = (int) ((processedTicks + remainingTicks) & mask);
+        addToBucket(timeout);
+
+        pendingTimeouts++;
+        if (timerId == -1) {
+            timerId = vertx.setPeriodic(tickMillis, id -> onTick());
+        }
+        return timeout;
+    }
+
+    private void onTick() {
+        final long currentTick = (nanoTime.getAsLong() - startTime) / tickNanos;
+        // the timer is kept running while the tasks are executed, they might schedule new timeouts
+        ticking = true;
+        try {
+            while (processedTicks < currentTick && pendingTimeouts > 0) {
+                processedTicks++;
+                expireBucket((int) (processedTicks & mask));
+            }
+        } finally {
+            ticking = false;
+        }
+        // keep the wheel in sync with the time if there is nothing to process
+        processedTicks = Math.max(processedTicks, currentTick);
+        stopTimerIfIdle();
+    }
+
+    private void expireBucket(final int bucket) {
+        // first detach the expired timeouts, the tasks might cancel or schedule other timeouts
+        Timeout expired = null;
+        Timeout timeout = wheel[bucket];
+        while (timeout != null) {
+            final Timeout next = timeout.next;
+            if (timeout.remainingRounds <= 0) {
+                removeFromBucket(timeout);
+                pendingTimeouts--;
+                timeout.next = expired;
+                expired = timeout;
+            } else {
+                timeout.remainingRounds--;
+            }
+            timeout = next;
+        }
+        while (expired != null) {
+            final Timeout next = expired.next;
+            expired.next = null;
+            try {
+                expired.task.handle(null);
+            } catch (RuntimeException e) {
+                LOG.warn("error executing timeout task", e);
+            }
+            expired = next;
+        }
+    }
+
+    private void cancel(final Timeout timeout) {
+        removeFromBucket(timeout);
+        pendingTimeouts--;
+        stopTimerIfIdle();
+    }
+
+    private void stopTimerIfIdle() {
+        if (pendingTimeouts == 0 && timerId != -1 && !ticking) {
+            vertx.cancelTimer(timerId);
+            timerId = -1;
+        }
+    }
+
+    private void addToBucket(final Timeout timeout) {
+        final Timeout head = wheel[timeout.bucket];
+        timeout.next = head;
+        if (head != null) {
+            head.prev = timeout;
+        }
+        wheel[timeout.bucket] = timeout;
+    }
+
+    private void removeFromBucket(final Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            wheel[timeout.bucket] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.expiredOrCancelled = true;
+    }
+
+    /**
+     * Gets the number of timeouts that have neither expired nor been cancelled yet.
+     *
+     * @return The number of timeouts.
+     */
+    int pendingTimeouts() {
+        return pendingTimeouts;
+    }
+
+    /**
+     * A scheduled timeout.
+     */
+    static final class Timeout {
+
+        private final HashedTimingWheel timingWheel;
+        private final Handler<Void> task;
+        private long remainingRounds;
+        private int bucket;
+        private Timeout prev;
+        private Timeout next;
+        private boolean expiredOrCancelled;
+
+        private Timeout(final HashedTimingWheel timingWheel, final Handler<Void> task, final long remainingRounds) {
+            this.timingWheel = timingWheel;
+            this.task = task;
+            this.remainingRounds = remainingRounds;
+        }
+
+        /**
+         * Cancels this timeout.
+         * <p>
+         * This method does nothing if the timeout has already expired or has been cancelled.
+         */
+        void cancel() {
+            if (!expiredOrCancelled) {
+                timingWheel.cancel(this);
+            }
+        }
+    }
+}
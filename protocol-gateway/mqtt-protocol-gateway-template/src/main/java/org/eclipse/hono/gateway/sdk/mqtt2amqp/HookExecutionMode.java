@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+/**
+ * The threads on which a {@link GatewayHook} is invoked.
+ *
+ * @see MqttProtocolGatewayConfig#setHookExecutionModes(java.util.Map)
+ */
+public enum HookExecutionMode {
+    /**
+     * The hook is invoked on the event loop of the gateway instance. The hook must not block.
+     */
+    EVENT_LOOP,
+    /**
+     * The hook is invoked on a pool of worker threads, see
+     * {@link MqttProtocolGatewayConfig#setHookWorkerPoolSize(int)}.
+     */
+    WORKER_POOL,
+    /**
+     * The hook is invoked on a new virtual thread per invocation. Virtual threads require Java 21 or later, on older
+     * Java versions the hook is invoked on the pool of worker threads instead.
+     */
+    VIRTUAL_THREAD
+}
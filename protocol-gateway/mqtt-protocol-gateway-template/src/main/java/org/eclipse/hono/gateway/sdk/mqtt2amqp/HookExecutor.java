@@ -0,0 +1,229 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import java.lang.reflect.Method;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+
+/**
+ * Invokes the {@link GatewayHook}s of a gateway instance in their configured {@link HookExecutionMode}.
+ * <p>
+ * Hooks that are not invoked on the event loop are invoked one after the other per ordering key, e.g. per device
+ * connection: an invocation starts after the future returned by the previous invocation with the same key has
+ * completed. The outcome of an invocation is always passed on on the event loop.
+ * <p>
+ * The time that each invocation takes until it returns its future is reported, so that blocking hooks can be
+ * identified.
+ * <p>
+ * This class is not thread-safe, it is meant to be used on the event loop of a gateway instance.
+ */
+final class HookExecutor {
+
+    /**
+     * The name of the pool of worker threads, which is shared by all gateway instances.
+     */
+    static final String WORKER_POOL_NAME = "hono-protocol-gateway-hooks";
+
+    private static final Logger LOG = LoggerFactory.getLogger(HookExecutor.class);
+
+    private final Map<GatewayHook, Map<Object, Future<?>>> pending = new EnumMap<>(GatewayHook.class);
+    private final Map<GatewayHook, HookExecutionMode> modes;
+    private final Vertx vertx;
+    private final int workerPoolSize;
+    private final DurationReporter reporter;
+    private WorkerExecutor workerPool;
+    private Executor workerPoolExecutor;
+    private ExecutorService virtualThreads;
+    private boolean virtualThreadsUnavailable;
+
+    /**
+     * Receives the time it took to invoke a hook.
+     */
+    @FunctionalInterface
+    interface DurationReporter {
+
+        /**
+         * Reports the time it took to invoke a hook.
+         *
+         * @param hook The hook.
+         * @param tenantId The tenant of the device or {@code null} if the device has not been authenticated yet.
+         * @param durationNanos The time until the hook has returned.
+         */
+        void report(GatewayHook hook, String tenantId, long durationNanos);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param vertx The Vert.x instance to get the worker threads from.
+     * @param modes The execution modes per hook. Hooks that are not contained are invoked on the event loop.
+     * @param workerPoolSize The number of threads of the worker pool.
+     * @param reporter The receiver of the invocation durations.
+     * @throws NullPointerException if any of the parameters is {@code null}.
+     * @throws IllegalArgumentException if the pool size is smaller than 1.
+     */
+    HookExecutor(final Vertx vertx, final Map<GatewayHook, HookExecutionMode> modes, final int workerPoolSize,
+            final DurationReporter reporter) {
+
+        Objects.requireNonNull(vertx);
+        Objects.requireNonNull(modes);
+        Objects.requireNonNull(reporter);
+        if (workerPoolSize < 1) {
+            throw new IllegalArgumentException("worker pool size must be at least 1");
+        }
+        this.vertx = vertx;
+        this.modes = modes.isEmpty() ? new EnumMap<>(GatewayHook.class) : new EnumMap<>(modes);
+        this.workerPoolSize = workerPoolSize;
+        this.reporter = reporter;
+    }
+
+    /**
+     * Checks if a hook is invoked on the event loop.
+     *
+     * @param hook The hook.
+     * @return {@code true} if the hook is invoked on the calling thread.
+     */
+    boolean isOnEventLoop(final GatewayHook hook) {
+        return modes.getOrDefault(hook, HookExecutionMode.EVENT_LOOP) == HookExecutionMode.EVENT_LOOP;
+    }
+
+    /**
+     * Invokes a hook.
+     * <p>
+     * A hook that is executed on the event loop is invoked on the calling thread before this method returns, and
+     * exceptions thrown by the hook are passed on to the caller. Otherwise the hook is invoked on another thread and
+     * exceptions thrown by the hook fail the returned future.
+     *
+     * @param <T> The type of the hook's result.
+     * @param hook The hook.
+     * @param orderingKey The key of the invocations that must not overlap, e.g. the device connection.
+     * @param tenantId The tenant of the device or {@code null} if the device has not been authenticated yet.
+     * @param invocation The invocation of the hook.
+     * @return The future returned by the hook, completed on the event loop.
+     * @throws NullPointerException if the hook, the key or the invocation is {@code null}.
+     */
+    <T> Future<T> execute(final GatewayHook hook, final Object orderingKey, final String tenantId,
+            final Supplier<Future<T>> invocation) {
+
+        Objects.requireNonNull(hook);
+        Objects.requireNonNull(orderingKey);
+        Objects.requireNonNull(invocation);
+
+        final HookExecutionMode mode = modes.getOrDefault(hook, HookExecutionMode.EVENT_LOOP);
+        if (mode == HookExecutionMode.EVENT_LOOP) {
+            final long start = System.nanoTime();
+            try {
+                return invocation.get();
+            } finally {
+                reporter.report(hook, tenantId, System.nanoTime() - start);
+            }
+        }
+
+        final Executor executor = getExecutor(mode);
+        final Map<Object, Future<?>> hookPending = pending.computeIfAbsent(hook, k -> new HashMap<>());
+        final Future<?> previous = hookPending.get(orderingKey);
+        final Future<T> result = previous == null
+                ? invoke(executor, hook, tenantId, invocation)
+                : previous.transform(ar -> invoke(executor, hook, tenantId, invocation));
+        hookPending.put(orderingKey, result);
+        result.onComplete(ar -> hookPending.remove(orderingKey, result));
+        return result;
+    }
+
+    private <T> Future<T> invoke(final Executor executor, final GatewayHook hook, final String tenantId,
+            final Supplier<Future<T>> invocation) {
+
+        final Context context = vertx.getOrCreateContext();
+        final Promise<T> result = Promise.promise();
+        executor.execute(() -> {
+            final long start = System.nanoTime();
+            Future<T> outcome;
+            try {
+                outcome = invocation.get();
+                if (outcome == null) {
+                    outcome = Future.failedFuture(new IllegalStateException(hook + " returned null"));
+                }
+            } catch (RuntimeException e) {
+                outcome = Future.failedFuture(e);
+            }
+            final long duration = System.nanoTime() - start;
+            final Future<T> returned = outcome;
+            // the hook may complete its future on any thread
+            returned.onComplete(ar -> context.runOnContext(v -> {
+                reporter.report(hook, tenantId, duration);
+                result.handle(ar);
+            }));
+        });
+        return result.future();
+    }
+
+    private Executor getExecutor(final HookExecutionMode mode) {
+        if (mode == HookExecutionMode.VIRTUAL_THREAD && !virtualThreadsUnavailable) {
+            if (virtualThreads == null) {
+                virtualThreads = newVirtualThreadExecutor();
+            }
+            if (virtualThreads != null) {
+                return virtualThreads;
+            }
+            LOG.info("virtual threads are not supported by the Java runtime, invoking hooks on worker threads");
+            virtualThreadsUnavailable = true;
+        }
+        if (workerPoolExecutor == null) {
+            workerPool = vertx.createSharedWorkerExecutor(WORKER_POOL_NAME, workerPoolSize);
+            workerPoolExecutor = task -> workerPool.executeBlocking(promise -> {
+                task.run();
+                promise.complete();
+            }, false);
+        }
+        return workerPoolExecutor;
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            final Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Releases the threads used by this instance.
+     */
+    void close() {
+        if (workerPool != null) {
+            workerPool.close();
+        }
+        if (virtualThreads != null) {
+            virtualThreads.shutdown();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import java.util.Objects;
+
+/**
+ * A map with MQTT message ids as keys.
+ * <p>
+ * The keys are stored as primitive values in an open addressing table with linear probing, so that neither the keys
+ * are boxed nor entry nodes are allocated. MQTT message ids are assigned sequentially, which makes the identity of
+ * the id a collision-free hash for consecutive ids. The table is only allocated when the first entry is added, so a
+ * device that never receives commands with QoS 1 does not pay for it.
+ * <p>
+ * This class is not thread-safe, it is meant to be used on the event loop of a gateway instance.
+ *
+ * @param <V> The type of the values.
+ */
+final class MessageIdMap<V> {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private int[] keys;
+    // a slot is free if its value is null
+    private Object[] values;
+    private int size;
+
+    /**
+     * Associates a value with a message id.
+     *
+     * @param messageId The message id.
+     * @param value The value.
+     * @return The value previously associated with the message id or {@code null} if there was none.
+     * @throws NullPointerException if the value is {@code null}.
+     */
+    V put(final int messageId, final V value) {
+        Objects.requireNonNull(value);
+
+        if (values == null) {
+            keys = new int[INITIAL_CAPACITY];
+            values = new Object[INITIAL_CAPACITY];
+        }
+        final int mask = values.length - 1;
+        int index = messageId & mask;
+        while (values[index] != null) {
+            if (keys[index] == messageId) {
+                final V previous = valueAt(index);
+                values[index] = value;
+                return previous;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = messageId;
+        values[index] = value;
+        size++;
+        if (size > values.length >> 1) {
+            resize(values.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * Gets the value associated with a message id.
+     *
+     * @param messageId The message id.
+     * @return The value or {@code null} if there is none.
+     */
+    V get(final int messageId) {
+        final int index = indexOf(messageId);
+        return index < 0 ? null : valueAt(index);
+    }
+
+    /**
+     * Removes the value associated with a message id.
+     *
+     * @param messageId The message id.
+     * @return The removed value or {@code null} if there was none.
+     */
+    V remove(final int messageId) {
+        final int index = indexOf(messageId);
+        if (index < 0) {
+            return null;
+        }
+        final V removed = valueAt(index);
+        shiftBack(index);
+        size--;
+        return removed;
+    }
+
+    /**
+     * Gets the number of entries.
+     *
+     * @return The number of entries.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Checks if the map contains no entries.
+     *
+     * @return {@code true} if the map is empty.
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    private int indexOf(final int messageId) {
+        if (values == null) {
+            return -1;
+        }
+        final int mask = values.length - 1;
+        int index = messageId & mask;
+        while (values[index] != null) {
+            if (keys[index] == messageId) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Closes the gap left by a removed entry by moving subsequent entries of the same probe sequence backwards, so
+     * that lookups do not need tombstones.
+     */
+    private void shiftBack(final int removedIndex) {
+        final int mask = values.length - 1;
+        int gap = removedIndex;
+        int index = (gap + 1) & mask;
+        while (values[index] != null) {
+            final int home = keys[index] & mask;
+            // move the entry if its home slot is not in the (cyclic) range (gap, index]
+            if (((index - home) & mask) >= ((index - gap) & mask)) {
+                keys[gap] = keys[index];
+                values[gap] = values[index];
+                gap = index;
+            }
+            index = (index + 1) & mask;
+        }
+        values[gap] = null;
+    }
+
+    private void resize(final int capacity) {
+        final int[] oldKeys = keys;
+        final Object[] oldValues = values;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        final int mask = capacity - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int index = oldKeys[i] & mask;
+                while (values[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(final int index) {
+        return (V) values[index];
+    }
+}
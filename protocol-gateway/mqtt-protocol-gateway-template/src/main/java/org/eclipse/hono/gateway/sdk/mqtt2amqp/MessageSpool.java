@@ -0,0 +1,510 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.eclipse.hono.gateway.sdk.mqtt2amqp.downstream.DownstreamMessage;
+import org.eclipse.hono.gateway.sdk.mqtt2amqp.downstream.EventMessage;
+import org.eclipse.hono.gateway.sdk.mqtt2amqp.downstream.TelemetryMessage;
+import org.eclipse.hono.util.QoS;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * A first-in-first-out queue of the messages of a tenant that could not be forwarded to Hono, kept in memory-mapped
+ * segment files on disk.
+ * <p>
+ * Messages are appended to the last segment. When it is full, a new segment is created, unless the maximum number of
+ * segments has been reached. A segment file is deleted when all of its messages have been removed, i.e. a drained spool
+ * has no segment files at all. Each record starts with its length, which is written last, so that a record becomes
+ * visible atomically. When a message is removed, the length is negated, so that the spool can be recovered from its
+ * files after a restart.
+ * <p>
+ * The files are not forced to the storage device, i.e. the spooled messages survive a crash of the gateway process,
+ * but not necessarily a crash of the operating system.
+ * <p>
+ * Only events and telemetry messages with QoS 1 are spooled. Their application properties are not spooled, because
+ * they are not forwarded to Hono anyway.
+ * <p>
+ * This class is thread-safe, its methods are synchronized on the instance. The spool of a tenant is shared by all
+ * gateway instances of a Vert.x instance, but only one of them forwards the spooled messages at a time, see
+ * {@link #tryClaim(long, int)}.
+ */
+final class MessageSpool {
+
+    static final String SEGMENT_SUFFIX = ".segment";
+
+    private static final Logger LOG = LoggerFactory.getLogger(MessageSpool.class);
+    private static final int LENGTH_SIZE = Integer.BYTES;
+    // spooled at, type, length of device ID, length of content type
+    private static final int FIXED_SIZE = Long.BYTES + 1 + Short.BYTES + Short.BYTES;
+    private static final byte TYPE_TELEMETRY = 0;
+    private static final byte TYPE_EVENT = 1;
+
+    private final String tenantId;
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+
+    private long nextSegmentNumber;
+    private int readPosition;
+    private int messages;
+    private boolean claimed;
+    private long lastClaimed;
+
+    private MessageSpool(final String tenantId, final Path directory, final int segmentSize, final int maxSegments) {
+        this.tenantId = tenantId;
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+    }
+
+    /**
+     * Opens the spool of a tenant, recovering the messages that have been spooled before.
+     * <p>
+     * The directory is created if it does not exist.
+     *
+     * @param tenantId The tenant.
+     * @param directory The directory containing the segment files of the tenant.
+     * @param segmentSize The size of new segment files in bytes.
+     * @param maxSegments The maximum number of segment files.
+     * @return The spool.
+     * @throws NullPointerException if the tenant or the directory is {@code null}.
+     * @throws IOException if the directory or the files cannot be accessed.
+     */
+    static MessageSpool open(final String tenantId, final Path directory, final int segmentSize,
+            final int maxSegments) throws IOException {
+
+        Objects.requireNonNull(tenantId);
+        Objects.requireNonNull(directory);
+
+        final MessageSpool spool = new MessageSpool(tenantId, directory, segmentSize, maxSegments);
+        Files.createDirectories(directory);
+        final List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        for (final Path file : files) {
+            spool.recover(file);
+        }
+        if (spool.messages > 0) {
+            LOG.info("recovered {} spooled messages of tenant [{}]", spool.messages, tenantId);
+        }
+        return spool;
+    }
+
+    private void recover(final Path file) throws IOException {
+        final String name = file.getFileName().toString();
+        final long number = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        final Segment segment = new Segment(file, map(file, (int) Files.size(file)));
+
+        int position = 0;
+        int firstPending = -1;
+        int length;
+        while ((length = segment.lengthAt(position)) != 0) {
+            final int size = LENGTH_SIZE + Math.abs(length);
+            if (length > 0) {
+                messages++;
+                if (firstPending < 0) {
+                    firstPending = position;
+                }
+            }
+            position += size;
+        }
+        segment.writePosition = position;
+        nextSegmentNumber = number + 1;
+
+        if (segments.isEmpty() && firstPending < 0) {
+            // all messages of the segment have been removed before
+            Files.deleteIfExists(file);
+            return;
+        }
+        if (segments.isEmpty()) {
+            readPosition = firstPending;
+        }
+        segments.addLast(segment);
+    }
+
+    private static MappedByteBuffer map(final Path file, final int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    /**
+     * Gets the tenant of the spooled messages.
+     *
+     * @return The tenant.
+     */
+    String getTenantId() {
+        return tenantId;
+    }
+
+    /**
+     * Checks whether a message can be spooled, i.e. if it is an event or a telemetry message with QoS 1.
+     *
+     * @param message The message.
+     * @return {@code true} if the message can be spooled.
+     */
+    static boolean isSpoolable(final DownstreamMessage message) {
+        return message instanceof EventMessage
+                || message instanceof TelemetryMessage telemetry && telemetry.getQos() == QoS.AT_LEAST_ONCE;
+    }
+
+    /**
+     * Appends a message to the spool.
+     * <p>
+     * If a new segment is needed, its file is created and mapped into memory, which blocks the calling thread.
+     *
+     * @param deviceId The device that has published the message.
+     * @param message The message, see {@link #isSpoolable(DownstreamMessage)}.
+     * @param spooledAt The time at which the message is spooled in milliseconds since the epoch.
+     * @return {@code true} if the message has been spooled, {@code false} if the spool is full, the message is larger
+     *         than a segment or the segment file could not be created.
+     * @throws IllegalArgumentException if the message cannot be spooled.
+     */
+    synchronized boolean append(final String deviceId, final DownstreamMessage message, final long spooledAt) {
+
+        if (!isSpoolable(message)) {
+            throw new IllegalArgumentException("only events and telemetry messages with QoS 1 can be spooled");
+        }
+        final byte[] device = deviceId.getBytes(StandardCharsets.UTF_8);
+        final byte[] contentType = message.getContentType() == null ? new byte[0]
+                : message.getContentType().getBytes(StandardCharsets.UTF_8);
+        final Buffer payload = message.getPayload() == null ? Buffer.buffer() : message.getPayload();
+        final int length = FIXED_SIZE + device.length + contentType.length + payload.length();
+        // the length of the next record must fit behind the record or be beyond the end of the segment
+        if (LENGTH_SIZE + length > segmentSize || device.length > Short.MAX_VALUE
+                || contentType.length > Short.MAX_VALUE) {
+            return false;
+        }
+
+        Segment segment = segments.peekLast();
+        if (segment == null || segment.remaining() < LENGTH_SIZE + length) {
+            if (segments.size() >= maxSegments) {
+                return false;
+            }
+            try {
+                segment = createSegment();
+            } catch (IOException e) {
+                LOG.warn("cannot create spool segment for tenant [{}]", tenantId, e);
+                return false;
+            }
+        }
+
+        final MappedByteBuffer buffer = segment.buffer;
+        int position = segment.writePosition + LENGTH_SIZE;
+        buffer.putLong(position, spooledAt);
+        position += Long.BYTES;
+        buffer.put(position, message instanceof EventMessage ? TYPE_EVENT : TYPE_TELEMETRY);
+        position += 1;
+        buffer.putShort(position, (short) device.length);
+        position += Short.BYTES;
+        buffer.put(position, device);
+        position += device.length;
+        buffer.putShort(position, (short) contentType.length);
+        position += Short.BYTES;
+        buffer.put(position, contentType);
+        position += contentType.length;
+        buffer.put(position, payload.getBytes());
+        // writing the length makes the record visible
+        buffer.putInt(segment.writePosition, length);
+
+        segment.writePosition += LENGTH_SIZE + length;
+        messages++;
+        return true;
+    }
+
+    private Segment createSegment() throws IOException {
+        final Path file = directory.resolve(String.format("%020d%s", nextSegmentNumber, SEGMENT_SUFFIX));
+        final Segment segment = new Segment(file, map(file, segmentSize));
+        nextSegmentNumber++;
+        if (segments.isEmpty()) {
+            readPosition = 0;
+        }
+        segments.addLast(segment);
+        return segment;
+    }
+
+    /**
+     * Gets the oldest message of the spool without removing it.
+     *
+     * @return The message or {@code null} if the spool is empty.
+     */
+    synchronized SpooledMessage peek() {
+        if (messages == 0) {
+            return null;
+        }
+        final Segment segment = skipRemoved();
+        final MappedByteBuffer buffer = segment.buffer;
+        final int length = buffer.getInt(readPosition);
+        int position = readPosition + LENGTH_SIZE;
+        final long spooledAt = buffer.getLong(position);
+        position += Long.BYTES;
+        final boolean event = buffer.get(position) == TYPE_EVENT;
+        position += 1;
+        final String deviceId = getString(buffer, position);
+        position += Short.BYTES + buffer.getShort(position);
+        final String contentType = buffer.getShort(position) == 0 ? null : getString(buffer, position);
+        position += Short.BYTES + buffer.getShort(position);
+        final byte[] payload = new byte[readPosition + LENGTH_SIZE + length - position];
+        buffer.get(position, payload);
+        return new SpooledMessage(spooledAt, deviceId, event, contentType, Buffer.buffer(payload));
+    }
+
+    private static String getString(final MappedByteBuffer buffer, final int position) {
+        final byte[] bytes = new byte[buffer.getShort(position)];
+        buffer.get(position + Short.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Removes the oldest message from the spool.
+     * <p>
+     * A segment file is deleted when all of its messages have been removed. If the spool becomes empty, all segment
+     * files are deleted, so that the next message is appended to a new segment instead of the remaining space of the
+     * last one.
+     */
+    synchronized void remove() {
+        if (messages == 0) {
+            return;
+        }
+        final Segment segment = skipRemoved();
+        final int length = segment.lengthAt(readPosition);
+        segment.buffer.putInt(readPosition, -length);
+        readPosition += LENGTH_SIZE + length;
+        messages--;
+        if (messages > 0) {
+            skipRemoved();
+        } else {
+            // the last segment may be exhausted, which would keep a spool with a single segment full forever
+            while (!segments.isEmpty()) {
+                deleteFirstSegment();
+            }
+            readPosition = 0;
+        }
+    }
+
+    /**
+     * Advances the read position to the next message that has not been removed, deleting the segments that have been
+     * read completely.
+     */
+    private Segment skipRemoved() {
+        Segment segment = segments.peekFirst();
+        int length;
+        while ((length = segment.lengthAt(readPosition)) <= 0) {
+            if (length == 0) {
+                deleteFirstSegment();
+                segment = segments.peekFirst();
+                readPosition = 0;
+            } else {
+                readPosition += LENGTH_SIZE - length;
+            }
+        }
+        return segment;
+    }
+
+    private void deleteFirstSegment() {
+        final Segment segment = segments.removeFirst();
+        try {
+            Files.deleteIfExists(segment.file);
+        } catch (IOException e) {
+            LOG.warn("cannot delete spool segment [{}]", segment.file, e);
+        }
+    }
+
+    /**
+     * Gets the number of spooled messages.
+     *
+     * @return The number of messages.
+     */
+    synchronized int size() {
+        return messages;
+    }
+
+    /**
+     * Checks whether the spool is empty.
+     *
+     * @return {@code true} if no message is spooled.
+     */
+    synchronized boolean isEmpty() {
+        return messages == 0;
+    }
+
+    /**
+     * Gets the number of bytes used by the segment files.
+     *
+     * @return The number of bytes.
+     */
+    synchronized long getSizeInBytes() {
+        return segments.stream().mapToLong(segment -> segment.buffer.capacity()).sum();
+    }
+
+    /**
+     * Gets the time at which the oldest message has been spooled.
+     *
+     * @return The time in milliseconds since the epoch or 0 if the spool is empty.
+     */
+    synchronized long getOldestTimestamp() {
+        if (messages == 0) {
+            return 0;
+        }
+        return skipRemoved().buffer.getLong(readPosition + LENGTH_SIZE);
+    }
+
+    /**
+     * Claims the spool for forwarding its messages.
+     * <p>
+     * Only one gateway instance at a time may forward the messages, in order to preserve their order. The number of
+     * messages that may be forwarded is determined by the rate and the time since the previous claim, so that the
+     * rate applies to all gateway instances together.
+     *
+     * @param now The current time in milliseconds.
+     * @param ratePerSecond The maximum number of messages to be forwarded per second.
+     * @return The number of messages that may be forwarded or 0 if the spool has already been claimed or the previous
+     *         claim has been too recent.
+     * @see #release()
+     */
+    synchronized int tryClaim(final long now, final int ratePerSecond) {
+        if (claimed) {
+            return 0;
+        }
+        // at most the messages of one second are forwarded at once
+        final long elapsed = Math.min(now - lastClaimed, 1000);
+        final int permits = (int) (elapsed * ratePerSecond / 1000);
+        if (permits > 0) {
+            claimed = true;
+            lastClaimed = now;
+        }
+        return permits;
+    }
+
+    /**
+     * Releases the claim of the spool.
+     */
+    synchronized void release() {
+        claimed = false;
+    }
+
+    /**
+     * A segment file mapped into memory.
+     */
+    private static final class Segment {
+
+        final Path file;
+        final MappedByteBuffer buffer;
+        int writePosition;
+
+        Segment(final Path file, final MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        int remaining() {
+            return buffer.capacity() - writePosition;
+        }
+
+        /**
+         * Gets the length of the record at a position, 0 if there is no record.
+         */
+        int lengthAt(final int position) {
+            return position + LENGTH_SIZE > buffer.capacity() ? 0 : buffer.getInt(position);
+        }
+    }
+
+    /**
+     * A message that has been read from the spool.
+     */
+    static final class SpooledMessage {
+
+        private final long spooledAt;
+        private final String deviceId;
+        private final boolean event;
+        private final String contentType;
+        private final Buffer payload;
+
+        SpooledMessage(final long spooledAt, final String deviceId, final boolean event, final String contentType,
+                final Buffer payload) {
+            this.spooledAt = spooledAt;
+            this.deviceId = deviceId;
+            this.event = event;
+            this.contentType = contentType;
+            this.payload = payload;
+        }
+
+        /**
+         * Gets the time at which the message has been spooled.
+         *
+         * @return The time in milliseconds since the epoch.
+         */
+        long getSpooledAt() {
+            return spooledAt;
+        }
+
+        /**
+         * Gets the device that has published the message.
+         *
+         * @return The device ID.
+         */
+        String getDeviceId() {
+            return deviceId;
+        }
+
+        /**
+         * Checks whether the message is an event.
+         *
+         * @return {@code true} if the message is an event, {@code false} if it is a telemetry message with QoS 1.
+         */
+        boolean isEvent() {
+            return event;
+        }
+
+        /**
+         * Gets the content type of the message.
+         *
+         * @return The content type or {@code null} if not set.
+         */
+        String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * Gets the payload of the message.
+         *
+         * @return The payload.
+         */
+        Buffer getPayload() {
+            return payload;
+        }
+    }
+}
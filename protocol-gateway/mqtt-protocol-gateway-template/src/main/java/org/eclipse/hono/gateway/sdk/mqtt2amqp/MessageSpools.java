@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.Shareable;
+
+/**
+ * The spools of all tenants in the spool directory.
+ * <p>
+ * Each tenant has its own subdirectory, whose name is the URL-safe Base64 encoding of the tenant ID, so that any
+ * tenant ID can be used. The spools that exist in the directory are opened when the instance is created, so that their
+ * messages are forwarded after a restart of the gateway.
+ * <p>
+ * This class is thread-safe.
+ */
+final class MessageSpools implements Shareable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MessageSpools.class);
+    private static final String SHARED_DATA_KEY = MessageSpools.class.getName();
+
+    private final Map<String, MessageSpool> spools = new ConcurrentHashMap<>();
+    private final AtomicReference<Object> metricsReporter = new AtomicReference<>();
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+
+    /**
+     * Creates an instance, opening the spools that exist in the directory.
+     * <p>
+     * <b>This constructor is for testing purposes only.</b>
+     *
+     * @param config The configuration of the gateway, containing the spool directory.
+     * @throws NullPointerException if the configuration or its spool directory is {@code null}.
+     * @throws UncheckedIOException if the directory cannot be read.
+     */
+    MessageSpools(final MqttProtocolGatewayConfig config) {
+        this.directory = Paths.get(Objects.requireNonNull(config.getSpoolDirectory()));
+        this.segmentSize = config.getSpoolSegmentSize();
+        this.maxSegments = config.getSpoolMaxSegments();
+        recover();
+    }
+
+    /**
+     * Gets the spools that are shared by all gateway instances of a Vert.x instance.
+     * <p>
+     * The configuration of the first gateway instance that gets the spools is used.
+     *
+     * @param vertx The Vert.x instance.
+     * @param config The configuration of the gateway, containing the spool directory.
+     * @return The spools.
+     * @throws NullPointerException if any of the parameters or the spool directory is {@code null}.
+     * @throws UncheckedIOException if the spool directory cannot be read.
+     */
+    static MessageSpools getInstance(final Vertx vertx, final MqttProtocolGatewayConfig config) {
+        Objects.requireNonNull(vertx);
+        return vertx.sharedData().<String, MessageSpools> getLocalMap(SHARED_DATA_KEY)
+                .computeIfAbsent(SHARED_DATA_KEY, k -> new MessageSpools(config));
+    }
+
+    private void recover() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        final List<Path> tenantDirectories;
+        try (Stream<Path> list = Files.list(directory)) {
+            tenantDirectories = list.filter(Files::isDirectory).collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        for (final Path tenantDirectory : tenantDirectories) {
+            final String tenantId;
+            try {
+                tenantId = new String(Base64.getUrlDecoder().decode(tenantDirectory.getFileName().toString()),
+                        StandardCharsets.UTF_8);
+            } catch (IllegalArgumentException e) {
+                LOG.warn("ignoring unexpected directory [{}] in spool directory", tenantDirectory);
+                continue;
+            }
+            try {
+                spools.put(tenantId, MessageSpool.open(tenantId, tenantDirectory, segmentSize, maxSegments));
+            } catch (IOException e) {
+                LOG.warn("cannot recover spool of tenant [{}]", tenantId, e);
+            }
+        }
+    }
+
+    /**
+     * Gets the spool of a tenant if it has been opened.
+     *
+     * @param tenantId The tenant.
+     * @return The spool or {@code null} if no message of the tenant has been spooled yet.
+     */
+    MessageSpool get(final String tenantId) {
+        return spools.get(tenantId);
+    }
+
+    /**
+     * Gets the spool of a tenant, opening it if necessary.
+     * <p>
+     * Opening the spool accesses the file system, which blocks the calling thread.
+     *
+     * @param tenantId The tenant.
+     * @return The spool or {@code null} if it cannot be opened.
+     */
+    MessageSpool getOrOpen(final String tenantId) {
+        try {
+            return spools.computeIfAbsent(tenantId, k -> {
+                final Path tenantDirectory = directory.resolve(Base64.getUrlEncoder().withoutPadding()
+                        .encodeToString(tenantId.getBytes(StandardCharsets.UTF_8)));
+                try {
+                    return MessageSpool.open(tenantId, tenantDirectory, segmentSize, maxSegments);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            LOG.warn("cannot open spool of tenant [{}]", tenantId, e.getCause());
+            return null;
+        }
+    }
+
+    /**
+     * Gets the spools that have been opened.
+     *
+     * @return The spools.
+     */
+    Collection<MessageSpool> getAll() {
+        return spools.values();
+    }
+
+    /**
+     * Checks whether a gateway instance reports the state of the spools to the metrics.
+     * <p>
+     * The spools are shared by all gateway instances, so only one of them reports them. The first instance that asks
+     * becomes the reporter until it releases the role.
+     *
+     * @param instance The gateway instance.
+     * @return {@code true} if the instance is the reporter.
+     * @throws NullPointerException if the instance is {@code null}.
+     */
+    boolean isMetricsReporter(final Object instance) {
+        Objects.requireNonNull(instance);
+        return metricsReporter.compareAndSet(null, instance) || metricsReporter.get() == instance;
+    }
+
+    /**
+     * Releases the role of the reporter of the metrics, so that another gateway instance can take it over.
+     *
+     * @param instance The gateway instance that is stopped.
+     */
+    void releaseMetricsReporter(final Object instance) {
+        metricsReporter.compareAndSet(instance, null);
+    }
+}
@@ -13,13 +13,17 @@
 
 package org.eclipse.hono.gateway.sdk.mqtt2amqp;
 
+import java.util.List;
 import java.util.Objects;
 
+import org.apache.qpid.proton.amqp.Binary;
 import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
+import org.apache.qpid.proton.amqp.messaging.Data;
 import org.apache.qpid.proton.message.Message;
 import org.eclipse.hono.auth.Device;
 import org.eclipse.hono.client.amqp.connection.AmqpUtils;
 
+import io.netty.buffer.Unpooled;
 import io.vertx.core.buffer.Buffer;
 
 /**
@@ -29,10 +33,13 @@ public class MqttCommandContext {
 
     private final Message message;
     private final Device authenticatedDevice;
+    private final DeviceTopics deviceTopics;
+    private Buffer payload;
 
-    private MqttCommandContext(final Message message, final Device authenticatedDevice) {
+    private MqttCommandContext(final Message message, final DeviceTopics deviceTopics) {
         this.message = message;
-        this.authenticatedDevice = authenticatedDevice;
+        this.authenticatedDevice = deviceTopics.getDevice();
+        this.deviceTopics = deviceTopics;
     }
 
     /**
@@ -47,7 +54,22 @@ public class MqttCommandContext {
         Objects.requireNonNull(message);
         Objects.requireNonNull(authenticatedDevice);
 
-        return new MqttCommandContext(message, authenticatedDevice);
+        return fromAmqpMessage(message, DeviceTopics.bind(authenticatedDevice, List.of()));
+    }
+
+    /**
+     * Creates a new context for a command message.
+     *
+     * @param message The received command message.
+     * @param deviceTopics The topics of the authenticated device that have been bound when it connected.
+     * @return The context.
+     * @throws NullPointerException if any of the parameters is {@code null}.
+     */
+    public static MqttCommandContext fromAmqpMessage(final Message message, final DeviceTopics deviceTopics) {
+        Objects.requireNonNull(message);
+        Objects.requireNonNull(deviceTopics);
+
+        return new MqttCommandContext(message, deviceTopics);
     }
 
     /**
@@ -59,6 +81,15 @@ public class MqttCommandContext {
         return authenticatedDevice;
     }
 
+    /**
+     * Gets the topics of the device to which the command is addressed to.
+     *
+     * @return The topics that have been bound to the device's identity.
+     */
+    public DeviceTopics getDeviceTopics() {
+        return deviceTopics;
+    }
+
     /**
      * Indicates if the message represents a request/response or an one-way command.
      *
@@ -124,13 +155,30 @@ public class MqttCommandContext {
 
     /**
      * Returns the received payload.
+     * <p>
+     * If the payload is contained in a <em>Data</em> section, the returned buffer wraps the bytes of the AMQP message
+     * without copying them, so that the payload is passed on to the MQTT encoder of the device connection without
+     * intermediate copies. The buffer therefore has a fixed capacity and modifying it modifies the AMQP message. Use
+     * {@link Buffer#copy()} to obtain a buffer that can be modified.
      *
      * @return The payload - not {@code null}.
      */
     public Buffer getPayload() {
-        final Buffer payload = AmqpUtils.getPayload(message);
-        if (payload != null) {
-            return payload;
+        if (payload == null) {
+            payload = readPayload();
+        }
+        return payload;
+    }
+
+    private Buffer readPayload() {
+        if (message.getBody() instanceof Data data && data.getValue() != null) {
+            final Binary binary = data.getValue();
+            return Buffer.buffer(Unpooled.wrappedBuffer(binary.getArray(), binary.getArrayOffset(),
+                    binary.getLength()));
+        }
+        final Buffer amqpValuePayload = AmqpUtils.getPayload(message);
+        if (amqpValuePayload != null) {
+            return amqpValuePayload;
         } else {
             return Buffer.buffer();
         }
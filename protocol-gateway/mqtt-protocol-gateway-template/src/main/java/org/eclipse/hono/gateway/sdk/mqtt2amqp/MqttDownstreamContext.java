@@ -13,6 +13,7 @@
 
 package org.eclipse.hono.gateway.sdk.mqtt2amqp;
 
+import java.util.List;
 import java.util.Objects;
 
 import org.eclipse.hono.auth.Device;
@@ -30,12 +31,14 @@ public class MqttDownstreamContext {
     private final MqttPublishMessage message;
     private final MqttEndpoint deviceEndpoint;
     private final Device authenticatedDevice;
+    private final DeviceTopics deviceTopics;
     private final String topic;
     private final MqttQoS qos;
 
-    private MqttDownstreamContext(final Device authenticatedDevice, final MqttPublishMessage publishedMessage,
+    private MqttDownstreamContext(final DeviceTopics deviceTopics, final MqttPublishMessage publishedMessage,
             final MqttEndpoint deviceEndpoint, final String topic) {
-        this.authenticatedDevice = authenticatedDevice;
+        this.authenticatedDevice = deviceTopics.getDevice();
+        this.deviceTopics = deviceTopics;
         this.message = publishedMessage;
         this.deviceEndpoint = deviceEndpoint;
         this.topic = topic;
@@ -60,7 +63,28 @@ public class MqttDownstreamContext {
         Objects.requireNonNull(deviceEndpoint);
         Objects.requireNonNull(authenticatedDevice);
 
-        return new MqttDownstreamContext(authenticatedDevice, message, deviceEndpoint, message.topicName());
+        return fromPublishPacket(message, deviceEndpoint, DeviceTopics.bind(authenticatedDevice, List.of()));
+    }
+
+    /**
+     * Creates a new context for a published message.
+     *
+     * @param message The published MQTT message.
+     * @param deviceEndpoint The endpoint representing the device that has published the message.
+     * @param deviceTopics The topics of the authenticated device that have been bound when it connected.
+     * @return The context.
+     * @throws NullPointerException if any of the parameters are {@code null}.
+     */
+    public static MqttDownstreamContext fromPublishPacket(
+            final MqttPublishMessage message,
+            final MqttEndpoint deviceEndpoint,
+            final DeviceTopics deviceTopics) {
+
+        Objects.requireNonNull(message);
+        Objects.requireNonNull(deviceEndpoint);
+        Objects.requireNonNull(deviceTopics);
+
+        return new MqttDownstreamContext(deviceTopics, message, deviceEndpoint, message.topicName());
     }
 
     /**
@@ -90,6 +114,15 @@ public class MqttDownstreamContext {
         return authenticatedDevice;
     }
 
+    /**
+     * Gets the topics of the device that has published the message.
+     *
+     * @return The topics that have been bound to the device's identity.
+     */
+    public DeviceTopics deviceTopics() {
+        return deviceTopics;
+    }
+
     /**
      * Gets the topic that the message has been published to.
      *
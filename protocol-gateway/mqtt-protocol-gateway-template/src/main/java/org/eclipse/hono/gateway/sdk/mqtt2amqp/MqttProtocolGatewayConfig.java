@@ -13,6 +13,8 @@
 
 package org.eclipse.hono.gateway.sdk.mqtt2amqp;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 import org.eclipse.hono.config.AbstractConfig;
@@ -27,11 +29,91 @@ public class MqttProtocolGatewayConfig extends AbstractConfig {
      * The default number of milliseconds to wait for PUBACK.
      */
     protected static final int DEFAULT_COMMAND_ACK_TIMEOUT = 100;
+    /**
+     * The default maximum number of messages of a device connection that are uploaded concurrently, 0 means no limit.
+     */
+    protected static final int DEFAULT_MAX_IN_FLIGHT_UPLOADS_PER_ENDPOINT = 0;
+    /**
+     * The default number of seconds for which a successful device authentication is cached.
+     */
+    protected static final int DEFAULT_AUTHENTICATION_CACHE_TIME_TO_LIVE = 300;
+    /**
+     * The default maximum number of uploads of a tenant that are queued by the upload scheduler.
+     */
+    protected static final int DEFAULT_MAX_QUEUED_UPLOADS_PER_TENANT = 1000;
+    /**
+     * The default number of worker threads on which hooks are invoked.
+     */
+    protected static final int DEFAULT_HOOK_WORKER_POOL_SIZE = 20;
+    /**
+     * The default number of seconds for which a failed device authentication is cached.
+     */
+    protected static final int DEFAULT_AUTHENTICATION_CACHE_NEGATIVE_TIME_TO_LIVE = 30;
+    /**
+     * The default maximum number of successful client certificate validations to cache.
+     */
+    protected static final int DEFAULT_CERTIFICATE_VALIDATION_CACHE_MAX_SIZE = 10_000;
+    /**
+     * The default number of seconds for which the gateway credentials of a tenant are cached.
+     */
+    protected static final int DEFAULT_GATEWAY_CREDENTIALS_CACHE_TIME_TO_LIVE = 300;
+    /**
+     * The default size of the segment files of the spool in bytes.
+     */
+    protected static final int DEFAULT_SPOOL_SEGMENT_SIZE = 8 * 1024 * 1024;
+    /**
+     * The default maximum number of segment files of the spool of a tenant.
+     */
+    protected static final int DEFAULT_SPOOL_MAX_SEGMENTS = 32;
+    /**
+     * The default maximum number of spooled messages per second that are forwarded per tenant.
+     */
+    protected static final int DEFAULT_SPOOL_DRAIN_RATE = 500;
+    /**
+     * The default maximum number of TLS sessions in the session cache.
+     */
+    protected static final int DEFAULT_TLS_SESSION_CACHE_SIZE = 20_480;
+    /**
+     * The default number of seconds after which a cached TLS session or a session ticket expires.
+     */
+    protected static final int DEFAULT_TLS_SESSION_TIMEOUT = 86_400;
 
     private int commandAckTimeout = DEFAULT_COMMAND_ACK_TIMEOUT;
+    private int verticleInstances = 1;
+    private int amqpConnectionsPerTenant = 1;
+    private int maxInFlightUploadsPerEndpoint = DEFAULT_MAX_IN_FLIGHT_UPLOADS_PER_ENDPOINT;
+    private int maxInFlightUploadsPerTenant = 0;
+    private int maxConcurrentUploads = 0;
+    private int maxQueuedUploadsPerTenant = DEFAULT_MAX_QUEUED_UPLOADS_PER_TENANT;
+    private int defaultUploadWeight = 1;
+    private Map<String, Integer> uploadWeights = Map.of();
+    private Map<GatewayHook, HookExecutionMode> hookExecutionModes = Map.of();
+    private int hookWorkerPoolSize = DEFAULT_HOOK_WORKER_POOL_SIZE;
+    private int authenticationCacheMaxSize = 0;
+    private int authenticationCacheTimeToLive = DEFAULT_AUTHENTICATION_CACHE_TIME_TO_LIVE;
+    private int authenticationCacheNegativeTimeToLive = DEFAULT_AUTHENTICATION_CACHE_NEGATIVE_TIME_TO_LIVE;
+    private int certificateValidationCacheMaxSize = DEFAULT_CERTIFICATE_VALIDATION_CACHE_MAX_SIZE;
+    private int gatewayCredentialsCacheTimeToLive = DEFAULT_GATEWAY_CREDENTIALS_CACHE_TIME_TO_LIVE;
+    private int connectRateLimit = 0;
+    private int connectRateLimitPerTenant = 0;
+    private int maxConcurrentConnectionRequests = 0;
     private int port = 0;
     private String bindAddress = Constants.LOOPBACK_DEVICE_ADDRESS;
     private boolean sni;
+    private int tlsSessionCacheSize = DEFAULT_TLS_SESSION_CACHE_SIZE;
+    private int tlsSessionTimeout = DEFAULT_TLS_SESSION_TIMEOUT;
+    private int tlsCredentialsReloadInterval;
+    private boolean nativeTls;
+    private boolean nativeTransport;
+    private boolean reusePort;
+    private boolean tenantWideCommandConsumer;
+    private boolean singleConnectionPerDevice;
+    private int amqpConnectionLinger;
+    private List<String> preConnectedTenants = List.of();
+    private String spoolDirectory;
+    private int spoolSegmentSize = DEFAULT_SPOOL_SEGMENT_SIZE;
+    private int spoolMaxSegments = DEFAULT_SPOOL_MAX_SEGMENTS;
+    private int spoolDrainRate = DEFAULT_SPOOL_DRAIN_RATE;
 
     /**
      * Gets the host name or literal IP address of the network interface that this server's secure port is configured to
@@ -100,6 +182,162 @@ public class MqttProtocolGatewayConfig extends AbstractConfig {
         return this.sni;
     }
 
+    /**
+     * Gets the maximum number of TLS sessions in the session cache of the server.
+     *
+     * @return The maximum number of sessions.
+     */
+    public final int getTlsSessionCacheSize() {
+        return tlsSessionCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of TLS sessions in the session cache of the server.
+     * <p>
+     * Devices that reconnect can resume a cached session with an abbreviated handshake, which saves the expensive
+     * public key operations of a full handshake. Each cached session takes up about 1 KB of memory.
+     * <p>
+     * The default value of this property is {@value #DEFAULT_TLS_SESSION_CACHE_SIZE}.
+     *
+     * @param tlsSessionCacheSize The maximum number of sessions.
+     * @throws IllegalArgumentException if the size is smaller than 1.
+     */
+    public final void setTlsSessionCacheSize(final int tlsSessionCacheSize) {
+        if (tlsSessionCacheSize < 1) {
+            throw new IllegalArgumentException("TLS session cache size must be at least 1");
+        }
+        this.tlsSessionCacheSize = tlsSessionCacheSize;
+    }
+
+    /**
+     * Gets the time after which a cached TLS session or a session ticket expires.
+     *
+     * @return The time in seconds.
+     */
+    public final int getTlsSessionTimeout() {
+        return tlsSessionTimeout;
+    }
+
+    /**
+     * Sets the time after which a cached TLS session or a session ticket expires.
+     * <p>
+     * A device that reconnects after this time has to perform a full handshake.
+     * <p>
+     * The default value of this property is {@value #DEFAULT_TLS_SESSION_TIMEOUT}.
+     *
+     * @param tlsSessionTimeout The time in seconds.
+     * @throws IllegalArgumentException if the time is smaller than 1.
+     */
+    public final void setTlsSessionTimeout(final int tlsSessionTimeout) {
+        if (tlsSessionTimeout < 1) {
+            throw new IllegalArgumentException("TLS session timeout must be at least 1");
+        }
+        this.tlsSessionTimeout = tlsSessionTimeout;
+    }
+
+    /**
+     * Gets the interval in which the files of the TLS key & certificate and trust options are checked for changes.
+     *
+     * @return The interval in seconds or 0 if the files are not checked.
+     */
+    public final int getTlsCredentialsReloadInterval() {
+        return tlsCredentialsReloadInterval;
+    }
+
+    /**
+     * Sets the interval in which the files of the TLS key & certificate and trust options are checked for changes.
+     * <p>
+     * If the modification time of one of the files has changed, the key, the certificate and the trusted certificates
+     * are loaded again and used for the handshakes of new connections. Existing connections are kept. This allows to
+     * rotate the certificate of the server without restarting the gateway. If the files cannot be loaded, the
+     * previous credentials are kept.
+     * <p>
+     * The default value of this property is 0, which means that the files are loaded only during startup.
+     *
+     * @param tlsCredentialsReloadInterval The interval in seconds or 0 if the files should not be checked.
+     * @throws IllegalArgumentException if the interval is negative.
+     */
+    public final void setTlsCredentialsReloadInterval(final int tlsCredentialsReloadInterval) {
+        if (tlsCredentialsReloadInterval < 0) {
+            throw new IllegalArgumentException("TLS credentials reload interval must not be negative");
+        }
+        this.tlsCredentialsReloadInterval = tlsCredentialsReloadInterval;
+    }
+
+    /**
+     * Checks if the MQTT server should use OpenSSL for TLS.
+     *
+     * @return {@code true} if OpenSSL should be used if it is available.
+     */
+    public final boolean isNativeTls() {
+        return nativeTls;
+    }
+
+    /**
+     * Sets whether the MQTT server should use OpenSSL for TLS instead of the TLS implementation of the JDK.
+     * <p>
+     * OpenSSL (or BoringSSL) needs considerably less CPU time for handshakes and less memory per connection. It is
+     * only used if one of Netty's {@code netty-tcnative} artifacts is on the classpath. Otherwise the JDK is used and
+     * a warning is logged.
+     * <p>
+     * The default value of this property is {@code false}.
+     *
+     * @param nativeTls {@code true} if OpenSSL should be used if it is available.
+     */
+    public final void setNativeTls(final boolean nativeTls) {
+        this.nativeTls = nativeTls;
+    }
+
+    /**
+     * Checks if the Vert.x instance of the gateway should use the native transport.
+     *
+     * @return {@code true} if the native transport should be used if it is available.
+     */
+    public final boolean isNativeTransport() {
+        return nativeTransport;
+    }
+
+    /**
+     * Sets whether the Vert.x instance of the gateway should use the native transport (epoll on Linux) instead of
+     * Java NIO.
+     * <p>
+     * This property is not evaluated by the gateway itself, but by the application that creates the Vert.x instance
+     * with {@link io.vertx.core.VertxOptions#setPreferNativeTransport(boolean)}. The native transport is only used if
+     * Netty's {@code netty-transport-native-epoll} artifact for the platform is on the classpath. Otherwise Java NIO
+     * is used.
+     * <p>
+     * The default value of this property is {@code false}.
+     *
+     * @param nativeTransport {@code true} if the native transport should be used if it is available.
+     */
+    public final void setNativeTransport(final boolean nativeTransport) {
+        this.nativeTransport = nativeTransport;
+    }
+
+    /**
+     * Checks if the MQTT server socket should be bound with {@code SO_REUSEPORT}.
+     *
+     * @return {@code true} if the port may be shared.
+     */
+    public final boolean isReusePort() {
+        return reusePort;
+    }
+
+    /**
+     * Sets whether the MQTT server socket should be bound with {@code SO_REUSEPORT}.
+     * <p>
+     * This allows several gateway processes on the same host to listen on the same port, with the kernel distributing
+     * the connections between them. The verticle instances of one process share a single server socket anyway. The
+     * option only takes effect with the native transport, see {@link #setNativeTransport(boolean)}.
+     * <p>
+     * The default value of this property is {@code false}.
+     *
+     * @param reusePort {@code true} if the port may be shared.
+     */
+    public final void setReusePort(final boolean reusePort) {
+        this.reusePort = reusePort;
+    }
+
     /**
      * Gets the waiting for acknowledgement time out in milliseconds for commands published with QoS 1.
      * <p>
@@ -131,4 +369,757 @@ public class MqttProtocolGatewayConfig extends AbstractConfig {
         }
         this.commandAckTimeout = timeout;
     }
+
+    /**
+     * Gets the number of protocol gateway verticle instances to deploy.
+     * <p>
+     * Each instance runs its own MQTT server on its own event loop. The servers share the configured port, Vert.x
+     * distributes the incoming connections between them. Each instance keeps its own tenant connections, so an AMQP
+     * connection per tenant and instance is established.
+     * <p>
+     * If the property is set to 0, the number of processors available to the JVM is returned.
+     *
+     * @return The number of instances.
+     */
+    public final int getVerticleInstances() {
+        if (verticleInstances == 0) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return verticleInstances;
+    }
+
+    /**
+     * Sets the number of protocol gateway verticle instances to deploy.
+     * <p>
+     * The default value of this property is 1. Setting it to 0 deploys one instance per available processor.
+     *
+     * @param verticleInstances The number of instances or 0 to deploy one instance per processor.
+     * @throws IllegalArgumentException if the number is negative.
+     */
+    public final void setVerticleInstances(final int verticleInstances) {
+        if (verticleInstances < 0) {
+            throw new IllegalArgumentException("number of verticle instances must not be negative");
+        }
+        this.verticleInstances = verticleInstances;
+    }
+
+    /**
+     * Gets the number of AMQP connections that are opened to Hono's AMQP adapter per tenant.
+     * <p>
+     * The devices of a tenant are distributed over these connections, each device is always assigned to the same
+     * connection.
+     *
+     * @return The number of connections.
+     */
+    public final int getAmqpConnectionsPerTenant() {
+        return amqpConnectionsPerTenant;
+    }
+
+    /**
+     * Sets the number of AMQP connections that are opened to Hono's AMQP adapter per tenant.
+     * <p>
+     * The default value of this property is 1. More connections can increase the throughput of tenants with many
+     * devices, since the messages are then no longer limited by the flow control of a single link.
+     *
+     * @param amqpConnectionsPerTenant The number of connections.
+     * @throws IllegalArgumentException if the number is smaller than 1.
+     */
+    public final void setAmqpConnectionsPerTenant(final int amqpConnectionsPerTenant) {
+        if (amqpConnectionsPerTenant < 1) {
+            throw new IllegalArgumentException("number of AMQP connections per tenant must be at least 1");
+        }
+        this.amqpConnectionsPerTenant = amqpConnectionsPerTenant;
+    }
+
+    /**
+     * Gets the number of seconds for which the AMQP connections of a tenant are kept open after the last device of the
+     * tenant has disconnected.
+     *
+     * @return The linger period in seconds.
+     */
+    public final int getAmqpConnectionLinger() {
+        return amqpConnectionLinger;
+    }
+
+    /**
+     * Sets the number of seconds for which the AMQP connections of a tenant are kept open after the last device of the
+     * tenant has disconnected.
+     * <p>
+     * A device of the tenant that connects within this period re-uses the open connections instead of waiting for new
+     * connections to be established and authenticated, which benefits tenants with few devices that reconnect
+     * frequently.
+     * <p>
+     * The default value of this property is 0, which means that the connections are closed immediately.
+     *
+     * @param amqpConnectionLinger The linger period in seconds.
+     * @throws IllegalArgumentException if the number is negative.
+     */
+    public final void setAmqpConnectionLinger(final int amqpConnectionLinger) {
+        if (amqpConnectionLinger < 0) {
+            throw new IllegalArgumentException("linger period must not be negative");
+        }
+        this.amqpConnectionLinger = amqpConnectionLinger;
+    }
+
+    /**
+     * Gets the tenants whose AMQP connections are established when the gateway starts.
+     *
+     * @return The tenant IDs.
+     */
+    public final List<String> getPreConnectedTenants() {
+        return preConnectedTenants;
+    }
+
+    /**
+     * Sets the tenants whose AMQP connections are established when the gateway starts.
+     * <p>
+     * The connections of these tenants are kept open while no device of the tenant is connected, so that the devices
+     * never wait for a new connection. If a connection cannot be established at startup, it is retried periodically.
+     * <p>
+     * The default value of this property is an empty list.
+     *
+     * @param preConnectedTenants The tenant IDs.
+     * @throws NullPointerException if the list or any of its elements is {@code null}.
+     */
+    public final void setPreConnectedTenants(final List<String> preConnectedTenants) {
+        this.preConnectedTenants = List.copyOf(preConnectedTenants);
+    }
+
+    /**
+     * Gets the maximum number of messages published by a device that are uploaded to Hono's AMQP adapter concurrently.
+     * <p>
+     * When this number is reached, the gateway stops reading from the device connection until uploads have completed.
+     *
+     * @return The maximum number of uploads per device connection or 0 if the number is not limited.
+     */
+    public final int getMaxInFlightUploadsPerEndpoint() {
+        return maxInFlightUploadsPerEndpoint;
+    }
+
+    /**
+     * Sets the maximum number of messages published by a device that are uploaded to Hono's AMQP adapter concurrently.
+     * <p>
+     * The connections are paused by accessing the socket of vertx-mqtt's endpoint implementation. If this is not
+     * possible, the gateway fails to start.
+     * <p>
+     * The default value of this property is {@value #DEFAULT_MAX_IN_FLIGHT_UPLOADS_PER_ENDPOINT}, which means that
+     * the number is not limited.
+     *
+     * @param maxInFlightUploadsPerEndpoint The maximum number of uploads per device connection or 0 for no limit.
+     * @throws IllegalArgumentException if the number is negative.
+     */
+    public final void setMaxInFlightUploadsPerEndpoint(final int maxInFlightUploadsPerEndpoint) {
+        if (maxInFlightUploadsPerEndpoint < 0) {
+            throw new IllegalArgumentException("maximum number of in-flight uploads per endpoint must not be negative");
+        }
+        this.maxInFlightUploadsPerEndpoint = maxInFlightUploadsPerEndpoint;
+    }
+
+    /**
+     * Gets the maximum number of messages of a tenant's devices that are uploaded to Hono's AMQP adapter concurrently
+     * by a gateway instance.
+     * <p>
+     * When this number is reached, the gateway stops reading from the connections of the tenant's devices that publish
+     * messages until uploads have completed.
+     *
+     * @return The maximum number of uploads per tenant or 0 if the number is not limited.
+     */
+    public final int getMaxInFlightUploadsPerTenant() {
+        return maxInFlightUploadsPerTenant;
+    }
+
+    /**
+     * Sets the maximum number of messages of a tenant's devices that are uploaded to Hono's AMQP adapter concurrently
+     * by a gateway instance.
+     * <p>
+     * The default value of this property is 0, which means that only the number of uploads per device connection is
+     * limited.
+     *
+     * @param maxInFlightUploadsPerTenant The maximum number of uploads per tenant or 0 for no limit.
+     * @throws IllegalArgumentException if the number is negative.
+     */
+    public final void setMaxInFlightUploadsPerTenant(final int maxInFlightUploadsPerTenant) {
+        if (maxInFlightUploadsPerTenant < 0) {
+            throw new IllegalArgumentException("maximum number of in-flight uploads per tenant must not be negative");
+        }
+        this.maxInFlightUploadsPerTenant = maxInFlightUploadsPerTenant;
+    }
+
+    /**
+     * Gets the maximum number of messages that are uploaded to Hono's AMQP adapter concurrently by a gateway instance.
+     *
+     * @return The maximum number of uploads or 0 if uploads are not scheduled.
+     */
+    public final int getMaxConcurrentUploads() {
+        return maxConcurrentUploads;
+    }
+
+    /**
+     * Sets the maximum number of messages that are uploaded to Hono's AMQP adapter concurrently by a gateway instance.
+     * <p>
+     * If set to a positive number, messages exceeding this number are queued per tenant and uploaded in a
+     * weighted-fair order when running uploads complete, so that a tenant whose devices publish a large number of
+     * messages does not delay the messages of the other tenants. See {@link #setUploadWeights(Map)}.
+     * <p>
+     * The default value of this property is 0, which means that messages are uploaded in the order in which they are
+     * published.
+     *
+     * @param maxConcurrentUploads The maximum number of uploads or 0 to disable scheduling.
+     * @throws IllegalArgumentException if the number is negative.
+     */
+    public final void setMaxConcurrentUploads(final int maxConcurrentUploads) {
+        if (maxConcurrentUploads < 0) {
+            throw new IllegalArgumentException("maximum number of concurrent uploads must not be negative");
+        }
+        this.maxConcurrentUploads = maxConcurrentUploads;
+    }
+
+    /**
+     * Gets the maximum number of messages of a tenant that are queued by a gateway instance while waiting for upload.
+     *
+     * @return The maximum number of queued messages per tenant.
+     */
+    public final int getMaxQueuedUploadsPerTenant() {
+        return maxQueuedUploadsPerTenant;
+    }
+
+    /**
+     * Sets the maximum number of messages of a tenant that are queued by a gateway instance while waiting for upload.
+     * <p>
+     * Messages exceeding this number are dropped without acknowledgement. This property is only used if
+     * {@link #setMaxConcurrentUploads(int)} is set to a positive number.
+     * <p>
+     * The default value of this property is {@value #DEFAULT_MAX_QUEUED_UPLOADS_PER_TENANT}.
+     *
+     * @param maxQueuedUploadsPerTenant The maximum number of queued messages per tenant.
+     * @throws IllegalArgumentException if the number is smaller than 1.
+     */
+    public final void setMaxQueuedUploadsPerTenant(final int maxQueuedUploadsPerTenant) {
+        if (maxQueuedUploadsPerTenant < 1) {
+            throw new IllegalArgumentException("maximum number of queued uploads per tenant must be at least 1");
+        }
+        this.maxQueuedUploadsPerTenant = maxQueuedUploadsPerTenant;
+    }
+
+    /**
+     * Gets the weight of the tenants for which no weight has been set.
+     *
+     * @return The weight.
+     */
+    public final int getDefaultUploadWeight() {
+        return defaultUploadWeight;
+    }
+
+    /**
+     * Sets the weight of the tenants for which no weight has been set.
+     * <p>
+     * The default value of this property is 1.
+     *
+     * @param defaultUploadWeight The weight.
+     * @throws IllegalArgumentException if the weight is smaller than 1.
+     * @see #setUploadWeights(Map)
+     */
+    public final void setDefaultUploadWeight(final int defaultUploadWeight) {
+        if (defaultUploadWeight < 1) {
+            throw new IllegalArgumentException("upload weight must be at least 1");
+        }
+        this.defaultUploadWeight = defaultUploadWeight;
+    }
+
+    /**
+     * Gets the weights of the tenants for the scheduling of uploads.
+     *
+     * @return The weights per tenant ID.
+     */
+    public final Map<String, Integer> getUploadWeights() {
+        return uploadWeights;
+    }
+
+    /**
+     * Sets the weights of the tenants for the scheduling of uploads.
+     * <p>
+     * While messages are queued, a tenant gets a share of the uploads that is proportional to its weight, e.g. a
+     * tenant with weight 3 may upload three messages for every message of a tenant with weight 1.
+     * <p>
+     * The default value of this property is an empty map, which means that all tenants have the
+     * {@linkplain #setDefaultUploadWeight(int) default weight}.
+     *
+     * @param uploadWeights The weights per tenant ID.
+     * @throws NullPointerException if the map or any of its keys or values is {@code null}.
+     * @throws IllegalArgumentException if any of the weights is smaller than 1.
+     */
+    public final void setUploadWeights(final Map<String, Integer> uploadWeights) {
+        if (uploadWeights.values().stream().anyMatch(weight -> weight < 1)) {
+            throw new IllegalArgumentException("upload weights must be at least 1");
+        }
+        this.uploadWeights = Map.copyOf(uploadWeights);
+    }
+
+    /**
+     * Gets the threads on which the hooks implemented by the subclass of the gateway are invoked.
+     *
+     * @return The execution modes per hook.
+     */
+    public final Map<GatewayHook, HookExecutionMode> getHookExecutionModes() {
+        return hookExecutionModes;
+    }
+
+    /**
+     * Sets the threads on which the hooks implemented by the subclass of the gateway are invoked.
+     * <p>
+     * Hooks that block, e.g. because they invoke a device registry with a synchronous client, should not be invoked
+     * on the event loop, because that delays all devices that are connected to the gateway instance. Hooks that are
+     * invoked on other threads are invoked one after the other per device connection, so that the order of the
+     * messages of a device is preserved, and their implementations need to be thread-safe. The outcome of a hook is
+     * processed on the event loop again.
+     * <p>
+     * {@link GatewayHook#ON_COMMAND_RECEIVED} is always invoked on the event loop, because the outcome of the hook
+     * determines whether the command message is accepted or released.
+     * <p>
+     * The default value of this property is an empty map, which means that all hooks are invoked on the event loop.
+     *
+     * @param hookExecutionModes The execution modes per hook.
+     * @throws NullPointerException if the map or any of its keys or values is {@code null}.
+     * @throws IllegalArgumentException if another mode than {@link HookExecutionMode#EVENT_LOOP} is set for
+     *             {@link GatewayHook#ON_COMMAND_RECEIVED}.
+     */
+    public final void setHookExecutionModes(final Map<GatewayHook, HookExecutionMode> hookExecutionModes) {
+        final Map<GatewayHook, HookExecutionMode> modes = Map.copyOf(hookExecutionModes);
+        final HookExecutionMode onCommandReceived = modes.get(GatewayHook.ON_COMMAND_RECEIVED);
+        if (onCommandReceived != null && onCommandReceived != HookExecutionMode.EVENT_LOOP) {
+            throw new IllegalArgumentException("onCommandReceived must be invoked on the event loop");
+        }
+        this.hookExecutionModes = modes;
+    }
+
+    /**
+     * Gets the number of worker threads on which hooks are invoked.
+     *
+     * @return The number of threads.
+     */
+    public final int getHookWorkerPoolSize() {
+        return hookWorkerPoolSize;
+    }
+
+    /**
+     * Sets the number of worker threads on which hooks are invoked.
+     * <p>
+     * The pool is shared by all gateway instances and only used by hooks with the execution mode
+     * {@link HookExecutionMode#WORKER_POOL} (or {@link HookExecutionMode#VIRTUAL_THREAD} on Java versions that do
+     * not support virtual threads).
+     * <p>
+     * The default value of this property is {@value #DEFAULT_HOOK_WORKER_POOL_SIZE}.
+     *
+     * @param hookWorkerPoolSize The number of threads.
+     * @throws IllegalArgumentException if the number is smaller than 1.
+     */
+    public final void setHookWorkerPoolSize(final int hookWorkerPoolSize) {
+        if (hookWorkerPoolSize < 1) {
+            throw new IllegalArgumentException("worker pool size must be at least 1");
+        }
+        this.hookWorkerPoolSize = hookWorkerPoolSize;
+    }
+
+    /**
+     * Gets the maximum number of device authentication results to cache.
+     *
+     * @return The maximum number of cache entries or 0 if caching is disabled.
+     */
+    public final int getAuthenticationCacheMaxSize() {
+        return authenticationCacheMaxSize;
+    }
+
+    /**
+     * Sets the maximum number of device authentication results to cache.
+     * <p>
+     * If set to a positive number, the outcome of {@code authenticateDevice} and {@code authenticateClientCertificate}
+     * is cached per set of credentials, which reduces the load on the device registry when many devices reconnect at
+     * the same time. Each gateway instance has its own cache.
+     * <p>
+     * The default value of this property is 0, which means that authentication results are not cached.
+     *
+     * @param authenticationCacheMaxSize The maximum number of cache entries or 0 to disable caching.
+     * @throws IllegalArgumentException if the number is negative.
+     */
+    public final void setAuthenticationCacheMaxSize(final int authenticationCacheMaxSize) {
+        if (authenticationCacheMaxSize < 0) {
+            throw new IllegalArgumentException("authentication cache size must not be negative");
+        }
+        this.authenticationCacheMaxSize = authenticationCacheMaxSize;
+    }
+
+    /**
+     * Gets the number of seconds for which a successful device authentication is cached.
+     *
+     * @return The time to live in seconds.
+     */
+    public final int getAuthenticationCacheTimeToLive() {
+        return authenticationCacheTimeToLive;
+    }
+
+    /**
+     * Sets the number of seconds for which a successful device authentication is cached.
+     * <p>
+     * Within this time, changed or revoked credentials of a device are not noticed by the gateway.
+     * <p>
+     * The default value of this property is {@value #DEFAULT_AUTHENTICATION_CACHE_TIME_TO_LIVE}.
+     *
+     * @param authenticationCacheTimeToLive The time to live in seconds.
+     * @throws IllegalArgumentException if the number is negative.
+     */
+    public final void setAuthenticationCacheTimeToLive(final int authenticationCacheTimeToLive) {
+        if (authenticationCacheTimeToLive < 0) {
+            throw new IllegalArgumentException("time to live must not be negative");
+        }
+        this.authenticationCacheTimeToLive = authenticationCacheTimeToLive;
+    }
+
+    /**
+     * Gets the number of seconds for which a failed device authentication is cached.
+     *
+     * @return The time to live in seconds.
+     */
+    public final int getAuthenticationCacheNegativeTimeToLive() {
+        return authenticationCacheNegativeTimeToLive;
+    }
+
+    /**
+     * Sets the number of seconds for which a failed device authentication is cached.
+     * <p>
+     * Only failures that are reported with a {@link org.eclipse.hono.client.ClientErrorException}, e.g. invalid
+     * credentials, are cached. All other failures are considered temporary and are never cached.
+     * <p>
+     * The default value of this property is {@value #DEFAULT_AUTHENTICATION_CACHE_NEGATIVE_TIME_TO_LIVE}.
+     *
+     * @param authenticationCacheNegativeTimeToLive The time to live in seconds.
+     * @throws IllegalArgumentException if the number is negative.
+     */
+    public final void setAuthenticationCacheNegativeTimeToLive(final int authenticationCacheNegativeTimeToLive) {
+        if (authenticationCacheNegativeTimeToLive < 0) {
+            throw new IllegalArgumentException("time to live must not be negative");
+        }
+        this.authenticationCacheNegativeTimeToLive = authenticationCacheNegativeTimeToLive;
+    }
+
+    /**
+     * Gets the maximum number of successful client certificate validations to cache.
+     *
+     * @return The maximum number of cache entries or 0 if caching is disabled.
+     */
+    public final int getCertificateValidationCacheMaxSize() {
+        return certificateValidationCacheMaxSize;
+    }
+
+    /**
+     * Sets the maximum number of successful client certificate validations to cache.
+     * <p>
+     * A cached validation is keyed on the certificate chain and the trust anchors and expires when one of the
+     * certificates expires.
+     * <p>
+     * The default value of this property is {@value #DEFAULT_CERTIFICATE_VALIDATION_CACHE_MAX_SIZE}.
+     *
+     * @param certificateValidationCacheMaxSize The maximum number of cache entries or 0 to disable caching.
+     * @throws IllegalArgumentException if the number is negative.
+     */
+    public final void setCertificateValidationCacheMaxSize(final int certificateValidationCacheMaxSize) {
+        if (certificateValidationCacheMaxSize < 0) {
+            throw new IllegalArgumentException("certificate validation cache size must not be negative");
+        }
+        this.certificateValidationCacheMaxSize = certificateValidationCacheMaxSize;
+    }
+
+    /**
+     * Gets the number of seconds for which the gateway credentials of a tenant are cached.
+     *
+     * @return The time to live in seconds.
+     */
+    public final int getGatewayCredentialsCacheTimeToLive() {
+        return gatewayCredentialsCacheTimeToLive;
+    }
+
+    /**
+     * Sets the number of seconds for which the gateway credentials of a tenant are cached.
+     * <p>
+     * The credentials that are resolved by {@link AbstractMqttProtocolGateway#provideGatewayCredentials(String)} are
+     * cached together with the AMQP client configuration of the tenant, so that they are not resolved for every
+     * connecting device. Concurrent connection requests of devices of the same tenant share a single resolution, also
+     * if they are handled by different gateway instances of the same Vert.x instance. The cached credentials of a
+     * tenant are removed if connecting to Hono's AMQP adapter with them fails. Otherwise, within this time, changed
+     * credentials of the gateway are only noticed if the cached credentials are invalidated explicitly,
+     * see {@link AbstractMqttProtocolGateway#invalidateGatewayCredentials(String)}.
+     * <p>
+     * The default value of this property is {@value #DEFAULT_GATEWAY_CREDENTIALS_CACHE_TIME_TO_LIVE}. A value of 0
+     * disables caching.
+     *
+     * @param gatewayCredentialsCacheTimeToLive The time to live in seconds.
+     * @throws IllegalArgumentException if the number is negative.
+     */
+    public final void setGatewayCredentialsCacheTimeToLive(final int gatewayCredentialsCacheTimeToLive) {
+        if (gatewayCredentialsCacheTimeToLive < 0) {
+            throw new IllegalArgumentException("time to live must not be negative");
+        }
+        this.gatewayCredentialsCacheTimeToLive = gatewayCredentialsCacheTimeToLive;
+    }
+
+    /**
+     * Gets the maximum number of connection requests per second that a gateway instance processes.
+     *
+     * @return The maximum number of connection requests per second or 0 if the rate is not limited.
+     */
+    public final int getConnectRateLimit() {
+        return connectRateLimit;
+    }
+
+    /**
+     * Sets the maximum number of connection requests per second that a gateway instance processes.
+     * <p>
+     * Connection requests exceeding the limit are rejected with return code <em>server unavailable</em>. Bursts of up
+     * to the number of requests of one second are admitted.
+     * <p>
+     * The default value of this property is 0, which means that the rate is not limited.
+     *
+     * @param connectRateLimit The maximum number of connection requests per second or 0 for no limit.
+     * @throws IllegalArgumentException if the number is negative.
+     */
+    public final void setConnectRateLimit(final int connectRateLimit) {
+        if (connectRateLimit < 0) {
+            throw new IllegalArgumentException("connect rate limit must not be negative");
+        }
+        this.connectRateLimit = connectRateLimit;
+    }
+
+    /**
+     * Gets the maximum number of connection requests per second that a gateway instance processes for the devices of
+     * a tenant.
+     *
+     * @return The maximum number of connection requests per second and tenant or 0 if the rate is not limited.
+     */
+    public final int getConnectRateLimitPerTenant() {
+        return connectRateLimitPerTenant;
+    }
+
+    /**
+     * Sets the maximum number of connection requests per second that a gateway instance processes for the devices of
+     * a tenant.
+     * <p>
+     * The limit is checked after the device has been authenticated. Connection requests exceeding the limit are
+     * rejected with return code <em>server unavailable</em>.
+     * <p>
+     * The default value of this property is 0, which means that the rate is not limited.
+     *
+     * @param connectRateLimitPerTenant The maximum number of connection requests per second and tenant or 0 for no
+     *            limit.
+     * @throws IllegalArgumentException if the number is negative.
+     */
+    public final void setConnectRateLimitPerTenant(final int connectRateLimitPerTenant) {
+        if (connectRateLimitPerTenant < 0) {
+            throw new IllegalArgumentException("connect rate limit per tenant must not be negative");
+        }
+        this.connectRateLimitPerTenant = connectRateLimitPerTenant;
+    }
+
+    /**
+     * Gets the maximum number of connection requests that a gateway instance processes concurrently.
+     *
+     * @return The maximum number of concurrent connection requests or 0 if the number is not limited.
+     */
+    public final int getMaxConcurrentConnectionRequests() {
+        return maxConcurrentConnectionRequests;
+    }
+
+    /**
+     * Sets the maximum number of connection requests that a gateway instance processes concurrently.
+     * <p>
+     * A connection request is being processed while the device is authenticated and the gateway connects to Hono's
+     * AMQP adapter. Connection requests exceeding the limit are rejected with return code <em>server
+     * unavailable</em>.
+     * <p>
+     * The default value of this property is 0, which means that the number is not limited.
+     *
+     * @param maxConcurrentConnectionRequests The maximum number of concurrent connection requests or 0 for no limit.
+     * @throws IllegalArgumentException if the number is negative.
+     */
+    public final void setMaxConcurrentConnectionRequests(final int maxConcurrentConnectionRequests) {
+        if (maxConcurrentConnectionRequests < 0) {
+            throw new IllegalArgumentException("maximum number of concurrent connection requests must not be negative");
+        }
+        this.maxConcurrentConnectionRequests = maxConcurrentConnectionRequests;
+    }
+
+    /**
+     * Checks whether commands are received by a single command consumer per tenant instead of a consumer per device.
+     *
+     * @return {@code true} if tenant-wide command consumers are used.
+     */
+    public final boolean isTenantWideCommandConsumer() {
+        return tenantWideCommandConsumer;
+    }
+
+    /**
+     * Sets whether commands are received by a single command consumer per tenant instead of a consumer per device.
+     * <p>
+     * By default, a device-specific command consumer, i.e. an AMQP link, is opened for every device that subscribes to
+     * commands. If this property is set to {@code true}, each gateway instance opens one command consumer per tenant
+     * when the first device of the tenant subscribes, and dispatches the received commands to the subscribed devices.
+     * This reduces the number of links that the AMQP adapter has to maintain and the latency of subscriptions
+     * considerably. The gateway must be authorized to receive commands on behalf of the devices, i.e. it needs to be
+     * registered as a <em>via</em> gateway of each device.
+     * <p>
+     * The AMQP adapter delivers the commands of a tenant to one of the tenant-wide consumers only. A command that is
+     * received by a gateway instance to which the device is not connected, e.g. because the device is connected to
+     * another verticle instance or another process, cannot be delivered and is released. Tenant-wide command consumers
+     * should therefore only be used with a single verticle instance, see {@link #setVerticleInstances(int)}, and if
+     * all devices of a tenant connect to the same process.
+     * <p>
+     * The default value of this property is {@code false}.
+     *
+     * @param tenantWideCommandConsumer {@code true} if tenant-wide command consumers are to be used.
+     */
+    public final void setTenantWideCommandConsumer(final boolean tenantWideCommandConsumer) {
+        this.tenantWideCommandConsumer = tenantWideCommandConsumer;
+    }
+
+    /**
+     * Checks whether a device may only be connected once.
+     *
+     * @return {@code true} if an existing connection of a device is closed when it connects again.
+     */
+    public final boolean isSingleConnectionPerDevice() {
+        return singleConnectionPerDevice;
+    }
+
+    /**
+     * Sets whether a device may only be connected once.
+     * <p>
+     * An existing connection with the same client identifier within the tenant is always closed when a new one is
+     * accepted, as required by the MQTT specification. If this property is set to {@code true}, an existing connection
+     * of the same device is closed as well, even if the device connects with a different client identifier, e.g. a
+     * random one. This releases the subscriptions and command consumers of half-open connections immediately instead
+     * of after the keep-alive timeout. It must not be enabled if devices connect several times in parallel.
+     * <p>
+     * The default value of this property is {@code false}.
+     *
+     * @param singleConnectionPerDevice {@code true} if an existing connection of a device is to be closed when it
+     *            connects again.
+     */
+    public final void setSingleConnectionPerDevice(final boolean singleConnectionPerDevice) {
+        this.singleConnectionPerDevice = singleConnectionPerDevice;
+    }
+
+    /**
+     * Gets the directory in which messages are spooled while they cannot be forwarded to Hono's AMQP adapter.
+     *
+     * @return The directory or {@code null} if messages are not spooled.
+     */
+    public final String getSpoolDirectory() {
+        return spoolDirectory;
+    }
+
+    /**
+     * Sets the directory in which messages are spooled while they cannot be forwarded to Hono's AMQP adapter.
+     * <p>
+     * If a directory is set, events and telemetry messages with QoS 1 that cannot be forwarded because of an error on
+     * the side of Hono, e.g. because the AMQP adapter is restarted, are appended to a spool of the tenant on disk and
+     * acknowledged to the device, instead of closing the connection of the device. The spooled messages are forwarded
+     * in the order in which they have been published once the messages can be forwarded again, at the rate set with
+     * {@link #setSpoolDrainRate(int)}. Messages that the devices of the tenant publish in the meantime are appended to
+     * the spool as well, in order to preserve the order. The messages are forwarded over the AMQP connection of the
+     * tenant, i.e. while devices of the tenant are connected to the gateway. The gateway does not connect a tenant
+     * only to forward its spool, so the messages that are recovered after a restart are forwarded once a device of the
+     * tenant connects, unless the tenant is connected in advance, see {@link #setPreConnectedTenants(List)}.
+     * <p>
+     * Spooled messages are reported to the metrics as {@link ProtocolGatewayMetrics.UploadOutcome#SPOOLED}, neither
+     * {@link AbstractMqttProtocolGateway#onMessageSent(MqttDownstreamContext)} nor
+     * {@link AbstractMqttProtocolGateway#onMessageUndeliverable(MqttDownstreamContext)} is invoked for them.
+     * <p>
+     * The spool is kept in memory-mapped segment files of which each tenant has its own, so that the spooled messages
+     * survive a restart of the gateway. All gateway instances of a Vert.x instance share the spool of a tenant. The
+     * directory must not be shared with other processes.
+     * <p>
+     * The default value of this property is {@code null}, which means that messages are not spooled.
+     *
+     * @param spoolDirectory The directory or {@code null} if messages are not to be spooled.
+     */
+    public final void setSpoolDirectory(final String spoolDirectory) {
+        this.spoolDirectory = spoolDirectory;
+    }
+
+    /**
+     * Gets the size of the segment files of the spool.
+     *
+     * @return The size in bytes.
+     */
+    public final int getSpoolSegmentSize() {
+        return spoolSegmentSize;
+    }
+
+    /**
+     * Sets the size of the segment files of the spool.
+     * <p>
+     * Messages that are larger than a segment are not spooled.
+     * <p>
+     * The default value of this property is {@value #DEFAULT_SPOOL_SEGMENT_SIZE}.
+     *
+     * @param spoolSegmentSize The size in bytes.
+     * @throws IllegalArgumentException if the size is smaller than 1024.
+     */
+    public final void setSpoolSegmentSize(final int spoolSegmentSize) {
+        if (spoolSegmentSize < 1024) {
+            throw new IllegalArgumentException("spool segment size must be at least 1024 bytes");
+        }
+        this.spoolSegmentSize = spoolSegmentSize;
+    }
+
+    /**
+     * Gets the maximum number of segment files of the spool of a tenant.
+     *
+     * @return The maximum number of segments.
+     */
+    public final int getSpoolMaxSegments() {
+        return spoolMaxSegments;
+    }
+
+    /**
+     * Sets the maximum number of segment files of the spool of a tenant.
+     * <p>
+     * The maximum size of the spool of a tenant is the number of segments multiplied by the size of a segment. If the
+     * spool is full, messages that cannot be forwarded are handled as if no spool was configured.
+     * <p>
+     * The default value of this property is {@value #DEFAULT_SPOOL_MAX_SEGMENTS}.
+     *
+     * @param spoolMaxSegments The maximum number of segments.
+     * @throws IllegalArgumentException if the number is smaller than 1.
+     */
+    public final void setSpoolMaxSegments(final int spoolMaxSegments) {
+        if (spoolMaxSegments < 1) {
+            throw new IllegalArgumentException("maximum number of spool segments must be at least 1");
+        }
+        this.spoolMaxSegments = spoolMaxSegments;
+    }
+
+    /**
+     * Gets the maximum number of spooled messages per second that are forwarded per tenant.
+     *
+     * @return The maximum number of messages per second.
+     */
+    public final int getSpoolDrainRate() {
+        return spoolDrainRate;
+    }
+
+    /**
+     * Sets the maximum number of spooled messages per second that are forwarded per tenant.
+     * <p>
+     * The rate limits the additional load on the AMQP adapter after it has become available again.
+     * <p>
+     * The default value of this property is {@value #DEFAULT_SPOOL_DRAIN_RATE}.
+     *
+     * @param spoolDrainRate The maximum number of messages per second.
+     * @throws IllegalArgumentException if the rate is smaller than 1.
+     */
+    public final void setSpoolDrainRate(final int spoolDrainRate) {
+        if (spoolDrainRate < 1) {
+            throw new IllegalArgumentException("spool drain rate must be at least 1");
+        }
+        this.spoolDrainRate = spoolDrainRate;
+    }
 }
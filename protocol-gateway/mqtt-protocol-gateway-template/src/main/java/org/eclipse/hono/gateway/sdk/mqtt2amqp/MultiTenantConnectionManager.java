@@ -22,6 +22,7 @@ import org.eclipse.hono.client.device.amqp.CommandResponder;
 import org.eclipse.hono.client.device.amqp.EventSender;
 import org.eclipse.hono.client.device.amqp.TelemetrySender;
 
+import io.opentracing.Tracer;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
 import io.vertx.mqtt.MqttEndpoint;
@@ -45,6 +46,23 @@ public interface MultiTenantConnectionManager {
      */
     Future<Void> connect(String tenantId, Vertx vertx, ClientConfigProperties clientConfig);
 
+    /**
+     * Connects to Hono's AMQP adapter with the given configuration in advance, i.e. before a device of the tenant
+     * connects, and keeps the connection open while no device of the tenant is connected.
+     * <p>
+     * This default implementation delegates to {@link #connect(String, Vertx, ClientConfigProperties)}.
+     *
+     * @param tenantId The tenant to connect.
+     * @param vertx The Vert.x instance to use for the connection.
+     * @param clientConfig The configuration of the connection.
+     * @return a succeeded future if the connection could be established within the time frame configured with
+     *         {@link ClientConfigProperties#getConnectTimeout()}, a failed future otherwise.
+     */
+    default Future<Void> preConnect(final String tenantId, final Vertx vertx,
+            final ClientConfigProperties clientConfig) {
+        return connect(tenantId, vertx, clientConfig);
+    }
+
     /**
      * Adds an MQTT endpoint for the given tenant.
      *
@@ -67,6 +85,28 @@ public interface MultiTenantConnectionManager {
      */
     Future<Boolean> closeEndpoint(String tenantId, MqttEndpoint mqttEndpoint);
 
+    /**
+     * Sets a handler to be invoked with the tenant ID when the AMQP connection of a tenant is closed later than
+     * {@link #closeEndpoint(String, MqttEndpoint)}, because it has been kept open for a linger period.
+     * <p>
+     * This default implementation does nothing, which is suitable for implementations that close the connection
+     * immediately.
+     *
+     * @param handler The handler.
+     */
+    default void setIdleTenantClosedHandler(final Consumer<String> handler) {
+    }
+
+    /**
+     * Sets the tracer to be used by the AMQP connections that are opened afterwards.
+     * <p>
+     * This default implementation does nothing.
+     *
+     * @param tracer The tracer.
+     */
+    default void setTracer(final Tracer tracer) {
+    }
+
     /**
      * Closes all connections, MQTT connections as well as AMQP connections for all tenants.
      */
@@ -80,6 +120,20 @@ public interface MultiTenantConnectionManager {
      */
     Future<TelemetrySender> getOrCreateTelemetrySender(String tenantId);
 
+    /**
+     * Gets a client for sending telemetry data of a specific device to Hono's AMQP protocol adapter.
+     * <p>
+     * Implementations that use more than one AMQP connection per tenant return the sender of the connection the
+     * device is assigned to. This default implementation delegates to {@link #getOrCreateTelemetrySender(String)}.
+     *
+     * @param tenantId The tenant to which the sender belongs.
+     * @param deviceId The device on whose behalf the data is sent.
+     * @return a future with the open sender or a failed future.
+     */
+    default Future<TelemetrySender> getOrCreateTelemetrySender(final String tenantId, final String deviceId) {
+        return getOrCreateTelemetrySender(tenantId);
+    }
+
     /**
      * Gets a client for sending events to Hono's AMQP protocol adapter.
      *
@@ -88,6 +142,19 @@ public interface MultiTenantConnectionManager {
      */
     Future<EventSender> getOrCreateEventSender(String tenantId);
 
+    /**
+     * Gets a client for sending events of a specific device to Hono's AMQP protocol adapter.
+     * <p>
+     * This default implementation delegates to {@link #getOrCreateEventSender(String)}.
+     *
+     * @param tenantId The tenant to which the sender belongs.
+     * @param deviceId The device on whose behalf the event is sent.
+     * @return a future with the open sender or a failed future.
+     */
+    default Future<EventSender> getOrCreateEventSender(final String tenantId, final String deviceId) {
+        return getOrCreateEventSender(tenantId);
+    }
+
     /**
      * Gets a client for sending command responses to Hono's AMQP protocol adapter.
      *
@@ -96,6 +163,19 @@ public interface MultiTenantConnectionManager {
      */
     Future<CommandResponder> getOrCreateCommandResponseSender(String tenantId);
 
+    /**
+     * Gets a client for sending command responses of a specific device to Hono's AMQP protocol adapter.
+     * <p>
+     * This default implementation delegates to {@link #getOrCreateCommandResponseSender(String)}.
+     *
+     * @param tenantId The tenant to which the sender belongs.
+     * @param deviceId The device on whose behalf the command response is sent.
+     * @return a future with the open sender or a failed future.
+     */
+    default Future<CommandResponder> getOrCreateCommandResponseSender(final String tenantId, final String deviceId) {
+        return getOrCreateCommandResponseSender(tenantId);
+    }
+
     /**
      * Creates a client for consuming commands from Hono's AMQP protocol adapter for a specific device.
      *
@@ -13,8 +13,9 @@
 
 package org.eclipse.hono.gateway.sdk.mqtt2amqp;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 import org.apache.qpid.proton.message.Message;
@@ -25,6 +26,8 @@ import org.eclipse.hono.client.device.amqp.CommandResponder;
 import org.eclipse.hono.client.device.amqp.EventSender;
 import org.eclipse.hono.client.device.amqp.TelemetrySender;
 
+import io.opentracing.Tracer;
+import io.opentracing.noop.NoopTracerFactory;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
 import io.vertx.mqtt.MqttEndpoint;
@@ -33,17 +36,94 @@ import io.vertx.mqtt.MqttEndpoint;
  * Tracks MQTT connections per tenant and closes the AMQP connection automatically when the last MQTT connection of the
  * tenant is closed.
  * <p>
+ * If a linger period is set, the AMQP connection of a tenant is kept open for that period after the last MQTT connection
+ * has been closed and re-used if a device of the tenant connects in the meantime. The connections of tenants that have
+ * been connected with {@link #preConnect(String, Vertx, ClientConfigProperties)} are kept open until
+ * {@link #closeAllTenants()} is invoked.
+ * <p>
+ * This class is thread-safe. The tenants are kept in a concurrent map and all changes to the connections of a tenant
+ * are guarded by that tenant's {@link TenantConnections} instance, so an instance may be shared by multiple verticle
+ * instances without contention between different tenants.
+ * <p>
+ * For each tenant, a configurable number of AMQP connections is opened. Each device is assigned to one of these
+ * connections, which is then used for all messages of the device.
+ * <p>
  * Note: {@link #connect(String, Vertx, ClientConfigProperties)} needs to be invoked before using the instance.
  */
 public class MultiTenantConnectionManagerImpl implements MultiTenantConnectionManager {
 
-    private final Map<String, TenantConnections> connectionsPerTenant = new HashMap<>();
+    private final Map<String, TenantConnections> connectionsPerTenant = new ConcurrentHashMap<>();
+    private final int amqpConnectionsPerTenant;
+    private final long lingerMillis;
+
+    private volatile Consumer<String> idleTenantClosedHandler = tenantId -> { };
+    private volatile Tracer tracer = NoopTracerFactory.create();
+
+    /**
+     * Creates a new instance that opens a single AMQP connection per tenant.
+     */
+    public MultiTenantConnectionManagerImpl() {
+        this(1);
+    }
+
+    /**
+     * Creates a new instance that closes the AMQP connections of a tenant immediately.
+     *
+     * @param amqpConnectionsPerTenant The number of AMQP connections to open per tenant.
+     * @throws IllegalArgumentException if the number of connections is smaller than 1.
+     */
+    public MultiTenantConnectionManagerImpl(final int amqpConnectionsPerTenant) {
+        this(amqpConnectionsPerTenant, 0);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param amqpConnectionsPerTenant The number of AMQP connections to open per tenant.
+     * @param lingerMillis The number of milliseconds that the AMQP connections of a tenant are kept open after the
+     *            last MQTT connection of the tenant has been closed.
+     * @throws IllegalArgumentException if the number of connections is smaller than 1 or the linger period is
+     *             negative.
+     */
+    public MultiTenantConnectionManagerImpl(final int amqpConnectionsPerTenant, final long lingerMillis) {
+        if (amqpConnectionsPerTenant < 1) {
+            throw new IllegalArgumentException("number of AMQP connections per tenant must be at least 1");
+        }
+        if (lingerMillis < 0) {
+            throw new IllegalArgumentException("linger period must not be negative");
+        }
+        this.amqpConnectionsPerTenant = amqpConnectionsPerTenant;
+        this.lingerMillis = lingerMillis;
+    }
 
     @Override
     public Future<Void> connect(final String tenantId, final Vertx vertx, final ClientConfigProperties clientConfig) {
+        return connect(tenantId, vertx, clientConfig, false);
+    }
 
-        connectionsPerTenant.computeIfAbsent(tenantId, k -> {
-            final TenantConnections tenantConnections = new TenantConnections(k, vertx, clientConfig);
+    @Override
+    public Future<Void> preConnect(final String tenantId, final Vertx vertx,
+            final ClientConfigProperties clientConfig) {
+        return connect(tenantId, vertx, clientConfig, true);
+    }
+
+    private Future<Void> connect(final String tenantId, final Vertx vertx, final ClientConfigProperties clientConfig,
+            final boolean permanently) {
+
+        connectionsPerTenant.compute(tenantId, (k, existing) -> {
+            if (existing != null && !existing.isClosed()) {
+                // a lingering instance must not be closed before the endpoint has been added
+                existing.retain(permanently);
+                return existing;
+            }
+            final TenantConnections tenantConnections = new TenantConnections(k, vertx, clientConfig,
+                    amqpConnectionsPerTenant, lingerMillis, tracer);
+            tenantConnections.retain(permanently);
+            tenantConnections.setIdleCloseHandler(() -> {
+                if (connectionsPerTenant.remove(k, tenantConnections)) {
+                    idleTenantClosedHandler.accept(k);
+                }
+            });
             tenantConnections.connect();
             return tenantConnections;
         });
@@ -51,8 +131,8 @@ public class MultiTenantConnectionManagerImpl implements MultiTenantConnectionMa
         return getTenantConnections(tenantId)
                 .compose(tenantConnections -> tenantConnections.isConnected(clientConfig.getConnectTimeout()))
                 .onFailure(ex -> {
-                    final TenantConnections failedTenant = connectionsPerTenant.remove(tenantId);
-                    if (failedTenant != null) {
+                    final TenantConnections failedTenant = connectionsPerTenant.get(tenantId);
+                    if (failedTenant != null && connectionsPerTenant.remove(tenantId, failedTenant)) {
                         failedTenant.closeAllConnections();
                     }
                 });
@@ -68,18 +148,34 @@ public class MultiTenantConnectionManagerImpl implements MultiTenantConnectionMa
     public Future<Boolean> closeEndpoint(final String tenantId, final MqttEndpoint mqttEndpoint) {
 
         return getTenantConnections(tenantId)
-                .map(tenantConnections -> tenantConnections.closeEndpoint(mqttEndpoint))
-                .onSuccess(amqpLinkClosed -> {
+                .map(tenantConnections -> {
+                    final boolean amqpLinkClosed = tenantConnections.closeEndpoint(mqttEndpoint);
                     if (amqpLinkClosed) {
-                        connectionsPerTenant.remove(tenantId);
+                        // only remove this instance, the tenant might have been connected again in the meantime
+                        connectionsPerTenant.remove(tenantId, tenantConnections);
                     }
+                    return amqpLinkClosed;
                 });
     }
 
+    @Override
+    public void setIdleTenantClosedHandler(final Consumer<String> handler) {
+        this.idleTenantClosedHandler = Objects.requireNonNull(handler);
+    }
+
+    @Override
+    public void setTracer(final Tracer tracer) {
+        this.tracer = Objects.requireNonNull(tracer);
+    }
+
     @Override
     public void closeAllTenants() {
-        connectionsPerTenant.forEach((k, connections) -> connections.closeAllConnections());
-        connectionsPerTenant.clear();
+        connectionsPerTenant.keySet().forEach(tenantId -> {
+            final TenantConnections connections = connectionsPerTenant.remove(tenantId);
+            if (connections != null) {
+                connections.closeAllConnections();
+            }
+        });
     }
 
     @Override
@@ -87,21 +183,36 @@ public class MultiTenantConnectionManagerImpl implements MultiTenantConnectionMa
         return getAmqpAdapterClient(tenantId).map(client -> client);
     }
 
+    @Override
+    public Future<TelemetrySender> getOrCreateTelemetrySender(final String tenantId, final String deviceId) {
+        return getAmqpAdapterClient(tenantId, deviceId).map(client -> client);
+    }
+
     @Override
     public Future<EventSender> getOrCreateEventSender(final String tenantId) {
         return getAmqpAdapterClient(tenantId).map(client -> client);
     }
 
+    @Override
+    public Future<EventSender> getOrCreateEventSender(final String tenantId, final String deviceId) {
+        return getAmqpAdapterClient(tenantId, deviceId).map(client -> client);
+    }
+
     @Override
     public Future<CommandResponder> getOrCreateCommandResponseSender(final String tenantId) {
         return getAmqpAdapterClient(tenantId).map(client -> client);
     }
 
+    @Override
+    public Future<CommandResponder> getOrCreateCommandResponseSender(final String tenantId, final String deviceId) {
+        return getAmqpAdapterClient(tenantId, deviceId).map(client -> client);
+    }
+
     @Override
     public Future<CommandConsumer> createDeviceSpecificCommandConsumer(final String tenantId, final String deviceId,
             final Consumer<Message> messageHandler) {
 
-        return getAmqpAdapterClient(tenantId)
+        return getAmqpAdapterClient(tenantId, deviceId)
                 .compose(client -> client.createDeviceSpecificCommandConsumer(tenantId, deviceId, messageHandler));
     }
 
@@ -124,4 +235,9 @@ public class MultiTenantConnectionManagerImpl implements MultiTenantConnectionMa
     private Future<AmqpAdapterClient> getAmqpAdapterClient(final String tenantId) {
         return getTenantConnections(tenantId).compose(TenantConnections::getAmqpAdapterClient);
     }
+
+    private Future<AmqpAdapterClient> getAmqpAdapterClient(final String tenantId, final String deviceId) {
+        return getTenantConnections(tenantId)
+                .compose(tenantConnections -> tenantConnections.getAmqpAdapterClient(deviceId));
+    }
 }
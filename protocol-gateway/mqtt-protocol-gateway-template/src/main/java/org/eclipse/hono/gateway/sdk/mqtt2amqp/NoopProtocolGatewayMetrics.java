@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+/**
+ * Metrics that do not report anything.
+ * <p>
+ * This is the default of the gateway. Subclasses may override the methods for the metrics they are interested in.
+ */
+public class NoopProtocolGatewayMetrics implements ProtocolGatewayMetrics {
+
+    /**
+     * The shared instance.
+     */
+    public static final NoopProtocolGatewayMetrics INSTANCE = new NoopProtocolGatewayMetrics();
+
+    /**
+     * Creates a new instance.
+     */
+    protected NoopProtocolGatewayMetrics() {
+    }
+
+    @Override
+    public void reportConnectionAttempt(final ConnectionOutcome outcome, final String tenantId,
+            final long durationNanos) {
+    }
+
+    @Override
+    public void incrementConnections(final String tenantId) {
+    }
+
+    @Override
+    public void decrementConnections(final String tenantId) {
+    }
+
+    @Override
+    public void reportUpload(final String tenantId, final MessageType type, final UploadOutcome outcome,
+            final long durationNanos) {
+    }
+
+    @Override
+    public void reportCommand(final String tenantId, final CommandOutcome outcome, final long durationNanos) {
+    }
+
+    @Override
+    public void reportSpool(final String tenantId, final int messages, final long sizeInBytes,
+            final long oldestAgeMillis) {
+    }
+
+    @Override
+    public void reportHookInvocation(final GatewayHook hook, final String tenantId, final long durationNanos) {
+    }
+
+    @Override
+    public void reportTlsHandshake(final boolean resumed) {
+    }
+}
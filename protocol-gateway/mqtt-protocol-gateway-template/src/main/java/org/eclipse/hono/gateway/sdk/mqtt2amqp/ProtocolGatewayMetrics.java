@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+/**
+ * Metrics reported by the MQTT protocol gateway.
+ * <p>
+ * The gateway reports connection attempts, the number of connected devices, uploaded messages and commands, each
+ * together with the tenant of the device, so that implementations can use the tenant as a tag. Durations are passed in
+ * nanoseconds in order to be recorded in latency histograms.
+ * <p>
+ * The methods are invoked on the event loops of the gateway instances, some of them for every message. Implementations
+ * must therefore be thread-safe, should not block and should not allocate objects per invocation, e.g. by caching
+ * their meters per tenant. {@link NoopProtocolGatewayMetrics} can be used as a base class for implementations that
+ * only report some of the metrics.
+ */
+public interface ProtocolGatewayMetrics {
+
+    /**
+     * The outcome of a connection attempt of a device.
+     */
+    enum ConnectionOutcome {
+        /**
+         * The device has been authenticated and connected to Hono's AMQP adapter.
+         */
+        ACCEPTED,
+        /**
+         * The device could not be authenticated.
+         */
+        UNAUTHORIZED,
+        /**
+         * The connection request has been rejected because one of the connection limits has been exceeded.
+         */
+        ADMISSION_REJECTED,
+        /**
+         * The gateway could not connect to Hono's AMQP adapter.
+         */
+        BACKEND_UNAVAILABLE
+    }
+
+    /**
+     * The type of a message published by a device.
+     */
+    enum MessageType {
+        TELEMETRY,
+        EVENT,
+        COMMAND_RESPONSE
+    }
+
+    /**
+     * The outcome of uploading a message published by a device.
+     */
+    enum UploadOutcome {
+        /**
+         * The message has been forwarded to Hono's AMQP adapter.
+         */
+        FORWARDED,
+        /**
+         * The message has not been forwarded because of an error caused by the device.
+         */
+        REJECTED,
+        /**
+         * The message could not be forwarded because of an error of the gateway or of Hono.
+         */
+        UNDELIVERABLE,
+        /**
+         * The message has been dropped because too many messages were in progress.
+         */
+        DROPPED,
+        /**
+         * The message could not be forwarded because of an error of Hono and has been spooled on disk to be forwarded
+         * later.
+         */
+        SPOOLED
+    }
+
+    /**
+     * The outcome of delivering a command to a device.
+     */
+    enum CommandOutcome {
+        /**
+         * The command has been published to a device that has subscribed with QoS 0.
+         */
+        PUBLISHED,
+        /**
+         * The command has been acknowledged by a device that has subscribed with QoS 1.
+         */
+        ACKNOWLEDGED,
+        /**
+         * The device has not acknowledged the command in time.
+         */
+        TIMED_OUT,
+        /**
+         * The command could not be published to the device.
+         */
+        FAILED
+    }
+
+    /**
+     * Reports a connection attempt of a device.
+     *
+     * @param outcome The outcome of the attempt.
+     * @param tenantId The tenant of the device or {@code null} if the device has not been authenticated.
+     * @param durationNanos The time it took to process the connection request.
+     */
+    void reportConnectionAttempt(ConnectionOutcome outcome, String tenantId, long durationNanos);
+
+    /**
+     * Reports that a device of a tenant has connected.
+     *
+     * @param tenantId The tenant of the device.
+     */
+    void incrementConnections(String tenantId);
+
+    /**
+     * Reports that a device of a tenant has disconnected.
+     *
+     * @param tenantId The tenant of the device.
+     */
+    void decrementConnections(String tenantId);
+
+    /**
+     * Reports the outcome of uploading a message that has been published by a device.
+     *
+     * @param tenantId The tenant of the device.
+     * @param type The type of the message or {@code null} if the message has been dropped before it has been mapped.
+     * @param outcome The outcome of the upload.
+     * @param durationNanos The time from the start of the upload until its outcome is known.
+     */
+    void reportUpload(String tenantId, MessageType type, UploadOutcome outcome, long durationNanos);
+
+    /**
+     * Reports the outcome of delivering a command to a device.
+     *
+     * @param tenantId The tenant of the device.
+     * @param outcome The outcome of the delivery.
+     * @param durationNanos The time from the reception of the command until its outcome is known, i.e. for a command
+     *            with QoS 1 including the time until the device has acknowledged it.
+     */
+    void reportCommand(String tenantId, CommandOutcome outcome, long durationNanos);
+
+    /**
+     * Reports the state of the spool of a tenant, see {@link MqttProtocolGatewayConfig#setSpoolDirectory(String)}.
+     * <p>
+     * This method is invoked periodically while the spool contains messages and once more after it has become empty.
+     *
+     * @param tenantId The tenant of the spooled messages.
+     * @param messages The number of spooled messages.
+     * @param sizeInBytes The number of bytes used by the segment files of the spool.
+     * @param oldestAgeMillis The time since the oldest message has been spooled or 0 if the spool is empty.
+     */
+    void reportSpool(String tenantId, int messages, long sizeInBytes, long oldestAgeMillis);
+
+    /**
+     * Reports the invocation of a hook that is implemented by the subclass of the gateway.
+     * <p>
+     * The duration is the time the hook has occupied the thread on which it has been invoked, i.e. until it has
+     * returned, which does not include asynchronous operations that complete its future afterwards. A long duration
+     * of a hook that is invoked on the event loop indicates that the hook blocks, see
+     * {@link MqttProtocolGatewayConfig#setHookExecutionModes(java.util.Map)}.
+     *
+     * @param hook The hook.
+     * @param tenantId The tenant of the device or {@code null} if the device has not been authenticated yet.
+     * @param durationNanos The time until the hook has returned.
+     */
+    void reportHookInvocation(GatewayHook hook, String tenantId, long durationNanos);
+
+    /**
+     * Reports that a device has established a TLS connection.
+     * <p>
+     * The handshake rate and the share of resumed sessions can be derived from these reports. This method is only
+     * invoked if the gateway can tell whether the session has been resumed, i.e. if the credentials of the gateway
+     * are loaded from the key & certificate options and SNI is not enabled.
+     *
+     * @param resumed {@code true} if the device has resumed a previous TLS session, {@code false} if a full
+     *            handshake has been performed.
+     */
+    void reportTlsHandshake(boolean resumed);
+}
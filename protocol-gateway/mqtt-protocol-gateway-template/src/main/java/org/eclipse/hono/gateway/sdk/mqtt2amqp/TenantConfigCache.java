@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.function.Function;
+
+import org.eclipse.hono.client.amqp.config.ClientConfigProperties;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.Shareable;
+
+/**
+ * A cache for the AMQP client configurations of the tenants, which contain the credentials of the gateway.
+ * <p>
+ * A configuration is cached for the configured time to live after it has been loaded. Failed loads are not cached. A
+ * load that is still in progress is cached as well, so that concurrent connection attempts of devices of the same
+ * tenant result in a single load only. The cache is shared by all gateway instances of a Vert.x instance, so that
+ * this also holds for connection attempts that are handled by different instances.
+ * <p>
+ * This class is thread-safe.
+ */
+final class TenantConfigCache implements Shareable {
+
+    private static final String SHARED_DATA_KEY = TenantConfigCache.class.getName();
+
+    private final Cache<String, Future<ClientConfigProperties>> cache;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param timeToLive The duration after which a configuration expires.
+     * @throws NullPointerException if the duration is {@code null}.
+     */
+    TenantConfigCache(final Duration timeToLive) {
+        this(timeToLive, Ticker.systemTicker());
+    }
+
+    /**
+     * Creates a new cache.
+     * <p>
+     * <b>This constructor is for testing purposes only.</b>
+     *
+     * @param timeToLive The duration after which a configuration expires.
+     * @param ticker The time source to use.
+     * @throws NullPointerException if any of the parameters is {@code null}.
+     */
+    TenantConfigCache(final Duration timeToLive, final Ticker ticker) {
+
+        Objects.requireNonNull(timeToLive);
+        Objects.requireNonNull(ticker);
+
+        cache = Caffeine.newBuilder()
+                .expireAfterWrite(timeToLive)
+                .ticker(ticker)
+                .executor(Runnable::run)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Gets the cache that is shared by all gateway instances of a Vert.x instance.
+     * <p>
+     * The time to live of the first gateway instance that gets the cache is used.
+     *
+     * @param vertx The Vert.x instance.
+     * @param timeToLive The duration after which a configuration expires.
+     * @return The cache.
+     * @throws NullPointerException if any of the parameters is {@code null}.
+     */
+    static TenantConfigCache getInstance(final Vertx vertx, final Duration timeToLive) {
+        Objects.requireNonNull(vertx);
+        return vertx.sharedData().<String, TenantConfigCache> getLocalMap(SHARED_DATA_KEY)
+                .computeIfAbsent(SHARED_DATA_KEY, k -> new TenantConfigCache(timeToLive));
+    }
+
+    /**
+     * Gets the configuration of a tenant.
+     * <p>
+     * If the configuration is being loaded on another context, the returned future is completed on the context of
+     * the caller.
+     *
+     * @param tenantId The tenant.
+     * @param loader The function to load the configuration if it is not cached.
+     * @return The (cached) outcome of loading the configuration.
+     * @throws NullPointerException if any of the parameters is {@code null}.
+     */
+    Future<ClientConfigProperties> get(final String tenantId,
+            final Function<String, Future<ClientConfigProperties>> loader) {
+
+        Objects.requireNonNull(tenantId);
+        Objects.requireNonNull(loader);
+
+        final boolean[] invoked = new boolean[1];
+        final Future<ClientConfigProperties> result = cache.get(tenantId, k -> {
+            invoked[0] = true;
+            return loader.apply(k);
+        });
+        if (invoked[0]) {
+            result.onFailure(e -> cache.asMap().remove(tenantId, result));
+        }
+        final Context context = Vertx.currentContext();
+        if (context == null || result.isComplete()) {
+            return result;
+        }
+        final Promise<ClientConfigProperties> promise = Promise.promise();
+        result.onComplete(ar -> {
+            if (Vertx.currentContext() == context) {
+                promise.handle(ar);
+            } else {
+                context.runOnContext(v -> promise.handle(ar));
+            }
+        });
+        return promise.future();
+    }
+
+    /**
+     * Removes the configuration of a tenant, so that it is loaded again on the next access.
+     *
+     * @param tenantId The tenant.
+     * @throws NullPointerException if the tenant is {@code null}.
+     */
+    void invalidate(final String tenantId) {
+        cache.invalidate(Objects.requireNonNull(tenantId));
+    }
+
+    /**
+     * Removes the configurations of all tenants.
+     */
+    void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Gets the statistics of this cache.
+     *
+     * @return The hit and miss counts and further statistics.
+     */
+    CacheStats stats() {
+        return cache.stats();
+    }
+}
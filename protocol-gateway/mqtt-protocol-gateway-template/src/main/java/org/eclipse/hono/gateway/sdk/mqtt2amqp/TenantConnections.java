@@ -15,6 +15,10 @@ package org.eclipse.hono.gateway.sdk.mqtt2amqp;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 import org.eclipse.hono.client.ServerErrorException;
 import org.eclipse.hono.client.amqp.config.ClientConfigProperties;
@@ -24,63 +28,133 @@ import org.eclipse.hono.client.device.amqp.AmqpAdapterClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.opentracing.Tracer;
+import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
 import io.vertx.mqtt.MqttEndpoint;
 
 /**
- * Manages all connections of one tenant, MQTT connections of devices as well as the AMQP connection to Hono's AMQP
+ * Manages all connections of one tenant, MQTT connections of devices as well as the AMQP connections to Hono's AMQP
  * adapter.
  * <p>
- * By invoking {@link #connect()} an AMQP client for the tenant is connected. Each MQTT endpoint needs to be added to
+ * By invoking {@link #connect()} the AMQP clients for the tenant are connected. Each MQTT endpoint needs to be added to
  * keep track of all MQTT connections belonging to the tenant. When the last MQTT endpoint for the tenant is closed, the
- * AMQP client - and thus this instance - is closed automatically.
+ * AMQP clients - and thus this instance - are closed automatically, either immediately or, if a linger period is set,
+ * when no endpoint has been added within that period. The latter spares devices of tenants with few, frequently
+ * reconnecting devices from waiting for a new AMQP connection. An instance that is to be kept open permanently, see
+ * {@link #retain(boolean)}, is only closed by {@link #closeAllConnections()}.
+ * <p>
+ * The instance holds a pool of one or more AMQP clients, each with its own connection. A device is always mapped to the
+ * same client of the pool (see {@link #getAmqpAdapterClient(String)}), so that the messages of a device are sent over
+ * a single connection and their order is preserved, while the devices of the tenant are spread over all connections.
+ * <p>
+ * This class is thread-safe: the endpoints are kept in a concurrent set and the operations that change the state of the
+ * instance are synchronized on the instance itself, i.e. they are serialized per tenant.
  * <p>
  * Note: do not re-use an instance if it is already closed.
  */
 class TenantConnections {
 
     // visible for testing
-    final List<MqttEndpoint> mqttEndpoints = new ArrayList<>();
+    final Set<MqttEndpoint> mqttEndpoints = ConcurrentHashMap.newKeySet();
 
-    private final AmqpAdapterClient amqpAdapterClient;
+    private final List<AmqpAdapterClient> amqpAdapterClients;
     private final Logger log = LoggerFactory.getLogger(getClass());
     private final String tenantId;
+    private final Vertx vertx;
+    private final long lingerMillis;
 
-    private boolean closed = false;
+    private volatile boolean closed = false;
+    private boolean keepOpen;
+    private long lingerTimer = -1;
+    private Runnable idleCloseHandler = () -> { };
 
     /**
-     * Creates a new instance with a new {@link AmqpAdapterClient} and a new {@link HonoConnection}.
+     * Creates a new instance with a pool of new {@link AmqpAdapterClient}s, each with a new {@link HonoConnection}
+     * that uses the given tracer, that is closed only when no MQTT endpoint has been added within a linger period
+     * after the last one has been closed.
      *
      * @param tenantId The ID of the tenant whose connections are to be managed
-     * @param vertx The Vert.x instance to be used by the HonoConnection.
-     * @param clientConfig The client configuration to be used by the HonoConnection.
+     * @param vertx The Vert.x instance to be used by the HonoConnections and for the linger timer.
+     * @param clientConfig The client configuration to be used by the HonoConnections.
+     * @param poolSize The number of AMQP connections to open for the tenant.
+     * @param lingerMillis The linger period in milliseconds or 0 if the instance is to be closed immediately.
+     * @param tracer The tracer to be used by the HonoConnections.
+     * @throws IllegalArgumentException if the pool size is smaller than 1 or the linger period is negative.
      */
-    TenantConnections(final String tenantId, final Vertx vertx, final ClientConfigProperties clientConfig) {
-        this(AmqpAdapterClient.create(HonoConnection.newConnection(vertx, clientConfig)), tenantId);
+    TenantConnections(final String tenantId, final Vertx vertx, final ClientConfigProperties clientConfig,
+            final int poolSize, final long lingerMillis, final Tracer tracer) {
+        this(createClients(vertx, clientConfig, poolSize, tracer), tenantId, vertx, lingerMillis);
     }
 
     /**
-     * Creates a new instance for the given {@link AmqpAdapterClient}.
+     * Creates a new instance for the given pool of {@link AmqpAdapterClient}s.
      * <p>
      * <b>This constructor is for testing purposes only.</b>
      *
-     * @param amqpAdapterClient The AmqpAdapterClient to use.
+     * @param amqpAdapterClients The AmqpAdapterClients to use.
+     * @param tenantId The ID of the tenant whose connections are to be managed
+     * @throws IllegalArgumentException if the list of clients is empty.
+     */
+    TenantConnections(final List<AmqpAdapterClient> amqpAdapterClients, final String tenantId) {
+        this(amqpAdapterClients, tenantId, null, 0);
+    }
+
+    /**
+     * Creates a new instance for the given pool of {@link AmqpAdapterClient}s with a linger period.
+     *
+     * @param amqpAdapterClients The AmqpAdapterClients to use.
      * @param tenantId The ID of the tenant whose connections are to be managed
+     * @param vertx The Vert.x instance to be used for the linger timer.
+     * @param lingerMillis The linger period in milliseconds or 0 if the instance is to be closed immediately.
+     * @throws IllegalArgumentException if the list of clients is empty or the linger period is negative.
+     * @throws NullPointerException if the linger period is positive and the Vert.x instance is {@code null}.
      */
-    TenantConnections(final AmqpAdapterClient amqpAdapterClient, final String tenantId) {
-        this.amqpAdapterClient = amqpAdapterClient;
+    private TenantConnections(final List<AmqpAdapterClient> amqpAdapterClients, final String tenantId,
+            final Vertx vertx, final long lingerMillis) {
+        if (amqpAdapterClients.isEmpty()) {
+            throw new IllegalArgumentException("at least one AMQP client is required");
+        }
+        if (lingerMillis < 0) {
+            throw new IllegalArgumentException("linger period must not be negative");
+        }
+        if (lingerMillis > 0) {
+            Objects.requireNonNull(vertx);
+        }
+        this.amqpAdapterClients = List.copyOf(amqpAdapterClients);
         this.tenantId = tenantId;
+        this.vertx = vertx;
+        this.lingerMillis = lingerMillis;
+    }
+
+    private static List<AmqpAdapterClient> createClients(final Vertx vertx, final ClientConfigProperties clientConfig,
+            final int poolSize, final Tracer tracer) {
+
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("pool size must be at least 1");
+        }
+        final List<AmqpAdapterClient> clients = new ArrayList<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            clients.add(AmqpAdapterClient.create(HonoConnection.newConnection(vertx, clientConfig, tracer)));
+        }
+        return clients;
     }
 
     /**
-     * Opens a connection to Hono's AMQP protocol adapter for the tenant to be managed.
+     * Opens the connections to Hono's AMQP protocol adapter for the tenant to be managed.
      *
-     * @return A future indicating the outcome of the operation.
+     * @return A future indicating the outcome of the operation. The future succeeds if all connections of the pool have
+     *         been established.
      */
-    public Future<HonoConnection> connect() {
-        return getAmqpAdapterClient().compose(ConnectionLifecycle::connect)
-                .onSuccess(con -> log.debug("Connected to AMQP adapter"));
+    public Future<Void> connect() {
+        return failIfClosed()
+                .compose(ok -> CompositeFuture.all(amqpAdapterClients.stream()
+                        .map(ConnectionLifecycle::connect)
+                        .collect(Collectors.toList())))
+                .<Void> mapEmpty()
+                .onSuccess(con -> log.debug("Connected to AMQP adapter [tenant: {}, connections: {}]", tenantId,
+                        amqpAdapterClients.size()));
     }
 
     /**
@@ -89,36 +163,99 @@ class TenantConnections {
      * @param mqttEndpoint The endpoint to add.
      * @return A future indicating the outcome of the operation.
      */
-    public Future<Void> addEndpoint(final MqttEndpoint mqttEndpoint) {
+    public synchronized Future<Void> addEndpoint(final MqttEndpoint mqttEndpoint) {
         return failIfClosed()
                 .onFailure(thr -> log.warn("failed to add MQTT endpoint for tenant [{}]", tenantId, thr))
-                .onSuccess(v -> mqttEndpoints.add(mqttEndpoint));
+                .onSuccess(v -> {
+                    cancelLinger();
+                    mqttEndpoints.add(mqttEndpoint);
+                });
     }
 
     /**
      * Closes the given MQTT endpoint and if there are no other MQTT endpoints present, it closes the AMQP client and
-     * this instance.
+     * this instance, unless a linger period is set or the instance is to be kept open.
      *
      * @param mqttEndpoint The endpoint to be closed.
      * @return {@code true} if the AMQP connection has been closed.
      */
-    public boolean closeEndpoint(final MqttEndpoint mqttEndpoint) {
+    public synchronized boolean closeEndpoint(final MqttEndpoint mqttEndpoint) {
 
         closeEndpointIfConnected(mqttEndpoint);
 
         mqttEndpoints.remove(mqttEndpoint);
 
-        if (mqttEndpoints.isEmpty()) {
+        if (mqttEndpoints.isEmpty() && !closed && !keepOpen) {
+            if (lingerMillis > 0) {
+                cancelLinger();
+                lingerTimer = vertx.setTimer(lingerMillis, this::closeIfIdle);
+            } else {
+                closeThisInstance();
+            }
+        }
+
+        return closed;
+    }
+
+    /**
+     * Prevents this instance from being closed while no MQTT endpoint is present, i.e. the linger timer is cancelled.
+     * <p>
+     * This method is invoked when the instance is about to be used for a newly connecting device, so that it is not
+     * closed before the endpoint of the device has been added.
+     *
+     * @param permanently {@code true} if the instance is to be kept open until {@link #closeAllConnections()} is
+     *            invoked, {@code false} if it is to be closed again when the next endpoint has been closed.
+     */
+    public synchronized void retain(final boolean permanently) {
+        cancelLinger();
+        if (permanently) {
+            keepOpen = true;
+        }
+    }
+
+    /**
+     * Sets the handler to be invoked when this instance has been closed because no endpoint has been added within the
+     * linger period.
+     *
+     * @param handler The handler.
+     * @throws NullPointerException if the handler is {@code null}.
+     */
+    public void setIdleCloseHandler(final Runnable handler) {
+        this.idleCloseHandler = Objects.requireNonNull(handler);
+    }
+
+    private void cancelLinger() {
+        if (lingerTimer != -1) {
+            vertx.cancelTimer(lingerTimer);
+            lingerTimer = -1;
+        }
+    }
+
+    private void closeIfIdle(final long timerId) {
+        synchronized (this) {
+            if (timerId != lingerTimer || !mqttEndpoints.isEmpty() || closed) {
+                return;
+            }
+            lingerTimer = -1;
+            log.debug("closing idle AMQP connections [tenant: {}]", tenantId);
             closeThisInstance();
         }
+        idleCloseHandler.run();
+    }
 
+    /**
+     * Checks whether this instance has been closed.
+     *
+     * @return {@code true} if the instance is closed and must no longer be used.
+     */
+    public boolean isClosed() {
         return closed;
     }
 
     /**
      * Closes all MQTT endpoints and the AMQP connection.
      */
-    public void closeAllConnections() {
+    public synchronized void closeAllConnections() {
         log.info("closing all AMQP connections");
 
         mqttEndpoints.forEach(this::closeEndpointIfConnected);
@@ -137,30 +274,55 @@ class TenantConnections {
     }
 
     private void closeThisInstance() {
-        amqpAdapterClient.disconnect();
+        cancelLinger();
+        amqpAdapterClients.forEach(ConnectionLifecycle::disconnect);
         closed = true;
     }
 
     /**
-     * Checks whether the AMQP connection is currently established.
+     * Checks whether the AMQP connections are currently established.
      *
      * @param connectTimeout The maximum number of milliseconds to wait for an ongoing connection attempt to finish.
-     * @return A succeeded future if this connection is established. Otherwise, the future will be failed with a
-     *         {@link ServerErrorException}, or an {@link IllegalStateException} if this instance is already closed.
+     * @return A succeeded future if all connections of the pool are established. Otherwise, the future will be failed
+     *         with a {@link ServerErrorException}, or an {@link IllegalStateException} if this instance is already
+     *         closed.
      */
     public Future<Void> isConnected(final long connectTimeout) {
-        return getAmqpAdapterClient().compose(f -> f.isConnected(connectTimeout));
+        return failIfClosed()
+                .compose(ok -> CompositeFuture.all(amqpAdapterClients.stream()
+                        .map(client -> client.isConnected(connectTimeout))
+                        .collect(Collectors.toList())))
+                .mapEmpty();
     }
 
     /**
      * Returns the AmqpAdapterClient for the tenant.
+     * <p>
+     * This is the first client of the pool. It is to be used for links that are not specific to a device.
      *
      * @return A future containing the AmqpAdapterClient, or, if this instance is already closed, a failed future.
      */
     public Future<AmqpAdapterClient> getAmqpAdapterClient() {
         return failIfClosed()
                 .onFailure(thr -> log.warn("failed to get client for tenant [{}]", tenantId, thr))
-                .map(amqpAdapterClient);
+                .map(amqpAdapterClients.get(0));
+    }
+
+    /**
+     * Returns the AmqpAdapterClient of the pool that is used for the given device.
+     * <p>
+     * The client is selected based on the hash code of the device ID, i.e. a device is always served by the same
+     * client, which preserves the order of its messages.
+     *
+     * @param deviceId The ID of the device.
+     * @return A future containing the AmqpAdapterClient, or, if this instance is already closed, a failed future.
+     * @throws NullPointerException if the device ID is {@code null}.
+     */
+    public Future<AmqpAdapterClient> getAmqpAdapterClient(final String deviceId) {
+        Objects.requireNonNull(deviceId);
+        return failIfClosed()
+                .onFailure(thr -> log.warn("failed to get client for tenant [{}]", tenantId, thr))
+                .map(v -> amqpAdapterClients.get(Math.floorMod(deviceId.hashCode(), amqpAdapterClients.size())));
     }
 
     private Future<Void> failIfClosed() {
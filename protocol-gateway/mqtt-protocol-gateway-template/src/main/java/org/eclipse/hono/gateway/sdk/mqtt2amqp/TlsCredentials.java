@@ -0,0 +1,368 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.X509ExtendedKeyManager;
+import javax.net.ssl.X509ExtendedTrustManager;
+import javax.net.ssl.X509KeyManager;
+import javax.net.ssl.X509TrustManager;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.net.KeyCertOptions;
+import io.vertx.core.net.KeyStoreOptionsBase;
+import io.vertx.core.net.PemKeyCertOptions;
+import io.vertx.core.net.PemTrustOptions;
+import io.vertx.core.net.TrustOptions;
+
+/**
+ * The TLS credentials of the MQTT server, which can be reloaded from disk while the server is running.
+ * <p>
+ * The key & certificate options and the trust options returned by this class delegate to the credentials that have
+ * been loaded most recently. Reloading them therefore only affects the handshakes of new connections, existing
+ * connections are kept. Copies of the options share the credentials.
+ * <p>
+ * The key manager marks the sessions for which it has been asked for the server certificate, i.e. those that have
+ * been established with a full handshake, and configures the session cache of the server when it is first invoked.
+ * The credentials are only reloaded if the modification time of one of their files has changed. Key stores, PEM
+ * certificates and keys that are given as values or as class path resources instead of files cannot be reloaded.
+ * <p>
+ * This class is thread-safe.
+ */
+final class TlsCredentials {
+
+    private static final String FULL_HANDSHAKE = TlsCredentials.class.getName() + ".fullHandshake";
+
+    private final KeyCertOptions keyCertOptions;
+    private final TrustOptions trustOptions;
+    private final int sessionCacheSize;
+    private final int sessionTimeout;
+    private final CurrentKeyManager keyManager = new CurrentKeyManager();
+    private final CurrentTrustManager trustManager = new CurrentTrustManager();
+    private final KeyCertOptions currentKeyCertOptions = new CurrentKeyCertOptions();
+    private volatile Map<Path, FileTime> modificationTimes = Map.of();
+    private volatile SSLSessionContext configuredSessionContext;
+
+    /**
+     * Creates new credentials.
+     *
+     * @param keyCertOptions The options to load the key and certificate of the server from.
+     * @param trustOptions The options to load the trusted certificates from or {@code null} if client certificates are
+     *            not requested.
+     * @param sessionCacheSize The maximum number of sessions in the session cache of the server.
+     * @param sessionTimeout The time in seconds after which a cached session or a session ticket expires.
+     * @throws NullPointerException if the key & certificate options are {@code null}.
+     */
+    TlsCredentials(final KeyCertOptions keyCertOptions, final TrustOptions trustOptions, final int sessionCacheSize,
+            final int sessionTimeout) {
+        this.keyCertOptions = Objects.requireNonNull(keyCertOptions);
+        this.trustOptions = trustOptions;
+        this.sessionCacheSize = sessionCacheSize;
+        this.sessionTimeout = sessionTimeout;
+    }
+
+    /**
+     * Checks if a session has been established with a full handshake and removes the mark from the session.
+     * <p>
+     * Sessions that are resumed afterwards are therefore not considered to be established with a full handshake.
+     *
+     * @param session The session of a connection that has just been established.
+     * @return {@code true} if the key manager of these credentials has been asked for the server certificate
+     *         during the handshake of the session.
+     * @throws NullPointerException if the session is {@code null}.
+     */
+    static boolean isFullHandshake(final SSLSession session) {
+        final boolean full = session.getValue(FULL_HANDSHAKE) != null;
+        if (full) {
+            session.removeValue(FULL_HANDSHAKE);
+        }
+        return full;
+    }
+
+    /**
+     * Gets the key & certificate options to be used by the server.
+     *
+     * @return The options.
+     */
+    KeyCertOptions getKeyCertOptions() {
+        return currentKeyCertOptions;
+    }
+
+    /**
+     * Gets the trust options to be used by the server.
+     *
+     * @return The options or {@code null} if no trust options have been given.
+     */
+    TrustOptions getTrustOptions() {
+        return trustOptions == null ? null : TrustOptions.wrap(trustManager);
+    }
+
+    /**
+     * Loads the credentials from the options.
+     * <p>
+     * This method reads from disk and should not be invoked on an event loop thread once the server is running.
+     *
+     * @param vertx The Vert.x instance to load the options with.
+     * @throws Exception if the credentials cannot be loaded. The credentials that have been loaded before are kept.
+     */
+    void load(final Vertx vertx) throws Exception {
+
+        final Map<Path, FileTime> times = getModificationTimes();
+
+        final KeyCertOptions keyCertCopy = keyCertOptions.copy();
+        final KeyManagerFactory keyManagerFactory = keyCertCopy.getKeyManagerFactory(vertx);
+        final X509KeyManager loadedKeyManager = (X509KeyManager) keyManagerFactory.getKeyManagers()[0];
+        final Function<String, X509KeyManager> loadedMapper = keyCertCopy.keyManagerMapper(vertx);
+
+        X509TrustManager loadedTrustManager = null;
+        if (trustOptions != null) {
+            loadedTrustManager = Arrays.stream(trustOptions.copy().getTrustManagerFactory(vertx).getTrustManagers())
+                    .filter(X509TrustManager.class::isInstance)
+                    .map(X509TrustManager.class::cast)
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("trust options contain no X.509 trust manager"));
+        }
+
+        keyManager.delegate = loadedKeyManager;
+        keyManager.mapper = loadedMapper;
+        trustManager.delegate = loadedTrustManager;
+        modificationTimes = times;
+    }
+
+    /**
+     * Loads the credentials again if one of their files has been modified since they have been loaded.
+     * <p>
+     * This method reads from disk and should not be invoked on an event loop thread.
+     *
+     * @param vertx The Vert.x instance to load the options with.
+     * @return {@code true} if the credentials have been loaded again.
+     * @throws Exception if the credentials cannot be loaded. The credentials that have been loaded before are kept.
+     */
+    boolean reloadIfModified(final Vertx vertx) throws Exception {
+        if (getModificationTimes().equals(modificationTimes)) {
+            return false;
+        }
+        load(vertx);
+        return true;
+    }
+
+    private Map<Path, FileTime> getModificationTimes() throws IOException {
+        final List<String> files = new ArrayList<>();
+        addFiles(keyCertOptions, files);
+        addFiles(trustOptions, files);
+
+        final Map<Path, FileTime> times = new HashMap<>();
+        for (final String file : files) {
+            final Path path = Paths.get(file);
+            // files that are resolved from the class path by Vert.x cannot be checked
+            if (Files.exists(path)) {
+                times.put(path, Files.getLastModifiedTime(path));
+            }
+        }
+        return times;
+    }
+
+    private static void addFiles(final Object options, final List<String> files) {
+        if (options instanceof PemKeyCertOptions) {
+            files.addAll(((PemKeyCertOptions) options).getCertPaths());
+            files.addAll(((PemKeyCertOptions) options).getKeyPaths());
+        } else if (options instanceof PemTrustOptions) {
+            files.addAll(((PemTrustOptions) options).getCertPaths());
+        } else if (options instanceof KeyStoreOptionsBase && ((KeyStoreOptionsBase) options).getPath() != null) {
+            files.add(((KeyStoreOptionsBase) options).getPath());
+        }
+    }
+
+    private void configureSessionContext(final SSLSessionContext sessionContext) {
+        if (sessionContext != null && sessionContext != configuredSessionContext) {
+            sessionContext.setSessionCacheSize(sessionCacheSize);
+            sessionContext.setSessionTimeout(sessionTimeout);
+            configuredSessionContext = sessionContext;
+        }
+    }
+
+    /**
+     * Key & certificate options that delegate to the most recently loaded credentials.
+     */
+    private final class CurrentKeyCertOptions implements KeyCertOptions {
+
+        @Override
+        public KeyCertOptions copy() {
+            return this;
+        }
+
+        @Override
+        public KeyManagerFactory getKeyManagerFactory(final Vertx vertx) throws Exception {
+            return KeyCertOptions.wrap(keyManager).getKeyManagerFactory(vertx);
+        }
+
+        @Override
+        public Function<String, X509KeyManager> keyManagerMapper(final Vertx vertx) {
+            return serverName -> keyManager.mapper.apply(serverName);
+        }
+    }
+
+    /**
+     * A key manager that delegates to the most recently loaded key manager.
+     */
+    private final class CurrentKeyManager extends X509ExtendedKeyManager {
+
+        private volatile X509KeyManager delegate;
+        private volatile Function<String, X509KeyManager> mapper;
+
+        @Override
+        public String chooseEngineServerAlias(final String keyType, final Principal[] issuers, final SSLEngine engine) {
+            final SSLSession session = engine.getHandshakeSession();
+            if (session != null) {
+                session.putValue(FULL_HANDSHAKE, Boolean.TRUE);
+                configureSessionContext(session.getSessionContext());
+            }
+            final X509KeyManager current = delegate;
+            if (current instanceof X509ExtendedKeyManager) {
+                return ((X509ExtendedKeyManager) current).chooseEngineServerAlias(keyType, issuers, engine);
+            }
+            return current.chooseServerAlias(keyType, issuers, null);
+        }
+
+        @Override
+        public String chooseEngineClientAlias(final String[] keyType, final Principal[] issuers,
+                final SSLEngine engine) {
+            final X509KeyManager current = delegate;
+            if (current instanceof X509ExtendedKeyManager) {
+                return ((X509ExtendedKeyManager) current).chooseEngineClientAlias(keyType, issuers, engine);
+            }
+            return current.chooseClientAlias(keyType, issuers, null);
+        }
+
+        @Override
+        public String[] getClientAliases(final String keyType, final Principal[] issuers) {
+            return delegate.getClientAliases(keyType, issuers);
+        }
+
+        @Override
+        public String chooseClientAlias(final String[] keyType, final Principal[] issuers, final Socket socket) {
+            return delegate.chooseClientAlias(keyType, issuers, socket);
+        }
+
+        @Override
+        public String[] getServerAliases(final String keyType, final Principal[] issuers) {
+            return delegate.getServerAliases(keyType, issuers);
+        }
+
+        @Override
+        public String chooseServerAlias(final String keyType, final Principal[] issuers, final Socket socket) {
+            return delegate.chooseServerAlias(keyType, issuers, socket);
+        }
+
+        @Override
+        public X509Certificate[] getCertificateChain(final String alias) {
+            return delegate.getCertificateChain(alias);
+        }
+
+        @Override
+        public PrivateKey getPrivateKey(final String alias) {
+            return delegate.getPrivateKey(alias);
+        }
+    }
+
+    /**
+     * A trust manager that delegates to the most recently loaded trust manager.
+     */
+    private static final class CurrentTrustManager extends X509ExtendedTrustManager {
+
+        private volatile X509TrustManager delegate;
+
+        @Override
+        public void checkClientTrusted(final X509Certificate[] chain, final String authType, final Socket socket)
+                throws CertificateException {
+            final X509TrustManager current = delegate;
+            if (current instanceof X509ExtendedTrustManager) {
+                ((X509ExtendedTrustManager) current).checkClientTrusted(chain, authType, socket);
+            } else {
+                current.checkClientTrusted(chain, authType);
+            }
+        }
+
+        @Override
+        public void checkClientTrusted(final X509Certificate[] chain, final String authType, final SSLEngine engine)
+                throws CertificateException {
+            final X509TrustManager current = delegate;
+            if (current instanceof X509ExtendedTrustManager) {
+                ((X509ExtendedTrustManager) current).checkClientTrusted(chain, authType, engine);
+            } else {
+                current.checkClientTrusted(chain, authType);
+            }
+        }
+
+        @Override
+        public void checkClientTrusted(final X509Certificate[] chain, final String authType)
+                throws CertificateException {
+            delegate.checkClientTrusted(chain, authType);
+        }
+
+        @Override
+        public void checkServerTrusted(final X509Certificate[] chain, final String authType, final Socket socket)
+                throws CertificateException {
+            final X509TrustManager current = delegate;
+            if (current instanceof X509ExtendedTrustManager) {
+                ((X509ExtendedTrustManager) current).checkServerTrusted(chain, authType, socket);
+            } else {
+                current.checkServerTrusted(chain, authType);
+            }
+        }
+
+        @Override
+        public void checkServerTrusted(final X509Certificate[] chain, final String authType, final SSLEngine engine)
+                throws CertificateException {
+            final X509TrustManager current = delegate;
+            if (current instanceof X509ExtendedTrustManager) {
+                ((X509ExtendedTrustManager) current).checkServerTrusted(chain, authType, engine);
+            } else {
+                current.checkServerTrusted(chain, authType);
+            }
+        }
+
+        @Override
+        public void checkServerTrusted(final X509Certificate[] chain, final String authType)
+                throws CertificateException {
+            delegate.checkServerTrusted(chain, authType);
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return delegate.getAcceptedIssuers();
+        }
+    }
+}
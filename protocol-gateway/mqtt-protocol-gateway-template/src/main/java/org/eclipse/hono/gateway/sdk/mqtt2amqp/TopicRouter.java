@@ -0,0 +1,379 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Routes topic names or topic filters to targets by means of topic patterns with named placeholders.
+ * <p>
+ * A pattern like {@code devices/{deviceId}/messages/events/{propertyBag}} consists of topic levels separated by
+ * <em>/</em>. A level is either a literal, which has to be equal to the level of the topic, or a placeholder written
+ * as <em>{name}</em>, which matches any level, including an empty one. The characters <em>+</em> and <em>#</em> are
+ * literals as well, so that the topic filters of subscriptions can be routed like topic names. Placeholders always
+ * span a whole level.
+ * <p>
+ * The patterns are compiled into a trie of topic levels. A topic is matched level by level in a single pass over its
+ * characters, without splitting it and without regular expressions. Literal levels take precedence over placeholders;
+ * only if a literal level leads to no pattern, the placeholders of the same level are tried. The values of the
+ * placeholders are only extracted from the topic when they are requested from the {@link Match}.
+ * <p>
+ * If the identity of the device is passed to {@link #match(String, String, String)}, the placeholders
+ * {@value TopicTemplate#TENANT_ID} and {@value TopicTemplate#DEVICE_ID} only match the tenant and the device, like in
+ * {@link TopicTemplate#matches(String, String, String)}.
+ * <p>
+ * Gateways should build their routers once into constants, e.g.
+ *
+ * <pre>
+ * private static final TopicRouter&lt;MessageType&gt; ROUTER = TopicRouter.&lt;MessageType&gt; builder()
+ *         .route("telemetry/{deviceId}/{propertyBag}", MessageType.TELEMETRY)
+ *         .route("event/{deviceId}/{propertyBag}", MessageType.EVENT)
+ *         .build();
+ * </pre>
+ *
+ * This class is immutable and thread-safe.
+ *
+ * @param <T> The type of the targets.
+ */
+public final class TopicRouter<T> {
+
+    private static final char SEPARATOR = '/';
+    private static final int OTHER = 0;
+    private static final int TENANT = 1;
+    private static final int DEVICE = 2;
+
+    private final Node<T> root;
+    private final int maxLevels;
+
+    private TopicRouter(final Node<T> root, final int maxLevels) {
+        this.root = root;
+        this.maxLevels = maxLevels;
+    }
+
+    /**
+     * Creates a builder for a router.
+     *
+     * @param <T> The type of the targets.
+     * @return The builder.
+     */
+    public static <T> Builder<T> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * Finds the route of a topic.
+     *
+     * @param topic The topic name or topic filter.
+     * @return The match or {@code null} if no pattern matches the topic.
+     * @throws NullPointerException if topic is {@code null}.
+     */
+    public Match<T> match(final String topic) {
+        return match(topic, null, null);
+    }
+
+    /**
+     * Finds the route of a topic of a device.
+     *
+     * @param topic The topic name or topic filter.
+     * @param tenantId The tenant of the device or {@code null} if the placeholder {@value TopicTemplate#TENANT_ID}
+     *            matches any tenant.
+     * @param deviceId The device or {@code null} if the placeholder {@value TopicTemplate#DEVICE_ID} matches any
+     *            device.
+     * @return The match or {@code null} if no pattern matches the topic.
+     * @throws NullPointerException if topic is {@code null}.
+     */
+    public Match<T> match(final String topic, final String tenantId, final String deviceId) {
+        Objects.requireNonNull(topic);
+
+        // the bounds of the levels, [start, end) of level i at 2i and 2i + 1
+        final int[] levels = new int[2 * maxLevels];
+        final Route<T> route = find(root, topic, 0, 0, levels, tenantId, deviceId);
+        return route == null ? null : new Match<>(route, topic, levels);
+    }
+
+    private static <T> Route<T> find(final Node<T> node, final String topic, final int start, final int level,
+            final int[] levels, final String tenantId, final String deviceId) {
+
+        if (level == levels.length / 2) {
+            return null;
+        }
+        int end = topic.indexOf(SEPARATOR, start);
+        final boolean last = end < 0;
+        if (last) {
+            end = topic.length();
+        }
+        levels[2 * level] = start;
+        levels[2 * level + 1] = end;
+        final int length = end - start;
+
+        for (int i = 0; i < node.literals.length; i++) {
+            final String literal = node.literals[i];
+            if (literal.length() == length && topic.startsWith(literal, start)) {
+                final Route<T> route = last ? node.literalChildren[i].route
+                        : find(node.literalChildren[i], topic, end + 1, level + 1, levels, tenantId, deviceId);
+                if (route != null) {
+                    return route;
+                }
+            }
+        }
+        for (final Node<T> child : node.placeholderChildren) {
+            final String value = child.placeholderType == TENANT ? tenantId
+                    : child.placeholderType == DEVICE ? deviceId : null;
+            if (value != null && (value.length() != length || !topic.startsWith(value, start))) {
+                continue;
+            }
+            final Route<T> route = last ? child.route
+                    : find(child, topic, end + 1, level + 1, levels, tenantId, deviceId);
+            if (route != null) {
+                return route;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The result of matching a topic.
+     *
+     * @param <T> The type of the target.
+     */
+    public static final class Match<T> {
+
+        private final Route<T> route;
+        private final String topic;
+        private final int[] levels;
+
+        private Match(final Route<T> route, final String topic, final int[] levels) {
+            this.route = route;
+            this.topic = topic;
+            this.levels = levels;
+        }
+
+        /**
+         * Gets the target of the matching pattern.
+         *
+         * @return The target.
+         */
+        public T getTarget() {
+            return route.target;
+        }
+
+        /**
+         * Gets the matching pattern.
+         *
+         * @return The pattern.
+         */
+        public String getPattern() {
+            return route.pattern;
+        }
+
+        /**
+         * Gets the value of a placeholder.
+         *
+         * @param name The name of the placeholder.
+         * @return The topic level that the placeholder has matched or {@code null} if the pattern does not contain the
+         *         placeholder.
+         * @throws NullPointerException if name is {@code null}.
+         */
+        public String get(final String name) {
+            Objects.requireNonNull(name);
+            for (int i = 0; i < route.placeholders.length; i++) {
+                if (route.placeholders[i].equals(name)) {
+                    final int level = route.placeholderLevels[i];
+                    return topic.substring(levels[2 * level], levels[2 * level + 1]);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return "Match [pattern: " + route.pattern + ", topic: " + topic + "]";
+        }
+    }
+
+    /**
+     * A builder for a router.
+     * <p>
+     * This class is not thread-safe.
+     *
+     * @param <T> The type of the targets.
+     */
+    public static final class Builder<T> {
+
+        private final Node<T> root = new Node<>(null);
+        private int maxLevels;
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a route.
+         *
+         * @param pattern The topic pattern.
+         * @param target The target of the topics matching the pattern.
+         * @return This builder.
+         * @throws NullPointerException if any of the parameters is {@code null}.
+         * @throws IllegalArgumentException if the pattern contains a placeholder that does not span a whole level or
+         *             has an empty name, or if a route with the same pattern has already been added.
+         */
+        public Builder<T> route(final String pattern, final T target) {
+            Objects.requireNonNull(pattern);
+            Objects.requireNonNull(target);
+
+            final List<String> placeholders = new ArrayList<>();
+            final List<Integer> placeholderLevels = new ArrayList<>();
+            Node<T> node = root;
+            int level = 0;
+            int start = 0;
+            while (true) {
+                int end = pattern.indexOf(SEPARATOR, start);
+                final boolean last = end < 0;
+                if (last) {
+                    end = pattern.length();
+                }
+                final String part = pattern.substring(start, end);
+                final String placeholder = getPlaceholder(part, pattern);
+                if (placeholder == null) {
+                    node = node.getOrAddLiteral(part);
+                } else {
+                    if (placeholders.contains(placeholder)) {
+                        throw new IllegalArgumentException("duplicate placeholder in topic pattern: " + pattern);
+                    }
+                    placeholders.add(placeholder);
+                    placeholderLevels.add(level);
+                    node = node.getOrAddPlaceholder(placeholder);
+                }
+                level++;
+                if (last) {
+                    break;
+                }
+                start = end + 1;
+            }
+            if (node.route != null) {
+                throw new IllegalArgumentException("duplicate topic pattern: " + pattern);
+            }
+            node.route = new Route<>(pattern, target, placeholders.toArray(new String[0]),
+                    placeholderLevels.stream().mapToInt(Integer::intValue).toArray());
+            maxLevels = Math.max(maxLevels, level);
+            return this;
+        }
+
+        /**
+         * Creates the router.
+         * <p>
+         * The builder must not be used afterwards.
+         *
+         * @return The router.
+         */
+        public TopicRouter<T> build() {
+            return new TopicRouter<>(root, maxLevels);
+        }
+
+        private static String getPlaceholder(final String part, final String pattern) {
+            final int open = part.indexOf('{');
+            final int close = part.indexOf('}');
+            if (open < 0 && close < 0) {
+                return null;
+            }
+            if (open != 0 || close != part.length() - 1 || part.indexOf('{', 1) >= 0) {
+                throw new IllegalArgumentException("placeholder must span a whole level in topic pattern: " + pattern);
+            }
+            if (part.length() == 2) {
+                throw new IllegalArgumentException("empty placeholder in topic pattern: " + pattern);
+            }
+            return part.substring(1, close);
+        }
+    }
+
+    /**
+     * A level in the trie.
+     *
+     * @param <T> The type of the target.
+     */
+    private static final class Node<T> {
+
+        private final String placeholder;
+        private final int placeholderType;
+        private String[] literals = new String[0];
+        private Node<T>[] literalChildren = newArray(0);
+        private Node<T>[] placeholderChildren = newArray(0);
+        private Route<T> route;
+
+        private Node(final String placeholder) {
+            this.placeholder = placeholder;
+            if (TopicTemplate.TENANT_ID.equals(placeholder)) {
+                placeholderType = TENANT;
+            } else if (TopicTemplate.DEVICE_ID.equals(placeholder)) {
+                placeholderType = DEVICE;
+            } else {
+                placeholderType = OTHER;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <V> Node<V>[] newArray(final int length) {
+            return new Node[length];
+        }
+
+        private Node<T> getOrAddLiteral(final String literal) {
+            for (int i = 0; i < literals.length; i++) {
+                if (literals[i].equals(literal)) {
+                    return literalChildren[i];
+                }
+            }
+            final Node<T> child = new Node<>(null);
+            literals = Arrays.copyOf(literals, literals.length + 1);
+            literals[literals.length - 1] = literal;
+            literalChildren = Arrays.copyOf(literalChildren, literalChildren.length + 1);
+            literalChildren[literalChildren.length - 1] = child;
+            return child;
+        }
+
+        private Node<T> getOrAddPlaceholder(final String name) {
+            for (final Node<T> child : placeholderChildren) {
+                if (child.placeholder.equals(name)) {
+                    return child;
+                }
+            }
+            final Node<T> child = new Node<>(name);
+            placeholderChildren = Arrays.copyOf(placeholderChildren, placeholderChildren.length + 1);
+            placeholderChildren[placeholderChildren.length - 1] = child;
+            return child;
+        }
+    }
+
+    /**
+     * A pattern together with its target.
+     *
+     * @param <T> The type of the target.
+     */
+    private static final class Route<T> {
+
+        private final String pattern;
+        private final T target;
+        private final String[] placeholders;
+        private final int[] placeholderLevels;
+
+        private Route(final String pattern, final T target, final String[] placeholders,
+                final int[] placeholderLevels) {
+            this.pattern = pattern;
+            this.target = target;
+            this.placeholders = placeholders;
+            this.placeholderLevels = placeholderLevels;
+        }
+    }
+}
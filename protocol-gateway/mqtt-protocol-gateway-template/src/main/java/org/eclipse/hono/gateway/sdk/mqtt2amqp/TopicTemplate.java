@@ -0,0 +1,251 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import org.eclipse.hono.auth.Device;
+
+/**
+ * A precompiled topic name or topic filter with placeholders.
+ * <p>
+ * A template is compiled once from a pattern like {@code devices/{deviceId}/messages/events/} into its literal parts
+ * and placeholders. The placeholders {@value #TENANT_ID} and {@value #DEVICE_ID} are resolved from the identity of an
+ * authenticated device by {@link #bind(Device)} or {@link #matches(String, String, String)}. The values of all other
+ * placeholders are passed to {@link #expand(String...)} in the order in which the placeholders appear in the pattern.
+ * <p>
+ * Gateways should compile their templates into constants and return them from
+ * {@link AbstractMqttProtocolGateway#getTopicTemplates()}. The gateway then binds the templates when a device connects
+ * and provides the bound topics in {@link DeviceTopics}, so that no topic needs to be formatted per message.
+ * <p>
+ * This class is immutable and thread-safe.
+ */
+public final class TopicTemplate {
+
+    /**
+     * The name of the placeholder for the tenant of the device.
+     */
+    public static final String TENANT_ID = "tenantId";
+    /**
+     * The name of the placeholder for the device.
+     */
+    public static final String DEVICE_ID = "deviceId";
+
+    private static final int OTHER = 0;
+    private static final int TENANT = 1;
+    private static final int DEVICE = 2;
+
+    private final String pattern;
+    private final String[] literals;
+    private final String[] placeholders;
+    private final int[] placeholderTypes;
+    private final int literalLength;
+    private final boolean deviceSpecificOnly;
+
+    private TopicTemplate(final String pattern, final List<String> literals, final List<String> placeholders) {
+        this.pattern = pattern;
+        this.literals = literals.toArray(new String[0]);
+        this.placeholders = placeholders.toArray(new String[0]);
+        this.placeholderTypes = new int[this.placeholders.length];
+
+        boolean onlyDeviceSpecific = true;
+        for (int i = 0; i < this.placeholders.length; i++) {
+            if (TENANT_ID.equals(this.placeholders[i])) {
+                placeholderTypes[i] = TENANT;
+            } else if (DEVICE_ID.equals(this.placeholders[i])) {
+                placeholderTypes[i] = DEVICE;
+            } else {
+                placeholderTypes[i] = OTHER;
+                onlyDeviceSpecific = false;
+            }
+        }
+        this.deviceSpecificOnly = onlyDeviceSpecific;
+        this.literalLength = literals.stream().mapToInt(String::length).sum();
+    }
+
+    /**
+     * Compiles a template.
+     * <p>
+     * Placeholders are written as <em>{name}</em>. The characters <em>{</em> and <em>}</em> must not be used
+     * otherwise.
+     *
+     * @param pattern The pattern of the topic.
+     * @return The compiled template.
+     * @throws NullPointerException if pattern is {@code null}.
+     * @throws IllegalArgumentException if the pattern contains an unbalanced brace or an empty placeholder name.
+     */
+    public static TopicTemplate compile(final String pattern) {
+        Objects.requireNonNull(pattern);
+
+        final List<String> literals = new ArrayList<>();
+        final List<String> placeholders = new ArrayList<>();
+
+        int start = 0;
+        while (true) {
+            final int open = pattern.indexOf('{', start);
+            final int close = pattern.indexOf('}', start);
+            if (close >= 0 && (open < 0 || close < open)) {
+                throw new IllegalArgumentException("unbalanced '}' in topic template: " + pattern);
+            }
+            if (open < 0) {
+                literals.add(pattern.substring(start));
+                return new TopicTemplate(pattern, literals, placeholders);
+            }
+            final int nextOpen = pattern.indexOf('{', open + 1);
+            if (close < 0 || nextOpen >= 0 && nextOpen < close) {
+                throw new IllegalArgumentException("unbalanced '{' in topic template: " + pattern);
+            }
+            if (close == open + 1) {
+                throw new IllegalArgumentException("empty placeholder in topic template: " + pattern);
+            }
+            literals.add(pattern.substring(start, open));
+            placeholders.add(pattern.substring(open + 1, close));
+            start = close + 1;
+        }
+    }
+
+    /**
+     * Gets the pattern that this template has been compiled from.
+     *
+     * @return The pattern.
+     */
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Checks if all placeholders of this template can be resolved from the identity of a device.
+     *
+     * @return {@code true} if the template only contains the placeholders {@value #TENANT_ID} and
+     *         {@value #DEVICE_ID}.
+     */
+    public boolean isDeviceSpecificOnly() {
+        return deviceSpecificOnly;
+    }
+
+    /**
+     * Creates the topic for a device.
+     *
+     * @param device The device.
+     * @return The topic.
+     * @throws NullPointerException if device is {@code null}.
+     * @throws IllegalStateException if the template contains other placeholders than {@value #TENANT_ID} and
+     *             {@value #DEVICE_ID}.
+     */
+    public String bind(final Device device) {
+        Objects.requireNonNull(device);
+        if (!deviceSpecificOnly) {
+            throw new IllegalStateException("topic template contains placeholders other than the device identity: "
+                    + pattern);
+        }
+        final String tenantId = device.getTenantId();
+        final String deviceId = device.getDeviceId();
+
+        int length = literalLength;
+        for (final int type : placeholderTypes) {
+            length += type == TENANT ? tenantId.length() : deviceId.length();
+        }
+        final StringBuilder topic = new StringBuilder(length);
+        for (int i = 0; i < placeholders.length; i++) {
+            topic.append(literals[i]).append(placeholderTypes[i] == TENANT ? tenantId : deviceId);
+        }
+        return topic.append(literals[placeholders.length]).toString();
+    }
+
+    /**
+     * Creates a topic from the given values.
+     *
+     * @param values The values of the placeholders in the order in which the placeholders appear in the pattern,
+     *            including {@value #TENANT_ID} and {@value #DEVICE_ID}.
+     * @return The topic.
+     * @throws NullPointerException if any of the values is {@code null}.
+     * @throws IllegalArgumentException if the number of values does not match the number of placeholders.
+     */
+    public String expand(final String... values) {
+        Objects.requireNonNull(values);
+        if (values.length != placeholders.length) {
+            throw new IllegalArgumentException(String.format("topic template %s requires %d values, got %d",
+                    pattern, placeholders.length, values.length));
+        }
+        int length = literalLength;
+        for (final String value : values) {
+            length += value.length();
+        }
+        return appendTo(new StringBuilder(length), values).toString();
+    }
+
+    /**
+     * Appends a topic created from the given values to a buffer.
+     *
+     * @param buffer The buffer to append to.
+     * @param values The values of the placeholders in the order in which the placeholders appear in the pattern,
+     *            including {@value #TENANT_ID} and {@value #DEVICE_ID}.
+     * @return The buffer.
+     * @throws NullPointerException if any of the parameters or values is {@code null}.
+     * @throws IllegalArgumentException if the number of values does not match the number of placeholders.
+     */
+    public StringBuilder appendTo(final StringBuilder buffer, final String... values) {
+        Objects.requireNonNull(buffer);
+        Objects.requireNonNull(values);
+        if (values.length != placeholders.length) {
+            throw new IllegalArgumentException(String.format("topic template %s requires %d values, got %d",
+                    pattern, placeholders.length, values.length));
+        }
+        for (int i = 0; i < placeholders.length; i++) {
+            buffer.append(literals[i]).append(Objects.requireNonNull(values[i]));
+        }
+        return buffer.append(literals[placeholders.length]);
+    }
+
+    /**
+     * Checks if a topic is the topic of this template for a device.
+     * <p>
+     * The topic is compared part by part, i.e. without creating the topic of the device first.
+     *
+     * @param topic The topic to check.
+     * @param tenantId The tenant of the device or {@code null} if unknown.
+     * @param deviceId The device or {@code null} if unknown.
+     * @return {@code true} if the topic equals the bound topic of the device. If the template contains a placeholder
+     *         whose value is unknown, {@code false} is returned.
+     * @throws NullPointerException if topic is {@code null}.
+     * @throws IllegalStateException if the template contains other placeholders than {@value #TENANT_ID} and
+     *             {@value #DEVICE_ID}.
+     */
+    public boolean matches(final String topic, final String tenantId, final String deviceId) {
+        Objects.requireNonNull(topic);
+        if (!deviceSpecificOnly) {
+            throw new IllegalStateException("topic template contains placeholders other than the device identity: "
+                    + pattern);
+        }
+
+        int offset = 0;
+        for (int i = 0; i < placeholders.length; i++) {
+            final String value = placeholderTypes[i] == TENANT ? tenantId : deviceId;
+            if (value == null || !topic.startsWith(literals[i], offset)
+                    || !topic.startsWith(value, offset + literals[i].length())) {
+                return false;
+            }
+            offset += literals[i].length() + value.length();
+        }
+        final String last = literals[placeholders.length];
+        return topic.length() == offset + last.length() && topic.startsWith(last, offset);
+    }
+
+    @Override
+    public String toString() {
+        return "TopicTemplate [" + pattern + "]";
+    }
+}
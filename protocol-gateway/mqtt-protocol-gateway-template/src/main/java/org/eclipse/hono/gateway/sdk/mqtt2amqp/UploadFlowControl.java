@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.net.NetSocket;
+import io.vertx.mqtt.MqttEndpoint;
+
+/**
+ * Limits the number of messages that are being uploaded to Hono's AMQP adapter concurrently, per MQTT endpoint and
+ * per tenant.
+ * <p>
+ * An upload occupies a slot in the window of its endpoint and in the window of its tenant from
+ * {@link #tryAcquire(String, MqttEndpoint)} until {@link #release(String, MqttEndpoint)}. When one of the windows is
+ * full, reading from the network connection of the endpoint is paused and it is resumed when both windows have room
+ * again. TCP flow control then throttles the device, so that the number of messages buffered in the gateway stays
+ * bounded.
+ * <p>
+ * The {@link MqttEndpoint} API of vertx-mqtt does not provide a way to pause the connection, so the underlying socket
+ * is accessed reflectively. If a window is limited and this is not possible, creating an instance fails. Endpoints
+ * of other implementations, which cannot be paused, get their messages that exceed the window rejected instead. If
+ * neither window is limited, no state is kept at all.
+ * <p>
+ * This class is not thread-safe, it is meant to be used on the event loop of a gateway instance.
+ */
+final class UploadFlowControl {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UploadFlowControl.class);
+    private static final Field SOCKET_FIELD = findSocketField();
+
+    private final Map<MqttEndpoint, EndpointWindow> endpointWindows = new HashMap<>();
+    private final Map<String, TenantWindow> tenantWindows = new HashMap<>();
+    private final int maxPerEndpoint;
+    private final int maxPerTenant;
+    private final boolean limited;
+
+    /**
+     * Creates a new instance.
+     * <p>
+     * @param maxPerEndpoint The maximum number of concurrent uploads per endpoint or 0 for no limit.
+     * @param maxPerTenant The maximum number of concurrent uploads per tenant or 0 for no limit.
+     * @throws IllegalArgumentException if any of the maximums is negative.
+     * @throws IllegalStateException if a limit is set but the connections of vertx-mqtt cannot be paused.
+     */
+    UploadFlowControl(final int maxPerEndpoint, final int maxPerTenant) {
+        if (maxPerEndpoint < 0) {
+            throw new IllegalArgumentException("maximum number of uploads per endpoint must not be negative");
+        }
+        if (maxPerTenant < 0) {
+            throw new IllegalArgumentException("maximum number of uploads per tenant must not be negative");
+        }
+        this.maxPerEndpoint = maxPerEndpoint == 0 ? Integer.MAX_VALUE : maxPerEndpoint;
+        this.maxPerTenant = maxPerTenant == 0 ? Integer.MAX_VALUE : maxPerTenant;
+        this.limited = maxPerEndpoint > 0 || maxPerTenant > 0;
+        if (limited && SOCKET_FIELD == null) {
+            throw new IllegalStateException(
+                    "MQTT connections cannot be paused, limiting the number of in-flight uploads is not supported");
+        }
+    }
+
+    private static Field findSocketField() {
+        try {
+            final Field field = Class.forName("io.vertx.mqtt.impl.MqttEndpointImpl").getDeclaredField("conn");
+            field.setAccessible(true);
+            return field;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.debug("cannot access socket field of MQTT connections", e);
+            return null;
+        }
+    }
+
+    /**
+     * Occupies a slot in the windows of the given endpoint and tenant.
+     * <p>
+     * If this fills one of the windows, the endpoint is paused.
+     *
+     * @param tenantId The tenant to which the endpoint belongs.
+     * @param endpoint The endpoint over which the message to be uploaded has been received.
+     * @return {@code true} if the message may be uploaded, {@code false} if the window is full and the message needs
+     *         to be rejected. The latter only happens if the endpoint cannot be paused.
+     * @throws NullPointerException if any of the parameters is {@code null}.
+     */
+    boolean tryAcquire(final String tenantId, final MqttEndpoint endpoint) {
+        Objects.requireNonNull(tenantId);
+        Objects.requireNonNull(endpoint);
+
+        if (!limited) {
+            return true;
+        }
+        final EndpointWindow endpointWindow = endpointWindows.computeIfAbsent(endpoint,
+                k -> new EndpointWindow(getSocket(k)));
+        final TenantWindow tenantWindow = tenantWindows.computeIfAbsent(tenantId, k -> new TenantWindow());
+
+        if (endpointWindow.socket == null
+                && (endpointWindow.inFlight >= maxPerEndpoint || tenantWindow.inFlight >= maxPerTenant)) {
+            return false;
+        }
+
+        endpointWindow.inFlight++;
+        tenantWindow.inFlight++;
+
+        if (endpointWindow.inFlight >= maxPerEndpoint || tenantWindow.inFlight >= maxPerTenant) {
+            pause(endpointWindow, tenantWindow);
+        }
+        return true;
+    }
+
+    /**
+     * Frees the slot of a completed upload and resumes the endpoints that have room in their windows again.
+     *
+     * @param tenantId The tenant to which the endpoint belongs.
+     * @param endpoint The endpoint over which the uploaded message has been received.
+     * @throws NullPointerException if any of the parameters is {@code null}.
+     */
+    void release(final String tenantId, final MqttEndpoint endpoint) {
+        Objects.requireNonNull(tenantId);
+        Objects.requireNonNull(endpoint);
+
+        final EndpointWindow endpointWindow = endpointWindows.get(endpoint);
+        if (endpointWindow != null) {
+            endpointWindow.inFlight--;
+        }
+        final TenantWindow tenantWindow = tenantWindows.get(tenantId);
+        if (tenantWindow == null) {
+            return;
+        }
+        tenantWindow.inFlight--;
+
+        if (tenantWindow.inFlight < maxPerTenant && !tenantWindow.paused.isEmpty()) {
+            tenantWindow.paused.removeIf(paused -> {
+                if (paused.inFlight < maxPerEndpoint) {
+                    paused.resume();
+                    return true;
+                }
+                return false;
+            });
+        }
+
+        if (endpointWindow != null && endpointWindow.inFlight == 0 && !endpointWindow.paused) {
+            endpointWindows.remove(endpoint);
+        }
+        if (tenantWindow.inFlight == 0 && tenantWindow.paused.isEmpty()) {
+            tenantWindows.remove(tenantId);
+        }
+    }
+
+    /**
+     * Removes the state of a closed endpoint.
+     * <p>
+     * Uploads of the endpoint that are still in progress are released from the tenant's window when they complete.
+     *
+     * @param tenantId The tenant to which the endpoint belongs.
+     * @param endpoint The closed endpoint.
+     * @throws NullPointerException if any of the parameters is {@code null}.
+     */
+    void remove(final String tenantId, final MqttEndpoint endpoint) {
+        Objects.requireNonNull(tenantId);
+        Objects.requireNonNull(endpoint);
+
+        final EndpointWindow endpointWindow = endpointWindows.remove(endpoint);
+        final TenantWindow tenantWindow = tenantWindows.get(tenantId);
+        if (endpointWindow != null && tenantWindow != null) {
+            tenantWindow.paused.remove(endpointWindow);
+        }
+    }
+
+    private void pause(final EndpointWindow endpointWindow, final TenantWindow tenantWindow) {
+        if (endpointWindow.socket != null && !endpointWindow.paused) {
+            LOG.trace("upload window full, pausing MQTT connection");
+            endpointWindow.socket.pause();
+            endpointWindow.paused = true;
+            tenantWindow.paused.add(endpointWindow);
+        }
+    }
+
+    private static NetSocket getSocket(final MqttEndpoint endpoint) {
+        if (SOCKET_FIELD == null || !SOCKET_FIELD.getDeclaringClass().isInstance(endpoint)) {
+            return null;
+        }
+        try {
+            return (NetSocket) SOCKET_FIELD.get(endpoint);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.debug("cannot access socket of MQTT connection", e);
+            return null;
+        }
+    }
+
+    /**
+     * The uploads in progress of an endpoint.
+     */
+    private static final class EndpointWindow {
+
+        private final NetSocket socket;
+        private int inFlight;
+        private boolean paused;
+
+        EndpointWindow(final NetSocket socket) {
+            this.socket = socket;
+        }
+
+        void resume() {
+            LOG.trace("upload window has room again, resuming MQTT connection");
+            paused = false;
+            socket.resume();
+        }
+    }
+
+    /**
+     * The uploads in progress of a tenant and the endpoints of the tenant that are paused.
+     */
+    private static final class TenantWindow {
+
+        private final Set<EndpointWindow> paused = new LinkedHashSet<>();
+        private int inFlight;
+    }
+}
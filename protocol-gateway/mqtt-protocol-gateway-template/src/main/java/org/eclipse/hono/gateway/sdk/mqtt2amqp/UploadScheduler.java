@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+
+/**
+ * Schedules the uploads of the tenants to Hono's AMQP adapter in a weighted-fair manner.
+ * <p>
+ * At most the configured number of uploads are in progress at the same time. Uploads exceeding this number are
+ * queued per tenant and started by deficit round robin when running uploads complete: in each round, a tenant may
+ * start as many uploads as its weight. A tenant whose devices publish more messages than its share therefore only
+ * delays its own messages, while the messages of the other tenants wait at most for one round. The uploads of a
+ * tenant are started in the order in which they have been scheduled.
+ * <p>
+ * The number of queued uploads per tenant is limited. Uploads exceeding this limit are rejected.
+ * <p>
+ * This class is not thread-safe, it is meant to be used on the event loop of a gateway instance.
+ */
+final class UploadScheduler {
+
+    private final Map<String, TenantQueue> queues = new HashMap<>();
+    private final ArrayDeque<TenantQueue> activeQueues = new ArrayDeque<>();
+    private final Map<String, Integer> weights;
+    private final int defaultWeight;
+    private final int maxConcurrent;
+    private final int maxQueuedPerTenant;
+    private int running;
+    private boolean dispatching;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param maxConcurrent The maximum number of uploads in progress.
+     * @param maxQueuedPerTenant The maximum number of queued uploads per tenant.
+     * @param defaultWeight The weight of the tenants that are not contained in the weights.
+     * @param weights The weights per tenant ID.
+     * @throws NullPointerException if the weights are {@code null}.
+     * @throws IllegalArgumentException if any of the numbers or weights is smaller than 1.
+     */
+    UploadScheduler(final int maxConcurrent, final int maxQueuedPerTenant, final int defaultWeight,
+            final Map<String, Integer> weights) {
+
+        Objects.requireNonNull(weights);
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("maximum number of concurrent uploads must be at least 1");
+        }
+        if (maxQueuedPerTenant < 1) {
+            throw new IllegalArgumentException("maximum number of queued uploads must be at least 1");
+        }
+        if (defaultWeight < 1 || weights.values().stream().anyMatch(weight -> weight < 1)) {
+            throw new IllegalArgumentException("weights must be at least 1");
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueuedPerTenant = maxQueuedPerTenant;
+        this.defaultWeight = defaultWeight;
+        this.weights = Map.copyOf(weights);
+    }
+
+    /**
+     * Schedules an upload of a tenant.
+     * <p>
+     * The upload is started immediately if the maximum number of uploads in progress has not been reached.
+     * Otherwise it is queued.
+     *
+     * @param <T> The type of the upload's result.
+     * @param tenantId The tenant.
+     * @param upload The function that starts the upload.
+     * @return The outcome of the upload or {@code null} if the queue of the tenant is full and the upload has been
+     *         rejected.
+     * @throws NullPointerException if any of the parameters is {@code null}.
+     */
+    <T> Future<T> schedule(final String tenantId, final Supplier<Future<T>> upload) {
+        Objects.requireNonNull(tenantId);
+        Objects.requireNonNull(upload);
+
+        if (running < maxConcurrent && activeQueues.isEmpty()) {
+            return start(upload);
+        }
+
+        final TenantQueue queue = queues.computeIfAbsent(tenantId,
+                k -> new TenantQueue(k, weights.getOrDefault(k, defaultWeight)));
+        if (queue.uploads.size() >= maxQueuedPerTenant) {
+            return null;
+        }
+        if (queue.uploads.isEmpty()) {
+            activeQueues.addLast(queue);
+        }
+        final Promise<T> result = Promise.promise();
+        queue.uploads.addLast(() -> start(upload).onComplete(result));
+        return result.future();
+    }
+
+    /**
+     * Gets the number of queued uploads of a tenant.
+     * <p>
+     * This method is only visible for testing purposes.
+     *
+     * @param tenantId The tenant.
+     * @return The number of uploads.
+     */
+    int getQueued(final String tenantId) {
+        final TenantQueue queue = queues.get(tenantId);
+        return queue == null ? 0 : queue.uploads.size();
+    }
+
+    private <T> Future<T> start(final Supplier<Future<T>> upload) {
+        running++;
+        final Future<T> outcome;
+        try {
+            outcome = upload.get();
+        } catch (RuntimeException e) {
+            onUploadCompleted();
+            return Future.failedFuture(e);
+        }
+        return outcome.onComplete(ar -> onUploadCompleted());
+    }
+
+    private void onUploadCompleted() {
+        running--;
+        if (dispatching) {
+            // an upload started below has completed immediately, the loop continues with the next one
+            return;
+        }
+        dispatching = true;
+        while (running < maxConcurrent && !activeQueues.isEmpty()) {
+            final TenantQueue queue = activeQueues.peekFirst();
+            if (queue.deficit == 0) {
+                queue.deficit = queue.weight;
+            }
+            queue.deficit--;
+            final Runnable next = queue.uploads.pollFirst();
+            if (queue.uploads.isEmpty()) {
+                activeQueues.pollFirst();
+                queues.remove(queue.tenantId);
+            } else if (queue.deficit == 0) {
+                // the tenant has used up its share of this round
+                activeQueues.addLast(activeQueues.pollFirst());
+            }
+            next.run();
+        }
+        dispatching = false;
+    }
+
+    /**
+     * The queued uploads of a tenant.
+     */
+    private static final class TenantQueue {
+
+        private final ArrayDeque<Runnable> uploads = new ArrayDeque<>();
+        private final String tenantId;
+        private final int weight;
+        private int deficit;
+
+        TenantQueue(final String tenantId, final int weight) {
+            this.tenantId = tenantId;
+            this.weight = weight;
+        }
+    }
+}
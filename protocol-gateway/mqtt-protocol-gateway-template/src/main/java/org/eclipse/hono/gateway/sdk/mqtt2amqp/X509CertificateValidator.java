@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2016, 2020 Contributors to the Eclipse Foundation
+ * Copyright (c) 2016, 2022 Contributors to the Eclipse Foundation
  *
  * See the NOTICE file(s) distributed with this work for additional
  * information regarding copyright ownership.
@@ -13,31 +13,101 @@
 
 package org.eclipse.hono.gateway.sdk.mqtt2amqp;
 
+import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertPath;
 import java.security.cert.CertPathValidator;
+import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.PKIXParameters;
 import java.security.cert.TrustAnchor;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
 
 /**
  * Validates a device's certificate chain using a {@link CertPathValidator}.
- *
+ * <p>
+ * The {@link PKIXParameters} are built once per set of trust anchors and re-used for subsequent validations against
+ * the same trust anchors. Trust anchors are considered the same if they are based on the same certificates (or the
+ * same CA names and public keys), regardless of the {@link TrustAnchor} instances.
+ * <p>
+ * Optionally, successful validations can be cached, keyed on the fingerprints of the chain and the trust anchors. A
+ * cached validation expires at the latest when one of the certificates of the chain or of the trust anchors expires.
+ * <p>
+ * This class is thread-safe.
  */
 public class X509CertificateValidator {
 
     private static final Logger LOG = LoggerFactory.getLogger(X509CertificateValidator.class);
+    private static final int MAX_PARAMETER_SETS = 100;
+
+    private static final ThreadLocal<CertificateFactory> CERTIFICATE_FACTORY = ThreadLocal.withInitial(() -> {
+        try {
+            return CertificateFactory.getInstance("X.509");
+        } catch (CertificateException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+    private static final ThreadLocal<CertPathValidator> CERT_PATH_VALIDATOR = ThreadLocal.withInitial(() -> {
+        try {
+            return CertPathValidator.getInstance("PKIX");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final Cache<String, PKIXParameters> parameters = Caffeine.newBuilder()
+            .maximumSize(MAX_PARAMETER_SETS)
+            .build();
+    private final Cache<String, Long> validations;
+
+    /**
+     * Creates a new validator that does not cache validation results.
+     */
+    public X509CertificateValidator() {
+        this(0);
+    }
+
+    /**
+     * Creates a new validator that caches successful validations.
+     *
+     * @param maxCachedValidations The maximum number of validations to cache or 0 to disable caching.
+     * @throws IllegalArgumentException if the number is negative.
+     */
+    public X509CertificateValidator(final long maxCachedValidations) {
+        if (maxCachedValidations < 0) {
+            throw new IllegalArgumentException("maximum number of cached validations must not be negative");
+        }
+        if (maxCachedValidations == 0) {
+            validations = null;
+        } else {
+            validations = Caffeine.newBuilder()
+                    .maximumSize(maxCachedValidations)
+                    .expireAfter(new NotAfterExpiry())
+                    .recordStats()
+                    .build();
+        }
+    }
 
     /**
      * Validates a certificate path based on a list of trust anchors.
@@ -61,16 +131,27 @@ public class X509CertificateValidator {
         }
 
         final Promise<Void> result = Promise.promise();
+        final long start = System.nanoTime();
 
         try {
-            final PKIXParameters params = new PKIXParameters(trustAnchors);
-            params.setRevocationEnabled(false);
-            final CertificateFactory factory = CertificateFactory.getInstance("X.509");
-            final CertPath path = factory.generateCertPath(chain);
-            final CertPathValidator validator = CertPathValidator.getInstance("PKIX");
-            validator.validate(path, params);
-            LOG.debug("validation of device certificate [subject DN: {}] succeeded",
-                    chain.get(0).getSubjectX500Principal().getName());
+            final String trustAnchorsKey = fingerprint(trustAnchors);
+            final String validationKey = validations == null ? null : trustAnchorsKey + fingerprint(chain);
+
+            if (validationKey != null && validations.getIfPresent(validationKey) != null) {
+                LOG.debug("validation of device certificate [subject DN: {}] succeeded (cached)",
+                        chain.get(0).getSubjectX500Principal().getName());
+                result.complete();
+                return result.future();
+            }
+
+            final CertPath path = CERTIFICATE_FACTORY.get().generateCertPath(chain);
+            CERT_PATH_VALIDATOR.get().validate(path, getParameters(trustAnchorsKey, trustAnchors));
+            if (validationKey != null) {
+                validations.put(validationKey, getNotAfter(chain, trustAnchors));
+            }
+            LOG.debug("validation of device certificate [subject DN: {}] succeeded [duration: {}µs]",
+                    chain.get(0).getSubjectX500Principal().getName(),
+                    TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
             result.complete();
         } catch (GeneralSecurityException e) {
             LOG.debug("validation of device certificate [subject DN: {}] failed",
@@ -83,4 +164,96 @@ public class X509CertificateValidator {
         }
         return result.future();
     }
+
+    /**
+     * Gets the statistics of the cache of successful validations.
+     *
+     * @return The hit and miss counts and further statistics, which are empty if caching is disabled.
+     */
+    public CacheStats getCacheStats() {
+        return validations == null ? CacheStats.empty() : validations.stats();
+    }
+
+    private PKIXParameters getParameters(final String trustAnchorsKey, final Set<TrustAnchor> trustAnchors)
+            throws GeneralSecurityException {
+
+        final PKIXParameters cached = parameters.getIfPresent(trustAnchorsKey);
+        if (cached != null) {
+            return cached;
+        }
+        final PKIXParameters params = new PKIXParameters(trustAnchors);
+        params.setRevocationEnabled(false);
+        parameters.put(trustAnchorsKey, params);
+        return params;
+    }
+
+    private static long getNotAfter(final List<X509Certificate> chain, final Set<TrustAnchor> trustAnchors) {
+        long notAfter = Long.MAX_VALUE;
+        for (final X509Certificate cert : chain) {
+            notAfter = Math.min(notAfter, cert.getNotAfter().getTime());
+        }
+        for (final TrustAnchor anchor : trustAnchors) {
+            if (anchor.getTrustedCert() != null) {
+                notAfter = Math.min(notAfter, anchor.getTrustedCert().getNotAfter().getTime());
+            }
+        }
+        return notAfter;
+    }
+
+    private static String fingerprint(final List<X509Certificate> chain) throws CertificateEncodingException {
+        final MessageDigest digest = newDigest();
+        for (final X509Certificate cert : chain) {
+            digest.update(cert.getEncoded());
+        }
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    private static String fingerprint(final Set<TrustAnchor> trustAnchors) throws CertificateEncodingException {
+        // the order of the trust anchors must not matter, so the fingerprints of the anchors are sorted
+        final List<String> anchorFingerprints = new ArrayList<>(trustAnchors.size());
+        for (final TrustAnchor anchor : trustAnchors) {
+            final MessageDigest digest = newDigest();
+            if (anchor.getTrustedCert() != null) {
+                digest.update(anchor.getTrustedCert().getEncoded());
+            } else {
+                digest.update(anchor.getCAName().getBytes(StandardCharsets.UTF_8));
+                digest.update(anchor.getCAPublicKey().getEncoded());
+            }
+            anchorFingerprints.add(Base64.getEncoder().encodeToString(digest.digest()));
+        }
+        Collections.sort(anchorFingerprints);
+        return String.join(",", anchorFingerprints) + ";";
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Expires a cached validation when the first of the involved certificates expires.
+     */
+    private static final class NotAfterExpiry implements Expiry<String, Long> {
+
+        @Override
+        public long expireAfterCreate(final String key, final Long notAfter, final long currentTime) {
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, notAfter - System.currentTimeMillis()));
+        }
+
+        @Override
+        public long expireAfterUpdate(final String key, final Long notAfter, final long currentTime,
+                final long currentDuration) {
+            return expireAfterCreate(key, notAfter, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(final String key, final Long notAfter, final long currentTime,
+                final long currentDuration) {
+            return currentDuration;
+        }
+    }
 }
@@ -29,6 +29,9 @@ public abstract class DownstreamMessage {
 
     /**
      * Creates an instance.
+     * <p>
+     * The payload is not copied. Passing the buffer of the published MQTT message avoids copying the payload in the
+     * gateway.
      *
      * @param payload The payload to be used.
      */
@@ -14,18 +14,24 @@
 package org.eclipse.hono.gateway.sdk.mqtt2amqp;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 
+import java.net.HttpURLConnection;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.cert.TrustAnchor;
 import java.security.cert.X509Certificate;
@@ -38,14 +44,18 @@ import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
+import org.apache.qpid.proton.amqp.messaging.Accepted;
 import org.apache.qpid.proton.amqp.messaging.Rejected;
 import org.apache.qpid.proton.amqp.messaging.Source;
 import org.apache.qpid.proton.amqp.transport.Target;
 import org.apache.qpid.proton.message.Message;
 import org.apache.qpid.proton.message.impl.MessageImpl;
+import org.eclipse.hono.client.ServerErrorException;
 import org.eclipse.hono.client.amqp.config.ClientConfigProperties;
 import org.eclipse.hono.client.amqp.connection.AmqpUtils;
 import org.eclipse.hono.client.amqp.connection.HonoConnection;
+import org.eclipse.hono.client.command.CommandConsumer;
+import org.eclipse.hono.client.device.amqp.EventSender;
 import org.eclipse.hono.client.device.amqp.impl.AmqpAdapterClientCommandConsumer;
 import org.eclipse.hono.client.device.amqp.impl.ProtonBasedAmqpAdapterClient;
 import org.eclipse.hono.gateway.sdk.mqtt2amqp.downstream.CommandResponseMessage;
@@ -56,12 +66,17 @@ import org.eclipse.hono.util.QoS;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Answers;
 import org.mockito.ArgumentCaptor;
 
 import io.netty.handler.codec.mqtt.MqttConnectReturnCode;
 import io.netty.handler.codec.mqtt.MqttQoS;
 import io.netty.handler.codec.mqtt.MqttTopicSubscription;
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
 import io.opentracing.Tracer;
+import io.opentracing.Tracer.SpanBuilder;
 import io.opentracing.noop.NoopTracerFactory;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
@@ -72,6 +87,7 @@ import io.vertx.core.http.ClientAuth;
 import io.vertx.core.impl.VertxInternal;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.net.NetServer;
+import io.vertx.core.net.OpenSSLEngineOptions;
 import io.vertx.core.net.PemTrustOptions;
 import io.vertx.core.net.PfxOptions;
 import io.vertx.junit5.Timeout;
@@ -116,13 +132,13 @@ public class AbstractMqttProtocolGatewayTest {
         final HonoConnection connection = mockHonoConnection(vertx, amqpClientConfig, protonSender);
 
         final ProtonBasedAmqpAdapterClient amqpAdapterClient = new ProtonBasedAmqpAdapterClient(connection);
-        when(tenantConnectionManager.getOrCreateEventSender(anyString())).thenReturn(
+        when(tenantConnectionManager.getOrCreateEventSender(anyString(), anyString())).thenReturn(
                 Future.succeededFuture(amqpAdapterClient));
 
-        when(tenantConnectionManager.getOrCreateTelemetrySender(anyString())).thenReturn(
+        when(tenantConnectionManager.getOrCreateTelemetrySender(anyString(), anyString())).thenReturn(
                 Future.succeededFuture(amqpAdapterClient));
 
-        when(tenantConnectionManager.getOrCreateCommandResponseSender(anyString())).thenReturn(
+        when(tenantConnectionManager.getOrCreateCommandResponseSender(anyString(), anyString())).thenReturn(
                 Future.succeededFuture(amqpAdapterClient));
 
         when(tenantConnectionManager.createDeviceSpecificCommandConsumer(anyString(), anyString(), any()))
@@ -246,6 +262,31 @@ public class AbstractMqttProtocolGatewayTest {
                 new PfxOptions().setPath(keyStorePath).toJson());
     }
 
+    /**
+     * Verifies that the MqttServerOptions for the MQTT server use OpenSSL only if it is available when native TLS is
+     * configured and that the port may be shared if configured.
+     */
+    @Test
+    public void testMqttServerConfigWithNativeTls() {
+
+        // GIVEN a protocol gateway with TLS configured to use OpenSSL and SO_REUSEPORT
+        final MqttProtocolGatewayConfig config = new MqttProtocolGatewayConfig();
+        config.setKeyStorePath(getResourceFilePath("emptyKeyStoreFile.p12"));
+        config.setNativeTls(true);
+        config.setReusePort(true);
+
+        final TestMqttProtocolGateway gateway = createGateway(config);
+
+        // WHEN the server options are created
+        final MqttServerOptions serverOptions = gateway.getMqttServerOptions();
+
+        // THEN OpenSSL is used only if it is available, otherwise the JDK
+        assertThat(serverOptions.isSsl()).isTrue();
+        assertThat(serverOptions.getSslEngineOptions() instanceof OpenSSLEngineOptions)
+                .isEqualTo(OpenSSLEngineOptions.isAvailable());
+        assertThat(serverOptions.isReusePort()).isTrue();
+    }
+
     /**
      * Verifies that an MQTT server is bound to the configured port and address during startup and
      * {@link AbstractMqttProtocolGateway#afterStartup(Promise)} is being invoked.
@@ -444,6 +485,26 @@ public class AbstractMqttProtocolGatewayTest {
         verify(endpoint).reject(MqttConnectReturnCode.CONNECTION_REFUSED_SERVER_UNAVAILABLE);
     }
 
+    /**
+     * Verifies that connection requests exceeding the configured rate are rejected.
+     */
+    @Test
+    public void testConnectFailsWhenRateLimitIsExceeded() {
+
+        // GIVEN a protocol gateway that admits one connection request per second
+        final MqttProtocolGatewayConfig config = new MqttProtocolGatewayConfig();
+        config.setConnectRateLimit(1);
+        final TestMqttProtocolGateway gateway = createGateway(config);
+
+        // WHEN two devices connect at the same time
+        final MqttEndpoint first = connectTestDevice(gateway);
+        final MqttEndpoint second = connectTestDevice(gateway);
+
+        // THEN the first connection is accepted and the second one is rejected
+        verify(first).accept(false);
+        verify(second).reject(MqttConnectReturnCode.CONNECTION_REFUSED_SERVER_UNAVAILABLE);
+    }
+
     /**
      * Verifies that the credentials for the gateway provided by the implementation of
      * {@link AbstractMqttProtocolGateway} are used to configure the connection to the AMQP adapter, if no credentials
@@ -478,6 +539,27 @@ public class AbstractMqttProtocolGatewayTest {
 
     }
 
+    /**
+     * Verifies that cached gateway credentials are resolved again if connecting to the AMQP adapter with them fails.
+     */
+    @Test
+    public void testGatewayCredentialsAreResolvedAgainWhenConnectFails() {
+
+        // GIVEN a protocol gateway that resolves the gateway credentials dynamically and caches them...
+        final AbstractMqttProtocolGateway gateway = new TestMqttProtocolGateway(new ClientConfigProperties(),
+                new MqttProtocolGatewayConfig(), vertx, tenantConnectionManager);
+        // ... and where connecting to Hono's AMQP adapter with the credentials fails
+        when(tenantConnectionManager.connect(anyString(), any(), any()))
+                .thenReturn(Future.failedFuture("Connect failed"));
+
+        // WHEN two devices of the tenant connect one after the other
+        connectTestDevice(gateway);
+        connectTestDevice(gateway);
+
+        // THEN the credentials are resolved for each device
+        assertThat(gateway.getGatewayCredentialsCacheStats().loadCount()).isEqualTo(2);
+    }
+
     /**
      * Verifies that the credentials for the gateway provided by the client configuration are used to configure the
      * connection to the AMQP adapter and take precedence over the ones provided by the implementation of
@@ -577,6 +659,79 @@ public class AbstractMqttProtocolGatewayTest {
 
     }
 
+    /**
+     * Verifies that a span is started for a message published by a device and that it is finished when the message
+     * has been accepted by Hono.
+     */
+    @Test
+    public void publishedMessageIsTraced() {
+
+        final Tracer tracer = mock(Tracer.class);
+        final SpanBuilder spanBuilder = mock(SpanBuilder.class, withSettings().defaultAnswer(Answers.RETURNS_SELF));
+        when(spanBuilder.start()).thenReturn(mock(Span.class));
+        final SpanBuilder publishSpanBuilder = mock(SpanBuilder.class,
+                withSettings().defaultAnswer(Answers.RETURNS_SELF));
+        final Span publishSpan = mock(Span.class);
+        when(publishSpanBuilder.start()).thenReturn(publishSpan);
+        when(tracer.buildSpan(anyString())).thenReturn(spanBuilder);
+        when(tracer.buildSpan("PUBLISH")).thenReturn(publishSpanBuilder);
+
+        // GIVEN a protocol gateway with a tracer and a connected MQTT endpoint
+        final TestMqttProtocolGateway gateway = createGateway();
+        gateway.setTracer(tracer);
+        final MqttEndpoint mqttEndpoint = connectTestDevice(gateway);
+
+        // WHEN sending a MQTT message
+        ProtocolGatewayTestHelper.sendMessage(mqttEndpoint, Buffer.buffer("payload"), "topic/1");
+
+        // THEN a span is started, which is finished once the message has been accepted
+        verify(tenantConnectionManager).setTracer(tracer);
+        verify(publishSpanBuilder).start();
+        verify(publishSpan, never()).finish();
+        acceptAmqpMessage();
+        verify(publishSpan).finish();
+    }
+
+    /**
+     * Verifies that if {@link AbstractMqttProtocolGateway#onPublishedMessage(MqttDownstreamContext)} throws an
+     * exception, the message is completed as failed, i.e. its span is finished and the connection to the device is
+     * closed.
+     */
+    @Test
+    public void publishedMessageFailsWhenMappingThrows() {
+
+        final Tracer tracer = mock(Tracer.class);
+        final SpanBuilder spanBuilder = mock(SpanBuilder.class, withSettings().defaultAnswer(Answers.RETURNS_SELF));
+        when(spanBuilder.start()).thenReturn(mock(Span.class));
+        final SpanBuilder publishSpanBuilder = mock(SpanBuilder.class,
+                withSettings().defaultAnswer(Answers.RETURNS_SELF));
+        final Span publishSpan = mock(Span.class);
+        when(publishSpan.context()).thenReturn(mock(SpanContext.class));
+        when(publishSpanBuilder.start()).thenReturn(publishSpan);
+        when(tracer.buildSpan(anyString())).thenReturn(spanBuilder);
+        when(tracer.buildSpan("PUBLISH")).thenReturn(publishSpanBuilder);
+
+        // GIVEN a protocol gateway that fails to map published messages and a connected MQTT endpoint
+        final TestMqttProtocolGateway gateway = new TestMqttProtocolGateway(amqpClientConfig,
+                new MqttProtocolGatewayConfig(), vertx, tenantConnectionManager) {
+
+            @Override
+            protected Future<DownstreamMessage> onPublishedMessage(final MqttDownstreamContext ctx) {
+                throw new IllegalStateException("cannot map message");
+            }
+        };
+        gateway.setTracer(tracer);
+        final MqttEndpoint mqttEndpoint = connectTestDevice(gateway);
+
+        // WHEN sending a MQTT message
+        ProtocolGatewayTestHelper.sendMessage(mqttEndpoint, Buffer.buffer("payload"), "topic/1");
+
+        // THEN nothing is sent downstream, the span is finished and the endpoint has been closed
+        verify(protonSender, never()).send(any(Message.class), any());
+        verify(publishSpan).finish();
+        assertThat(mqttEndpoint.isConnected()).isFalse();
+    }
+
     /**
      * Verifies that when a message is being rejected by the remote, the connection to the device is closed.
      */
@@ -600,6 +755,69 @@ public class AbstractMqttProtocolGatewayTest {
 
     }
 
+    /**
+     * Verifies that if a spool directory is configured, an event that cannot be forwarded because Hono is unavailable
+     * is spooled instead of closing the connection to the device and that it is forwarded once Hono is available
+     * again.
+     *
+     * @param spoolDirectory The directory to spool the messages in.
+     */
+    @Test
+    public void sendEventSpoolsMessageWhenHonoIsUnavailable(@TempDir final Path spoolDirectory) {
+
+        final ProtocolGatewayMetrics metrics = mock(ProtocolGatewayMetrics.class);
+        final ArgumentCaptor<Message> messageCaptor = ArgumentCaptor.forClass(Message.class);
+        final Future<EventSender> eventSender = tenantConnectionManager.getOrCreateEventSender("", "");
+
+        // GIVEN a protocol gateway with a spool that sends every MQTT publish message as an event downstream and a
+        // connected MQTT endpoint
+        final MqttProtocolGatewayConfig config = new MqttProtocolGatewayConfig();
+        config.setSpoolDirectory(spoolDirectory.toString());
+        final TestMqttProtocolGateway gateway = createGateway(config);
+        gateway.setMetrics(metrics);
+        final MqttEndpoint mqttEndpoint = connectTestDevice(gateway);
+
+        // WHEN sending a MQTT message while Hono is unavailable
+        when(tenantConnectionManager.getOrCreateEventSender(anyString(), anyString())).thenReturn(
+                Future.failedFuture(new ServerErrorException(HttpURLConnection.HTTP_UNAVAILABLE)));
+        ProtocolGatewayTestHelper.sendMessage(mqttEndpoint, Buffer.buffer("payload1"), "topic/1");
+
+        // THEN the message is spooled and the endpoint stays connected
+        verify(metrics).reportUpload(eq(TestMqttProtocolGateway.TENANT_ID),
+                eq(ProtocolGatewayMetrics.MessageType.EVENT), eq(ProtocolGatewayMetrics.UploadOutcome.SPOOLED),
+                anyLong());
+        verify(protonSender, never()).send(any(Message.class), any());
+        assertThat(mqttEndpoint.isConnected()).isTrue();
+        assertThat(gateway.getSpools().get(TestMqttProtocolGateway.TENANT_ID).size()).isEqualTo(1);
+
+        // WHEN Hono is available again and the spooled messages are forwarded
+        when(tenantConnectionManager.getOrCreateEventSender(anyString(), anyString())).thenReturn(eventSender);
+        gateway.forwardSpooledMessages();
+        acceptAmqpMessage();
+
+        // THEN the spooled message is sent downstream and removed from the spool
+        verify(protonSender).send(messageCaptor.capture(), any());
+        assertThat(messageCaptor.getValue().getAddress()).isEqualTo("event/" + TestMqttProtocolGateway.TENANT_ID
+                + "/" + TestMqttProtocolGateway.DEVICE_ID);
+        assertThat(AmqpUtils.getPayloadAsString(messageCaptor.getValue())).isEqualTo("payload1");
+        assertThat(gateway.getSpools().get(TestMqttProtocolGateway.TENANT_ID).isEmpty()).isTrue();
+        verify(metrics).reportSpool(eq(TestMqttProtocolGateway.TENANT_ID), eq(1), anyLong(), anyLong());
+    }
+
+    private void acceptAmqpMessage() {
+
+        @SuppressWarnings("unchecked")
+        final ArgumentCaptor<Handler<ProtonDelivery>> handlerArgumentCaptor = ArgumentCaptor.forClass(Handler.class);
+
+        verify(protonSender).send(any(), handlerArgumentCaptor.capture());
+
+        final ProtonDelivery protonDelivery = mock(ProtonDelivery.class);
+        when(protonDelivery.getRemoteState()).thenReturn(Accepted.getInstance());
+        when(protonDelivery.remotelySettled()).thenReturn(true);
+
+        handlerArgumentCaptor.getValue().handle(protonDelivery);
+    }
+
     private void rejectAmqpMessage() {
 
         @SuppressWarnings("unchecked")
@@ -691,6 +909,98 @@ public class AbstractMqttProtocolGatewayTest {
         assertThat(amqpMessage.getAddress()).isEqualTo(expectedAddress);
     }
 
+    /**
+     * Verifies that the connection to the device is closed if a message published with QoS 1 exceeds the upload
+     * window of a connection that cannot be paused, so that the device re-sends the unacknowledged message after
+     * reconnecting.
+     */
+    @Test
+    public void testConnectionIsClosedWhenQos1MessageExceedsUploadWindow() {
+
+        final ProtocolGatewayMetrics metrics = mock(ProtocolGatewayMetrics.class);
+        final MqttProtocolGatewayConfig config = new MqttProtocolGatewayConfig();
+        config.setMaxInFlightUploadsPerEndpoint(1);
+
+        // GIVEN a protocol gateway that allows one upload per connection and a connected MQTT endpoint that cannot be
+        // paused
+        final TestMqttProtocolGateway gateway = createGateway(config);
+        gateway.setMetrics(metrics);
+        final MqttEndpoint mqttEndpoint = connectTestDevice(gateway);
+
+        // WHEN a QoS 1 message is published while the upload of the previous one is still in progress
+        ProtocolGatewayTestHelper.sendMessage(mqttEndpoint, Buffer.buffer("payload1"), "topic/1",
+                MqttQoS.AT_LEAST_ONCE);
+        verify(mqttEndpoint, never()).close();
+        ProtocolGatewayTestHelper.sendMessage(mqttEndpoint, Buffer.buffer("payload2"), "topic/1",
+                MqttQoS.AT_LEAST_ONCE);
+
+        // THEN the second message is dropped without being acknowledged...
+        verify(protonSender).send(any(Message.class), any());
+        verify(metrics).reportUpload(eq(TestMqttProtocolGateway.TENANT_ID), eq(null),
+                eq(ProtocolGatewayMetrics.UploadOutcome.DROPPED), anyLong());
+        verify(mqttEndpoint, never()).publishAcknowledge(anyInt());
+
+        // ...AND the connection is closed
+        verify(mqttEndpoint).close();
+    }
+
+    /**
+     * Verifies that connections and uploads are reported to the metrics together with the tenant of the device.
+     */
+    @Test
+    public void testMetricsAreReported() {
+
+        final ProtocolGatewayMetrics metrics = mock(ProtocolGatewayMetrics.class);
+
+        // GIVEN a protocol gateway with metrics that sends every MQTT publish messages as telemetry messages
+        final TestMqttProtocolGateway gateway = new TestMqttProtocolGateway(amqpClientConfig,
+                new MqttProtocolGatewayConfig(), vertx, tenantConnectionManager) {
+
+            @Override
+            protected Future<DownstreamMessage> onPublishedMessage(final MqttDownstreamContext ctx) {
+                return Future.succeededFuture(new TelemetryMessage(ctx.message().payload(), QoS.AT_MOST_ONCE));
+            }
+        };
+        gateway.setMetrics(metrics);
+
+        // WHEN a device connects, sends a message and disconnects
+        final MqttEndpoint mqttEndpoint = connectTestDevice(gateway);
+        ProtocolGatewayTestHelper.sendMessage(mqttEndpoint, Buffer.buffer("payload"), "topic");
+        mqttEndpoint.close();
+
+        // THEN the connection is reported...
+        verify(metrics).reportConnectionAttempt(eq(ProtocolGatewayMetrics.ConnectionOutcome.ACCEPTED),
+                eq(TestMqttProtocolGateway.TENANT_ID), anyLong());
+        verify(metrics).incrementConnections(TestMqttProtocolGateway.TENANT_ID);
+        verify(metrics).decrementConnections(TestMqttProtocolGateway.TENANT_ID);
+
+        // ...AND the upload as well
+        verify(metrics).reportUpload(eq(TestMqttProtocolGateway.TENANT_ID),
+                eq(ProtocolGatewayMetrics.MessageType.TELEMETRY), eq(ProtocolGatewayMetrics.UploadOutcome.FORWARDED),
+                anyLong());
+    }
+
+    /**
+     * Verifies that a failed authentication is reported to the metrics without a tenant.
+     */
+    @Test
+    public void testFailedAuthenticationIsReported() {
+
+        final ProtocolGatewayMetrics metrics = mock(ProtocolGatewayMetrics.class);
+
+        // GIVEN a protocol gateway with metrics
+        final TestMqttProtocolGateway gateway = createGateway();
+        gateway.setMetrics(metrics);
+
+        // WHEN connecting with wrong credentials
+        ProtocolGatewayTestHelper.connectMqttEndpoint(gateway, TestMqttProtocolGateway.DEVICE_USERNAME, "wrong");
+
+        // THEN the failed attempt is reported
+        verify(metrics).reportConnectionAttempt(eq(ProtocolGatewayMetrics.ConnectionOutcome.UNAUTHORIZED), eq(null),
+                anyLong());
+        verify(metrics, never()).incrementConnections(anyString());
+    }
+
     /**
      * Verifies that subscriptions are stored and acknowledged correctly.
      */
@@ -827,6 +1137,101 @@ public class AbstractMqttProtocolGatewayTest {
 
     }
 
+    /**
+     * Verifies that if tenant-wide command consumers are configured, a single consumer is opened for the tenant and
+     * the commands it receives are published to the device they are addressed to. Commands for devices that are not
+     * connected are reported as failed and released.
+     */
+    @Test
+    public void testReceiveCommandWithTenantWideCommandConsumer() {
+
+        when(tenantConnectionManager.createCommandConsumer(anyString(), any()))
+                .thenAnswer(invocation -> {
+                    setCommandHandler(invocation.getArgument(1));
+                    return Future.succeededFuture(mock(CommandConsumer.class));
+                });
+
+        final Message commandMessage = new MessageImpl();
+        AmqpUtils.setJsonPayload(commandMessage, TestMqttProtocolGateway.PAYLOAD);
+        commandMessage.setSubject("the/subject");
+        commandMessage.setAddress("command/" + TestMqttProtocolGateway.TENANT_ID + "/"
+                + TestMqttProtocolGateway.DEVICE_ID);
+
+        // GIVEN a protocol gateway with tenant-wide command consumers and a device with command subscriptions
+        final MqttProtocolGatewayConfig config = new MqttProtocolGatewayConfig();
+        config.setTenantWideCommandConsumer(true);
+        final TestMqttProtocolGateway gateway = createGateway(config);
+        final ProtocolGatewayMetrics metrics = mock(ProtocolGatewayMetrics.class);
+        gateway.setMetrics(metrics);
+        final MqttEndpoint mqttEndpoint = connectTestDevice(gateway);
+
+        ProtocolGatewayTestHelper.subscribe(mqttEndpoint, TestMqttProtocolGateway.FILTER1);
+        ProtocolGatewayTestHelper.subscribe(mqttEndpoint, TestMqttProtocolGateway.FILTER2);
+
+        // WHEN the tenant-wide consumer receives a command for the device
+        commandHandler.accept(commandMessage);
+
+        // THEN only a single consumer has been opened for the tenant...
+        verify(tenantConnectionManager).createCommandConsumer(eq(TestMqttProtocolGateway.TENANT_ID), any());
+        verify(tenantConnectionManager, never()).createDeviceSpecificCommandConsumer(anyString(), anyString(), any());
+
+        // ...AND the command is published to the device
+        verify(mqttEndpoint).publish(eq(TestMqttProtocolGateway.COMMAND_TOPIC), any(Buffer.class),
+                eq(MqttQoS.AT_LEAST_ONCE), eq(false), eq(false), any());
+
+        // WHEN the device unsubscribes from all commands
+        ProtocolGatewayTestHelper.unsubscribe(mqttEndpoint, TestMqttProtocolGateway.FILTER1,
+                TestMqttProtocolGateway.FILTER2);
+
+        // THEN further commands are no longer routed to the device
+        assertThat(gateway.getCommandRouter().route(TestMqttProtocolGateway.TENANT_ID, commandMessage)).isFalse();
+
+        // ...AND a command received by the tenant-wide consumer is reported as failed and released
+        assertThatThrownBy(() -> commandHandler.accept(commandMessage)).isInstanceOf(IllegalStateException.class);
+        verify(metrics).reportCommand(eq(TestMqttProtocolGateway.TENANT_ID),
+                eq(ProtocolGatewayMetrics.CommandOutcome.FAILED), anyLong());
+    }
+
+    /**
+     * Verifies that if tenant-wide command consumers are configured, a command that cannot be published to the
+     * device it is addressed to causes the tenant-wide consumer to release the command message.
+     */
+    @Test
+    public void testTenantWideCommandConsumerReleasesCommandThatCannotBePublished() {
+
+        when(tenantConnectionManager.createCommandConsumer(anyString(), any()))
+                .thenAnswer(invocation -> {
+                    setCommandHandler(invocation.getArgument(1));
+                    return Future.succeededFuture(mock(CommandConsumer.class));
+                });
+
+        final Message commandMessage = new MessageImpl();
+        commandMessage.setAddress("command/" + TestMqttProtocolGateway.TENANT_ID + "/"
+                + TestMqttProtocolGateway.DEVICE_ID);
+
+        // GIVEN a protocol gateway with tenant-wide command consumers that does not map commands
+        final MqttProtocolGatewayConfig config = new MqttProtocolGatewayConfig();
+        config.setTenantWideCommandConsumer(true);
+        final TestMqttProtocolGateway gateway = new TestMqttProtocolGateway(amqpClientConfig, config, vertx,
+                tenantConnectionManager) {
+
+            @Override
+            protected Command onCommandReceived(final MqttCommandContext ctx) {
+                return null;
+            }
+        };
+        // ...AND a device with a command subscription
+        final MqttEndpoint mqttEndpoint = connectTestDevice(gateway);
+        ProtocolGatewayTestHelper.subscribe(mqttEndpoint, TestMqttProtocolGateway.FILTER1);
+
+        // WHEN the tenant-wide consumer receives a command for the device
+        // THEN the handler of the consumer fails, which causes the command message to be released
+        assertThatThrownBy(() -> commandHandler.accept(commandMessage)).isInstanceOf(IllegalStateException.class);
+        // ...AND nothing is published to the device
+        verify(mqttEndpoint, never()).publish(anyString(), any(Buffer.class), any(), anyBoolean(), anyBoolean(),
+                any());
+    }
+
     /**
      * Verifies that subscriptions are remove when unsubscribing.
      */
@@ -857,6 +1262,38 @@ public class AbstractMqttProtocolGatewayTest {
 
     }
 
+    /**
+     * Verifies that no command subscription state is allocated for a device that never subscribes, while an
+     * unexpected acknowledgement and the closing of the connection are still handled.
+     */
+    @Test
+    public void testIdleConnectionDoesNotAllocateSubscriptionState() {
+
+        // GIVEN a protocol gateway and a connected MQTT endpoint without subscriptions
+        final TestMqttProtocolGateway gateway = createGateway();
+        final MqttEndpoint mqttEndpoint = connectTestDevice(gateway);
+        assertThat(gateway.getCommandSubscriptionsManager()).isNull();
+
+        // WHEN the device acknowledges a message that has not been sent and closes the connection
+        final ArgumentCaptor<Handler<Integer>> pubAckHandler = ProtocolGatewayTestHelper.argumentCaptorHandler();
+        verify(mqttEndpoint).publishAcknowledgeHandler(pubAckHandler.capture());
+        pubAckHandler.getValue().handle(1);
+        mqttEndpoint.close();
+
+        // THEN the connection is closed without ever creating a command subscriptions manager
+        assertThat(gateway.isConnectionClosed()).isTrue();
+        assertThat(gateway.getCommandSubscriptionsManager()).isNull();
+
+        // WHEN another device subscribes
+        final MqttEndpoint subscribingEndpoint = connectTestDevice(gateway);
+        ProtocolGatewayTestHelper.subscribe(subscribingEndpoint,
+                new MqttTopicSubscription(TestMqttProtocolGateway.FILTER1, MqttQoS.AT_LEAST_ONCE));
+
+        // THEN the command subscriptions manager is created for it
+        assertThat(gateway.getCommandSubscriptionsManager().getSubscriptions())
+                .containsKey(TestMqttProtocolGateway.FILTER1);
+    }
+
     /**
      * Verifies that when the MQTT connections is being closed, the subscriptions are removed and
      * {@link AbstractMqttProtocolGateway#onDeviceConnectionClose(MqttEndpoint)} is invoked.
@@ -882,6 +1319,33 @@ public class AbstractMqttProtocolGatewayTest {
         assertThat(gateway.isConnectionClosed()).isTrue();
     }
 
+    /**
+     * Verifies that the connection of a device is closed and its subscriptions are removed when a client with the same
+     * client identifier connects.
+     */
+    @Test
+    public void testReconnectClosesStaleConnection() {
+
+        // GIVEN a protocol gateway and a connected MQTT endpoint with subscriptions
+        final TestMqttProtocolGateway gateway = createGateway();
+        final MqttEndpoint staleEndpoint = connectTestDevice(gateway);
+        ProtocolGatewayTestHelper.subscribe(staleEndpoint,
+                new MqttTopicSubscription(TestMqttProtocolGateway.FILTER1, MqttQoS.AT_LEAST_ONCE));
+        final CommandSubscriptionsManager staleSubscriptions = gateway.getCommandSubscriptionsManager();
+
+        // WHEN the device connects again with the same client identifier
+        final MqttEndpoint mqttEndpoint = connectTestDevice(gateway);
+
+        // THEN the stale connection is closed and its subscriptions are removed
+        verify(staleEndpoint).close();
+        assertThat(staleSubscriptions.getSubscriptions()).isEmpty();
+        assertThat(gateway.isConnectionClosed()).isTrue();
+
+        // ... while the new connection is accepted
+        verify(mqttEndpoint).accept(false);
+        verify(mqttEndpoint, never()).close();
+    }
+
     /**
      * Creates a mocked Hono connection that returns a Noop Tracer.
      *
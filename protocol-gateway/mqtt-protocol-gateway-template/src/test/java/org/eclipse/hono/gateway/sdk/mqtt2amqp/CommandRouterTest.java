@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
+import org.apache.qpid.proton.message.Message;
+import org.apache.qpid.proton.message.impl.MessageImpl;
+import org.eclipse.hono.client.command.CommandConsumer;
+import org.eclipse.hono.util.MessageHelper;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifies behavior of {@link CommandRouter}.
+ */
+public class CommandRouterTest {
+
+    private static final String TENANT_ID = "the-tenant";
+    private static final String DEVICE_ID = "the-device";
+
+    private final CommandRouter router = new CommandRouter();
+    private final List<Message> received = new ArrayList<>();
+
+    /**
+     * Verifies that a command is routed to the device that is contained in its address.
+     */
+    @Test
+    public void commandIsRoutedByAddress() {
+        router.register(TENANT_ID, DEVICE_ID, received::add);
+        router.register(TENANT_ID, "other-device", msg -> {
+            throw new AssertionError("command routed to wrong device");
+        });
+
+        final Message command = command("command/" + TENANT_ID + "/" + DEVICE_ID);
+
+        assertThat(router.route(TENANT_ID, command)).isTrue();
+        assertThat(received).containsExactly(command);
+    }
+
+    /**
+     * Verifies that the device ID application property is used if the address does not contain a device.
+     */
+    @Test
+    public void commandIsRoutedByDeviceIdProperty() {
+        router.register(TENANT_ID, DEVICE_ID, received::add);
+
+        final Message command = command("command/" + TENANT_ID);
+        command.setApplicationProperties(
+                new ApplicationProperties(Map.of(MessageHelper.APP_PROPERTY_DEVICE_ID, DEVICE_ID)));
+
+        assertThat(router.route(TENANT_ID, command)).isTrue();
+        assertThat(received).containsExactly(command);
+    }
+
+    /**
+     * Verifies that commands for devices of other tenants or unknown devices are discarded.
+     */
+    @Test
+    public void commandForUnknownDeviceIsDiscarded() {
+        router.register(TENANT_ID, DEVICE_ID, received::add);
+
+        assertThat(router.route("other-tenant", command("command/other-tenant/" + DEVICE_ID))).isFalse();
+        assertThat(router.route(TENANT_ID, command("command/" + TENANT_ID + "/unknown-device"))).isFalse();
+        assertThat(received).isEmpty();
+    }
+
+    /**
+     * Verifies that an exception thrown by the handler of the device is propagated to the caller, so that the command
+     * consumer releases the command message.
+     */
+    @Test
+    public void exceptionOfHandlerIsPropagated() {
+        router.register(TENANT_ID, DEVICE_ID, msg -> {
+            throw new IllegalStateException("cannot publish command");
+        });
+
+        assertThatThrownBy(() -> router.route(TENANT_ID, command("command/" + TENANT_ID + "/" + DEVICE_ID)))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    /**
+     * Verifies that closing the consumer of a replaced registration does not remove the new registration.
+     */
+    @Test
+    public void closingReplacedRegistrationKeepsNewRegistration() {
+        final CommandConsumer oldRegistration = router.register(TENANT_ID, DEVICE_ID, msg -> {
+            throw new AssertionError("command routed to replaced registration");
+        });
+        final CommandConsumer newRegistration = router.register(TENANT_ID, DEVICE_ID, received::add);
+
+        oldRegistration.close(null);
+        assertThat(router.route(TENANT_ID, command("command/" + TENANT_ID + "/" + DEVICE_ID))).isTrue();
+
+        newRegistration.close(null);
+        assertThat(router.route(TENANT_ID, command("command/" + TENANT_ID + "/" + DEVICE_ID))).isFalse();
+        assertThat(received).hasSize(1);
+    }
+
+    private static Message command(final String address) {
+        final Message command = new MessageImpl();
+        command.setAddress(address);
+        return command;
+    }
+}
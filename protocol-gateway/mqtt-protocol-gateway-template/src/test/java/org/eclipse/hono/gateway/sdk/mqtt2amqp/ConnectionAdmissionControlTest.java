@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifies behavior of {@link ConnectionAdmissionControl}.
+ */
+public class ConnectionAdmissionControlTest {
+
+    private final AtomicLong nanoTime = new AtomicLong();
+    private final MqttProtocolGatewayConfig config = new MqttProtocolGatewayConfig();
+
+    /**
+     * Verifies that all connection requests are admitted if no limits are configured.
+     */
+    @Test
+    public void everythingIsAdmittedByDefault() {
+        final ConnectionAdmissionControl admissionControl = new ConnectionAdmissionControl(config, nanoTime::get);
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(admissionControl.tryBeginConnectionRequest()).isTrue();
+            assertThat(admissionControl.tryAdmitTenant("a-tenant")).isTrue();
+        }
+    }
+
+    /**
+     * Verifies that the global token bucket admits a burst of one second and is refilled with the configured rate.
+     */
+    @Test
+    public void connectRateIsLimited() {
+        // GIVEN a limit of 10 connection requests per second
+        config.setConnectRateLimit(10);
+        final ConnectionAdmissionControl admissionControl = new ConnectionAdmissionControl(config, nanoTime::get);
+
+        // WHEN 11 requests arrive at the same time
+        for (int i = 0; i < 10; i++) {
+            assertThat(admissionControl.tryBeginConnectionRequest()).isTrue();
+            admissionControl.endConnectionRequest();
+        }
+        // THEN the last one is rejected
+        assertThat(admissionControl.tryBeginConnectionRequest()).isFalse();
+
+        // WHEN 100ms have passed
+        nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+
+        // THEN one more request is admitted
+        assertThat(admissionControl.tryBeginConnectionRequest()).isTrue();
+        assertThat(admissionControl.tryBeginConnectionRequest()).isFalse();
+    }
+
+    /**
+     * Verifies that the rate limit per tenant does not affect other tenants.
+     */
+    @Test
+    public void connectRateIsLimitedPerTenant() {
+        // GIVEN a limit of 2 connection requests per second and tenant
+        config.setConnectRateLimitPerTenant(2);
+        final ConnectionAdmissionControl admissionControl = new ConnectionAdmissionControl(config, nanoTime::get);
+
+        // WHEN the limit of a tenant is exhausted
+        assertThat(admissionControl.tryAdmitTenant("tenant-a")).isTrue();
+        assertThat(admissionControl.tryAdmitTenant("tenant-a")).isTrue();
+        assertThat(admissionControl.tryAdmitTenant("tenant-a")).isFalse();
+
+        // THEN requests of other tenants are still admitted
+        assertThat(admissionControl.tryAdmitTenant("tenant-b")).isTrue();
+    }
+
+    /**
+     * Verifies that the token buckets of tenants are removed once they have been refilled completely and that this
+     * does not affect the limit of tenants that are still connecting.
+     */
+    @Test
+    public void refilledTenantBucketsAreRemoved() {
+        // GIVEN a limit of 2 connection requests per second and tenant and two tenants that have connected
+        config.setConnectRateLimitPerTenant(2);
+        final ConnectionAdmissionControl admissionControl = new ConnectionAdmissionControl(config, nanoTime::get);
+        assertThat(admissionControl.tryAdmitTenant("tenant-a")).isTrue();
+        assertThat(admissionControl.tryAdmitTenant("tenant-b")).isTrue();
+        assertThat(admissionControl.getTenantBucketCount()).isEqualTo(2);
+
+        // WHEN one of them connects again after the buckets have been refilled completely
+        nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertThat(admissionControl.tryAdmitTenant("tenant-a")).isTrue();
+
+        // THEN the bucket of the other tenant is removed...
+        assertThat(admissionControl.getTenantBucketCount()).isEqualTo(1);
+
+        // ...AND the limit of the connecting tenant still applies
+        assertThat(admissionControl.tryAdmitTenant("tenant-a")).isTrue();
+        assertThat(admissionControl.tryAdmitTenant("tenant-a")).isFalse();
+    }
+
+    /**
+     * Verifies that the number of concurrently processed connection requests is limited.
+     */
+    @Test
+    public void concurrentConnectionRequestsAreLimited() {
+        // GIVEN a limit of 2 concurrent connection requests
+        config.setMaxConcurrentConnectionRequests(2);
+        final ConnectionAdmissionControl admissionControl = new ConnectionAdmissionControl(config, nanoTime::get);
+
+        // WHEN two requests are in progress
+        assertThat(admissionControl.tryBeginConnectionRequest()).isTrue();
+        assertThat(admissionControl.tryBeginConnectionRequest()).isTrue();
+
+        // THEN another request is rejected...
+        assertThat(admissionControl.tryBeginConnectionRequest()).isFalse();
+
+        // ...until one of them has finished
+        admissionControl.endConnectionRequest();
+        assertThat(admissionControl.tryBeginConnectionRequest()).isTrue();
+    }
+}
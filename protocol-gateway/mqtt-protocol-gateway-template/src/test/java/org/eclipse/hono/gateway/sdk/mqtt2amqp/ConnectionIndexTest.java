@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.Test;
+
+import io.vertx.mqtt.MqttEndpoint;
+
+/**
+ * Verifies behavior of {@link ConnectionIndex}.
+ */
+public class ConnectionIndexTest {
+
+    private static final String TENANT_ID = "the-tenant";
+    private static final String DEVICE_ID = "the-device";
+
+    private final ConnectionIndex index = new ConnectionIndex();
+
+    private static MqttEndpoint endpoint(final String clientId) {
+        final MqttEndpoint endpoint = mock(MqttEndpoint.class);
+        when(endpoint.clientIdentifier()).thenReturn(clientId);
+        when(endpoint.isConnected()).thenReturn(true);
+        return endpoint;
+    }
+
+    /**
+     * Verifies that a connection with the same client identifier replaces the existing one, which is closed, and that
+     * removing the replaced connection afterwards does not remove the new one.
+     */
+    @Test
+    public void connectionWithSameClientIdIsReplaced() {
+        final MqttEndpoint stale = endpoint("client");
+        final ConnectionIndex.Connection staleConnection = index.add(TENANT_ID, DEVICE_ID, stale, null, false);
+
+        // WHEN the client connects again
+        final MqttEndpoint current = endpoint("client");
+        final ConnectionIndex.Connection currentConnection = index.add(TENANT_ID, DEVICE_ID, current, null, false);
+
+        // THEN the stale connection is closed
+        verify(stale).close();
+        verify(current, never()).close();
+
+        // ... and its removal when it has been closed does not affect the new connection
+        index.remove(staleConnection);
+        assertThat(index.size()).isEqualTo(1);
+        index.remove(currentConnection);
+        assertThat(index.size()).isEqualTo(0);
+    }
+
+    /**
+     * Verifies that a connection of the same device with another client identifier only replaces the existing one if
+     * requested.
+     */
+    @Test
+    public void connectionOfSameDeviceIsReplacedIfRequested() {
+        final MqttEndpoint first = endpoint("first");
+        index.add(TENANT_ID, DEVICE_ID, first, null, false);
+
+        // WHEN the device connects with another client identifier without replacing connections of the device
+        final MqttEndpoint second = endpoint("second");
+        index.add(TENANT_ID, DEVICE_ID, second, null, false);
+
+        // THEN the existing connection stays open
+        verify(first, never()).close();
+
+        // WHEN the device connects again, replacing its connections
+        final MqttEndpoint third = endpoint("third");
+        index.add(TENANT_ID, DEVICE_ID, third, null, true);
+        final MqttEndpoint fourth = endpoint("fourth");
+        index.add(TENANT_ID, DEVICE_ID, fourth, null, true);
+
+        // THEN only the connection that has been added with the device is replaced by the next one
+        verify(second, never()).close();
+        verify(third).close();
+        verify(fourth, never()).close();
+    }
+
+    /**
+     * Verifies that devices of different tenants with the same client identifier do not replace each other's
+     * connections.
+     */
+    @Test
+    public void connectionsOfOtherTenantsAreNotReplaced() {
+        final MqttEndpoint first = endpoint("client");
+        index.add("tenant-1", DEVICE_ID, first, null, true);
+
+        final MqttEndpoint second = endpoint("client");
+        index.add("tenant-2", DEVICE_ID, second, null, true);
+
+        verify(first, never()).close();
+        assertThat(index.size()).isEqualTo(4);
+    }
+}
@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.HttpURLConnection;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.eclipse.hono.auth.Device;
+import org.eclipse.hono.client.ClientErrorException;
+import org.eclipse.hono.client.ServerErrorException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+
+/**
+ * Verifies behavior of {@link DeviceAuthenticationCache}.
+ */
+public class DeviceAuthenticationCacheTest {
+
+    private static final Device DEVICE = new Device("a-tenant", "a-device");
+
+    private final AtomicLong nanoTime = new AtomicLong();
+    private final AtomicInteger invocations = new AtomicInteger();
+    private DeviceAuthenticationCache cache;
+
+    /**
+     * Sets up common fixture.
+     */
+    @BeforeEach
+    public void setUp() {
+        cache = new DeviceAuthenticationCache(100, Duration.ofSeconds(60), Duration.ofSeconds(10), nanoTime::get);
+    }
+
+    private Supplier<Future<Device>> counting(final Future<Device> outcome) {
+        return () -> {
+            invocations.incrementAndGet();
+            return outcome;
+        };
+    }
+
+    private void advance(final Duration duration) {
+        nanoTime.addAndGet(duration.toNanos());
+    }
+
+    /**
+     * Verifies that a successful authentication is cached until its time to live has passed.
+     */
+    @Test
+    public void successfulAuthenticationIsCached() {
+        final Supplier<Future<Device>> authentication = counting(Future.succeededFuture(DEVICE));
+
+        // WHEN authenticating twice with the same credentials
+        assertThat(cache.get("user", "pwd", "client", authentication).result()).isEqualTo(DEVICE);
+        assertThat(cache.get("user", "pwd", "client", authentication).result()).isEqualTo(DEVICE);
+
+        // THEN the authentication is invoked only once
+        assertThat(invocations.get()).isEqualTo(1);
+        assertThat(cache.stats().hitCount()).isEqualTo(1);
+        assertThat(cache.stats().missCount()).isEqualTo(1);
+
+        // WHEN the time to live has passed
+        advance(Duration.ofSeconds(61));
+        cache.get("user", "pwd", "client", authentication);
+
+        // THEN the authentication is invoked again
+        assertThat(invocations.get()).isEqualTo(2);
+    }
+
+    /**
+     * Verifies that an authentication that has failed with a client error is cached for the negative time to live.
+     */
+    @Test
+    public void failedAuthenticationIsCachedForNegativeTimeToLive() {
+        final Supplier<Future<Device>> authentication = counting(
+                Future.failedFuture(new ClientErrorException(HttpURLConnection.HTTP_UNAUTHORIZED)));
+
+        // WHEN authenticating twice with the same credentials
+        assertThat(cache.get("user", "wrong", "client", authentication).failed()).isTrue();
+        assertThat(cache.get("user", "wrong", "client", authentication).failed()).isTrue();
+
+        // THEN the authentication is invoked only once
+        assertThat(invocations.get()).isEqualTo(1);
+
+        // WHEN the negative time to live has passed
+        advance(Duration.ofSeconds(11));
+        cache.get("user", "wrong", "client", authentication);
+
+        // THEN the authentication is invoked again
+        assertThat(invocations.get()).isEqualTo(2);
+    }
+
+    /**
+     * Verifies that failures caused by a server error are not cached.
+     */
+    @Test
+    public void serverErrorIsNotCached() {
+        final Supplier<Future<Device>> authentication = counting(
+                Future.failedFuture(new ServerErrorException(HttpURLConnection.HTTP_UNAVAILABLE)));
+
+        cache.get("user", "pwd", "client", authentication);
+        cache.get("user", "pwd", "client", authentication);
+
+        assertThat(invocations.get()).isEqualTo(2);
+    }
+
+    /**
+     * Verifies that failures that are not caused by a client error, e.g. an exception thrown by the authentication,
+     * are not cached.
+     */
+    @Test
+    public void otherFailureIsNotCached() {
+        final Supplier<Future<Device>> authentication = counting(
+                Future.failedFuture(new IllegalStateException("authentication returned null")));
+
+        cache.get("user", "pwd", "client", authentication);
+        cache.get("user", "pwd", "client", authentication);
+
+        assertThat(invocations.get()).isEqualTo(2);
+    }
+
+    /**
+     * Verifies that different credentials are cached separately.
+     */
+    @Test
+    public void differentCredentialsAreNotMixedUp() {
+        cache.get("user", "pwd", "client", counting(Future.succeededFuture(DEVICE)));
+
+        assertThat(cache.get("user", "other-pwd", "client", counting(Future.failedFuture("auth failed"))).failed())
+                .isTrue();
+        assertThat(cache.get("userpwd", "", "client", counting(Future.failedFuture("auth failed"))).failed())
+                .isTrue();
+        assertThat(invocations.get()).isEqualTo(3);
+    }
+
+    /**
+     * Verifies that concurrent authentication attempts with the same credentials share an authentication in progress
+     * and that its outcome determines the time to live.
+     */
+    @Test
+    public void authenticationInProgressIsShared() {
+        final Promise<Device> outcome = Promise.promise();
+        final Supplier<Future<Device>> authentication = counting(outcome.future());
+
+        final Future<Device> first = cache.get("user", "pwd", "client", authentication);
+        final Future<Device> second = cache.get("user", "pwd", "client", authentication);
+        assertThat(invocations.get()).isEqualTo(1);
+        assertThat(second).isSameAs(first);
+
+        // WHEN the authentication fails
+        outcome.fail(new ClientErrorException(HttpURLConnection.HTTP_UNAUTHORIZED));
+
+        // THEN the outcome expires after the negative time to live
+        advance(Duration.ofSeconds(11));
+        cache.get("user", "pwd", "client", authentication);
+        assertThat(invocations.get()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+
+/**
+ * Verifies behavior of {@link HashedTimingWheel}.
+ */
+public class HashedTimingWheelTest {
+
+    private static final long TIMER_ID = 42;
+
+    private final AtomicLong nanoTime = new AtomicLong();
+    private Vertx vertx;
+    private HashedTimingWheel timingWheel;
+
+    /**
+     * Sets up the fixture with a wheel of 8 ticks of 10ms each.
+     */
+    @BeforeEach
+    public void setUp() {
+        vertx = mock(Vertx.class);
+        when(vertx.setPeriodic(anyLong(), any())).thenReturn(TIMER_ID);
+        timingWheel = new HashedTimingWheel(vertx, 10, 8, nanoTime::get);
+    }
+
+    /**
+     * Verifies that a timeout expires after its delay has passed, but not before.
+     */
+    @Test
+    public void timeoutExpiresAfterDelay() {
+        final AtomicInteger executions = new AtomicInteger();
+
+        timingWheel.schedule(50, v -> executions.incrementAndGet());
+        final Handler<Long> tick = getPeriodicHandler();
+
+        advanceAndTick(tick, 40);
+        assertThat(executions.get()).isEqualTo(0);
+
+        advanceAndTick(tick, 30);
+        assertThat(executions.get()).isEqualTo(1);
+        assertThat(timingWheel.pendingTimeouts()).isEqualTo(0);
+    }
+
+    /**
+     * Verifies that a timeout with a delay of more than one revolution of the wheel does not expire early.
+     */
+    @Test
+    public void timeoutExpiresAfterMultipleRounds() {
+        final AtomicInteger executions = new AtomicInteger();
+
+        timingWheel.schedule(200, v -> executions.incrementAndGet());
+        final Handler<Long> tick = getPeriodicHandler();
+
+        for (int i = 0; i < 19; i++) {
+            advanceAndTick(tick, 10);
+        }
+        assertThat(executions.get()).isEqualTo(0);
+
+        advanceAndTick(tick, 20);
+        assertThat(executions.get()).isEqualTo(1);
+    }
+
+    /**
+     * Verifies that a cancelled timeout is not executed and that the periodic timer is stopped when no timeouts are
+     * pending anymore.
+     */
+    @Test
+    public void cancelledTimeoutIsNotExecuted() {
+        final AtomicInteger executions = new AtomicInteger();
+
+        final HashedTimingWheel.Timeout timeout = timingWheel.schedule(50, v -> executions.incrementAndGet());
+        final Handler<Long> tick = getPeriodicHandler();
+
+        timeout.cancel();
+        verify(vertx).cancelTimer(TIMER_ID);
+        assertThat(timingWheel.pendingTimeouts()).isEqualTo(0);
+
+        advanceAndTick(tick, 100);
+        assertThat(executions.get()).isEqualTo(0);
+
+        // cancelling again has no effect
+        timeout.cancel();
+        verify(vertx).cancelTimer(TIMER_ID);
+    }
+
+    /**
+     * Verifies that a single periodic timer is used for all timeouts and that it is stopped after the last timeout
+     * has expired.
+     */
+    @Test
+    public void singlePeriodicTimerIsUsed() {
+        final AtomicInteger executions = new AtomicInteger();
+
+        timingWheel.schedule(20, v -> executions.incrementAndGet());
+        timingWheel.schedule(20, v -> executions.incrementAndGet());
+        timingWheel.schedule(60, v -> executions.incrementAndGet());
+        final Handler<Long> tick = getPeriodicHandler();
+
+        advanceAndTick(tick, 40);
+        assertThat(executions.get()).isEqualTo(2);
+        verify(vertx, never()).cancelTimer(anyLong());
+
+        advanceAndTick(tick, 40);
+        assertThat(executions.get()).isEqualTo(3);
+        verify(vertx, times(1)).setPeriodic(anyLong(), any());
+        verify(vertx).cancelTimer(TIMER_ID);
+    }
+
+    /**
+     * Verifies that an expiring task can cancel timeouts of later ticks and schedule new timeouts.
+     */
+    @Test
+    public void taskCanCancelAndScheduleTimeouts() {
+        final AtomicInteger executions = new AtomicInteger();
+
+        final HashedTimingWheel.Timeout other = timingWheel.schedule(60, v -> executions.incrementAndGet());
+        timingWheel.schedule(20, v -> {
+            other.cancel();
+            timingWheel.schedule(20, w -> executions.incrementAndGet());
+        });
+        final Handler<Long> tick = getPeriodicHandler();
+
+        advanceAndTick(tick, 40);
+        assertThat(executions.get()).isEqualTo(0);
+        assertThat(timingWheel.pendingTimeouts()).isEqualTo(1);
+
+        advanceAndTick(tick, 40);
+        assertThat(executions.get()).isEqualTo(1);
+        assertThat(timingWheel.pendingTimeouts()).isEqualTo(0);
+        verify(vertx, times(1)).setPeriodic(anyLong(), any());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Handler<Long> getPeriodicHandler() {
+        final ArgumentCaptor<Handler<Long>> handlerCaptor = ArgumentCaptor.forClass(Handler.class);
+        verify(vertx).setPeriodic(anyLong(), handlerCaptor.capture());
+        return handlerCaptor.getValue();
+    }
+
+    private void advanceAndTick(final Handler<Long> tick, final long millis) {
+        nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+        tick.handle(TIMER_ID);
+    }
+}
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.Timeout;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+
+/**
+ * Verifies behavior of {@link HookExecutor}.
+ */
+@ExtendWith(VertxExtension.class)
+@Timeout(value = 5, timeUnit = TimeUnit.SECONDS)
+public class HookExecutorTest {
+
+    private final List<GatewayHook> reported = new CopyOnWriteArrayList<>();
+
+    private HookExecutor newExecutor(final Vertx vertx, final Map<GatewayHook, HookExecutionMode> modes) {
+        return new HookExecutor(vertx, modes, 4, (hook, tenantId, durationNanos) -> reported.add(hook));
+    }
+
+    /**
+     * Verifies that a hook is invoked on the calling thread by default and that its exceptions are passed on to the
+     * caller.
+     *
+     * @param vertx The Vert.x instance.
+     */
+    @Test
+    public void hookIsInvokedOnCallingThreadByDefault(final Vertx vertx) {
+        final HookExecutor executor = newExecutor(vertx, Map.of());
+        final Thread caller = Thread.currentThread();
+
+        final Future<Thread> result = executor.execute(GatewayHook.ON_PUBLISHED_MESSAGE, "device", "tenant",
+                () -> Future.succeededFuture(Thread.currentThread()));
+
+        assertThat(executor.isOnEventLoop(GatewayHook.ON_PUBLISHED_MESSAGE)).isTrue();
+        assertThat(result.result()).isSameAs(caller);
+        assertThatThrownBy(() -> executor.execute(GatewayHook.ON_PUBLISHED_MESSAGE, "device", "tenant", () -> {
+            throw new IllegalStateException("decoding failed");
+        })).isInstanceOf(IllegalStateException.class);
+        assertThat(reported).containsExactly(GatewayHook.ON_PUBLISHED_MESSAGE, GatewayHook.ON_PUBLISHED_MESSAGE);
+    }
+
+    /**
+     * Verifies that hooks that are invoked on worker threads are invoked one after the other per ordering key and
+     * that their outcome is passed on on the event loop.
+     *
+     * @param vertx The Vert.x instance.
+     * @param ctx The helper to use for running async tests on vertx.
+     */
+    @Test
+    public void workerPoolPreservesOrderPerKey(final Vertx vertx, final VertxTestContext ctx) {
+        final HookExecutor executor = newExecutor(vertx,
+                Map.of(GatewayHook.ON_PUBLISHED_MESSAGE, HookExecutionMode.WORKER_POOL));
+        final List<String> invoked = new CopyOnWriteArrayList<>();
+
+        vertx.runOnContext(v -> {
+            // GIVEN a slow invocation for a device
+            final Future<String> slow = executor.execute(GatewayHook.ON_PUBLISHED_MESSAGE, "device", "tenant", () -> {
+                sleep(200);
+                invoked.add("first");
+                return Future.succeededFuture("first");
+            });
+            // WHEN another message of the device is processed
+            final Future<String> fast = executor.execute(GatewayHook.ON_PUBLISHED_MESSAGE, "device", "tenant", () -> {
+                invoked.add("second");
+                ctx.verify(() -> assertThat(Context.isOnWorkerThread()).isTrue());
+                return Future.succeededFuture("second");
+            });
+
+            // THEN it is processed after the first one and the outcomes are passed on on the event loop
+            fast.onComplete(ar -> ctx.verify(() -> assertThat(Context.isOnEventLoopThread()).isTrue()));
+            CompositeFuture.all(slow, fast).onComplete(ctx.succeeding(all -> {
+                ctx.verify(() -> {
+                    assertThat(invoked).containsExactly("first", "second");
+                    assertThat(reported).hasSize(2);
+                });
+                executor.close();
+                ctx.completeNow();
+            }));
+        });
+    }
+
+    /**
+     * Verifies that an exception thrown by a hook that is invoked on a worker thread fails the returned future and
+     * that hooks configured for virtual threads are invoked, even if the Java runtime does not support them.
+     *
+     * @param vertx The Vert.x instance.
+     * @param ctx The helper to use for running async tests on vertx.
+     */
+    @Test
+    public void exceptionOfOffloadedHookFailsFuture(final Vertx vertx, final VertxTestContext ctx) {
+        final HookExecutor executor = newExecutor(vertx,
+                Map.of(GatewayHook.AUTHENTICATE_DEVICE, HookExecutionMode.VIRTUAL_THREAD));
+
+        vertx.runOnContext(v -> executor.execute(GatewayHook.AUTHENTICATE_DEVICE, "connection", null, () -> {
+            throw new IllegalStateException("registry unavailable");
+        }).onComplete(ctx.failing(t -> {
+            ctx.verify(() -> {
+                assertThat(t).isInstanceOf(IllegalStateException.class);
+                assertThat(reported).containsExactly(GatewayHook.AUTHENTICATE_DEVICE);
+            });
+            executor.close();
+            ctx.completeNow();
+        })));
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifies behavior of {@link MessageIdMap}.
+ */
+public class MessageIdMapTest {
+
+    /**
+     * Verifies that values can be added, replaced and removed.
+     */
+    @Test
+    public void putGetAndRemove() {
+        final MessageIdMap<String> map = new MessageIdMap<>();
+        assertThat(map.get(1)).isNull();
+        assertThat(map.remove(1)).isNull();
+
+        assertThat(map.put(1, "a")).isNull();
+        assertThat(map.put(2, "b")).isNull();
+        assertThat(map.put(1, "c")).isEqualTo("a");
+        assertThat(map.size()).isEqualTo(2);
+
+        assertThat(map.get(1)).isEqualTo("c");
+        assertThat(map.remove(1)).isEqualTo("c");
+        assertThat(map.get(1)).isNull();
+        assertThat(map.get(2)).isEqualTo("b");
+        assertThat(map.size()).isEqualTo(1);
+    }
+
+    /**
+     * Verifies that entries remain reachable if colliding entries before them are removed, also if the probe sequence
+     * wraps around the end of the table.
+     */
+    @Test
+    public void removeKeepsCollidingEntriesReachable() {
+        final MessageIdMap<String> map = new MessageIdMap<>();
+        // with the initial capacity of 8, all of these ids have slot 7 as home slot
+        map.put(7, "a");
+        map.put(15, "b");
+        map.put(23, "c");
+
+        assertThat(map.remove(7)).isEqualTo("a");
+        assertThat(map.get(15)).isEqualTo("b");
+        assertThat(map.get(23)).isEqualTo("c");
+
+        assertThat(map.remove(15)).isEqualTo("b");
+        assertThat(map.get(23)).isEqualTo("c");
+        assertThat(map.isEmpty()).isFalse();
+    }
+
+    /**
+     * Verifies that the map behaves like a {@link HashMap} for a random sequence of operations that also makes the
+     * table grow beyond its initial capacity.
+     */
+    @Test
+    public void behavesLikeHashMap() {
+        final Random random = new Random(4711);
+        final MessageIdMap<Integer> map = new MessageIdMap<>();
+        final Map<Integer, Integer> expected = new HashMap<>();
+
+        for (int i = 0; i < 100_000; i++) {
+            final int messageId = 1 + random.nextInt(200);
+            if (random.nextBoolean()) {
+                assertThat(map.put(messageId, i)).isEqualTo(expected.put(messageId, i));
+            } else {
+                assertThat(map.remove(messageId)).isEqualTo(expected.remove(messageId));
+            }
+            assertThat(map.size()).isEqualTo(expected.size());
+        }
+        for (int messageId = 0; messageId <= 200; messageId++) {
+            assertThat(map.get(messageId)).isEqualTo(expected.get(messageId));
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.eclipse.hono.gateway.sdk.mqtt2amqp.MessageSpool.SpooledMessage;
+import org.eclipse.hono.gateway.sdk.mqtt2amqp.downstream.EventMessage;
+import org.eclipse.hono.gateway.sdk.mqtt2amqp.downstream.TelemetryMessage;
+import org.eclipse.hono.util.QoS;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * Verifies behavior of {@link MessageSpool}.
+ */
+public class MessageSpoolTest {
+
+    private static final String TENANT_ID = "the-tenant";
+    private static final int SEGMENT_SIZE = 1024;
+    // 8 messages per segment
+    private static final int PAYLOAD_SIZE = 100;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Verifies that messages are returned in the order in which they have been appended, with all of their values.
+     *
+     * @throws IOException if the spool cannot be opened.
+     */
+    @Test
+    public void peekReturnsMessagesInOrder() throws IOException {
+        final MessageSpool spool = MessageSpool.open(TENANT_ID, directory, SEGMENT_SIZE, 2);
+        assertThat(spool.peek()).isNull();
+
+        final EventMessage event = new EventMessage(Buffer.buffer("the-event"));
+        event.setContentType("text/plain");
+        assertThat(spool.append("device-ä", event, 4711)).isTrue();
+        assertThat(spool.append("device-2", new TelemetryMessage(Buffer.buffer(), QoS.AT_LEAST_ONCE), 4712)).isTrue();
+        assertThat(spool.size()).isEqualTo(2);
+        assertThat(spool.getOldestTimestamp()).isEqualTo(4711);
+
+        final SpooledMessage first = spool.peek();
+        assertThat(first.getSpooledAt()).isEqualTo(4711);
+        assertThat(first.getDeviceId()).isEqualTo("device-ä");
+        assertThat(first.isEvent()).isTrue();
+        assertThat(first.getContentType()).isEqualTo("text/plain");
+        assertThat(first.getPayload().toString()).isEqualTo("the-event");
+
+        spool.remove();
+        assertThat(spool.getOldestTimestamp()).isEqualTo(4712);
+        final SpooledMessage second = spool.peek();
+        assertThat(second.getDeviceId()).isEqualTo("device-2");
+        assertThat(second.isEvent()).isFalse();
+        assertThat(second.getContentType()).isNull();
+        assertThat(second.getPayload().length()).isEqualTo(0);
+
+        spool.remove();
+        assertThat(spool.isEmpty()).isTrue();
+        assertThat(spool.peek()).isNull();
+        assertThat(spool.getOldestTimestamp()).isEqualTo(0);
+    }
+
+    /**
+     * Verifies that telemetry messages with QoS 0 cannot be spooled.
+     *
+     * @throws IOException if the spool cannot be opened.
+     */
+    @Test
+    public void appendRejectsTelemetryWithQoS0() throws IOException {
+        final MessageSpool spool = MessageSpool.open(TENANT_ID, directory, SEGMENT_SIZE, 2);
+        final TelemetryMessage telemetry = new TelemetryMessage(Buffer.buffer(), QoS.AT_MOST_ONCE);
+
+        assertThat(MessageSpool.isSpoolable(telemetry)).isFalse();
+        assertThatThrownBy(() -> spool.append("device", telemetry, 1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * Verifies that new segments are created until the maximum number of segments has been reached and that segments
+     * are deleted once all of their messages have been removed.
+     *
+     * @throws IOException if the spool cannot be opened.
+     */
+    @Test
+    public void segmentsAreCreatedAndDeleted() throws IOException {
+        final MessageSpool spool = MessageSpool.open(TENANT_ID, directory, SEGMENT_SIZE, 2);
+
+        // GIVEN a spool whose two segments are full
+        int appended = 0;
+        while (spool.append("d", event(appended), appended + 1)) {
+            appended++;
+        }
+        assertThat(appended).isEqualTo(16);
+        assertThat(segmentFiles()).isEqualTo(2);
+        assertThat(spool.getSizeInBytes()).isEqualTo(2 * SEGMENT_SIZE);
+
+        // WHEN the messages of the first segment are removed
+        for (int i = 0; i < 8; i++) {
+            assertThat(spool.peek().getPayload().getInt(0)).isEqualTo(i);
+            spool.remove();
+        }
+
+        // THEN its file is deleted and new messages can be appended again
+        assertThat(segmentFiles()).isEqualTo(1);
+        assertThat(spool.append("d", event(appended), appended + 1)).isTrue();
+
+        // WHEN all messages are removed
+        for (int i = 8; i <= appended; i++) {
+            assertThat(spool.peek().getPayload().getInt(0)).isEqualTo(i);
+            spool.remove();
+        }
+
+        // THEN all segment files are deleted
+        assertThat(spool.isEmpty()).isTrue();
+        assertThat(segmentFiles()).isEqualTo(0);
+        assertThat(spool.getSizeInBytes()).isEqualTo(0);
+    }
+
+    /**
+     * Verifies that a spool with a single segment accepts messages again after it has been filled and drained.
+     *
+     * @throws IOException if the spool cannot be opened.
+     */
+    @Test
+    public void singleSegmentIsReusedAfterDraining() throws IOException {
+        final MessageSpool spool = MessageSpool.open(TENANT_ID, directory, SEGMENT_SIZE, 1);
+
+        // GIVEN a spool whose only segment has been filled and drained
+        int appended = 0;
+        while (spool.append("d", event(appended), appended + 1)) {
+            appended++;
+        }
+        assertThat(appended).isEqualTo(8);
+        for (int i = 0; i < appended; i++) {
+            spool.remove();
+        }
+        assertThat(spool.isEmpty()).isTrue();
+
+        // WHEN new messages are appended
+        // THEN a whole segment is available for them again
+        for (int i = 0; i < 8; i++) {
+            assertThat(spool.append("d", event(i), i + 1)).isTrue();
+        }
+        assertThat(segmentFiles()).isEqualTo(1);
+        for (int i = 0; i < 8; i++) {
+            assertThat(spool.peek().getPayload().getInt(0)).isEqualTo(i);
+            spool.remove();
+        }
+        assertThat(spool.isEmpty()).isTrue();
+    }
+
+    /**
+     * Verifies that messages that are larger than a segment are not spooled.
+     *
+     * @throws IOException if the spool cannot be opened.
+     */
+    @Test
+    public void appendRejectsMessagesLargerThanSegment() throws IOException {
+        final MessageSpool spool = MessageSpool.open(TENANT_ID, directory, SEGMENT_SIZE, 2);
+
+        assertThat(spool.append("d", new EventMessage(Buffer.buffer(new byte[SEGMENT_SIZE])), 1)).isFalse();
+        assertThat(spool.isEmpty()).isTrue();
+    }
+
+    /**
+     * Verifies that the messages that have not been removed are recovered when the spool is opened again.
+     *
+     * @throws IOException if the spool cannot be opened.
+     */
+    @Test
+    public void openRecoversPendingMessages() throws IOException {
+        final MessageSpool spool = MessageSpool.open(TENANT_ID, directory, SEGMENT_SIZE, 4);
+        for (int i = 0; i < 20; i++) {
+            spool.append("d", event(i), i + 1);
+        }
+        for (int i = 0; i < 10; i++) {
+            spool.remove();
+        }
+
+        final MessageSpool recovered = MessageSpool.open(TENANT_ID, directory, SEGMENT_SIZE, 4);
+
+        assertThat(recovered.size()).isEqualTo(10);
+        assertThat(recovered.getOldestTimestamp()).isEqualTo(11);
+        recovered.append("d", event(20), 21);
+        for (int i = 10; i <= 20; i++) {
+            assertThat(recovered.peek().getPayload().getInt(0)).isEqualTo(i);
+            recovered.remove();
+        }
+        assertThat(recovered.isEmpty()).isTrue();
+    }
+
+    /**
+     * Verifies that a claimed spool cannot be claimed again before it has been released and that the number of
+     * messages that may be forwarded depends on the time since the previous claim.
+     *
+     * @throws IOException if the spool cannot be opened.
+     */
+    @Test
+    public void tryClaimLimitsRate() throws IOException {
+        final MessageSpool spool = MessageSpool.open(TENANT_ID, directory, SEGMENT_SIZE, 2);
+
+        assertThat(spool.tryClaim(10_000, 500)).isEqualTo(500);
+        assertThat(spool.tryClaim(10_100, 500)).isEqualTo(0);
+        spool.release();
+        assertThat(spool.tryClaim(10_100, 500)).isEqualTo(50);
+        spool.release();
+        assertThat(spool.tryClaim(10_101, 500)).isEqualTo(0);
+        assertThat(spool.tryClaim(10_102, 500)).isEqualTo(1);
+    }
+
+    private static EventMessage event(final int index) {
+        final Buffer payload = Buffer.buffer(new byte[PAYLOAD_SIZE]);
+        payload.setInt(0, index);
+        return new EventMessage(payload);
+    }
+
+    private long segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(MessageSpool.SEGMENT_SUFFIX)).count();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.amqp.messaging.Data;
+import org.apache.qpid.proton.message.Message;
+import org.apache.qpid.proton.message.impl.MessageImpl;
+import org.eclipse.hono.auth.Device;
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * Verifies behavior of {@link MqttCommandContext}.
+ */
+public class MqttCommandContextTest {
+
+    private static final int PAYLOAD_SIZE = 256 * 1024;
+
+    private final Device device = new Device("the-tenant", "the-device");
+
+    /**
+     * Verifies that the payload of a <em>Data</em> section is wrapped instead of being copied.
+     */
+    @Test
+    public void getPayloadWrapsDataSection() {
+        // GIVEN a command with a payload in a sub-range of an array
+        final byte[] bytes = "xxthe-payloadxx".getBytes();
+        final Message message = new MessageImpl();
+        message.setBody(new Data(new Binary(bytes, 2, bytes.length - 4)));
+
+        // WHEN getting the payload
+        final MqttCommandContext ctx = MqttCommandContext.fromAmqpMessage(message, device);
+        final Buffer payload = ctx.getPayload();
+
+        // THEN the payload is the range of the array...
+        assertThat(payload.toString()).isEqualTo("the-payload");
+        // ... backed by the array of the AMQP message
+        assertThat(payload.getByteBuf().array()).isSameAs(bytes);
+        // ... and it is only created once
+        assertThat(ctx.getPayload()).isSameAs(payload);
+    }
+
+    /**
+     * Verifies that payloads that are not contained in a <em>Data</em> section are still returned.
+     */
+    @Test
+    public void getPayloadSupportsOtherSections() {
+        final Message message = new MessageImpl();
+        message.setBody(new AmqpValue("the-payload"));
+        assertThat(MqttCommandContext.fromAmqpMessage(message, device).getPayload().toString())
+                .isEqualTo("the-payload");
+
+        assertThat(MqttCommandContext.fromAmqpMessage(new MessageImpl(), device).getPayload().length()).isZero();
+    }
+
+    /**
+     * Verifies that getting the payload of a large command does not allocate memory in the size of the payload.
+     */
+    @Test
+    public void getPayloadDoesNotCopyLargePayload() {
+        final com.sun.management.ThreadMXBean threadMXBean = getThreadMXBean();
+
+        // warm up, e.g. to load the classes
+        MqttCommandContext.fromAmqpMessage(createCommand(), device).getPayload().getByte(0);
+
+        final Message command = createCommand();
+        final long threadId = Thread.currentThread().getId();
+        final long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        final Buffer payload = MqttCommandContext.fromAmqpMessage(command, device).getPayload();
+        final long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertThat(payload.length()).isEqualTo(PAYLOAD_SIZE);
+        assertThat(allocated).isLessThan(PAYLOAD_SIZE / 16);
+    }
+
+    private static Message createCommand() {
+        final byte[] bytes = new byte[PAYLOAD_SIZE];
+        Arrays.fill(bytes, (byte) 'a');
+        final Message message = new MessageImpl();
+        message.setBody(new Data(new Binary(bytes)));
+        return message;
+    }
+
+    private static com.sun.management.ThreadMXBean getThreadMXBean() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean,
+                "JVM does not support measuring allocations");
+        final com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        assumeTrue(threadMXBean.isThreadAllocatedMemorySupported() && threadMXBean.isThreadAllocatedMemoryEnabled(),
+                "JVM does not support measuring allocations");
+        return threadMXBean;
+    }
+}
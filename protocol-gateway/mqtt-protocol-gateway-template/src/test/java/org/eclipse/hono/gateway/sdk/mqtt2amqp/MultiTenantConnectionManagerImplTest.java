@@ -14,14 +14,26 @@
 package org.eclipse.hono.gateway.sdk.mqtt2amqp;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
 import org.eclipse.hono.client.amqp.config.ClientConfigProperties;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import io.vertx.core.Context;
+import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import io.vertx.mqtt.MqttEndpoint;
 
@@ -74,6 +86,103 @@ public class MultiTenantConnectionManagerImplTest {
 
     }
 
+    /**
+     * Verifies that endpoints of a tenant can be added and closed concurrently and that the AMQP connection is closed
+     * exactly once, when the last endpoint is closed.
+     *
+     * @throws Exception if the test fails.
+     */
+    @Test
+    public void endpointsCanBeAddedAndClosedConcurrently() throws Exception {
+
+        final int endpointCount = 200;
+        final List<MqttEndpoint> endpoints = new ArrayList<>();
+        for (int i = 0; i < endpointCount; i++) {
+            endpoints.add(mock(MqttEndpoint.class));
+        }
+
+        connectionManager.connect(TENANT_ID, vertx, new ClientConfigProperties());
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Callable<Boolean>> addTasks = new ArrayList<>();
+            endpoints.forEach(e -> addTasks.add(() -> connectionManager.addEndpoint(TENANT_ID, e).succeeded()));
+            for (final Future<Boolean> added : executor.invokeAll(addTasks)) {
+                assertThat(added.get()).isTrue();
+            }
+
+            final List<Callable<Boolean>> closeTasks = new ArrayList<>();
+            endpoints.forEach(e -> closeTasks.add(() -> connectionManager.closeEndpoint(TENANT_ID, e).result()));
+            int amqpConnectionsClosed = 0;
+            for (final Future<Boolean> closed : executor.invokeAll(closeTasks)) {
+                if (Boolean.TRUE.equals(closed.get())) {
+                    amqpConnectionsClosed++;
+                }
+            }
+            assertThat(amqpConnectionsClosed).isEqualTo(1);
+            assertThat(connectionManager.addEndpoint(TENANT_ID, endpoint).failed()).isTrue();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Verifies that with a linger period, the AMQP connection of a tenant is re-used by a device that connects within
+     * the period and closed when the period elapses without a device connecting.
+     */
+    @Test
+    public void amqpConnectionIsClosedWhenLingerPeriodElapses() {
+
+        final MultiTenantConnectionManagerImpl lingeringManager = new MultiTenantConnectionManagerImpl(1, 1000);
+        final List<String> closedTenants = new ArrayList<>();
+        lingeringManager.setIdleTenantClosedHandler(closedTenants::add);
+        final AtomicReference<Handler<Long>> lingerTimer = new AtomicReference<>();
+        when(vertx.setTimer(eq(1000L), any())).thenAnswer(invocation -> {
+            lingerTimer.set(invocation.getArgument(1));
+            return 1L;
+        });
+
+        // GIVEN a tenant whose last endpoint has been closed
+        lingeringManager.connect(TENANT_ID, vertx, new ClientConfigProperties());
+        lingeringManager.addEndpoint(TENANT_ID, endpoint);
+        assertThat(lingeringManager.closeEndpoint(TENANT_ID, endpoint).result()).isFalse();
+
+        // WHEN another device of the tenant connects within the linger period
+        final MqttEndpoint otherEndpoint = mock(MqttEndpoint.class);
+        lingeringManager.connect(TENANT_ID, vertx, new ClientConfigProperties());
+        lingeringManager.addEndpoint(TENANT_ID, otherEndpoint);
+
+        // THEN the connection is re-used and not closed by the cancelled timer
+        verify(vertx).cancelTimer(1L);
+        lingerTimer.get().handle(1L);
+        assertThat(lingeringManager.getOrCreateEventSender(TENANT_ID).succeeded()).isTrue();
+
+        // WHEN the device disconnects and the linger period elapses
+        lingeringManager.closeEndpoint(TENANT_ID, otherEndpoint);
+        lingerTimer.get().handle(1L);
+
+        // THEN the connection is closed and the handler is notified
+        assertThat(lingeringManager.getOrCreateEventSender(TENANT_ID).failed()).isTrue();
+        assertThat(closedTenants).containsExactly(TENANT_ID);
+    }
+
+    /**
+     * Verifies that the AMQP connection of a tenant that has been connected in advance is kept open when the last
+     * endpoint of the tenant is closed.
+     */
+    @Test
+    public void amqpConnectionOfPreConnectedTenantIsKeptOpen() {
+
+        connectionManager.preConnect(TENANT_ID, vertx, new ClientConfigProperties());
+        connectionManager.addEndpoint(TENANT_ID, endpoint);
+
+        assertThat(connectionManager.closeEndpoint(TENANT_ID, endpoint).result()).isFalse();
+        assertThat(connectionManager.getOrCreateEventSender(TENANT_ID).succeeded()).isTrue();
+
+        connectionManager.closeAllTenants();
+        assertThat(connectionManager.getOrCreateEventSender(TENANT_ID).failed()).isTrue();
+    }
+
     /**
      * Verifies that all tenants are closed when closeAllTenants() is invoked.
      */
@@ -116,6 +225,12 @@ public class MultiTenantConnectionManagerImplTest {
 
         assertThat(connectionManager.getOrCreateCommandResponseSender(TENANT_ID).failed()).isTrue();
 
+        assertThat(connectionManager.getOrCreateTelemetrySender(TENANT_ID, "device-id").failed()).isTrue();
+
+        assertThat(connectionManager.getOrCreateEventSender(TENANT_ID, "device-id").failed()).isTrue();
+
+        assertThat(connectionManager.getOrCreateCommandResponseSender(TENANT_ID, "device-id").failed()).isTrue();
+
         assertThat(connectionManager.createDeviceSpecificCommandConsumer(TENANT_ID, "device-id", msg -> {
         }).failed()).isTrue();
 
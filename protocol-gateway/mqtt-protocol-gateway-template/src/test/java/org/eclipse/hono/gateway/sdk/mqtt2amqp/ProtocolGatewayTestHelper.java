@@ -178,6 +178,23 @@ public final class ProtocolGatewayTestHelper {
      * @see #connectMqttEndpointWithClientCertificate(AbstractMqttProtocolGateway, X509Certificate)
      */
     public static void sendMessage(final MqttEndpoint endpoint, final Buffer payload, final String topic) {
+        sendMessage(endpoint, payload, topic, null);
+    }
+
+    /**
+     * Simulates sending a MQTT publish message with the given QoS by invoking the publish handler, that has been set
+     * on the given mock endpoint during the connection establishment in one of the "connect..." methods in this class.
+     *
+     * @param endpoint The connected endpoint mock.
+     * @param payload The payload of the message.
+     * @param topic The topic of the message.
+     * @param qos The QoS of the message.
+     *
+     * @see #connectMqttEndpoint(AbstractMqttProtocolGateway, String, String)
+     * @see #connectMqttEndpointWithClientCertificate(AbstractMqttProtocolGateway, X509Certificate)
+     */
+    public static void sendMessage(final MqttEndpoint endpoint, final Buffer payload, final String topic,
+            final MqttQoS qos) {
 
         final ArgumentCaptor<Handler<MqttPublishMessage>> captor = argumentCaptorHandler();
         verify(endpoint).publishHandler(captor.capture());
@@ -185,6 +202,7 @@ public final class ProtocolGatewayTestHelper {
         final MqttPublishMessage mqttMessage = mock(MqttPublishMessage.class);
         when(mqttMessage.payload()).thenReturn(payload);
         when(mqttMessage.topicName()).thenReturn(topic);
+        when(mqttMessage.qosLevel()).thenReturn(qos);
 
         captor.getValue().handle(mqttMessage);
     }
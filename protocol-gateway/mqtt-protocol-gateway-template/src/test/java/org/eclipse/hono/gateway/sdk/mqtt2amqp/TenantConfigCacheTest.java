@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.eclipse.hono.client.amqp.config.ClientConfigProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.impl.VertxInternal;
+import io.vertx.junit5.Checkpoint;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+
+/**
+ * Verifies behavior of {@link TenantConfigCache}.
+ */
+@ExtendWith(VertxExtension.class)
+public class TenantConfigCacheTest {
+
+    private static final String TENANT_ID = "a-tenant";
+
+    private final AtomicLong nanoTime = new AtomicLong();
+    private final AtomicInteger invocations = new AtomicInteger();
+    private TenantConfigCache cache;
+
+    /**
+     * Sets up common fixture.
+     */
+    @BeforeEach
+    public void setUp() {
+        cache = new TenantConfigCache(Duration.ofSeconds(60), nanoTime::get);
+    }
+
+    private Function<String, Future<ClientConfigProperties>> counting(final Future<ClientConfigProperties> outcome) {
+        return tenantId -> {
+            invocations.incrementAndGet();
+            return outcome;
+        };
+    }
+
+    /**
+     * Verifies that a configuration is cached until its time to live has passed.
+     */
+    @Test
+    public void configurationIsCached() {
+        final ClientConfigProperties config = new ClientConfigProperties();
+        final Function<String, Future<ClientConfigProperties>> loader = counting(Future.succeededFuture(config));
+
+        // WHEN getting the configuration of a tenant twice
+        assertThat(cache.get(TENANT_ID, loader).result()).isSameAs(config);
+        assertThat(cache.get(TENANT_ID, loader).result()).isSameAs(config);
+
+        // THEN it is loaded only once
+        assertThat(invocations.get()).isEqualTo(1);
+        assertThat(cache.stats().hitCount()).isEqualTo(1);
+
+        // WHEN the time to live has passed
+        nanoTime.addAndGet(Duration.ofSeconds(61).toNanos());
+        cache.get(TENANT_ID, loader);
+
+        // THEN the configuration is loaded again
+        assertThat(invocations.get()).isEqualTo(2);
+    }
+
+    /**
+     * Verifies that concurrent requests for the configuration of a tenant share a single load and that a failed load
+     * is not cached.
+     */
+    @Test
+    public void concurrentRequestsShareLoadAndFailureIsNotCached() {
+        final Promise<ClientConfigProperties> load = Promise.promise();
+        final Function<String, Future<ClientConfigProperties>> loader = counting(load.future());
+
+        // WHEN the configuration is requested again while it is being loaded
+        final Future<ClientConfigProperties> first = cache.get(TENANT_ID, loader);
+        final Future<ClientConfigProperties> second = cache.get(TENANT_ID, loader);
+
+        // THEN both requests share the same load
+        assertThat(second).isSameAs(first);
+        assertThat(invocations.get()).isEqualTo(1);
+
+        // WHEN the load fails
+        load.fail("secrets store unavailable");
+        cache.get(TENANT_ID, loader);
+
+        // THEN the configuration is loaded again on the next request
+        assertThat(invocations.get()).isEqualTo(2);
+    }
+
+    /**
+     * Verifies that an invalidated configuration is loaded again.
+     */
+    @Test
+    public void invalidatedConfigurationIsLoadedAgain() {
+        final Function<String, Future<ClientConfigProperties>> loader = counting(
+                Future.succeededFuture(new ClientConfigProperties()));
+
+        cache.get(TENANT_ID, loader);
+        cache.invalidate(TENANT_ID);
+        cache.get(TENANT_ID, loader);
+        assertThat(invocations.get()).isEqualTo(2);
+
+        cache.invalidateAll();
+        cache.get(TENANT_ID, loader);
+        assertThat(invocations.get()).isEqualTo(3);
+    }
+
+    /**
+     * Verifies that the gateway instances of a Vert.x instance share a cache and that a load that is shared by
+     * requests on different contexts completes on the context of each request.
+     *
+     * @param vertx The Vert.x instance.
+     * @param ctx The helper to use for running async tests on vertx.
+     */
+    @Test
+    public void sharedLoadCompletesOnContextOfCaller(final Vertx vertx, final VertxTestContext ctx) {
+        final TenantConfigCache shared = TenantConfigCache.getInstance(vertx, Duration.ofSeconds(60));
+        assertThat(TenantConfigCache.getInstance(vertx, Duration.ofSeconds(1))).isSameAs(shared);
+
+        final Context first = ((VertxInternal) vertx).createEventLoopContext();
+        final Context second = ((VertxInternal) vertx).createEventLoopContext();
+        final Promise<ClientConfigProperties> load = Promise.promise();
+        final Function<String, Future<ClientConfigProperties>> loader = counting(load.future());
+        final Checkpoint completed = ctx.checkpoint(2);
+
+        // GIVEN a configuration that is being loaded on one context
+        first.runOnContext(v -> {
+            shared.get(TENANT_ID, loader).onComplete(ctx.succeeding(config -> ctx.verify(() -> {
+                assertThat(Vertx.currentContext()).isSameAs(first);
+                completed.flag();
+            })));
+            // WHEN it is requested on another context as well
+            second.runOnContext(w -> {
+                shared.get(TENANT_ID, loader).onComplete(ctx.succeeding(config -> ctx.verify(() -> {
+                    // THEN the load is shared and the outcome is passed on on the context of each request
+                    assertThat(Vertx.currentContext()).isSameAs(second);
+                    assertThat(invocations.get()).isEqualTo(1);
+                    completed.flag();
+                })));
+                first.runOnContext(x -> load.complete(new ClientConfigProperties()));
+            });
+        });
+    }
+}
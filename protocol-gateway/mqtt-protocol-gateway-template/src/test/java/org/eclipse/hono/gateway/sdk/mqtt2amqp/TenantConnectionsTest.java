@@ -20,6 +20,10 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import org.eclipse.hono.client.device.amqp.AmqpAdapterClient;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -43,7 +47,7 @@ public class TenantConnectionsTest {
     public void setUp() {
         amqpAdapterClient = mock(AmqpAdapterClient.class);
 
-        tenantConnections = new TenantConnections(amqpAdapterClient, "a-tenant-id");
+        tenantConnections = new TenantConnections(List.of(amqpAdapterClient), "a-tenant-id");
         endpoint = mock(MqttEndpoint.class);
     }
 
@@ -131,4 +135,51 @@ public class TenantConnectionsTest {
 
     }
 
+    /**
+     * Verifies that all AMQP clients of a pool are connected and disconnected.
+     */
+    @Test
+    public void allClientsOfPoolAreConnectedAndDisconnected() {
+        // GIVEN an instance with a pool of clients
+        final List<AmqpAdapterClient> clients = List.of(mock(AmqpAdapterClient.class),
+                mock(AmqpAdapterClient.class), mock(AmqpAdapterClient.class));
+        clients.forEach(client -> when(client.connect()).thenReturn(Future.succeededFuture()));
+        final TenantConnections pooledConnections = new TenantConnections(clients, "a-tenant-id");
+
+        // WHEN connecting and closing the instance
+        pooledConnections.connect();
+        pooledConnections.closeAllConnections();
+
+        // THEN all clients have been connected and disconnected
+        clients.forEach(client -> {
+            verify(client).connect();
+            verify(client).disconnect();
+        });
+    }
+
+    /**
+     * Verifies that a device is always assigned to the same client of a pool and that the devices are distributed over
+     * the clients of the pool.
+     */
+    @Test
+    public void devicesAreAssignedToClientsOfPool() {
+        // GIVEN an instance with a pool of clients
+        final List<AmqpAdapterClient> clients = List.of(mock(AmqpAdapterClient.class),
+                mock(AmqpAdapterClient.class), mock(AmqpAdapterClient.class));
+        final TenantConnections pooledConnections = new TenantConnections(clients, "a-tenant-id");
+
+        // WHEN getting the clients for a number of devices
+        final Set<AmqpAdapterClient> usedClients = new HashSet<>();
+        for (int i = 0; i < 30; i++) {
+            final String deviceId = "device-" + i;
+            final AmqpAdapterClient client = pooledConnections.getAmqpAdapterClient(deviceId).result();
+
+            // THEN the device is always assigned to the same client...
+            assertThat(pooledConnections.getAmqpAdapterClient(deviceId).result()).isSameAs(client);
+            usedClients.add(client);
+        }
+        // ...and all clients are used
+        assertThat(usedClients).containsExactlyInAnyOrderElementsOf(clients);
+    }
+
 }
@@ -14,6 +14,7 @@
 package org.eclipse.hono.gateway.sdk.mqtt2amqp;
 
 import java.security.cert.X509Certificate;
+import java.time.Duration;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.eclipse.hono.auth.Device;
@@ -60,7 +61,12 @@ class TestMqttProtocolGateway extends AbstractMqttProtocolGateway {
     private final AtomicBoolean shutdownStarted = new AtomicBoolean();
     private final AtomicBoolean connectionClosed = new AtomicBoolean();
 
+    private final ConnectionIndex connectionIndex = new ConnectionIndex();
+    private TenantConfigCache tenantConfigCache;
+    private final MqttProtocolGatewayConfig mqttProtocolGatewayConfig;
+
     private CommandSubscriptionsManager commandSubscriptionsManager;
+    private MessageSpools spools;
 
     TestMqttProtocolGateway(final ClientConfigProperties clientConfigProperties,
             final MqttProtocolGatewayConfig mqttProtocolGatewayConfig,
@@ -69,6 +75,7 @@ class TestMqttProtocolGateway extends AbstractMqttProtocolGateway {
 
         super(clientConfigProperties, mqttProtocolGatewayConfig, tenantConnectionManager);
         super.vertx = vertx;
+        this.mqttProtocolGatewayConfig = mqttProtocolGatewayConfig;
     }
 
     /**
@@ -179,6 +186,31 @@ class TestMqttProtocolGateway extends AbstractMqttProtocolGateway {
         return commandSubscriptionsManager;
     }
 
+    @Override
+    TenantConfigCache getTenantConfigCache() {
+        // the mocked Vert.x instance does not provide shared data
+        if (tenantConfigCache == null && mqttProtocolGatewayConfig.getGatewayCredentialsCacheTimeToLive() > 0) {
+            tenantConfigCache = new TenantConfigCache(
+                    Duration.ofSeconds(mqttProtocolGatewayConfig.getGatewayCredentialsCacheTimeToLive()));
+        }
+        return tenantConfigCache;
+    }
+
+    @Override
+    ConnectionIndex getConnectionIndex() {
+        // the mocked Vert.x instance does not provide shared data
+        return connectionIndex;
+    }
+
+    @Override
+    MessageSpools getSpools() {
+        // the mocked Vert.x instance does not provide shared data
+        if (spools == null && mqttProtocolGatewayConfig.getSpoolDirectory() != null) {
+            spools = new MessageSpools(mqttProtocolGatewayConfig);
+        }
+        return spools;
+    }
+
     @Override
     protected void onDeviceConnectionClose(final MqttEndpoint endpoint) {
         connectionClosed.compareAndSet(false, true);
@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.net.ssl.X509KeyManager;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.net.NetClient;
+import io.vertx.core.net.NetClientOptions;
+import io.vertx.core.net.NetServerOptions;
+import io.vertx.core.net.PemKeyCertOptions;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+
+/**
+ * Verifies behavior of {@link TlsCredentials}.
+ */
+@ExtendWith(VertxExtension.class)
+public class TlsCredentialsTest {
+
+    @TempDir
+    Path directory;
+
+    private Path certFile;
+    private Path keyFile;
+    private TlsCredentials credentials;
+
+    /**
+     * Sets up common fixture.
+     *
+     * @throws Exception if the files cannot be copied.
+     */
+    @BeforeEach
+    public void setUp() throws Exception {
+        certFile = directory.resolve("cert.pem");
+        keyFile = directory.resolve("key.pem");
+        copyCredentials(1);
+        credentials = new TlsCredentials(
+                new PemKeyCertOptions().setCertPath(certFile.toString()).setKeyPath(keyFile.toString()),
+                null, 100, 3600);
+    }
+
+    /**
+     * Verifies that the key and certificate are only loaded again if their files have been modified and that the
+     * options that have been handed out before use the new ones.
+     *
+     * @param vertx The vert.x instance.
+     * @throws Exception if the credentials cannot be loaded.
+     */
+    @Test
+    public void credentialsAreReloadedWhenFilesAreModified(final Vertx vertx) throws Exception {
+        credentials.load(vertx);
+        final X509KeyManager keyManager = (X509KeyManager) credentials.getKeyCertOptions()
+                .getKeyManagerFactory(vertx).getKeyManagers()[0];
+        assertThat(getServerName(keyManager)).isEqualTo("CN=gateway-1");
+
+        // WHEN the files have not been modified
+        assertThat(credentials.reloadIfModified(vertx)).isFalse();
+
+        // WHEN the files are replaced
+        copyCredentials(2);
+
+        // THEN the new certificate is used
+        assertThat(credentials.reloadIfModified(vertx)).isTrue();
+        assertThat(getServerName(keyManager)).isEqualTo("CN=gateway-2");
+    }
+
+    /**
+     * Verifies that a session that is established with a full handshake is marked as such, while a resumed session
+     * is not.
+     *
+     * @param vertx The vert.x instance.
+     * @param ctx The vert.x test context.
+     * @throws Exception if the credentials cannot be loaded.
+     */
+    @Test
+    public void resumedSessionIsNotMarkedAsFullHandshake(final Vertx vertx, final VertxTestContext ctx)
+            throws Exception {
+        credentials.load(vertx);
+        final List<Boolean> fullHandshakes = new ArrayList<>();
+        final NetServerOptions serverOptions = new NetServerOptions()
+                .setSsl(true)
+                .setKeyCertOptions(credentials.getKeyCertOptions());
+        final NetClient client = vertx.createNetClient(new NetClientOptions().setSsl(true).setTrustAll(true));
+
+        vertx.createNetServer(serverOptions)
+                .connectHandler(socket -> {
+                    fullHandshakes.add(TlsCredentials.isFullHandshake(socket.sslSession()));
+                    socket.write("hello");
+                })
+                .listen(0, "127.0.0.1")
+                .compose(server -> connectAndClose(client, server.actualPort())
+                        .compose(v -> connectAndClose(client, server.actualPort())))
+                .onComplete(ctx.succeeding(v -> {
+                    ctx.verify(() -> assertThat(fullHandshakes).containsExactly(true, false));
+                    ctx.completeNow();
+                }));
+    }
+
+    private Future<Void> connectAndClose(final NetClient client, final int port) {
+        return client.connect(port, "127.0.0.1").compose(socket -> {
+            // waits for data, so that the session ticket sent after the handshake is processed
+            final Promise<Void> received = Promise.promise();
+            socket.handler(data -> received.tryComplete());
+            return received.future().compose(v -> socket.close());
+        });
+    }
+
+    private void copyCredentials(final int index) throws Exception {
+        final FileTime modified = FileTime.fromMillis(System.currentTimeMillis() + index * 10_000L);
+        Files.copy(getResource("serverCert" + index + ".pem"), certFile, StandardCopyOption.REPLACE_EXISTING);
+        Files.copy(getResource("serverKey" + index + ".pem"), keyFile, StandardCopyOption.REPLACE_EXISTING);
+        Files.setLastModifiedTime(certFile, modified);
+        Files.setLastModifiedTime(keyFile, modified);
+    }
+
+    private static Path getResource(final String name) throws URISyntaxException {
+        return Paths.get(TlsCredentialsTest.class.getResource("/" + name).toURI());
+    }
+
+    private static String getServerName(final X509KeyManager keyManager) {
+        final String alias = keyManager.chooseServerAlias("EC", null, null);
+        return keyManager.getCertificateChain(alias)[0].getSubjectX500Principal().getName();
+    }
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifies behavior of {@link TopicRouter}.
+ */
+public class TopicRouterTest {
+
+    private final TopicRouter<String> router = TopicRouter.<String> builder()
+            .route("devices/{deviceId}/messages/events/{propertyBag}", "event")
+            .route("devices/{deviceId}/messages/devicebound/#", "c2d-filter")
+            .route("$iothub/methods/res/{status}/{propertyBag}", "method-response")
+            .route("$iothub/methods/res/200/ok", "literal")
+            .route("{tenantId}/{deviceId}", "identity")
+            .build();
+
+    /**
+     * Verifies that a topic is routed to the target of the matching pattern and that the values of the placeholders
+     * are extracted.
+     */
+    @Test
+    public void matchExtractsPlaceholders() {
+        final TopicRouter.Match<String> match = router.match("devices/the-device/messages/events/?a=b&c=d");
+
+        assertThat(match.getTarget()).isEqualTo("event");
+        assertThat(match.getPattern()).isEqualTo("devices/{deviceId}/messages/events/{propertyBag}");
+        assertThat(match.get("deviceId")).isEqualTo("the-device");
+        assertThat(match.get("propertyBag")).isEqualTo("?a=b&c=d");
+        assertThat(match.get("status")).isNull();
+
+        // a placeholder matches an empty level
+        assertThat(router.match("devices/the-device/messages/events/").get("propertyBag")).isEmpty();
+        // a topic filter is matched literally
+        assertThat(router.match("devices/the-device/messages/devicebound/#").getTarget()).isEqualTo("c2d-filter");
+    }
+
+    /**
+     * Verifies that topics with more or fewer levels than the patterns or with other literals are not matched.
+     */
+    @Test
+    public void matchRequiresAllLevels() {
+        assertThat(router.match("devices/the-device/messages/events")).isNull();
+        assertThat(router.match("devices/the-device/messages/events/a/b")).isNull();
+        assertThat(router.match("devices/the-device/messages/event/")).isNull();
+        assertThat(router.match("devices/the-device/messages/devicebound/+")).isNull();
+        assertThat(router.match("")).isNull();
+    }
+
+    /**
+     * Verifies that a literal level takes precedence over a placeholder and that the placeholders are tried if the
+     * literal level leads to no pattern.
+     */
+    @Test
+    public void literalTakesPrecedenceOverPlaceholder() {
+        assertThat(router.match("$iothub/methods/res/200/ok").getTarget()).isEqualTo("literal");
+
+        final TopicRouter.Match<String> match = router.match("$iothub/methods/res/200/?$rid=1");
+        assertThat(match.getTarget()).isEqualTo("method-response");
+        assertThat(match.get("status")).isEqualTo("200");
+        assertThat(match.get("propertyBag")).isEqualTo("?$rid=1");
+    }
+
+    /**
+     * Verifies that the placeholders of the tenant and the device only match the given identity.
+     */
+    @Test
+    public void identityPlaceholdersMatchGivenDevice() {
+        assertThat(router.match("the-tenant/the-device", "the-tenant", "the-device")).isNotNull();
+        assertThat(router.match("the-tenant/other-device", "the-tenant", "the-device")).isNull();
+        assertThat(router.match("other-tenant/the-device", "the-tenant", "the-device")).isNull();
+        assertThat(router.match("devices/other-device/messages/events/", "the-tenant", "the-device")).isNull();
+
+        // unknown values match any level
+        assertThat(router.match("other-tenant/other-device").get("tenantId")).isEqualTo("other-tenant");
+    }
+
+    /**
+     * Verifies that invalid patterns are rejected.
+     */
+    @Test
+    public void invalidPatternsAreRejected() {
+        final TopicRouter.Builder<String> builder = TopicRouter.<String> builder().route("a/{b}", "first");
+
+        assertThatThrownBy(() -> builder.route("a/{b}", "second")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> builder.route("a/x{b}", "t")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> builder.route("a/{b}x", "t")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> builder.route("a/{}", "t")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> builder.route("{b}/{b}", "t")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
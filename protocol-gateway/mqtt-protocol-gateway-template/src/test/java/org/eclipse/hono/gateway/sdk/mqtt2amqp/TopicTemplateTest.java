@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+
+import org.eclipse.hono.auth.Device;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifies behavior of {@link TopicTemplate} and {@link DeviceTopics}.
+ */
+public class TopicTemplateTest {
+
+    private final Device device = new Device("the-tenant", "the-device");
+
+    /**
+     * Verifies that a template is bound to the identity of a device.
+     */
+    @Test
+    public void bindResolvesDeviceIdentity() {
+        final TopicTemplate template = TopicTemplate.compile("{tenantId}/devices/{deviceId}/#");
+
+        assertThat(template.isDeviceSpecificOnly()).isTrue();
+        assertThat(template.bind(device)).isEqualTo("the-tenant/devices/the-device/#");
+        assertThat(TopicTemplate.compile("static/topic").bind(device)).isEqualTo("static/topic");
+    }
+
+    /**
+     * Verifies that the values of the placeholders are inserted in the order of the placeholders.
+     */
+    @Test
+    public void expandInsertsValuesInOrder() {
+        final TopicTemplate template = TopicTemplate.compile("$iothub/methods/POST/{methodName}/?$rid={requestId}");
+
+        assertThat(template.isDeviceSpecificOnly()).isFalse();
+        assertThat(template.expand("reboot", "0123")).isEqualTo("$iothub/methods/POST/reboot/?$rid=0123");
+        assertThat(template.appendTo(new StringBuilder("x:"), "a", "b").toString())
+                .isEqualTo("x:$iothub/methods/POST/a/?$rid=b");
+
+        assertThatThrownBy(() -> template.expand("reboot")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> template.bind(device)).isInstanceOf(IllegalStateException.class);
+    }
+
+    /**
+     * Verifies that a topic is only matched if it equals the bound topic of the device.
+     */
+    @Test
+    public void matchesComparesWithBoundTopic() {
+        final TopicTemplate template = TopicTemplate.compile("devices/{deviceId}/messages/devicebound/#");
+
+        assertThat(template.matches("devices/the-device/messages/devicebound/#", "the-tenant", "the-device"))
+                .isTrue();
+        assertThat(template.matches("devices/other-device/messages/devicebound/#", "the-tenant", "the-device"))
+                .isFalse();
+        assertThat(template.matches("devices/the-device/messages/devicebound/", "the-tenant", "the-device"))
+                .isFalse();
+        assertThat(template.matches("devices/the-device/messages/devicebound/#/", "the-tenant", "the-device"))
+                .isFalse();
+        assertThat(template.matches("devices/the-dev", "the-tenant", "the-device")).isFalse();
+    }
+
+    /**
+     * Verifies that patterns with unbalanced braces or empty placeholders are rejected.
+     */
+    @Test
+    public void compileRejectsInvalidPatterns() {
+        assertThatThrownBy(() -> TopicTemplate.compile("devices/{deviceId/#"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> TopicTemplate.compile("devices/deviceId}/#"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> TopicTemplate.compile("devices/{dev{iceId}/#"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> TopicTemplate.compile("devices/{}/#"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * Verifies that the topics of a device are bound once and that templates which have not been bound in advance
+     * are bound when they are requested.
+     */
+    @Test
+    public void deviceTopicsAreCached() {
+        final TopicTemplate events = TopicTemplate.compile("devices/{deviceId}/events");
+        final TopicTemplate commands = TopicTemplate.compile("devices/{deviceId}/commands");
+
+        final DeviceTopics deviceTopics = DeviceTopics.bind(device, List.of(events));
+
+        assertThat(deviceTopics.getDevice()).isSameAs(device);
+        assertThat(deviceTopics.get(events)).isEqualTo("devices/the-device/events");
+        assertThat(deviceTopics.get(events)).isSameAs(deviceTopics.get(events));
+        assertThat(deviceTopics.get(commands)).isEqualTo("devices/the-device/commands");
+    }
+}
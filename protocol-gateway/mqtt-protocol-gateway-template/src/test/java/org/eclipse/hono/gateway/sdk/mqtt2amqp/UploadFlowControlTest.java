@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import org.junit.jupiter.api.Test;
+
+import io.netty.handler.codec.mqtt.MqttProperties;
+import io.vertx.core.MultiMap;
+import io.vertx.core.net.impl.NetSocketInternal;
+import io.vertx.mqtt.MqttEndpoint;
+import io.vertx.mqtt.impl.MqttEndpointImpl;
+
+/**
+ * Verifies behavior of {@link UploadFlowControl}.
+ */
+public class UploadFlowControlTest {
+
+    private static final String TENANT_ID = "a-tenant-id";
+
+    private static MqttEndpoint newEndpoint(final NetSocketInternal socket) {
+        return new MqttEndpointImpl(socket, "the-client-id", null, null, true, 4, "MQTT", 60,
+                MqttProperties.NO_PROPERTIES, MultiMap.caseInsensitiveMultiMap(), null);
+    }
+
+    /**
+     * Verifies that the connection of an endpoint is paused when its window is full and resumed when an upload has
+     * completed.
+     */
+    @Test
+    public void endpointIsPausedWhenWindowIsFull() {
+        // GIVEN a window of two uploads per endpoint
+        final UploadFlowControl flowControl = new UploadFlowControl(2, 0);
+        final NetSocketInternal socket = mock(NetSocketInternal.class);
+        final MqttEndpoint endpoint = newEndpoint(socket);
+
+        // WHEN two uploads are started
+        assertThat(flowControl.tryAcquire(TENANT_ID, endpoint)).isTrue();
+        verify(socket, never()).pause();
+        assertThat(flowControl.tryAcquire(TENANT_ID, endpoint)).isTrue();
+
+        // THEN the connection is paused...
+        verify(socket).pause();
+
+        // ...and resumed when an upload has completed
+        flowControl.release(TENANT_ID, endpoint);
+        verify(socket).resume();
+    }
+
+    /**
+     * Verifies that all connections of a tenant that publish messages are paused when the tenant's window is full and
+     * that they are resumed when an upload has completed.
+     */
+    @Test
+    public void endpointsAreResumedWhenTenantWindowHasRoom() {
+        // GIVEN a window of two uploads per tenant
+        final UploadFlowControl flowControl = new UploadFlowControl(10, 2);
+        final NetSocketInternal socket1 = mock(NetSocketInternal.class);
+        final NetSocketInternal socket2 = mock(NetSocketInternal.class);
+        final MqttEndpoint endpoint1 = newEndpoint(socket1);
+        final MqttEndpoint endpoint2 = newEndpoint(socket2);
+
+        // WHEN two endpoints of the tenant upload a message each
+        flowControl.tryAcquire(TENANT_ID, endpoint1);
+        flowControl.tryAcquire(TENANT_ID, endpoint2);
+        // and another message is received via the first endpoint before it has been paused
+        flowControl.tryAcquire(TENANT_ID, endpoint1);
+
+        // THEN the connections of both endpoints are paused
+        verify(socket1).pause();
+        verify(socket2).pause();
+
+        // WHEN only one upload has completed
+        flowControl.release(TENANT_ID, endpoint2);
+
+        // THEN the connections stay paused as the tenant's window is still full
+        verify(socket1, never()).resume();
+        verify(socket2, never()).resume();
+
+        // WHEN another upload has completed
+        flowControl.release(TENANT_ID, endpoint1);
+
+        // THEN all connections are resumed
+        verify(socket1).resume();
+        verify(socket2).resume();
+    }
+
+    /**
+     * Verifies that messages exceeding the window are rejected if the connection cannot be paused.
+     */
+    @Test
+    public void messagesAreRejectedIfEndpointCannotBePaused() {
+        // GIVEN a window of two uploads per endpoint and an endpoint that cannot be paused
+        final UploadFlowControl flowControl = new UploadFlowControl(2, 0);
+        final MqttEndpoint endpoint = mock(MqttEndpoint.class);
+
+        // WHEN more than two messages are received
+        assertThat(flowControl.tryAcquire(TENANT_ID, endpoint)).isTrue();
+        assertThat(flowControl.tryAcquire(TENANT_ID, endpoint)).isTrue();
+
+        // THEN the third one is rejected...
+        assertThat(flowControl.tryAcquire(TENANT_ID, endpoint)).isFalse();
+
+        // ...until an upload has completed
+        flowControl.release(TENANT_ID, endpoint);
+        assertThat(flowControl.tryAcquire(TENANT_ID, endpoint)).isTrue();
+    }
+
+    /**
+     * Verifies that a closed endpoint is not resumed.
+     */
+    @Test
+    public void removedEndpointIsNotResumed() {
+        // GIVEN a paused endpoint
+        final UploadFlowControl flowControl = new UploadFlowControl(1, 0);
+        final NetSocketInternal socket = mock(NetSocketInternal.class);
+        final MqttEndpoint endpoint = newEndpoint(socket);
+        flowControl.tryAcquire(TENANT_ID, endpoint);
+        verify(socket, times(1)).pause();
+
+        // WHEN the endpoint is removed before the upload completes
+        flowControl.remove(TENANT_ID, endpoint);
+        flowControl.release(TENANT_ID, endpoint);
+
+        // THEN its connection is not resumed
+        verify(socket, never()).resume();
+    }
+
+    /**
+     * Verifies that the connection of an endpoint is never paused if neither window is limited.
+     */
+    @Test
+    public void endpointIsNotPausedWithoutLimits() {
+        // GIVEN a flow control without limits
+        final UploadFlowControl flowControl = new UploadFlowControl(0, 0);
+        final NetSocketInternal socket = mock(NetSocketInternal.class);
+        final MqttEndpoint endpoint = newEndpoint(socket);
+
+        // WHEN many uploads are started
+        for (int i = 0; i < 1_000; i++) {
+            assertThat(flowControl.tryAcquire(TENANT_ID, endpoint)).isTrue();
+        }
+        flowControl.release(TENANT_ID, endpoint);
+
+        // THEN the connection is never paused
+        verify(socket, never()).pause();
+        verify(socket, never()).resume();
+    }
+}
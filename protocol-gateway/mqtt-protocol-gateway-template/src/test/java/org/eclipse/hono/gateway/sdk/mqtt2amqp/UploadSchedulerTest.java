@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+
+/**
+ * Verifies behavior of {@link UploadScheduler}.
+ */
+public class UploadSchedulerTest {
+
+    private final List<String> started = new ArrayList<>();
+    private final List<Promise<Void>> running = new ArrayList<>();
+
+    private Supplier<Future<Void>> upload(final String name) {
+        return () -> {
+            started.add(name);
+            final Promise<Void> promise = Promise.promise();
+            running.add(promise);
+            return promise.future();
+        };
+    }
+
+    private void completeOldest() {
+        running.remove(0).complete();
+    }
+
+    /**
+     * Verifies that uploads are started immediately while the maximum number of uploads in progress has not been
+     * reached and that the outcome of a queued upload is passed on to the caller.
+     */
+    @Test
+    public void uploadsAreQueuedWhenAllSlotsAreOccupied() {
+        final UploadScheduler scheduler = new UploadScheduler(1, 10, 1, Map.of());
+
+        // WHEN two uploads are scheduled with a single slot
+        scheduler.schedule("tenant", upload("first"));
+        final Future<Void> second = scheduler.schedule("tenant", upload("second"));
+
+        // THEN only the first one is started
+        assertThat(started).containsExactly("first");
+        assertThat(scheduler.getQueued("tenant")).isEqualTo(1);
+
+        // WHEN the first upload completes
+        completeOldest();
+
+        // THEN the second one is started and completes with its upload
+        assertThat(started).containsExactly("first", "second");
+        assertThat(second.isComplete()).isFalse();
+        completeOldest();
+        assertThat(second.succeeded()).isTrue();
+    }
+
+    /**
+     * Verifies that a tenant that has queued many uploads does not delay the uploads of another tenant by more than
+     * its weight.
+     */
+    @Test
+    public void uploadsOfTenantsAreInterleavedByWeight() {
+        // GIVEN a noisy tenant with weight 2 that has queued four uploads
+        final UploadScheduler scheduler = new UploadScheduler(1, 10, 1, Map.of("noisy", 2));
+        scheduler.schedule("noisy", upload("n0"));
+        for (int i = 1; i <= 4; i++) {
+            scheduler.schedule("noisy", upload("n" + i));
+        }
+
+        // WHEN another tenant schedules two uploads
+        scheduler.schedule("quiet", upload("q1"));
+        scheduler.schedule("quiet", upload("q2"));
+        while (!running.isEmpty()) {
+            completeOldest();
+        }
+
+        // THEN the uploads are started in the ratio of the weights
+        assertThat(started).containsExactly("n0", "n1", "n2", "q1", "n3", "n4", "q2");
+    }
+
+    /**
+     * Verifies that uploads exceeding the maximum queue length of a tenant are rejected without affecting other
+     * tenants.
+     */
+    @Test
+    public void uploadsExceedingQueueLimitAreRejected() {
+        final UploadScheduler scheduler = new UploadScheduler(1, 2, 1, Map.of());
+        scheduler.schedule("noisy", upload("n0"));
+        assertThat(scheduler.schedule("noisy", upload("n1"))).isNotNull();
+        assertThat(scheduler.schedule("noisy", upload("n2"))).isNotNull();
+
+        // WHEN the queue of the tenant is full
+        assertThat(scheduler.schedule("noisy", upload("n3"))).isNull();
+
+        // THEN uploads of other tenants are still accepted
+        assertThat(scheduler.schedule("quiet", upload("q1"))).isNotNull();
+        assertThat(scheduler.getQueued("noisy")).isEqualTo(2);
+        assertThat(scheduler.getQueued("quiet")).isEqualTo(1);
+    }
+
+    /**
+     * Verifies that queued uploads that complete immediately are started one after the other.
+     */
+    @Test
+    public void immediatelyCompletingUploadsAreStartedInOrder() {
+        final UploadScheduler scheduler = new UploadScheduler(1, 1000, 1, Map.of());
+        scheduler.schedule("tenant", upload("blocking"));
+        final List<Future<String>> outcomes = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            final String name = "m" + i;
+            outcomes.add(scheduler.schedule("tenant", () -> {
+                started.add(name);
+                return Future.succeededFuture(name);
+            }));
+        }
+
+        completeOldest();
+
+        assertThat(started).hasSize(1001);
+        assertThat(started.get(1000)).isEqualTo("m999");
+        assertThat(outcomes).allMatch(Future::succeeded);
+        assertThat(scheduler.getQueued("tenant")).isEqualTo(0);
+    }
+}
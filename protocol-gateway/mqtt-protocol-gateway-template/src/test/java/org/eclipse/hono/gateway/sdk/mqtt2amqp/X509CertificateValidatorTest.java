@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifies behavior of {@link X509CertificateValidator}.
+ */
+public class X509CertificateValidatorTest {
+
+    private final X509Certificate certificate = ProtocolGatewayTestHelper.createCertificate();
+
+    /**
+     * Verifies that a successful validation is cached, also if the trust anchors are passed in as new instances.
+     */
+    @Test
+    public void successfulValidationIsCached() {
+        final X509CertificateValidator validator = new X509CertificateValidator(10);
+
+        assertThat(validator.validate(List.of(certificate), Set.of(new TrustAnchor(certificate, null))).succeeded())
+                .isTrue();
+        assertThat(validator.validate(List.of(certificate), Set.of(new TrustAnchor(certificate, null))).succeeded())
+                .isTrue();
+
+        assertThat(validator.getCacheStats().missCount()).isEqualTo(1);
+        assertThat(validator.getCacheStats().hitCount()).isEqualTo(1);
+    }
+
+    /**
+     * Verifies that a cached validation is not used for different trust anchors.
+     */
+    @Test
+    public void cachedValidationIsNotUsedForOtherTrustAnchors() {
+        final X509CertificateValidator validator = new X509CertificateValidator(10);
+        final X509Certificate otherCertificate = ProtocolGatewayTestHelper.createCertificate();
+
+        assertThat(validator.validate(List.of(certificate), Set.of(new TrustAnchor(certificate, null))).succeeded())
+                .isTrue();
+
+        assertThat(validator.validate(List.of(certificate), Set.of(new TrustAnchor(otherCertificate, null))).failed())
+                .isTrue();
+        assertThat(validator.getCacheStats().hitCount()).isEqualTo(0);
+    }
+
+    /**
+     * Verifies that failed validations are not cached.
+     */
+    @Test
+    public void failedValidationIsNotCached() {
+        final X509CertificateValidator validator = new X509CertificateValidator(10);
+        final Set<TrustAnchor> otherAnchors = Set.of(
+                new TrustAnchor(ProtocolGatewayTestHelper.createCertificate(), null));
+
+        assertThat(validator.validate(List.of(certificate), otherAnchors).failed()).isTrue();
+        assertThat(validator.validate(List.of(certificate), otherAnchors).failed()).isTrue();
+
+        assertThat(validator.getCacheStats().hitCount()).isEqualTo(0);
+    }
+
+    /**
+     * Verifies that validations are not cached by default.
+     */
+    @Test
+    public void validationsAreNotCachedByDefault() {
+        final X509CertificateValidator validator = new X509CertificateValidator();
+
+        assertThat(validator.validate(List.of(certificate), Set.of(new TrustAnchor(certificate, null))).succeeded())
+                .isTrue();
+        assertThat(validator.validate(List.of(certificate), Set.of(new TrustAnchor(certificate, null))).succeeded())
+                .isTrue();
+
+        assertThat(validator.getCacheStats().requestCount()).isEqualTo(0);
+    }
+}
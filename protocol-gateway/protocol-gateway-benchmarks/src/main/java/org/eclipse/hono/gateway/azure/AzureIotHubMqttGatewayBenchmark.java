@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.azure;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
+import org.apache.qpid.proton.message.Message;
+import org.apache.qpid.proton.message.impl.MessageImpl;
+import org.eclipse.hono.auth.Device;
+import org.eclipse.hono.client.amqp.config.ClientConfigProperties;
+import org.eclipse.hono.client.amqp.connection.AmqpUtils;
+import org.eclipse.hono.gateway.sdk.mqtt2amqp.Command;
+import org.eclipse.hono.gateway.sdk.mqtt2amqp.DeviceTopics;
+import org.eclipse.hono.gateway.sdk.mqtt2amqp.MqttCommandContext;
+import org.eclipse.hono.gateway.sdk.mqtt2amqp.MqttDownstreamContext;
+import org.eclipse.hono.gateway.sdk.mqtt2amqp.MqttProtocolGatewayConfig;
+import org.eclipse.hono.gateway.sdk.mqtt2amqp.Stubs;
+import org.eclipse.hono.gateway.sdk.mqtt2amqp.downstream.DownstreamMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+import io.vertx.mqtt.MqttEndpoint;
+import io.vertx.mqtt.messages.MqttPublishMessage;
+
+/**
+ * Measures the mapping of published messages and commands in the Azure IoT Hub example gateway.
+ * <p>
+ * Each invocation creates the context of the message like the gateway does when a message is published or a command
+ * is received. Run with {@code -prof gc} to see the allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AzureIotHubMqttGatewayBenchmark {
+
+    private static final String TENANT_ID = "the-tenant";
+    private static final String DEVICE_ID = "the-device";
+    private static final String REPLY_TO = "command_response/the-tenant/the-device/5f0e1b9c-2b5d-4e1f";
+    private static final String CORRELATION_ID = "8a3c2e3a-6f0c-4d7e-9b1a-0c8f3a6e2d41";
+
+    private final MqttEndpoint endpoint = Stubs.create(MqttEndpoint.class);
+
+    private AzureIotHubMqttGateway gateway;
+    private DeviceTopics deviceTopics;
+    private MqttPublishMessage deviceToCloudMessage;
+    private MqttPublishMessage directMethodResponse;
+    private Message cloudToDeviceCommand;
+    private Message directMethodCommand;
+
+    /**
+     * Creates the gateway and the messages.
+     */
+    @Setup
+    public void setUp() {
+        final DemoDeviceConfiguration demoDeviceConfig = new DemoDeviceConfiguration();
+        demoDeviceConfig.setTenantId(TENANT_ID);
+        demoDeviceConfig.setDeviceId(DEVICE_ID);
+        gateway = new AzureIotHubMqttGateway(new ClientConfigProperties(), new MqttProtocolGatewayConfig(),
+                demoDeviceConfig);
+        deviceTopics = DeviceTopics.bind(new Device(TENANT_ID, DEVICE_ID), gateway.getTopicTemplates());
+
+        final byte[] payload = new JsonObject().put("temperature", 21.5).put("humidity", 40).toBuffer().getBytes();
+
+        deviceToCloudMessage = MqttPublishMessage.create(1, MqttQoS.AT_LEAST_ONCE, false, false,
+                PropertyBag.encode(AzureIotHubMqttGateway.getEventTopic(DEVICE_ID),
+                        Map.of("sensor", "s1", "unit", "celsius")),
+                Unpooled.wrappedBuffer(payload));
+        directMethodResponse = MqttPublishMessage.create(2, MqttQoS.AT_LEAST_ONCE, false, false,
+                AzureIotHubMqttGateway.DIRECT_METHOD_RESPONSE_TOPIC_PREFIX + "200/?$rid="
+                        + RequestId.encode(REPLY_TO, CORRELATION_ID),
+                Unpooled.wrappedBuffer(payload));
+
+        cloudToDeviceCommand = new MessageImpl();
+        cloudToDeviceCommand.setSubject("setInterval");
+        cloudToDeviceCommand.setMessageId("the-message-id");
+        // the gateway adds the message properties to the application properties
+        cloudToDeviceCommand.setApplicationProperties(
+                new ApplicationProperties(new HashMap<>(Map.of("interval", 10))));
+        AmqpUtils.setPayload(cloudToDeviceCommand, "application/json", payload);
+
+        directMethodCommand = new MessageImpl();
+        directMethodCommand.setSubject("reboot");
+        directMethodCommand.setReplyTo(REPLY_TO);
+        directMethodCommand.setCorrelationId(CORRELATION_ID);
+        AmqpUtils.setPayload(directMethodCommand, "application/json", payload);
+    }
+
+    /**
+     * Maps a device-to-cloud message with a property bag.
+     *
+     * @return The message to be sent downstream.
+     */
+    @Benchmark
+    public Future<DownstreamMessage> deviceToCloudMessage() {
+        return gateway.onPublishedMessage(
+                MqttDownstreamContext.fromPublishPacket(deviceToCloudMessage, endpoint, deviceTopics));
+    }
+
+    /**
+     * Maps a direct method response.
+     *
+     * @return The message to be sent downstream.
+     */
+    @Benchmark
+    public Future<DownstreamMessage> directMethodResponse() {
+        return gateway.onPublishedMessage(
+                MqttDownstreamContext.fromPublishPacket(directMethodResponse, endpoint, deviceTopics));
+    }
+
+    /**
+     * Maps a one-way command to a cloud-to-device message.
+     *
+     * @return The command to be published to the device.
+     */
+    @Benchmark
+    public Command cloudToDeviceCommand() {
+        return gateway.onCommandReceived(MqttCommandContext.fromAmqpMessage(cloudToDeviceCommand, deviceTopics));
+    }
+
+    /**
+     * Maps a request/response command to a direct method message.
+     *
+     * @return The command to be published to the device.
+     */
+    @Benchmark
+    public Command directMethodCommand() {
+        return gateway.onCommandReceived(MqttCommandContext.fromAmqpMessage(directMethodCommand, deviceTopics));
+    }
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.azure;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the encoding and decoding of the property bags in the topics of the Azure IoT Hub API.
+ * <p>
+ * Run with {@code -prof gc} to see the allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PropertyBagBenchmark {
+
+    private static final String BASE_TOPIC = "devices/the-device/messages/events/";
+
+    /**
+     * The number of properties in the property bag.
+     */
+    @Param({ "0", "2", "8" })
+    public int properties;
+
+    private final Map<String, Object> propertyMap = new LinkedHashMap<>();
+    private String topic;
+
+    /**
+     * Creates the properties and the topic containing them.
+     */
+    @Setup
+    public void setUp() {
+        propertyMap.clear();
+        for (int i = 0; i < properties; i++) {
+            propertyMap.put("key-" + i, "value/" + i);
+        }
+        topic = PropertyBag.encode(BASE_TOPIC, propertyMap);
+    }
+
+    /**
+     * Decodes the property bag of a topic and iterates over its properties, like the gateway does for each published
+     * message.
+     *
+     * @param blackhole The blackhole to consume the properties.
+     */
+    @Benchmark
+    public void decode(final Blackhole blackhole) {
+        PropertyBag.decode(topic).getPropertyBagIterator().forEachRemaining(blackhole::consume);
+    }
+
+    /**
+     * Encodes properties into a topic, like the gateway does for each cloud-to-device message.
+     *
+     * @return The topic.
+     */
+    @Benchmark
+    public String encode() {
+        return PropertyBag.encode(BASE_TOPIC, propertyMap);
+    }
+}
@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.azure;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the encoding of the request IDs of direct methods and their decoding from the responses.
+ * <p>
+ * Run with {@code -prof gc} to see the allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestIdBenchmark {
+
+    private static final String REPLY_TO = "command_response/the-tenant/the-device/5f0e1b9c-2b5d-4e1f";
+    private static final String CORRELATION_ID = "8a3c2e3a-6f0c-4d7e-9b1a-0c8f3a6e2d41";
+    private static final String REQUEST_ID = RequestId.encode(REPLY_TO, CORRELATION_ID);
+
+    /**
+     * Encodes the request ID of a command.
+     *
+     * @return The request ID.
+     */
+    @Benchmark
+    public String encode() {
+        return RequestId.encode(REPLY_TO, CORRELATION_ID);
+    }
+
+    /**
+     * Decodes the request ID of a response.
+     *
+     * @return The reply ID and correlation ID.
+     */
+    @Benchmark
+    public RequestId decode() {
+        return RequestId.decode(REQUEST_ID);
+    }
+}
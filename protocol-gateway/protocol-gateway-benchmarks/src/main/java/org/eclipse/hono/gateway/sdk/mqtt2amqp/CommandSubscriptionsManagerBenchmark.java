@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+
+/**
+ * Measures the tracking of commands that have been published with QoS 1 until the device acknowledges them.
+ * <p>
+ * Each invocation publishes the next command, i.e. registers it with its acknowledgement timeout, and acknowledges
+ * the one that has been published {@code inFlight} invocations before. The timeouts are scheduled on a timing wheel
+ * whose timer is stubbed, so that no timeout expires during the measurement. Run with {@code -prof gc} to see the
+ * allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommandSubscriptionsManagerBenchmark {
+
+    private static final int MAX_MESSAGE_ID = 65535;
+
+    /**
+     * The number of commands that are waiting for an acknowledgement at the same time.
+     */
+    @Param({ "1", "16", "256" })
+    public int inFlight;
+
+    private int acknowledged;
+    private final Handler<Integer> onAck = msgId -> acknowledged++;
+    private final Handler<Void> onAckTimeout = v -> {
+        throw new IllegalStateException("acknowledgement timed out during benchmark");
+    };
+
+    private CommandSubscriptionsManager manager;
+    private int nextMessageId;
+
+    /**
+     * Creates the manager and publishes the commands that are in flight.
+     */
+    @Setup
+    public void setUp() {
+        final HashedTimingWheel ackTimeouts = new HashedTimingWheel(Stubs.create(Vertx.class), 10, 512);
+        manager = new CommandSubscriptionsManager(ackTimeouts, new MqttProtocolGatewayConfig());
+        for (nextMessageId = 1; nextMessageId < inFlight; nextMessageId++) {
+            manager.addToWaitingForAcknowledgement(nextMessageId, onAck, onAckTimeout);
+        }
+    }
+
+    /**
+     * Publishes a command and receives the acknowledgement of an earlier one.
+     *
+     * @return The number of acknowledged commands.
+     */
+    @Benchmark
+    public int publishAndAcknowledge() {
+        final int messageId = nextMessageId;
+        nextMessageId = messageId == MAX_MESSAGE_ID ? 1 : messageId + 1;
+
+        manager.addToWaitingForAcknowledgement(messageId, onAck, onAckTimeout);
+
+        final int previous = messageId - inFlight + 1;
+        manager.handlePubAck(previous < 1 ? previous + MAX_MESSAGE_ID : previous);
+        return acknowledged;
+    }
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the {@link MessageIdMap} that tracks the commands waiting for an acknowledgement with the
+ * {@link ConcurrentHashMap} that has been used before.
+ * <p>
+ * Each invocation of the cycle benchmarks adds the next message id and removes the one that has been added
+ * {@code inFlight} invocations before, like a device that acknowledges commands in the order in which they have been
+ * published. Run with {@code -prof gc} to see the allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageIdMapBenchmark {
+
+    private static final Object PENDING_REQUEST = new Object();
+    private static final int MAX_MESSAGE_ID = 65535;
+
+    /**
+     * The number of commands that are waiting for an acknowledgement at the same time.
+     */
+    @Param({ "1", "16", "256" })
+    public int inFlight;
+
+    private MessageIdMap<Object> messageIdMap;
+    private Map<Integer, Object> concurrentHashMap;
+    private int nextMessageId;
+
+    /**
+     * Fills the maps with the commands that are in flight.
+     */
+    @Setup
+    public void setUp() {
+        messageIdMap = new MessageIdMap<>();
+        concurrentHashMap = new ConcurrentHashMap<>();
+        for (nextMessageId = 1; nextMessageId < inFlight; nextMessageId++) {
+            messageIdMap.put(nextMessageId, PENDING_REQUEST);
+            concurrentHashMap.put(nextMessageId, PENDING_REQUEST);
+        }
+    }
+
+    /**
+     * Adds and acknowledges a command using the {@link MessageIdMap}.
+     *
+     * @return The acknowledged request.
+     */
+    @Benchmark
+    public Object messageIdMapCycle() {
+        final int messageId = nextMessageId();
+        messageIdMap.put(messageId, PENDING_REQUEST);
+        return messageIdMap.remove(previousMessageId(messageId));
+    }
+
+    /**
+     * Adds and acknowledges a command using a {@link ConcurrentHashMap}.
+     *
+     * @return The acknowledged request.
+     */
+    @Benchmark
+    public Object concurrentHashMapCycle() {
+        final int messageId = nextMessageId();
+        concurrentHashMap.put(messageId, PENDING_REQUEST);
+        return concurrentHashMap.remove(previousMessageId(messageId));
+    }
+
+    /**
+     * Creates the {@link MessageIdMap} of a newly connected device.
+     *
+     * @return The new map.
+     */
+    @Benchmark
+    public Object messageIdMapPerDevice() {
+        return new MessageIdMap<>();
+    }
+
+    /**
+     * Creates the {@link ConcurrentHashMap} of a newly connected device.
+     *
+     * @return The new map.
+     */
+    @Benchmark
+    public Object concurrentHashMapPerDevice() {
+        return new ConcurrentHashMap<Integer, Object>();
+    }
+
+    private int nextMessageId() {
+        final int messageId = nextMessageId;
+        nextMessageId = messageId == MAX_MESSAGE_ID ? 1 : messageId + 1;
+        return messageId;
+    }
+
+    private int previousMessageId(final int messageId) {
+        final int previous = messageId - inFlight + 1;
+        return previous < 1 ? previous + MAX_MESSAGE_ID : previous;
+    }
+}
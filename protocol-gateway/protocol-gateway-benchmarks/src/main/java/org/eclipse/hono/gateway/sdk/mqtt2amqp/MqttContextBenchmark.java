@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.messaging.Data;
+import org.apache.qpid.proton.message.Message;
+import org.apache.qpid.proton.message.impl.MessageImpl;
+import org.eclipse.hono.auth.Device;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.mqtt.MqttEndpoint;
+import io.vertx.mqtt.messages.MqttPublishMessage;
+
+/**
+ * Measures the creation of the contexts that the gateway creates for every published message and every command.
+ * <p>
+ * The command benchmark also gets the payload, which every gateway implementation does. Run with {@code -prof gc} to
+ * see the allocation rate, which should not depend on the payload size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MqttContextBenchmark {
+
+    /**
+     * The size of the payloads in bytes.
+     */
+    @Param({ "64", "65536" })
+    public int payloadSize;
+
+    private final MqttEndpoint endpoint = Stubs.create(MqttEndpoint.class);
+    private final DeviceTopics deviceTopics = DeviceTopics.bind(new Device("the-tenant", "the-device"),
+            List.of(TopicTemplate.compile("devices/{deviceId}/messages/events/")));
+
+    private MqttPublishMessage publishMessage;
+    private Message command;
+
+    /**
+     * Creates the published message and the command.
+     */
+    @Setup
+    public void setUp() {
+        final byte[] payload = new byte[payloadSize];
+        publishMessage = MqttPublishMessage.create(1, MqttQoS.AT_LEAST_ONCE, false, false,
+                "devices/the-device/messages/events/", Unpooled.wrappedBuffer(payload));
+        command = new MessageImpl();
+        command.setBody(new Data(new Binary(payload)));
+    }
+
+    /**
+     * Creates the context of a published message.
+     *
+     * @return The context.
+     */
+    @Benchmark
+    public MqttDownstreamContext downstreamContext() {
+        return MqttDownstreamContext.fromPublishPacket(publishMessage, endpoint, deviceTopics);
+    }
+
+    /**
+     * Creates the context of a command and gets its payload.
+     *
+     * @return The payload.
+     */
+    @Benchmark
+    public Buffer commandContext() {
+        return MqttCommandContext.fromAmqpMessage(command, deviceTopics).getPayload();
+    }
+}
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import java.lang.reflect.Proxy;
+import java.util.Objects;
+
+/**
+ * Creates stubs of the interfaces that the benchmarked code requires but does not invoke on its hot path, e.g. the
+ * {@code MqttEndpoint} of a published message.
+ * <p>
+ * The methods of a stub do nothing and return {@code null}, {@code false} or zero. Unlike mocks, stubs do not record
+ * their invocations and therefore do not distort the measured allocation rate.
+ */
+public final class Stubs {
+
+    private Stubs() {
+        // prevent instantiation
+    }
+
+    /**
+     * Creates a stub.
+     *
+     * @param <T> The type of the stub.
+     * @param type The interface to implement.
+     * @return The stub.
+     * @throws NullPointerException if type is {@code null}.
+     */
+    public static <T> T create(final Class<T> type) {
+        Objects.requireNonNull(type);
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+                (proxy, method, args) -> defaultValue(method.getReturnType())));
+    }
+
+    private static Object defaultValue(final Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        } else if (type == boolean.class) {
+            return false;
+        } else if (type == char.class) {
+            return '\0';
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == float.class) {
+            return 0f;
+        } else if (type == double.class) {
+            return 0d;
+        } else if (type == byte.class) {
+            return (byte) 0;
+        } else if (type == short.class) {
+            return (short) 0;
+        } else {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2020, 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.sdk.mqtt2amqp;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the {@link TopicRouter} with the prefix checks that the Azure IoT Hub example gateway uses to route the
+ * published messages and with the splitting of topics that it has used to validate the topic filters of subscriptions.
+ * <p>
+ * Each invocation routes one topic of the given kind and, for direct method responses, extracts the status. Run with
+ * {@code -prof gc} to see the allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TopicRouterBenchmark {
+
+    private static final String TENANT_ID = "the-tenant";
+    private static final String DEVICE_ID = "the-device";
+    private static final String EVENT = "event";
+    private static final String METHOD_RESPONSE = "method-response";
+
+    private static final TopicTemplate EVENT_TOPIC = TopicTemplate.compile("devices/{deviceId}/messages/events/");
+    private static final TopicTemplate CLOUD_TO_DEVICE_TOPIC_FILTER = TopicTemplate
+            .compile("devices/{deviceId}/messages/devicebound/#");
+    private static final String DIRECT_METHOD_TOPIC_FILTER = "$iothub/methods/POST/#";
+    private static final String DIRECT_METHOD_RESPONSE_TOPIC_PREFIX = "$iothub/methods/res/";
+
+    private static final TopicRouter<String> UPSTREAM_TOPICS = TopicRouter.<String> builder()
+            .route(EVENT_TOPIC.getPattern() + "{propertyBag}", EVENT)
+            .route(DIRECT_METHOD_RESPONSE_TOPIC_PREFIX + "{status}/{propertyBag}", METHOD_RESPONSE)
+            .build();
+    private static final TopicRouter<Boolean> TOPIC_FILTERS = TopicRouter.<Boolean> builder()
+            .route(CLOUD_TO_DEVICE_TOPIC_FILTER.getPattern(), Boolean.TRUE)
+            .route(DIRECT_METHOD_TOPIC_FILTER, Boolean.TRUE)
+            .build();
+
+    /**
+     * The kind of the topic to route.
+     */
+    @Param({ "event", "methodResponse", "filter" })
+    public String kind;
+
+    private String topic;
+    private String boundEventTopic;
+
+    /**
+     * Creates the topic of the given kind.
+     */
+    @Setup
+    public void setUp() {
+        boundEventTopic = EVENT_TOPIC.expand(DEVICE_ID);
+        topic = switch (kind) {
+        case "event" -> boundEventTopic + "?sensor=s1&unit=celsius";
+        case "methodResponse" -> DIRECT_METHOD_RESPONSE_TOPIC_PREFIX
+                + "200/?$rid=command_response%2Fthe-tenant%2Fthe-device";
+        default -> CLOUD_TO_DEVICE_TOPIC_FILTER.expand(DEVICE_ID);
+        };
+    }
+
+    /**
+     * Routes the topic with the {@link TopicRouter}.
+     *
+     * @return The target of the topic or, for a direct method response, its status.
+     */
+    @Benchmark
+    public Object topicRouter() {
+        if (kind.equals("filter")) {
+            return TOPIC_FILTERS.match(topic, TENANT_ID, DEVICE_ID) != null;
+        }
+        final TopicRouter.Match<String> match = UPSTREAM_TOPICS.match(topic, TENANT_ID, DEVICE_ID);
+        if (match == null) {
+            return null;
+        }
+        return match.getTarget() == METHOD_RESPONSE ? match.get("status") : match.getTarget();
+    }
+
+    /**
+     * Routes the topic with prefix checks and splits a direct method response to extract the status.
+     *
+     * @return The target of the topic or, for a direct method response, its status.
+     */
+    @Benchmark
+    public Object prefixChecks() {
+        if (kind.equals("filter")) {
+            return CLOUD_TO_DEVICE_TOPIC_FILTER.matches(topic, TENANT_ID, DEVICE_ID)
+                    || DIRECT_METHOD_TOPIC_FILTER.equals(topic);
+        }
+        if (topic.startsWith(boundEventTopic)) {
+            return EVENT;
+        } else if (topic.startsWith(DIRECT_METHOD_RESPONSE_TOPIC_PREFIX)) {
+            return topic.split("/", -1)[3];
+        }
+        return null;
+    }
+}
@@ -0,0 +1,326 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.loadtest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.Symbol;
+import org.apache.qpid.proton.amqp.messaging.Accepted;
+import org.apache.qpid.proton.amqp.messaging.Data;
+import org.apache.qpid.proton.engine.Sasl;
+import org.apache.qpid.proton.engine.Transport;
+import org.apache.qpid.proton.message.Message;
+import org.eclipse.hono.util.CommandConstants;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.net.NetSocket;
+import io.vertx.proton.ProtonConnection;
+import io.vertx.proton.ProtonDelivery;
+import io.vertx.proton.ProtonHelper;
+import io.vertx.proton.ProtonSender;
+import io.vertx.proton.ProtonServer;
+import io.vertx.proton.ProtonServerOptions;
+import io.vertx.proton.sasl.ProtonSaslAuthenticator;
+
+/**
+ * A stub of Hono's AMQP adapter that accepts every connection, grants credit for and accepts every message and sends
+ * commands to the command consumers at a fixed rate.
+ * <p>
+ * The gateway is expected to authenticate with SASL PLAIN as {@code <name>@<tenant-id>}, so that the commands for
+ * the tenant can be sent to a command consumer that has been opened for all devices of the gateway.
+ * <p>
+ * The first 8 bytes of the payload of the uploaded messages are expected to contain the {@link System#nanoTime()}
+ * at which the device published the message. The commands contain the time at which they were sent in the same way.
+ * <p>
+ * This class is not thread-safe, its state is only accessed on the event loop of the verticle.
+ */
+final class AmqpAdapterStub extends AbstractVerticle {
+
+    private static final Symbol ANONYMOUS_RELAY = Symbol.valueOf("ANONYMOUS-RELAY");
+    private static final String TENANT_ATTACHMENT = "tenant-id";
+    private static final int PREFETCH = 1000;
+    private static final long TICK_MILLIS = 10;
+
+    private final LoadTestOptions options;
+    private final List<CommandTarget> commandTargets = new ArrayList<>();
+
+    private ProtonServer server;
+    private long commandTimer = -1;
+    private double commandBudget;
+    private int nextCommandTarget;
+    private Results results = new Results();
+
+    /**
+     * Creates a stub.
+     *
+     * @param options The options of the load test.
+     */
+    AmqpAdapterStub(final LoadTestOptions options) {
+        this.options = options;
+    }
+
+    @Override
+    public void start(final Promise<Void> startPromise) {
+        server = ProtonServer.create(vertx, new ProtonServerOptions().setHost("127.0.0.1").setPort(0))
+                .saslAuthenticatorFactory(PlainAuthenticator::new)
+                .connectHandler(this::handleConnection);
+        server.listen(ar -> {
+            if (ar.succeeded()) {
+                startPromise.complete();
+            } else {
+                startPromise.fail(ar.cause());
+            }
+        });
+    }
+
+    @Override
+    public void stop() {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    /**
+     * Gets the port that the stub listens on.
+     *
+     * @return The port.
+     */
+    int getPort() {
+        return server.actualPort();
+    }
+
+    /**
+     * Starts sending commands to all open command consumers and resets the results.
+     *
+     * @return A succeeded future once the commands are being sent.
+     */
+    Future<Void> startCommands() {
+        return onContext(() -> {
+            results = new Results();
+            if (options.getCommandRate() > 0) {
+                commandTimer = vertx.setPeriodic(TICK_MILLIS, id -> sendCommands());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Stops sending commands.
+     *
+     * @return A succeeded future once no more commands are being sent.
+     */
+    Future<Void> stopCommands() {
+        return onContext(() -> {
+            vertx.cancelTimer(commandTimer);
+            return null;
+        });
+    }
+
+    /**
+     * Gets the results since the commands have been started.
+     *
+     * @return A future containing the results.
+     */
+    Future<Results> getResults() {
+        return onContext(() -> results);
+    }
+
+    private <T> Future<T> onContext(final Supplier<T> action) {
+        final Promise<T> result = Promise.promise();
+        context.runOnContext(v -> result.complete(action.get()));
+        return result.future();
+    }
+
+    private void handleConnection(final ProtonConnection connection) {
+        connection.setOfferedCapabilities(new Symbol[] { ANONYMOUS_RELAY });
+        connection.openHandler(remoteOpen -> connection.open());
+        connection.closeHandler(remoteClose -> {
+            connection.close();
+            connection.disconnect();
+        });
+        connection.disconnectHandler(con -> commandTargets.removeIf(target -> target.sender.getSession()
+                .getConnection() == con));
+        connection.sessionOpenHandler(session -> {
+            session.closeHandler(remoteClose -> session.close());
+            session.open();
+        });
+        connection.receiverOpenHandler(receiver -> {
+            receiver.setTarget(receiver.getRemoteTarget());
+            receiver.setQoS(receiver.getRemoteQoS());
+            receiver.setPrefetch(PREFETCH);
+            receiver.setAutoAccept(true);
+            receiver.handler(this::handleUpload);
+            receiver.closeHandler(remoteClose -> receiver.close());
+            receiver.open();
+        });
+        connection.senderOpenHandler(this::handleCommandConsumer);
+    }
+
+    private void handleUpload(final ProtonDelivery delivery, final Message message) {
+        final long now = System.nanoTime();
+        if (message.getBody() instanceof Data data && data.getValue().getLength() >= Long.BYTES) {
+            final Binary payload = data.getValue();
+            long sentAt = 0;
+            for (int i = 0; i < Long.BYTES; i++) {
+                sentAt = sentAt << 8 | payload.getArray()[payload.getArrayOffset() + i] & 0xFF;
+            }
+            results.uploadLatencies.record(now - sentAt);
+        } else {
+            results.invalidUploads++;
+        }
+    }
+
+    private void handleCommandConsumer(final ProtonSender sender) {
+        final String address = sender.getRemoteSource().getAddress();
+        sender.setSource(sender.getRemoteSource());
+        sender.setQoS(sender.getRemoteQoS());
+        sender.closeHandler(remoteClose -> {
+            commandTargets.removeIf(target -> target.sender == sender);
+            sender.close();
+        });
+        sender.detachHandler(remoteDetach -> {
+            commandTargets.removeIf(target -> target.sender == sender);
+            sender.close();
+        });
+        sender.open();
+
+        // device-specific consumers use "command/<tenant>/<device>", consumers for all devices just "command"
+        if (CommandConstants.COMMAND_ENDPOINT.equals(address)) {
+            final String tenantId = sender.getSession().getConnection().attachments()
+                    .get(TENANT_ATTACHMENT, String.class);
+            for (int i = 0; i < options.getClients(); i++) {
+                if (options.tenantId(i).equals(tenantId)) {
+                    commandTargets.add(new CommandTarget(sender,
+                            String.join("/", CommandConstants.COMMAND_ENDPOINT, tenantId, options.deviceId(i))));
+                }
+            }
+        } else {
+            commandTargets.add(new CommandTarget(sender, address));
+        }
+    }
+
+    private void sendCommands() {
+        if (commandTargets.isEmpty()) {
+            return;
+        }
+        commandBudget += options.getCommandRate() * commandTargets.size() * TICK_MILLIS / 1000d;
+        while (commandBudget >= 1) {
+            commandBudget--;
+            nextCommandTarget = (nextCommandTarget + 1) % commandTargets.size();
+            sendCommand(commandTargets.get(nextCommandTarget));
+        }
+    }
+
+    private void sendCommand(final CommandTarget target) {
+        if (target.sender.sendQueueFull()) {
+            results.commandsWithoutCredit++;
+            return;
+        }
+        final byte[] payload = new byte[Long.BYTES];
+        final long now = System.nanoTime();
+        for (int i = 0; i < Long.BYTES; i++) {
+            payload[i] = (byte) (now >>> (Long.BYTES - 1 - i) * 8);
+        }
+        final Message command = ProtonHelper.message(target.address, null);
+        command.setSubject("load");
+        command.setMessageId("cmd-" + results.commandsSent);
+        command.setBody(new Data(new Binary(payload)));
+        results.commandsSent++;
+        target.sender.send(command, delivery -> {
+            if (delivery.getRemoteState() instanceof Accepted) {
+                results.commandsAccepted++;
+            } else {
+                results.commandsNotAccepted++;
+            }
+        });
+    }
+
+    /**
+     * The results of the stub.
+     */
+    static final class Results {
+
+        final LatencyRecorder uploadLatencies = new LatencyRecorder();
+        long invalidUploads;
+        long commandsSent;
+        long commandsAccepted;
+        long commandsNotAccepted;
+        long commandsWithoutCredit;
+    }
+
+    /**
+     * A link and the address of the device to send commands to.
+     */
+    private static final class CommandTarget {
+
+        final ProtonSender sender;
+        final String address;
+
+        CommandTarget(final ProtonSender sender, final String address) {
+            this.sender = sender;
+            this.address = address;
+        }
+    }
+
+    /**
+     * Accepts any credentials presented with SASL PLAIN and attaches the tenant of the username to the connection.
+     */
+    private static final class PlainAuthenticator implements ProtonSaslAuthenticator {
+
+        private ProtonConnection connection;
+        private Sasl sasl;
+        private boolean succeeded;
+
+        @Override
+        public void init(final NetSocket socket, final ProtonConnection protonConnection,
+                final Transport transport) {
+            connection = protonConnection;
+            sasl = transport.sasl();
+            sasl.server();
+            sasl.allowSkip(false);
+            sasl.setMechanisms("PLAIN");
+        }
+
+        @Override
+        public void process(final Handler<Boolean> completionHandler) {
+            if (sasl.getRemoteMechanisms().length == 0) {
+                completionHandler.handle(false);
+                return;
+            }
+            final byte[] response = new byte[sasl.pending()];
+            sasl.recv(response, 0, response.length);
+            // the response consists of the authorization ID, the username and the password, separated by NUL
+            final String[] fields = new String(response, StandardCharsets.UTF_8).split("\0");
+            if (fields.length > 1) {
+                final int separator = fields[1].indexOf('@');
+                connection.attachments().set(TENANT_ATTACHMENT, String.class, fields[1].substring(separator + 1));
+            }
+            sasl.done(Sasl.SaslOutcome.PN_SASL_OK);
+            succeeded = true;
+            completionHandler.handle(true);
+        }
+
+        @Override
+        public boolean succeeded() {
+            return succeeded;
+        }
+    }
+}
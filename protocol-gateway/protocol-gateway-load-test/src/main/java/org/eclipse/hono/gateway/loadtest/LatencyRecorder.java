@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.loadtest;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Records latencies in nanoseconds and computes their percentiles.
+ * <p>
+ * All recorded values are kept, so that the percentiles are exact. With 8 bytes per value, a load test with a million
+ * messages needs 8 MB per recorder.
+ * <p>
+ * This class is not thread-safe, it is meant to be used on the event loop of the verticle that records the values.
+ * The recorders of several verticles are combined with {@link #add(LatencyRecorder)} after the measurement.
+ */
+final class LatencyRecorder {
+
+    private long[] values = new long[1024];
+    private int count;
+    private boolean sorted = true;
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos The latency in nanoseconds.
+     */
+    void record(final long nanos) {
+        if (count == values.length) {
+            values = Arrays.copyOf(values, count * 2);
+        }
+        values[count++] = nanos;
+        sorted = false;
+    }
+
+    /**
+     * Adds all latencies of another recorder to this recorder.
+     *
+     * @param other The recorder to add.
+     */
+    void add(final LatencyRecorder other) {
+        if (count + other.count > values.length) {
+            values = Arrays.copyOf(values, Math.max(values.length * 2, count + other.count));
+        }
+        System.arraycopy(other.values, 0, values, count, other.count);
+        count += other.count;
+        sorted = false;
+    }
+
+    /**
+     * Removes all recorded latencies.
+     */
+    void reset() {
+        count = 0;
+        sorted = true;
+    }
+
+    /**
+     * Gets the number of recorded latencies.
+     *
+     * @return The number of latencies.
+     */
+    int count() {
+        return count;
+    }
+
+    /**
+     * Gets a percentile of the recorded latencies.
+     *
+     * @param percentile The percentile between 0 and 100.
+     * @return The latency in nanoseconds or 0 if no latency has been recorded.
+     */
+    long percentile(final double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        if (!sorted) {
+            Arrays.sort(values, 0, count);
+            sorted = true;
+        }
+        final int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return values[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    /**
+     * Formats the number of latencies and their 50th, 90th, 99th and 100th percentile in milliseconds.
+     *
+     * @return The summary.
+     */
+    String summary() {
+        if (count == 0) {
+            return "n/a";
+        }
+        return String.format(Locale.ROOT, "n=%d, p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms", count,
+                millis(percentile(50)), millis(percentile(90)), millis(percentile(99)), millis(percentile(100)));
+    }
+
+    private static double millis(final long nanos) {
+        return nanos / 1_000_000d;
+    }
+}
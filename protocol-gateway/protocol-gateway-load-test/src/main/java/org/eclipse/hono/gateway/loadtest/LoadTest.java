@@ -0,0 +1,347 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.eclipse.hono.client.amqp.config.ClientConfigProperties;
+import org.eclipse.hono.gateway.sdk.mqtt2amqp.MqttProtocolGatewayConfig;
+
+import com.sun.management.OperatingSystemMXBean;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.net.OpenSSLEngineOptions;
+import io.vertx.core.net.PemKeyCertOptions;
+import io.vertx.mqtt.MqttServer;
+import io.vertx.mqtt.MqttServerOptions;
+import io.vertx.mqtt.MqttTopicSubscription;
+
+/**
+ * Runs a load test of the MQTT protocol gateway in a single JVM, without any external services.
+ * <p>
+ * The test starts a stub of Hono's AMQP adapter, a minimal gateway based on the template and the simulated devices,
+ * each in its own Vert.x instance. The devices connect and subscribe to commands, then publish messages at a fixed
+ * rate while the stub sends commands to them. The test reports
+ * <ul>
+ * <li>the connect rate and the latencies of the connection and subscription requests, which with {@code --tls=true}
+ * include the TLS handshakes,</li>
+ * <li>the used heap per connection, measured after garbage collection before and after the devices connected,</li>
+ * <li>the latencies from publishing a message until the AMQP adapter receives it and until the device receives the
+ * PUBACK, which the gateway sends once the AMQP adapter has settled the message,</li>
+ * <li>the latencies from sending a command until the device receives it,</li>
+ * <li>the CPU time used by the process while the devices publish messages.</li>
+ * </ul>
+ * The heap per connection includes the heap used by the simulated devices. Run with {@code --baseline=true} to
+ * connect the devices to a bare MQTT server first and subtract their share.
+ * <p>
+ * For meaningful heap figures, run with a fixed heap size, e.g. {@code -Xms2g -Xmx2g}. With {@code --heapTarget} the
+ * test fails if the gateway uses more heap per connection than the target, e.g. for idle devices that neither
+ * publish nor subscribe ({@code --publishRate=0 --commandRate=0}).
+ */
+public final class LoadTest {
+
+    private static final long DRAIN_MILLIS = 2000;
+    private static final int GC_RUNS = 3;
+    private static final long GC_PAUSE_MILLIS = 200;
+    // a self-signed certificate for localhost
+    private static final String CERT_RESOURCE = "loadtest-cert.pem";
+    private static final String KEY_RESOURCE = "loadtest-key.pem";
+
+    private final LoadTestOptions options;
+    private final PrintStream out;
+    private String certPath;
+    private String keyPath;
+
+    private LoadTest(final LoadTestOptions options, final PrintStream out) {
+        this.options = options;
+        this.out = out;
+    }
+
+    /**
+     * Runs the load test.
+     *
+     * @param args The options of the test run, see {@link LoadTestOptions#USAGE}.
+     * @throws Exception if the test fails.
+     */
+    public static void main(final String[] args) throws Exception {
+        if (List.of(args).contains("--help")) {
+            System.out.println(LoadTestOptions.USAGE);
+            return;
+        }
+        final LoadTestOptions options;
+        try {
+            options = LoadTestOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(LoadTestOptions.USAGE);
+            System.exit(1);
+            return;
+        }
+        final boolean targetMet = new LoadTest(options, System.out).run();
+        System.exit(targetMet ? 0 : 1);
+    }
+
+    private boolean run() throws Exception {
+        out.println("Load test with " + options);
+        if (options.isTls()) {
+            final Path directory = Files.createTempDirectory("load-test");
+            directory.toFile().deleteOnExit();
+            certPath = extractResource(directory, CERT_RESOURCE);
+            keyPath = extractResource(directory, KEY_RESOURCE);
+        }
+
+        final Vertx stubVertx = Vertx.vertx();
+        final AmqpAdapterStub stub = new AmqpAdapterStub(options);
+        await(stubVertx.deployVerticle(stub));
+
+        final HeapPerConnection baseline = options.isBaseline() ? runBaseline() : null;
+
+        final Vertx gatewayVertx = Vertx.vertx(new VertxOptions()
+                .setPreferNativeTransport(options.isNativeTransport()));
+        final boolean openSsl = options.isNativeTls() && OpenSSLEngineOptions.isAvailable();
+        line("Transport in effect: %s, TLS: %s", gatewayVertx.isNativeTransportEnabled() ? "native" : "NIO",
+                options.isTls() ? (openSsl ? "OpenSSL" : "JDK") : "off");
+        final int port = getFreePort();
+        final ClientConfigProperties amqpClientConfig = new ClientConfigProperties();
+        amqpClientConfig.setHost("127.0.0.1");
+        amqpClientConfig.setPort(stub.getPort());
+        final MqttProtocolGatewayConfig gatewayConfig = new MqttProtocolGatewayConfig();
+        gatewayConfig.setPort(port);
+        gatewayConfig.setAmqpConnectionsPerTenant(options.getAmqpConnectionsPerTenant());
+        gatewayConfig.setTenantWideCommandConsumer(options.isTenantWideCommandConsumer());
+        gatewayConfig.setConnectRateLimit(options.getConnectRateLimit());
+        if (options.isTls()) {
+            gatewayConfig.setCertPath(certPath);
+            gatewayConfig.setKeyPath(keyPath);
+            gatewayConfig.setNativeTls(options.isNativeTls());
+        }
+        await(gatewayVertx.deployVerticle(() -> new LoadTestGateway(amqpClientConfig, gatewayConfig),
+                new DeploymentOptions().setInstances(options.getGatewayInstances())));
+
+        final Vertx clientVertx = Vertx.vertx();
+        final List<SimulatedDevices> clients = deployClients(clientVertx, port, true);
+
+        final long heapBefore = usedHeapAfterGc();
+        final long connectStart = System.nanoTime();
+        await(all(clients, SimulatedDevices::connect));
+        final long connectNanos = System.nanoTime() - connectStart;
+        final long subscribeStart = System.nanoTime();
+        if (options.getCommandRate() > 0) {
+            await(all(clients, SimulatedDevices::subscribe));
+        }
+        final long subscribeNanos = System.nanoTime() - subscribeStart;
+        final long heapAfter = usedHeapAfterGc();
+
+        await(stub.startCommands());
+        final long cpuBefore = processCpuNanos();
+        await(all(clients, SimulatedDevices::startPublishing));
+        Thread.sleep(options.getDuration() * 1000L);
+        await(all(clients, SimulatedDevices::stopPublishing));
+        final long cpuNanos = processCpuNanos() - cpuBefore;
+        await(stub.stopCommands());
+        Thread.sleep(DRAIN_MILLIS);
+
+        final SimulatedDevices.Results results = new SimulatedDevices.Results();
+        for (final SimulatedDevices devices : clients) {
+            results.add(await(devices.getResults()));
+        }
+        final AmqpAdapterStub.Results stubResults = await(stub.getResults());
+
+        final HeapPerConnection heap = new HeapPerConnection(heapBefore, heapAfter, results.connectLatencies.count());
+        report(results, connectNanos, subscribeNanos, heap, baseline, stubResults, cpuNanos);
+
+        await(clientVertx.close());
+        await(gatewayVertx.close());
+        await(stubVertx.close());
+        return isHeapTargetMet(heap, baseline);
+    }
+
+    /**
+     * Connects the devices to a bare MQTT server that only accepts connections and subscriptions.
+     */
+    private HeapPerConnection runBaseline() throws Exception {
+        final Vertx serverVertx = Vertx.vertx();
+        final MqttServerOptions serverOptions = new MqttServerOptions().setHost("127.0.0.1").setPort(0);
+        if (options.isTls()) {
+            serverOptions.setSsl(true).setKeyCertOptions(new PemKeyCertOptions().setCertPath(certPath)
+                    .setKeyPath(keyPath));
+        }
+        final MqttServer server = await(MqttServer.create(serverVertx, serverOptions)
+                .endpointHandler(endpoint -> {
+                    endpoint.subscribeHandler(subscribe -> endpoint.subscribeAcknowledge(subscribe.messageId(),
+                            subscribe.topicSubscriptions().stream()
+                                    .map(MqttTopicSubscription::qualityOfService)
+                                    .collect(Collectors.toList())));
+                    endpoint.accept(false);
+                })
+                .listen());
+
+        final Vertx clientVertx = Vertx.vertx();
+        final List<SimulatedDevices> clients = deployClients(clientVertx, server.actualPort(), false);
+        final long heapBefore = usedHeapAfterGc();
+        await(all(clients, SimulatedDevices::connect));
+        if (options.getCommandRate() > 0) {
+            await(all(clients, SimulatedDevices::subscribe));
+        }
+        final long heapAfter = usedHeapAfterGc();
+        int connected = 0;
+        for (final SimulatedDevices devices : clients) {
+            connected += await(devices.getResults()).connectLatencies.count();
+        }
+        await(clientVertx.close());
+        await(serverVertx.close());
+        return new HeapPerConnection(heapBefore, heapAfter, connected);
+    }
+
+    private List<SimulatedDevices> deployClients(final Vertx vertx, final int port, final boolean gateway)
+            throws Exception {
+        final List<SimulatedDevices> clients = new ArrayList<>(options.getClientVerticles());
+        for (int i = 0; i < options.getClientVerticles(); i++) {
+            final SimulatedDevices devices = new SimulatedDevices(options, i, options.getClientVerticles(), port,
+                    gateway);
+            await(vertx.deployVerticle(devices));
+            clients.add(devices);
+        }
+        return clients;
+    }
+
+    private void report(final SimulatedDevices.Results results, final long connectNanos, final long subscribeNanos,
+            final HeapPerConnection heap, final HeapPerConnection baseline, final AmqpAdapterStub.Results stub,
+            final long cpuNanos) {
+
+        final int connected = results.connectLatencies.count();
+        line("Connect:            %d of %d devices in %.2f s (%.0f connects/s), %d failed", connected,
+                options.getClients(), seconds(connectNanos), connected / seconds(connectNanos),
+                results.connectFailures);
+        line("  latency:          %s", results.connectLatencies.summary());
+        if (options.getCommandRate() > 0) {
+            line("Subscribe:          %d in %.2f s, %d failed", results.subscribeLatencies.count(),
+                    seconds(subscribeNanos), results.subscribeFailures);
+            line("  latency:          %s", results.subscribeLatencies.summary());
+        }
+        line("Heap:               %.1f KiB per connection (gateway and devices)", heap.perConnection());
+        if (baseline != null) {
+            line("  bare MQTT server: %.1f KiB per connection, %.1f KiB per connection used by the gateway",
+                    baseline.perConnection(), heap.perConnection() - baseline.perConnection());
+        }
+        final double duration = options.getDuration();
+        line("Publish:            %d messages (%.0f/s), %d skipped, %d failed", results.published,
+                results.published / duration, results.notPublished, results.publishFailures);
+        line("  to AMQP adapter:  %s, %d without timestamp", stub.uploadLatencies.summary(), stub.invalidUploads);
+        if (options.getQos().value() > 0) {
+            line("  to PUBACK:        %s, %d unacknowledged", results.publishLatencies.summary(),
+                    results.unacknowledged);
+        }
+        if (options.getCommandRate() > 0) {
+            line("Commands:           %d sent (%.0f/s), %d accepted, %d not accepted, %d without credit",
+                    stub.commandsSent, stub.commandsSent / duration, stub.commandsAccepted, stub.commandsNotAccepted,
+                    stub.commandsWithoutCredit);
+            line("  to device:        %s", results.commandLatencies.summary());
+        }
+        line("CPU:                %.2f cores while publishing (gateway, devices and AMQP adapter stub)",
+                cpuNanos / 1_000_000_000d / duration);
+    }
+
+    private boolean isHeapTargetMet(final HeapPerConnection heap, final HeapPerConnection baseline) {
+        if (options.getHeapTarget() == 0) {
+            return true;
+        }
+        final double gatewayHeap = heap.perConnection() - baseline.perConnection();
+        final boolean met = gatewayHeap <= options.getHeapTarget();
+        line("Heap target:        %.1f KiB per connection used by the gateway, target %d KiB: %s", gatewayHeap,
+                options.getHeapTarget(), met ? "met" : "MISSED");
+        return met;
+    }
+
+    private void line(final String format, final Object... args) {
+        out.println(String.format(Locale.ROOT, format, args));
+    }
+
+    private static double seconds(final long nanos) {
+        return nanos / 1_000_000_000d;
+    }
+
+    private static Future<Void> all(final List<SimulatedDevices> clients,
+            final Function<SimulatedDevices, Future<Void>> action) {
+        return CompositeFuture.all(clients.stream().map(action).collect(Collectors.toList())).mapEmpty();
+    }
+
+    private static <T> T await(final Future<T> future) throws InterruptedException, ExecutionException {
+        return future.toCompletionStage().toCompletableFuture().get();
+    }
+
+    private static int getFreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 0, InetAddress.getLoopbackAddress())) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static String extractResource(final Path directory, final String name) throws IOException {
+        final Path file = directory.resolve(name);
+        try (InputStream resource = LoadTest.class.getResourceAsStream("/" + name)) {
+            Files.copy(resource, file);
+        }
+        file.toFile().deleteOnExit();
+        return file.toString();
+    }
+
+    private static long processCpuNanos() {
+        return ((OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        for (int i = 0; i < GC_RUNS; i++) {
+            System.gc();
+            Thread.sleep(GC_PAUSE_MILLIS);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * The used heap before and after the devices connected.
+     */
+    private static final class HeapPerConnection {
+
+        final long before;
+        final long after;
+        final int connections;
+
+        HeapPerConnection(final long before, final long after, final int connections) {
+            this.before = before;
+            this.after = after;
+            this.connections = connections;
+        }
+
+        double perConnection() {
+            return connections == 0 ? 0 : (after - before) / 1024d / connections;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.loadtest;
+
+import java.net.HttpURLConnection;
+import java.util.List;
+
+import org.eclipse.hono.auth.Device;
+import org.eclipse.hono.client.ClientErrorException;
+import org.eclipse.hono.client.amqp.config.ClientConfigProperties;
+import org.eclipse.hono.gateway.sdk.mqtt2amqp.AbstractMqttProtocolGateway;
+import org.eclipse.hono.gateway.sdk.mqtt2amqp.Command;
+import org.eclipse.hono.gateway.sdk.mqtt2amqp.Credentials;
+import org.eclipse.hono.gateway.sdk.mqtt2amqp.DeviceTopics;
+import org.eclipse.hono.gateway.sdk.mqtt2amqp.MqttCommandContext;
+import org.eclipse.hono.gateway.sdk.mqtt2amqp.MqttDownstreamContext;
+import org.eclipse.hono.gateway.sdk.mqtt2amqp.MqttProtocolGatewayConfig;
+import org.eclipse.hono.gateway.sdk.mqtt2amqp.TopicTemplate;
+import org.eclipse.hono.gateway.sdk.mqtt2amqp.downstream.DownstreamMessage;
+import org.eclipse.hono.gateway.sdk.mqtt2amqp.downstream.EventMessage;
+import org.eclipse.hono.gateway.sdk.mqtt2amqp.downstream.TelemetryMessage;
+import org.eclipse.hono.util.QoS;
+
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.vertx.core.Future;
+
+/**
+ * A minimal gateway that forwards the messages of the simulated devices to Hono and publishes the commands to them
+ * unchanged, so that the load test measures the overhead of the template rather than that of a message mapping.
+ * <p>
+ * Devices authenticate with the username {@code <device-id>@<tenant-id>} and any password. The gateway authenticates
+ * to the AMQP adapter as {@code gateway@<tenant-id>}.
+ */
+final class LoadTestGateway extends AbstractMqttProtocolGateway {
+
+    static final TopicTemplate TELEMETRY_TOPIC = TopicTemplate.compile("telemetry/{tenantId}/{deviceId}");
+    static final TopicTemplate EVENT_TOPIC = TopicTemplate.compile("event/{tenantId}/{deviceId}");
+    static final TopicTemplate COMMAND_TOPIC_FILTER = TopicTemplate.compile("command/{tenantId}/{deviceId}/req/#");
+    static final TopicTemplate COMMAND_TOPIC = TopicTemplate.compile("command/{tenantId}/{deviceId}/req/load");
+
+    private static final List<TopicTemplate> DEVICE_TOPICS = List.of(TELEMETRY_TOPIC, EVENT_TOPIC,
+            COMMAND_TOPIC_FILTER, COMMAND_TOPIC);
+
+    /**
+     * Creates an instance.
+     *
+     * @param amqpClientConfig The configuration of the connections to the AMQP adapter stub, without credentials.
+     * @param mqttGatewayConfig The configuration of the gateway.
+     */
+    LoadTestGateway(final ClientConfigProperties amqpClientConfig, final MqttProtocolGatewayConfig mqttGatewayConfig) {
+        super(amqpClientConfig, mqttGatewayConfig);
+    }
+
+    @Override
+    protected Future<Device> authenticateDevice(final String username, final String password,
+            final String clientId) {
+
+        final int separator = username.indexOf('@');
+        if (separator < 1) {
+            return Future.failedFuture(new ClientErrorException(HttpURLConnection.HTTP_UNAUTHORIZED));
+        }
+        return Future.succeededFuture(new Device(username.substring(separator + 1), username.substring(0, separator)));
+    }
+
+    @Override
+    protected Future<Credentials> provideGatewayCredentials(final String tenantId) {
+        return Future.succeededFuture(new Credentials("gateway@" + tenantId, "secret"));
+    }
+
+    @Override
+    protected boolean isTopicFilterValid(final String topicFilter, final String tenantId, final String deviceId,
+            final String clientId) {
+        return COMMAND_TOPIC_FILTER.matches(topicFilter, tenantId, deviceId);
+    }
+
+    @Override
+    protected Future<DownstreamMessage> onPublishedMessage(final MqttDownstreamContext ctx) {
+
+        final DeviceTopics topics = ctx.deviceTopics();
+        if (ctx.topic().equals(topics.get(TELEMETRY_TOPIC))) {
+            final QoS qos = MqttQoS.AT_MOST_ONCE.equals(ctx.qosLevel()) ? QoS.AT_MOST_ONCE : QoS.AT_LEAST_ONCE;
+            return Future.succeededFuture(new TelemetryMessage(ctx.message().payload(), qos));
+        } else if (ctx.topic().equals(topics.get(EVENT_TOPIC))) {
+            return Future.succeededFuture(new EventMessage(ctx.message().payload()));
+        }
+        return Future.failedFuture(new ClientErrorException(HttpURLConnection.HTTP_BAD_REQUEST, "unknown topic"));
+    }
+
+    @Override
+    protected Command onCommandReceived(final MqttCommandContext ctx) {
+        final DeviceTopics topics = ctx.getDeviceTopics();
+        return new Command(topics.get(COMMAND_TOPIC), topics.get(COMMAND_TOPIC_FILTER), ctx.getPayload());
+    }
+
+    @Override
+    protected List<TopicTemplate> getTopicTemplates() {
+        return DEVICE_TOPICS;
+    }
+}
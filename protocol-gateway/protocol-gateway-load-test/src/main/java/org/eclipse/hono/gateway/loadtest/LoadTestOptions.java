@@ -0,0 +1,289 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.loadtest;
+
+import io.netty.handler.codec.mqtt.MqttQoS;
+
+/**
+ * The options of a load test run.
+ * <p>
+ * The options are given as command line arguments of the form {@code --name=value}.
+ */
+final class LoadTestOptions {
+
+    static final String USAGE = String.join(System.lineSeparator(),
+            "Options (all optional):",
+            "  --clients=<n>             number of simulated devices (default: 100)",
+            "  --tenants=<n>             number of tenants the devices are spread over (default: 1)",
+            "  --gatewayInstances=<n>    number of gateway verticle instances (default: 1)",
+            "  --clientVerticles=<n>     number of verticles running the devices (default: number of cores)",
+            "  --connectConcurrency=<n>  maximum number of pending connection requests (default: 100)",
+            "  --connectRateLimit=<n>    connection rate limit of the gateway per second, 0 for none (default: 0)",
+            "  --publishRate=<n>         messages per second and device (default: 10)",
+            "  --commandRate=<n>         commands per second and device, 0 for none (default: 1)",
+            "  --payloadSize=<n>         size of the payloads in bytes, at least 8 (default: 256)",
+            "  --qos=<0|1>               QoS of the published messages (default: 1)",
+            "  --events=<true|false>     publish events instead of telemetry messages (default: false)",
+            "  --tenantWideCommandConsumer=<true|false>",
+            "                            use one command consumer per tenant (default: false)",
+            "  --amqpConnectionsPerTenant=<n>",
+            "                            number of AMQP connections per tenant (default: 1)",
+            "  --tls=<true|false>        connect the devices with TLS (default: false)",
+            "  --nativeTls=<true|false>  use OpenSSL for TLS if it is available (default: false)",
+            "  --nativeTransport=<true|false>",
+            "                            use the native transport if it is available (default: false)",
+            "  --duration=<s>            duration of the publishing phase in seconds (default: 30)",
+            "  --baseline=<true|false>   also connect the devices to a bare MQTT server to separate the heap",
+            "                            used by the gateway from the heap used by the devices (default: false)",
+            "  --heapTarget=<KiB>        fail if the gateway uses more heap per connection, implies the",
+            "                            baseline, 0 for none (default: 0)");
+
+    private int clients = 100;
+    private int tenants = 1;
+    private int gatewayInstances = 1;
+    private int clientVerticles = Runtime.getRuntime().availableProcessors();
+    private int connectConcurrency = 100;
+    private int connectRateLimit;
+    private int publishRate = 10;
+    private int commandRate = 1;
+    private int payloadSize = 256;
+    private MqttQoS qos = MqttQoS.AT_LEAST_ONCE;
+    private boolean events;
+    private boolean tenantWideCommandConsumer;
+    private int amqpConnectionsPerTenant = 1;
+    private boolean tls;
+    private boolean nativeTls;
+    private boolean nativeTransport;
+    private int duration = 30;
+    private boolean baseline;
+    private int heapTarget;
+
+    /**
+     * Parses the command line arguments.
+     *
+     * @param args The arguments.
+     * @return The options.
+     * @throws IllegalArgumentException if an argument is unknown or its value is invalid.
+     */
+    static LoadTestOptions parse(final String... args) {
+        final LoadTestOptions options = new LoadTestOptions();
+        for (final String arg : args) {
+            final int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("invalid argument: " + arg);
+            }
+            final String name = arg.substring(2, separator);
+            final String value = arg.substring(separator + 1);
+            switch (name) {
+            case "clients":
+                options.clients = positive(name, value);
+                break;
+            case "tenants":
+                options.tenants = positive(name, value);
+                break;
+            case "gatewayInstances":
+                options.gatewayInstances = positive(name, value);
+                break;
+            case "clientVerticles":
+                options.clientVerticles = positive(name, value);
+                break;
+            case "connectConcurrency":
+                options.connectConcurrency = positive(name, value);
+                break;
+            case "connectRateLimit":
+                options.connectRateLimit = notNegative(name, value);
+                break;
+            case "publishRate":
+                options.publishRate = notNegative(name, value);
+                break;
+            case "commandRate":
+                options.commandRate = notNegative(name, value);
+                break;
+            case "payloadSize":
+                options.payloadSize = notNegative(name, value);
+                if (options.payloadSize < Long.BYTES) {
+                    throw new IllegalArgumentException("payload size must be at least " + Long.BYTES);
+                }
+                break;
+            case "qos":
+                options.qos = switch (value) {
+                case "0" -> MqttQoS.AT_MOST_ONCE;
+                case "1" -> MqttQoS.AT_LEAST_ONCE;
+                default -> throw new IllegalArgumentException("qos must be 0 or 1");
+                };
+                break;
+            case "events":
+                options.events = Boolean.parseBoolean(value);
+                break;
+            case "tenantWideCommandConsumer":
+                options.tenantWideCommandConsumer = Boolean.parseBoolean(value);
+                break;
+            case "amqpConnectionsPerTenant":
+                options.amqpConnectionsPerTenant = positive(name, value);
+                break;
+            case "tls":
+                options.tls = Boolean.parseBoolean(value);
+                break;
+            case "nativeTls":
+                options.nativeTls = Boolean.parseBoolean(value);
+                break;
+            case "nativeTransport":
+                options.nativeTransport = Boolean.parseBoolean(value);
+                break;
+            case "duration":
+                options.duration = positive(name, value);
+                break;
+            case "baseline":
+                options.baseline = Boolean.parseBoolean(value);
+                break;
+            case "heapTarget":
+                options.heapTarget = notNegative(name, value);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown option: " + name);
+            }
+        }
+        options.clientVerticles = Math.min(options.clientVerticles, options.clients);
+        options.baseline |= options.heapTarget > 0;
+        return options;
+    }
+
+    private static int notNegative(final String name, final String value) {
+        final int result;
+        try {
+            result = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a number");
+        }
+        if (result < 0) {
+            throw new IllegalArgumentException(name + " must not be negative");
+        }
+        return result;
+    }
+
+    private static int positive(final String name, final String value) {
+        final int result = notNegative(name, value);
+        if (result == 0) {
+            throw new IllegalArgumentException(name + " must be greater than zero");
+        }
+        return result;
+    }
+
+    /**
+     * Gets the tenant of a simulated device.
+     *
+     * @param device The index of the device.
+     * @return The tenant ID.
+     */
+    String tenantId(final int device) {
+        return "tenant-" + device % tenants;
+    }
+
+    /**
+     * Gets the ID of a simulated device.
+     *
+     * @param device The index of the device.
+     * @return The device ID.
+     */
+    String deviceId(final int device) {
+        return "device-" + device;
+    }
+
+    int getClients() {
+        return clients;
+    }
+
+    int getTenants() {
+        return tenants;
+    }
+
+    int getGatewayInstances() {
+        return gatewayInstances;
+    }
+
+    int getClientVerticles() {
+        return clientVerticles;
+    }
+
+    int getConnectConcurrency() {
+        return connectConcurrency;
+    }
+
+    int getConnectRateLimit() {
+        return connectRateLimit;
+    }
+
+    int getPublishRate() {
+        return publishRate;
+    }
+
+    int getCommandRate() {
+        return commandRate;
+    }
+
+    int getPayloadSize() {
+        return payloadSize;
+    }
+
+    MqttQoS getQos() {
+        return qos;
+    }
+
+    boolean isEvents() {
+        return events;
+    }
+
+    boolean isTenantWideCommandConsumer() {
+        return tenantWideCommandConsumer;
+    }
+
+    int getAmqpConnectionsPerTenant() {
+        return amqpConnectionsPerTenant;
+    }
+
+    boolean isTls() {
+        return tls;
+    }
+
+    boolean isNativeTls() {
+        return nativeTls;
+    }
+
+    boolean isNativeTransport() {
+        return nativeTransport;
+    }
+
+    int getDuration() {
+        return duration;
+    }
+
+    boolean isBaseline() {
+        return baseline;
+    }
+
+    int getHeapTarget() {
+        return heapTarget;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "clients: %d, tenants: %d, gateway instances: %d, client verticles: %d, publish rate: %d/s, "
+                        + "command rate: %d/s, payload: %d bytes, QoS: %d, %s, %s command consumers, "
+                        + "AMQP connections per tenant: %d, TLS: %s, native transport: %s, duration: %d s",
+                clients, tenants, gatewayInstances, clientVerticles, publishRate, commandRate, payloadSize,
+                qos.value(), events ? "events" : "telemetry", tenantWideCommandConsumer ? "tenant-wide" : "device",
+                amqpConnectionsPerTenant, tls ? (nativeTls ? "OpenSSL" : "JDK") : "off", nativeTransport, duration);
+    }
+}
@@ -0,0 +1,328 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Contributors to the Eclipse Foundation
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.hono.gateway.loadtest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.mqtt.MqttClient;
+import io.vertx.mqtt.MqttClientOptions;
+
+/**
+ * Simulates a share of the devices of a load test, each with its own MQTT connection.
+ * <p>
+ * The devices with the indexes {@code first}, {@code first + step}, {@code first + 2 * step}, ... are simulated.
+ * The payload of every published message starts with the {@link System#nanoTime()} at which it was published, so
+ * that the latency can be measured at the other end.
+ * <p>
+ * This class is not thread-safe, its state is only accessed on the event loop of the verticle.
+ */
+final class SimulatedDevices extends AbstractVerticle {
+
+    private static final long TICK_MILLIS = 10;
+    private static final int MAX_INFLIGHT_QUEUE = 1000;
+
+    private final LoadTestOptions options;
+    private final int port;
+    private final boolean gateway;
+    private final List<SimulatedDevice> devices = new ArrayList<>();
+    private final int connectConcurrency;
+
+    private long publishTimer = -1;
+    private double publishBudget;
+    private int nextDevice;
+    private Results results = new Results();
+
+    /**
+     * Creates the devices.
+     *
+     * @param options The options of the load test.
+     * @param first The index of the first device.
+     * @param step The distance between the indexes of the devices.
+     * @param port The port of the MQTT server to connect to.
+     * @param gateway {@code true} if the MQTT server is the gateway, {@code false} if it is a bare MQTT server.
+     */
+    SimulatedDevices(final LoadTestOptions options, final int first, final int step, final int port,
+            final boolean gateway) {
+        this.options = options;
+        this.port = port;
+        this.gateway = gateway;
+        for (int i = first; i < options.getClients(); i += step) {
+            devices.add(new SimulatedDevice(options.tenantId(i), options.deviceId(i)));
+        }
+        this.connectConcurrency = Math.max(1, options.getConnectConcurrency() / step);
+    }
+
+    @Override
+    public void stop(final Promise<Void> stopPromise) {
+        vertx.cancelTimer(publishTimer);
+        CompositeFuture.join(devices.stream()
+                .filter(device -> device.client != null && device.client.isConnected())
+                .map(device -> device.client.disconnect())
+                .collect(Collectors.toList()))
+                .<Void> mapEmpty()
+                .onComplete(ar -> stopPromise.complete());
+    }
+
+    /**
+     * Connects all devices.
+     *
+     * @return A future indicating the outcome. It is succeeded when all connection attempts have completed, even if
+     *         some of them have failed.
+     */
+    Future<Void> connect() {
+        return onContext(() -> forAll(this::connect));
+    }
+
+    /**
+     * Subscribes all connected devices to their commands.
+     *
+     * @return A future indicating the outcome. It is succeeded when all subscription attempts have completed, even if
+     *         some of them have failed.
+     */
+    Future<Void> subscribe() {
+        return onContext(() -> forAll(this::subscribe));
+    }
+
+    /**
+     * Starts publishing messages and resets the results of the publishing phase.
+     *
+     * @return A succeeded future once the messages are being published.
+     */
+    Future<Void> startPublishing() {
+        return onContext(() -> {
+            results.resetMessages();
+            if (options.getPublishRate() > 0) {
+                publishTimer = vertx.setPeriodic(TICK_MILLIS, id -> publish());
+            }
+            return Future.succeededFuture();
+        });
+    }
+
+    /**
+     * Stops publishing messages.
+     *
+     * @return A succeeded future once no more messages are being published.
+     */
+    Future<Void> stopPublishing() {
+        return onContext(() -> {
+            vertx.cancelTimer(publishTimer);
+            return Future.succeededFuture();
+        });
+    }
+
+    /**
+     * Gets the results of the devices.
+     *
+     * @return A future containing the results.
+     */
+    Future<Results> getResults() {
+        return onContext(() -> {
+            results.unacknowledged = devices.stream().mapToLong(device -> device.pendingPublishes.size()).sum();
+            return Future.succeededFuture(results);
+        });
+    }
+
+    private <T> Future<T> onContext(final Supplier<Future<T>> action) {
+        final Promise<T> result = Promise.promise();
+        context.runOnContext(v -> action.get().onComplete(result));
+        return result.future();
+    }
+
+    /**
+     * Runs an asynchronous action for all devices, with at most {@link #connectConcurrency} actions pending.
+     */
+    private Future<Void> forAll(final Function<SimulatedDevice, Future<Void>> action) {
+        final Iterator<SimulatedDevice> iterator = devices.iterator();
+        @SuppressWarnings("rawtypes")
+        final List<Future> chains = new ArrayList<>(connectConcurrency);
+        for (int i = 0; i < connectConcurrency; i++) {
+            chains.add(next(iterator, action));
+        }
+        return CompositeFuture.all(chains).mapEmpty();
+    }
+
+    private Future<Void> next(final Iterator<SimulatedDevice> iterator,
+            final Function<SimulatedDevice, Future<Void>> action) {
+        if (!iterator.hasNext()) {
+            return Future.succeededFuture();
+        }
+        return action.apply(iterator.next())
+                .compose(v -> next(iterator, action), e -> next(iterator, action));
+    }
+
+    private Future<Void> connect(final SimulatedDevice device) {
+        final MqttClientOptions clientOptions = new MqttClientOptions()
+                .setClientId(device.deviceId)
+                .setUsername(device.deviceId + "@" + device.tenantId)
+                .setPassword("secret")
+                .setMaxInflightQueue(MAX_INFLIGHT_QUEUE);
+        if (options.isTls()) {
+            clientOptions.setSsl(true).setTrustAll(true);
+        }
+        final MqttClient client = MqttClient.create(vertx, clientOptions);
+        client.publishCompletionHandler(packetId -> {
+            final Long publishedAt = device.pendingPublishes.remove(packetId);
+            if (publishedAt != null) {
+                results.publishLatencies.record(System.nanoTime() - publishedAt);
+            }
+        });
+        client.publishHandler(command -> {
+            if (command.payload().length() >= Long.BYTES) {
+                results.commandLatencies.record(System.nanoTime() - command.payload().getLong(0));
+            }
+        });
+        client.subscribeCompletionHandler(subAck -> {
+            final boolean granted = !subAck.grantedQoSLevels().contains(MqttQoS.FAILURE.value());
+            if (device.subscription != null) {
+                device.subscription.complete(granted);
+            }
+        });
+
+        final long start = System.nanoTime();
+        return client.connect(port, "127.0.0.1")
+                .onSuccess(connAck -> {
+                    results.connectLatencies.record(System.nanoTime() - start);
+                    device.client = client;
+                })
+                .onFailure(e -> results.connectFailures++)
+                .mapEmpty();
+    }
+
+    private Future<Void> subscribe(final SimulatedDevice device) {
+        if (device.client == null) {
+            return Future.succeededFuture();
+        }
+        final String topicFilter = gateway
+                ? LoadTestGateway.COMMAND_TOPIC_FILTER.expand(device.tenantId, device.deviceId)
+                : "command/#";
+        final long start = System.nanoTime();
+        device.subscription = Promise.promise();
+        device.client.subscribe(topicFilter, MqttQoS.AT_LEAST_ONCE.value())
+                .onFailure(e -> device.subscription.tryComplete(false));
+        return device.subscription.future()
+                .onSuccess(granted -> {
+                    if (granted) {
+                        results.subscribeLatencies.record(System.nanoTime() - start);
+                    } else {
+                        results.subscribeFailures++;
+                    }
+                })
+                .mapEmpty();
+    }
+
+    private void publish() {
+        publishBudget += options.getPublishRate() * devices.size() * TICK_MILLIS / 1000d;
+        while (publishBudget >= 1) {
+            publishBudget--;
+            nextDevice = (nextDevice + 1) % devices.size();
+            publish(devices.get(nextDevice));
+        }
+    }
+
+    private void publish(final SimulatedDevice device) {
+        if (device.client == null || !device.client.isConnected()) {
+            results.notPublished++;
+            return;
+        }
+        final MqttQoS qos = options.getQos();
+        if (qos == MqttQoS.AT_LEAST_ONCE && device.pendingPublishes.size() >= MAX_INFLIGHT_QUEUE) {
+            results.notPublished++;
+            return;
+        }
+        // the payload is not copied by the client, so every message needs its own buffer
+        final long now = System.nanoTime();
+        final Buffer payload = Buffer.buffer(new byte[options.getPayloadSize()]).setLong(0, now);
+        results.published++;
+        device.client.publish(options.isEvents() ? device.eventTopic : device.telemetryTopic, payload, qos, false,
+                false)
+                .onSuccess(packetId -> {
+                    if (qos == MqttQoS.AT_LEAST_ONCE) {
+                        device.pendingPublishes.put(packetId, now);
+                    }
+                })
+                .onFailure(e -> results.publishFailures++);
+    }
+
+    /**
+     * The results of the devices.
+     */
+    static final class Results {
+
+        final LatencyRecorder connectLatencies = new LatencyRecorder();
+        final LatencyRecorder subscribeLatencies = new LatencyRecorder();
+        final LatencyRecorder publishLatencies = new LatencyRecorder();
+        final LatencyRecorder commandLatencies = new LatencyRecorder();
+        long connectFailures;
+        long subscribeFailures;
+        long published;
+        long notPublished;
+        long publishFailures;
+        long unacknowledged;
+
+        void resetMessages() {
+            publishLatencies.reset();
+            commandLatencies.reset();
+            published = 0;
+            notPublished = 0;
+            publishFailures = 0;
+        }
+
+        void add(final Results other) {
+            connectLatencies.add(other.connectLatencies);
+            subscribeLatencies.add(other.subscribeLatencies);
+            publishLatencies.add(other.publishLatencies);
+            commandLatencies.add(other.commandLatencies);
+            connectFailures += other.connectFailures;
+            subscribeFailures += other.subscribeFailures;
+            published += other.published;
+            notPublished += other.notPublished;
+            publishFailures += other.publishFailures;
+            unacknowledged += other.unacknowledged;
+        }
+    }
+
+    /**
+     * A device and its connection.
+     */
+    private static final class SimulatedDevice {
+
+        final String tenantId;
+        final String deviceId;
+        final String telemetryTopic;
+        final String eventTopic;
+        final Map<Integer, Long> pendingPublishes = new HashMap<>();
+        MqttClient client;
+        Promise<Boolean> subscription;
+
+        SimulatedDevice(final String tenantId, final String deviceId) {
+            this.tenantId = tenantId;
+            this.deviceId = deviceId;
+            this.telemetryTopic = LoadTestGateway.TELEMETRY_TOPIC.expand(tenantId, deviceId);
+            this.eventTopic = LoadTestGateway.EVENT_TOPIC.expand(tenantId, deviceId);
+        }
+    }
+}